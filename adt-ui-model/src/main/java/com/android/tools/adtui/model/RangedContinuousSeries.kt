@@ -24,4 +24,15 @@ class RangedContinuousSeries @JvmOverloads constructor(val name: String,
                                                        val yRange: Range,
                                                        series: DataSeries<Long>,
                                                        intersectRange: Range = Range(-Double.MAX_VALUE, Double.MAX_VALUE))
-  : RangedSeries<Long>(xRange, series, intersectRange)
\ No newline at end of file
+  : RangedSeries<Long>(xRange, series, intersectRange) {
+  private val dataSeries = series
+
+  /**
+   * Same as [series], except that if the data comes from a [StreamingContinuousSeries] it is downsampled to about [resolution] buckets,
+   * e.g. the width in pixels of the chart drawing it.
+   */
+  fun getSeriesForResolution(resolution: Int): List<SeriesData<Long>> = when (dataSeries) {
+    is StreamingContinuousSeries -> dataSeries.getDataForRange(intersection, resolution)
+    else -> series
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model
+
+/**
+ * A [StreamingDataSeries] of numeric samples that can also return them downsampled to a given resolution, so that drawing a long range
+ * costs about the same as drawing a short one.
+ *
+ * The samples are summarized by a pyramid of levels. A bucket of level `l` covers `FANOUT^l` consecutive samples and holds the indices
+ * of its smallest and largest ones. A downsampled query picks the coarsest level that still has at least one bucket per unit of
+ * resolution (usually a pixel) and returns the first, smallest, largest and last samples of each bucket. That is what a line drawn
+ * through all the samples looks like at that resolution.
+ */
+class StreamingContinuousSeries @JvmOverloads constructor(source: DataSeries<Long>, refetchWindow: Long = 0)
+  : StreamingDataSeries<Long>(source, refetchWindow) {
+  private val levels = ArrayList<Level>()
+
+  /**
+   * Returns the samples of [range], like [getDataForRange], reduced to about four per bucket when there are more than [resolution]
+   * buckets of samples in the range.
+   */
+  @Synchronized
+  fun getDataForRange(range: Range, resolution: Int): List<SeriesData<Long>> {
+    update(range)
+    val (from, to) = indexRange(range) ?: return emptyList()
+    val count = to - from + 1
+    var level = 0
+    var bucketSize = 1
+    while (level < levels.size && count / (bucketSize * FANOUT) >= resolution) {
+      level++
+      bucketSize *= FANOUT
+    }
+    val result = ArrayList<SeriesData<Long>>()
+    if (level == 0) {
+      (from..to).mapTo(result) { sampleAt(it) }
+      return result
+    }
+    // The first and last samples are always returned as they are, so that lines reach the edges of the range.
+    result.add(sampleAt(from))
+    addCovering(result, level, from + 1, to - 1)
+    result.add(sampleAt(to))
+    return result
+  }
+
+  /**
+   * Adds the samples that summarize [first, last] in x order, using the buckets of [level] that fit in the range and buckets of the
+   * levels below for what is left at its ends.
+   */
+  private fun addCovering(result: MutableList<SeriesData<Long>>, level: Int, first: Int, last: Int) {
+    if (first > last) {
+      return
+    }
+    if (level == 0) {
+      (first..last).mapTo(result) { sampleAt(it) }
+      return
+    }
+    val bucketSize = bucketSize(level)
+    val firstBucket = (first + bucketSize - 1) / bucketSize
+    val lastBucket = (last + 1) / bucketSize - 1
+    if (firstBucket > lastBucket) {
+      addCovering(result, level - 1, first, last)
+      return
+    }
+    addCovering(result, level - 1, first, firstBucket * bucketSize - 1)
+    val buckets = levels[level - 1]
+    val indices = IntArray(4)
+    for (bucket in firstBucket..lastBucket) {
+      indices[0] = bucket * bucketSize
+      indices[1] = buckets.minIndices[bucket]
+      indices[2] = buckets.maxIndices[bucket]
+      indices[3] = (bucket + 1) * bucketSize - 1
+      indices.sort()
+      for (i in indices.indices) {
+        if (i == 0 || indices[i] != indices[i - 1]) {
+          result.add(sampleAt(indices[i]))
+        }
+      }
+    }
+    addCovering(result, level - 1, (lastBucket + 1) * bucketSize, last)
+  }
+
+  override fun onSamplesChanged(firstChanged: Int) {
+    var level = 1
+    var bucketSize = FANOUT
+    // Only keep the levels that have more than one bucket.
+    while (bucketSize < size) {
+      if (levels.size < level) {
+        levels.add(Level())
+      }
+      val buckets = levels[level - 1]
+      buckets.resize((size + bucketSize - 1) / bucketSize)
+      for (bucket in firstChanged / bucketSize until buckets.size) {
+        summarize(level, bucket)
+      }
+      level++
+      bucketSize *= FANOUT
+    }
+    while (levels.size >= level) {
+      levels.removeAt(levels.size - 1)
+    }
+  }
+
+  /**
+   * Finds the smallest and largest samples of a bucket of [level] from the buckets of the level below.
+   */
+  private fun summarize(level: Int, bucket: Int) {
+    val childCount = if (level == 1) size else levels[level - 2].size
+    val firstChild = bucket * FANOUT
+    val lastChild = minOf(firstChild + FANOUT, childCount) - 1
+    var minIndex = -1
+    var maxIndex = -1
+    for (child in firstChild..lastChild) {
+      val childMin = if (level == 1) child else levels[level - 2].minIndices[child]
+      val childMax = if (level == 1) child else levels[level - 2].maxIndices[child]
+      if (minIndex < 0 || sampleAt(childMin).value < sampleAt(minIndex).value) {
+        minIndex = childMin
+      }
+      if (maxIndex < 0 || sampleAt(childMax).value > sampleAt(maxIndex).value) {
+        maxIndex = childMax
+      }
+    }
+    levels[level - 1].minIndices[bucket] = minIndex
+    levels[level - 1].maxIndices[bucket] = maxIndex
+  }
+
+  private fun bucketSize(level: Int): Int {
+    var bucketSize = 1
+    repeat(level) { bucketSize *= FANOUT }
+    return bucketSize
+  }
+
+  private class Level {
+    var minIndices = IntArray(16)
+    var maxIndices = IntArray(16)
+    var size = 0
+
+    fun resize(newSize: Int) {
+      if (newSize > minIndices.size) {
+        val capacity = maxOf(newSize, minIndices.size * 2)
+        minIndices = minIndices.copyOf(capacity)
+        maxIndices = maxIndices.copyOf(capacity)
+      }
+      size = newSize
+    }
+  }
+
+  private companion object {
+    const val FANOUT = 4
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model
+
+/**
+ * A [DataSeries] that keeps the samples it has read from another [DataSeries] and only asks it for the samples that are newer than
+ * the ones it already has. This is meant for data that is still being recorded: a live timeline queries a slightly different range on
+ * every frame, and re-reading the whole visible range each time costs more the longer the session runs.
+ *
+ * Samples are assumed to be sorted by x and not to change once they have been read, except for the ones in the last [refetchWindow]
+ * (in the same units as x) which are read again on each update, in case they arrive late or are revised.
+ *
+ * @param E the type of the sample values
+ */
+open class StreamingDataSeries<E> @JvmOverloads constructor(private val source: DataSeries<E>,
+                                                            private val refetchWindow: Long = 0) : DataSeries<E> {
+  private val samples = ArrayList<SeriesData<E>>()
+
+  /**
+   * The range that was last read from [source]. Its samples are all in [samples].
+   */
+  private var fetchedMin = Double.NaN
+  private var fetchedMax = Double.NaN
+
+  /**
+   * Number of samples that are cached.
+   */
+  val size: Int
+    @Synchronized get() = samples.size
+
+  @Synchronized
+  override fun getDataForRange(range: Range): List<SeriesData<E>> {
+    update(range)
+    val (from, to) = indexRange(range) ?: return emptyList()
+    return ArrayList(samples.subList(from, to + 1))
+  }
+
+  /**
+   * Drops all the cached samples, so that the next query reads them from the source again.
+   */
+  @Synchronized
+  fun invalidate() {
+    samples.clear()
+    fetchedMin = Double.NaN
+    fetchedMax = Double.NaN
+    onSamplesChanged(0)
+  }
+
+  /**
+   * Reads the samples of [range] that are not cached yet.
+   */
+  protected fun update(range: Range) {
+    if (range.isEmpty) {
+      return
+    }
+    if (samples.isEmpty() || fetchedMin.isNaN() || range.min < fetchedMin) {
+      // Reading earlier samples would shift all the indices, so start over. This only happens when scrolling back past where the
+      // series was first queried.
+      val max = if (fetchedMax.isNaN()) range.max else maxOf(fetchedMax, range.max)
+      samples.clear()
+      samples.addAll(source.getDataForRange(Range(range.min, max)))
+      fetchedMin = range.min
+      fetchedMax = max
+      onSamplesChanged(0)
+      return
+    }
+    // An unbounded range may have new samples every time.
+    if (range.max <= fetchedMax && range.max < Long.MAX_VALUE.toDouble()) {
+      return
+    }
+    val fetchFrom = maxOf(fetchedMin, samples.last().x.toDouble() - refetchWindow)
+    val newSamples = source.getDataForRange(Range(fetchFrom, range.max)).filter { it.x >= fetchFrom }
+    fetchedMax = maxOf(fetchedMax, range.max)
+    if (newSamples.isEmpty()) {
+      return
+    }
+    // Keep the cached samples the source didn't return again, e.g. because it needs an earlier sample to compute the first one.
+    val firstChanged = partitionPoint(0, samples.size) { samples[it].x >= newSamples[0].x }
+    samples.subList(firstChanged, samples.size).clear()
+    samples.addAll(newSamples)
+    onSamplesChanged(firstChanged)
+  }
+
+  /**
+   * Called after the samples from [firstChanged] on were replaced or appended.
+   */
+  protected open fun onSamplesChanged(firstChanged: Int) {}
+
+  protected fun sampleAt(index: Int) = samples[index]
+
+  /**
+   * Returns the indices of the first and last cached samples to return for [range]: the ones in it, plus the closest one on each side
+   * so that lines can be drawn to the edges of the range. Returns null if there are none.
+   */
+  protected fun indexRange(range: Range): Pair<Int, Int>? {
+    if (samples.isEmpty() || range.isEmpty) {
+      return null
+    }
+    val from = maxOf(0, partitionPoint(0, samples.size) { samples[it].x > range.min } - 1)
+    val to = minOf(samples.size - 1, partitionPoint(from, samples.size) { samples[it].x >= range.max })
+    return Pair(from, to)
+  }
+
+  /**
+   * Returns the first index in [from, to) for which [predicate] is true, or [to] if there is none. The predicate has to be false
+   * for some prefix of the range and true for the rest.
+   */
+  protected inline fun partitionPoint(from: Int, to: Int, predicate: (Int) -> Boolean): Int {
+    var low = from
+    var high = to
+    while (low < high) {
+      val mid = (low + high) ushr 1
+      if (predicate(mid)) {
+        high = mid
+      } else {
+        low = mid + 1
+      }
+    }
+    return low
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class StreamingContinuousSeriesTest {
+  private val source = RecordingDataSeries()
+
+  @Test
+  fun onlyNewSamplesAreRead() {
+    (0L until 50L).forEach { source.add(it, it) }
+    val series = StreamingContinuousSeries(source)
+
+    assertThat(series.getDataForRange(Range(0.0, 100.0)).map { it.x }).isEqualTo((0L until 50L).toList())
+    (50L until 100L).forEach { source.add(it, it) }
+    assertThat(series.getDataForRange(Range(10.0, 200.0)).map { it.x }).isEqualTo((10L until 100L).toList())
+    // A range that was already read doesn't hit the source.
+    assertThat(series.getDataForRange(Range(20.0, 30.0)).map { it.x }).isEqualTo((20L..30L).toList())
+
+    assertThat(source.queries.map { it.min to it.max }).containsExactly(0.0 to 100.0, 49.0 to 200.0).inOrder()
+    assertThat(series.size).isEqualTo(100)
+  }
+
+  @Test
+  fun samplesInRefetchWindowAreReplaced() {
+    (0L until 10L).forEach { source.add(it * 10, 1) }
+    val series = StreamingContinuousSeries(source, 20)
+    series.getDataForRange(Range(0.0, 100.0))
+
+    // Samples at 70 and 90 are revised and a new one arrives.
+    source.set(70, 2)
+    source.set(90, 3)
+    source.add(100, 4)
+
+    assertThat(series.getDataForRange(Range(0.0, 110.0)).map { it.value })
+      .containsExactly(1L, 1L, 1L, 1L, 1L, 1L, 1L, 2L, 1L, 3L, 4L).inOrder()
+    assertThat(source.queries.last().min).isEqualTo(70.0)
+  }
+
+  @Test
+  fun unboundedRangeIsAlwaysUpdated() {
+    val series = StreamingContinuousSeries(source)
+    val range = Range(0.0, Long.MAX_VALUE.toDouble())
+
+    assertThat(series.getDataForRange(range)).isEmpty()
+    source.add(1, 1)
+    assertThat(series.getDataForRange(range)).hasSize(1)
+    source.add(2, 2)
+    assertThat(series.getDataForRange(range)).hasSize(2)
+  }
+
+  @Test
+  fun readingEarlierSamplesStartsOver() {
+    (0L until 100L).forEach { source.add(it, it) }
+    val series = StreamingContinuousSeries(source)
+    series.getDataForRange(Range(50.0, 60.0))
+
+    assertThat(series.getDataForRange(Range(10.0, 20.0)).map { it.x }).isEqualTo((10L..20L).toList())
+    assertThat(source.queries.last().min).isEqualTo(10.0)
+    assertThat(source.queries.last().max).isEqualTo(60.0)
+  }
+
+  @Test
+  fun fewSamplesAreNotDownsampled() {
+    (0L until 100L).forEach { source.add(it, it % 7) }
+    val series = StreamingContinuousSeries(source)
+
+    assertThat(series.getDataForRange(Range(0.0, 99.0), 100)).isEqualTo(series.getDataForRange(Range(0.0, 99.0)))
+  }
+
+  @Test
+  fun manySamplesAreDownsampled() {
+    val values = (0L until 100_000L).map { (it * 7919) % 1000 }
+    values.forEachIndexed { x, value -> source.add(x.toLong(), value) }
+    source.set(54_321, -1)
+    source.set(12_345, 5000)
+    val series = StreamingContinuousSeries(source)
+
+    val downsampled = series.getDataForRange(Range(1000.0, 99_000.0), 200)
+
+    assertThat(downsampled.size).isAtLeast(200)
+    assertThat(downsampled.size).isAtMost(200 * 4 * 4 + 100)
+    assertThat(downsampled.map { it.x }).isInStrictOrder()
+    assertThat(downsampled.first().x).isEqualTo(1000L)
+    assertThat(downsampled.last().x).isEqualTo(99_000L)
+    assertThat(downsampled.minOf { it.value }).isEqualTo(-1L)
+    assertThat(downsampled.maxOf { it.value }).isEqualTo(5000L)
+    assertThat(series.getDataForRange(Range(1000.0, 99_000.0))).containsAtLeastElementsIn(downsampled)
+  }
+
+  @Test
+  fun pyramidIsUpdatedWithNewSamples() {
+    (0L until 10_000L).forEach { source.add(it, 0) }
+    val series = StreamingContinuousSeries(source)
+    series.getDataForRange(Range(0.0, 10_000.0), 10)
+
+    (10_000L until 20_000L).forEach { source.add(it, 0) }
+    source.set(15_000, 42)
+
+    assertThat(series.getDataForRange(Range(0.0, 20_000.0), 10).maxOf { it.value }).isEqualTo(42L)
+  }
+
+  /**
+   * A [DefaultDataSeries] that records the ranges it is queried for.
+   */
+  private class RecordingDataSeries : DefaultDataSeries<Long>() {
+    val queries = mutableListOf<Range>()
+
+    override fun getDataForRange(range: Range): List<SeriesData<Long>> {
+      queries.add(Range(range))
+      return super.getDataForRange(range)
+    }
+
+    fun set(x: Long, value: Long) {
+      mSeriesList[getNearestXIndex(x)] = SeriesData(x, value)
+    }
+  }
+}
@@ -36,10 +36,9 @@ import java.awt.event.MouseEvent
 import java.awt.event.MouseWheelEvent
 import java.awt.geom.Rectangle2D
 import java.awt.image.BufferedImage
-import java.util.LinkedList
-import java.util.Queue
 import javax.swing.AbstractAction
 import javax.swing.KeyStroke
+import kotlin.math.floor
 import kotlin.math.max
 import kotlin.math.min
 
@@ -60,8 +59,8 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
    */
   private val globalXRange = builder.globalXRange
   val yRange: Range = Range(INITIAL_Y_POSITION.toDouble(), INITIAL_Y_POSITION.toDouble())
-  private val rectangles = ArrayList<Rectangle2D.Float>()
-  private val nodes = ArrayList<N>()
+  private var index = HTreeChartIndex(root)
+  private var visibleNodeCount = 0
   private val rootVisible = builder.rootVisible
 
   /**
@@ -91,6 +90,11 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
 
   private val drawnRectangles = ArrayList<Rectangle2D.Float>()
   private val drawnNodes = ArrayList<N>()
+
+  /**
+   * The runs of [drawnRectangles] that share a row, for hit testing.
+   */
+  private val drawnRows = ArrayList<DrawnRow>()
   private val reducer = builder.reducer
   private var canvas: Image? = null
 
@@ -132,6 +136,7 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
   }
 
   private fun rootChanged() {
+    index = HTreeChartIndex(root)
     maximumHeight = calculateMaximumHeight()
     // Update preferred size using calculated height to make sure containers of this chart account for the height change during layout.
     preferredSize = Dimension(preferredSize.width, maximumHeight)
@@ -142,7 +147,7 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
     val startTime = System.nanoTime()
     if (dataUpdated) {
       // Nulling out the canvas will trigger a render pass, below
-      updateNodesAndClearCanvas()
+      canvas = null
       dataUpdated = false
     }
     g.font = font
@@ -161,7 +166,7 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
     }
     UIUtil.drawImage(g, canvas!!, 0, 0, null)
     addDebugInfo("Draw time %.2fms", (System.nanoTime() - startTime) / 1e6)
-    addDebugInfo("# of nodes %d", nodes.size)
+    addDebugInfo("# of nodes %d", visibleNodeCount)
     addDebugInfo("# of reduced nodes %d", drawnNodes.size)
   }
 
@@ -180,23 +185,10 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
     g.composite = AlphaComposite.Src
     UISettings.setupAntialiasing(g)
     g.font = font
-    drawnNodes.clear()
-    drawnNodes.addAll(nodes)
-    drawnRectangles.clear()
-    // Transform
-    for (rect in rectangles) {
-      val newRect = Rectangle2D.Float()
-      newRect.x = rect.x * dim.getWidth().toFloat()
-      newRect.y = rect.y
-      newRect.width = max(0f, rect.width * dim.getWidth().toFloat() - nodeXPaddingPx)
-      newRect.height = rect.height
-      if (orientation == Orientation.BOTTOM_UP) {
-        newRect.y = (dim.getHeight() - newRect.y - newRect.getHeight()).toFloat()
-      }
-      drawnRectangles.add(newRect)
-    }
+    collectDrawnNodes(dim)
     reducer.reduce(drawnRectangles, drawnNodes)
     assert(drawnRectangles.size == drawnNodes.size)
+    collectDrawnRows()
     for (i in drawnNodes.indices) {
       val node = drawnNodes[i]
       val drawingArea = drawnRectangles[i]
@@ -211,44 +203,83 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
     g.dispose()
   }
 
-  private fun updateNodesAndClearCanvas() {
-    nodes.clear()
-    rectangles.clear()
-    canvas = null
-    if (root == null) {
-      return
-    }
-    if (inRange(root!!)) {
-      nodes.add(root!!)
-      rectangles.add(createRectangle(root!!))
-    }
-    var head = 0
-    while (head < nodes.size) {
-      val curNode = nodes[head++]
-      for (i in 0 until curNode.childCount) {
-        val child = curNode.getChildAt(i)
-        if (inRange(child)) {
-          nodes.add(child)
-          rectangles.add(createRectangle(child))
+  /**
+   * Collects the nodes in the X range, depth by depth, and their rectangles in canvas coordinates into [drawnNodes] and
+   * [drawnRectangles].
+   *
+   * Each depth of the [index] is searched for its first and last node in range. With the default reducer, a run of nodes that falls
+   * inside a single pixel is also merged here, jumping to its last node with a binary search instead of visiting each of them. The
+   * result is what [DefaultHTreeChartReducer] would produce, so reducing it again does not change it.
+   */
+  private fun collectDrawnNodes(dim: Dimension) {
+    drawnNodes.clear()
+    drawnRectangles.clear()
+    visibleNodeCount = 0
+    val canvasWidth = dim.getWidth().toFloat()
+    val mergeSubPixelNodes = reducer is DefaultHTreeChartReducer<*>
+    for (level in index.levels) {
+      var i = level.firstEndingAtOrAfter(xRange.min)
+      val end = level.firstStartingAfter(xRange.max, i)
+      while (i < end) {
+        val node = level.nodes[i]
+        if (level.visibleEnds[i] < xRange.min || (!rootVisible && node === root)) {
+          i++
+          continue
+        }
+        val rect = createRectangle(level.starts[i], level.ends[i], node.depth, dim)
+        var next = i + 1
+        if (mergeSubPixelNodes && level.isDisjoint && floor(rect.minX) == floor(rect.maxX)) {
+          // The ends of disjoint nodes are sorted, so the nodes that end in the same pixel are next to each other.
+          val pixel = floor(rect.maxX)
+          next = partitionPoint(i + 1, end) { floor(maxX(level.starts[it], level.ends[it], canvasWidth)) > pixel }
+          if (next > i + 1) {
+            rect.width = (maxX(level.starts[next - 1], level.ends[next - 1], canvasWidth) - rect.minX).toFloat()
+          }
         }
+        drawnNodes.add(node)
+        drawnRectangles.add(rect)
+        visibleNodeCount += next - i
+        i = next
       }
     }
-    if (!rootVisible && nodes.isNotEmpty()) {
-      nodes.removeAt(0)
-      rectangles.removeAt(0)
-    }
   }
 
-  private fun inRange(node: N) = node.start <= xRange.max && node.end >= xRange.min
-
-  private fun createRectangle(node: N): Rectangle2D.Float {
-    val left = ((node.start - xRange.min) / xRange.length).toFloat()
-    val right = ((node.end - xRange.min) / xRange.length).toFloat()
+  private fun createRectangle(start: Long, end: Long, depth: Int, dim: Dimension): Rectangle2D.Float {
+    val left = ((start - xRange.min) / xRange.length).toFloat()
+    val right = ((end - xRange.min) / xRange.length).toFloat()
     return Rectangle2D.Float().apply {
-      x = left
-      y = ((nodeHeight + nodeYPaddingPx) * node.depth - yRange.min).toFloat()
-      width = right - left
+      x = left * dim.getWidth().toFloat()
+      y = ((nodeHeight + nodeYPaddingPx) * depth - yRange.min).toFloat()
+      width = max(0f, (right - left) * dim.getWidth().toFloat() - nodeXPaddingPx)
       height = nodeHeight.toFloat()
+      if (orientation == Orientation.BOTTOM_UP) {
+        y = (dim.getHeight() - y - getHeight()).toFloat()
+      }
+    }
+  }
+
+  /**
+   * Returns the right edge in canvas coordinates of the rectangle [createRectangle] makes for a node, without allocating it.
+   */
+  private fun maxX(start: Long, end: Long, canvasWidth: Float): Double {
+    val left = ((start - xRange.min) / xRange.length).toFloat()
+    val right = ((end - xRange.min) / xRange.length).toFloat()
+    return (left * canvasWidth).toDouble() + max(0f, (right - left) * canvasWidth - nodeXPaddingPx).toDouble()
+  }
+
+  private fun collectDrawnRows() {
+    drawnRows.clear()
+    var from = 0
+    while (from < drawnRectangles.size) {
+      val first = drawnRectangles[from]
+      var to = from + 1
+      var isSorted = true
+      while (to < drawnRectangles.size && drawnRectangles[to].y == first.y && drawnRectangles[to].height == first.height) {
+        isSorted = isSorted && drawnRectangles[to - 1].maxX <= drawnRectangles[to].minX
+        to++
+      }
+      drawnRows.add(DrawnRow(from, to, first.minY, first.maxY, isSorted))
+      from = to
     }
   }
 
@@ -259,7 +290,20 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
     rootChanged()
   }
 
-  fun getNodeAt(point: Point): N? = (drawnNodes zip drawnRectangles).find { (_, rect) -> point in rect }?.first
+  fun getNodeAt(point: Point): N? {
+    for (row in drawnRows) {
+      if (point.y < row.minY || point.y >= row.maxY) {
+        continue
+      }
+      if (!row.isSorted) {
+        return (row.from until row.to).find { point in drawnRectangles[it] }?.let { drawnNodes[it] }
+      }
+      // The rectangles of the row are sorted and don't overlap, so only the last one that starts before the point can contain it.
+      val candidate = partitionPoint(row.from, row.to) { drawnRectangles[it].x > point.x } - 1
+      return if (candidate >= row.from && point in drawnRectangles[candidate]) drawnNodes[candidate] else null
+    }
+    return null
+  }
 
   private fun initializeInputMap() {
     fun bindKey(key: Int, action: String) = inputMap.put(KeyStroke.getKeyStroke(key, 0), action)
@@ -366,19 +410,7 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
     if (root == null) {
       return 0
     }
-    var maxDepth = -1
-    val queue: Queue<N> = LinkedList()
-    queue.add(root)
-    while (!queue.isEmpty()) {
-      val n = queue.poll()!!
-      if (n.depth > maxDepth) {
-        maxDepth = n.depth
-      }
-      for (i in 0 until n.childCount) {
-        queue.add(n.getChildAt(i))
-      }
-    }
-    maxDepth += 1
+    val maxDepth = index.maxDepth + 1
     // The HEIGHT_PADDING is for the chart's toe (the innermost frame on call stacks).
     // We have this because the padding near the chart's head (the outermost frame on call stacks)
     // is there because the root node of the tree is invisible.
@@ -440,6 +472,12 @@ class HTreeChart<N : HNode<N>> private constructor(builder: Builder<N>) : Animat
 
   enum class Orientation { TOP_DOWN, BOTTOM_UP }
 
+  /**
+   * The rectangles in [[from], [to]) of [drawnRectangles], which all span [[minY], [maxY]). If [isSorted], they are sorted by X and
+   * don't overlap.
+   */
+  private class DrawnRow(val from: Int, val to: Int, val minY: Double, val maxY: Double, val isSorted: Boolean)
+
   companion object {
     private const val NO_HTREE = "No data available."
     private const val NO_RANGE = "X range width is zero: Please use a wider range."
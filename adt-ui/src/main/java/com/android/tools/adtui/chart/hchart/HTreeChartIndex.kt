@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart
+
+import com.android.tools.adtui.model.HNode
+import java.util.TreeMap
+
+/**
+ * The nodes of an [HNode] tree grouped by depth and sorted by start, so that [HTreeChart] can find the nodes that intersect a range
+ * with a binary search per depth instead of walking the whole tree.
+ *
+ * A node is only in a range if all its ancestors are too, so each node is searched by its visible span: the intersection of its span
+ * with the spans of its ancestors. The start and end of the nodes are copied, so the index has to be rebuilt when they change.
+ */
+internal class HTreeChartIndex<N : HNode<N>>(root: N?) {
+  /**
+   * One [Level] per depth that has nodes, in increasing depth order.
+   */
+  val levels: List<Level<N>>
+
+  /**
+   * The largest depth of the tree, or -1 if there is no root.
+   */
+  val maxDepth: Int
+
+  init {
+    val nodesByDepth = TreeMap<Int, MutableList<VisibleNode<N>>>()
+    if (root != null) {
+      val stack = ArrayDeque<VisibleNode<N>>()
+      stack.addLast(VisibleNode(root, root.start, root.end))
+      while (stack.isNotEmpty()) {
+        val visibleNode = stack.removeLast()
+        val node = visibleNode.node
+        nodesByDepth.getOrPut(node.depth) { ArrayList() }.add(visibleNode)
+        // Push the children in reverse so that they are visited, and added to their level, in order.
+        for (i in node.childCount - 1 downTo 0) {
+          val child = node.getChildAt(i)
+          stack.addLast(VisibleNode(child, maxOf(child.start, visibleNode.start), minOf(child.end, visibleNode.end)))
+        }
+      }
+    }
+    levels = nodesByDepth.values.map { Level(it) }
+    maxDepth = if (nodesByDepth.isEmpty()) -1 else nodesByDepth.lastKey()
+  }
+
+  class VisibleNode<N>(val node: N, val start: Long, val end: Long)
+
+  class Level<N : HNode<N>> internal constructor(visibleNodes: List<VisibleNode<N>>) {
+    private val sortedVisibleNodes = visibleNodes.sortedBy { it.start }
+    val nodes: List<N> = sortedVisibleNodes.map { it.node }
+    val starts = LongArray(nodes.size) { nodes[it].start }
+    val ends = LongArray(nodes.size) { nodes[it].end }
+
+    /**
+     * The visible span of each node, which is empty, with an end before its start, when the node lies outside of an ancestor.
+     */
+    private val visibleStarts = LongArray(nodes.size) { sortedVisibleNodes[it].start }
+    val visibleEnds = LongArray(nodes.size) { sortedVisibleNodes[it].end }
+
+    /**
+     * The largest visible end of the nodes up to each index. It is sorted even when the nodes overlap, which lets
+     * [firstEndingAtOrAfter] skip every node that ends before a range.
+     */
+    private val maxEnds = LongArray(nodes.size).also {
+      var maxEnd = Long.MIN_VALUE
+      for (i in it.indices) {
+        maxEnd = maxOf(maxEnd, visibleEnds[i])
+        it[i] = maxEnd
+      }
+    }
+
+    /**
+     * True if each node ends before, or when, the next one starts. Then the ends are sorted too.
+     */
+    val isDisjoint = (1 until this.nodes.size).all { ends[it - 1] <= starts[it] }
+
+    val size get() = nodes.size
+
+    /**
+     * Returns the index of the first node that may be visible at or after [x]. Nodes before it are all visible before [x] only.
+     */
+    fun firstEndingAtOrAfter(x: Double) = partitionPoint(0, size) { maxEnds[it] >= x }
+
+    /**
+     * Returns the index of the first node at or after [from] that is only visible after [x], or [size] if there is none.
+     */
+    fun firstStartingAfter(x: Double, from: Int) = partitionPoint(from, size) { visibleStarts[it] > x }
+  }
+}
+
+/**
+ * Returns the first index in [from, to) for which [predicate] is true, or [to] if there is none. The predicate has to be false for
+ * some prefix of the range and true for the rest.
+ */
+internal inline fun partitionPoint(from: Int, to: Int, predicate: (Int) -> Boolean): Int {
+  var low = from
+  var high = to
+  while (low < high) {
+    val mid = (low + high) ushr 1
+    if (predicate(mid)) {
+      high = mid
+    } else {
+      low = mid + 1
+    }
+  }
+  return low
+}
@@ -194,7 +194,10 @@ public class LineChart extends AnimatedComponent {
       }
       final LineConfig config = getLineConfig(ranged);
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
+      // Stacked series are added up point by point and bars are drawn one per point, so only plain lines can be downsampled.
+      List<SeriesData<Long>> seriesList = config.isStacked() || config.getDataBucketInterval() > 0
+                                          ? ranged.getSeries()
+                                          : ranged.getSeriesForResolution(dim.width);
       if (config.isStacked()) {
         if (lastStackedSeries == null) {
           // Create a new list of SeriesData to prevent modifying the backing data series, which could be cached.
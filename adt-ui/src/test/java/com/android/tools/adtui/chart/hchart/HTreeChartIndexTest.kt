@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart
+
+import com.android.tools.adtui.model.DefaultHNode
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class HTreeChartIndexTest {
+  @Test
+  fun nodesAreGroupedByDepthAndSortedByStart() {
+    val root = node("root", 0, 100, 0)
+    val late = node("late", 50, 60, 1)
+    val early = node("early", 0, 40, 1)
+    root.addChild(late)
+    root.addChild(early)
+    late.addChild(node("leaf", 52, 55, 2))
+
+    val index = HTreeChartIndex(root)
+
+    assertThat(index.maxDepth).isEqualTo(2)
+    assertThat(index.levels.map { level -> level.nodes.map { it.data } })
+      .containsExactly(listOf("root"), listOf("early", "late"), listOf("leaf"))
+      .inOrder()
+    assertThat(index.levels[1].isDisjoint).isTrue()
+  }
+
+  @Test
+  fun emptyIndex() {
+    val index = HTreeChartIndex<DefaultHNode<String>>(null)
+
+    assertThat(index.maxDepth).isEqualTo(-1)
+    assertThat(index.levels).isEmpty()
+  }
+
+  @Test
+  fun rangeSearch() {
+    val root = node("root", 0, 100, 0)
+    (0 until 10).forEach { root.addChild(node("$it", it * 10L, it * 10L + 5, 1)) }
+    val level = HTreeChartIndex(root).levels[1]
+
+    val first = level.firstEndingAtOrAfter(26.0)
+    val end = level.firstStartingAfter(52.0, first)
+    assertThat(level.nodes.subList(first, end).map { it.data }).containsExactly("3", "4", "5").inOrder()
+    assertThat(level.firstEndingAtOrAfter(200.0)).isEqualTo(10)
+    assertThat(level.firstStartingAfter(-1.0, 0)).isEqualTo(0)
+  }
+
+  @Test
+  fun rangeSearch_overlappingNodes() {
+    val root = node("root", 0, 100, 0)
+    root.addChild(node("long", 0, 90, 1))
+    root.addChild(node("short", 10, 20, 1))
+    root.addChild(node("after", 30, 40, 1))
+    val level = HTreeChartIndex(root).levels[1]
+
+    assertThat(level.isDisjoint).isFalse()
+    // "long" still intersects the range, so the search can't skip it even though "short" ends before the range starts.
+    assertThat(level.firstEndingAtOrAfter(25.0)).isEqualTo(0)
+    assertThat(level.firstEndingAtOrAfter(95.0)).isEqualTo(3)
+  }
+
+  @Test
+  fun rangeSearch_childrenOfNodesOutOfRangeAreSkipped() {
+    val root = node("root", 0, 100, 0)
+    val parent = node("parent", 0, 10, 1)
+    root.addChild(parent)
+    // The child extends past its parent, so it is only visible where the parent is.
+    parent.addChild(node("child", 5, 50, 2))
+    val level = HTreeChartIndex(root).levels[2]
+
+    assertThat(level.firstEndingAtOrAfter(20.0)).isEqualTo(1)
+    assertThat(level.firstEndingAtOrAfter(8.0)).isEqualTo(0)
+    assertThat(level.visibleEnds[0]).isEqualTo(10)
+    assertThat(level.ends[0]).isEqualTo(50)
+  }
+
+    private fun node(data: String, start: Long, end: Long, depth: Int) = DefaultHNode(data, start, end).also { it.depth = depth }
+}
@@ -26,6 +26,8 @@ import org.junit.Test
 import java.awt.Color
 import java.awt.Dimension
 import java.awt.FontMetrics
+import java.awt.Graphics2D
+import java.awt.Point
 import java.awt.geom.Rectangle2D
 
 class HTreeChartTest {
@@ -348,6 +350,65 @@ class HTreeChartTest {
     assertThat(myChart.yRange.max).isWithin(EPSILON).of(18.0)
   }
 
+  @Test
+  fun testSubPixelNodesAreMergedLikeDefaultReducer() {
+    val root = DefaultHNode("root", 0, 10000)
+    for (i in 0 until 1000) {
+      val child = DefaultHNode("$i", i * 10L, i * 10L + 7)
+      child.depth = 1
+      root.addChild(child)
+      val grandchild = DefaultHNode("$i", i * 10L, i * 10L + if (i % 100 == 0) 7 else 2)
+      grandchild.depth = 2
+      child.addChild(grandchild)
+    }
+    fun renderWith(reducer: HTreeChartReducer<DefaultHNode<String>>): List<Pair<DefaultHNode<String>, Rectangle2D>> {
+      val rendered = mutableListOf<Pair<DefaultHNode<String>, Rectangle2D>>()
+      val chart = HTreeChart.Builder(root, Range(1234.0, 8765.0), RecordingRenderer(rendered))
+        .setReducer(reducer)
+        .build()
+      chart.size = Dimension(300, 100)
+      FakeUi(chart).render()
+      return rendered
+    }
+
+    val merged = renderWith(DefaultHTreeChartReducer())
+    val reduced = renderWith { rectangles, nodes -> DefaultHTreeChartReducer<DefaultHNode<String>>().reduce(rectangles, nodes) }
+    assertThat(merged).isEqualTo(reduced)
+    assertThat(merged.size).isLessThan(300 * 3)
+  }
+
+  @Test
+  fun testGetNodeAt() {
+    val root = DefaultHNode("root", 0, 100)
+    val children = (0 until 10).map { i -> DefaultHNode("$i", i * 10L, i * 10L + 5).also { it.depth = 1; root.addChild(it) } }
+    val chart = HTreeChart.Builder(root, Range(0.0, 100.0), FakeRenderer())
+      .setOrientation(HTreeChart.Orientation.TOP_DOWN)
+      .build()
+    chart.size = Dimension(100, 100)
+    FakeUi(chart).render()
+    val rowHeight = chart.defaultFontMetrics.height + HTreeChart.PADDING
+
+    assertThat(chart.getNodeAt(Point(50, 1))).isSameAs(root)
+    assertThat(chart.getNodeAt(Point(32, rowHeight + 1))).isSameAs(children[3])
+    assertThat(chart.getNodeAt(Point(0, rowHeight + 1))).isSameAs(children[0])
+    // Between two children, below the last row and left of the chart.
+    assertThat(chart.getNodeAt(Point(37, rowHeight + 1))).isNull()
+    assertThat(chart.getNodeAt(Point(50, rowHeight * 3))).isNull()
+    assertThat(chart.getNodeAt(Point(-1, 1))).isNull()
+  }
+
+  private class RecordingRenderer(private val rendered: MutableList<Pair<DefaultHNode<String>, Rectangle2D>>)
+    : HRenderer<DefaultHNode<String>> {
+    override fun render(g: Graphics2D,
+                        node: DefaultHNode<String>,
+                        fullDrawingArea: Rectangle2D,
+                        drawingArea: Rectangle2D,
+                        isFocused: Boolean,
+                        isDeselected: Boolean) {
+      rendered.add(node to fullDrawingArea.clone() as Rectangle2D)
+    }
+  }
+
   class FakeRenderer : DefaultHRenderer<String>() {
     override fun getFillColor(nodeData: String) = Color.white
 
@@ -110,6 +110,24 @@ public final class StudioFlags {
     "Toggles usage of gRPC apis to fetch data from perfd and the datastore.",
     true);
 
+  public static final Flag<Boolean> PROFILER_DATASTORE_WRITE_QUEUE = Flag.create(
+    PROFILER, "datastore.write.queue", "Batch datastore writes",
+    "Queue high-volume datastore inserts and commit them in batches from a dedicated writer thread, using a write-ahead log " +
+    "for the on-disk database.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_COLUMNAR_EVENT_STORE = Flag.create(
+    PROFILER, "columnar.event.store", "Keep recent unified events in a time-indexed column store",
+    "Also keep the most recent unified pipeline events in memory, in per-stream, per-kind columns sorted by timestamp, so that time " +
+    "range and group queries over them don't need to decode every stored event. Older events are only kept in the SQL table.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_SHARED_POLL_SCHEDULER = Flag.create(
+    PROFILER, "shared.poll.scheduler", "Run datastore pollers on a shared adaptive scheduler",
+    "Multiplex the legacy datastore pollers onto a small thread pool, polling pollers of the same stream together and backing off " +
+    "pollers whose data is idle.",
+    false);
+
   public static final Flag<Boolean> PROFILER_ENERGY_PROFILER_ENABLED = Flag.create(
     PROFILER, "energy", "Enable Energy profiling",
     "Enable the new energy profiler. It monitors battery usage of the selected app.", true);
@@ -378,6 +396,11 @@ public final class StudioFlags {
     "Enable binary cache of classes used in preview",
     true);
 
+  public static final Flag<Boolean> NELE_CLASS_BINARY_DISK_CACHE = Flag.create(
+    NELE, "toggle.layout.editor.class.binary.disk.cache", "Enable persistent binary cache",
+    "Keep the classes of the binary cache used in preview on disk, so they can be reused after a restart and across projects",
+    true);
+
   public static final Flag<Boolean> NELE_STATE_LIST_PICKER = Flag.create(
     NELE, "state.list.picker", "Enable State List Picker",
     "Enable state list picker for selector drawable.",
@@ -840,6 +863,14 @@ public final class StudioFlags {
     EMBEDDED_EMULATOR, "trace.discovery", "Enable Tracing of Emulator Discovery",
     "Enables tracing of Emulator discovery",
     false);
+  public static final Flag<Boolean> EMBEDDED_EMULATOR_SHARED_MEMORY_SCREENSHOTS = Flag.create(
+    EMBEDDED_EMULATOR, "shared.memory.screenshots", "Receive Emulator Screenshots Through Shared Memory",
+    "Receives Emulator screenshots through a memory mapped file instead of gRPC messages",
+    false);
+  public static final Flag<Boolean> EMBEDDED_EMULATOR_ADAPTIVE_FRAME_QUALITY = Flag.create(
+    EMBEDDED_EMULATOR, "adaptive.frame.quality", "Adapt Display Frame Quality to the Load",
+    "Lowers the resolution and the frame rate of embedded Emulator and mirrored device displays when painting can't keep up",
+    false);
   //endregion
 
   //region Device Mirroring
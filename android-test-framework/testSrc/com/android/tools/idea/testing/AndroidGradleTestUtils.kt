@@ -1339,6 +1339,7 @@ private fun setupTestProjectFromAndroidModelCore(
           moduleBuilder.agpVersion ?: LatestKnownPluginVersionProvider.INSTANCE.get(),
           internedModels
         )
+        internedModels.prepare()
         featureToBase.putAll(androidProject.dynamicFeatures.map { it to gradlePath })
 
         fun IdeAndroidProjectImpl.populateBaseFeature(): IdeAndroidProjectImpl {
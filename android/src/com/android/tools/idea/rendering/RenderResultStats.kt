@@ -20,7 +20,7 @@ import org.jetbrains.android.uipreview.ModuleClassLoaderDiagnosticsRead
 /**
  * Class to record stats from a render result.
  */
-data class RenderResultStats constructor(
+data class RenderResultStats @JvmOverloads constructor(
   /** Inflate duration in ms or -1 if unknown. */
   val inflateDurationMs: Long = -1,
   /** Render duration in ms or -1 if unknown. */
@@ -30,13 +30,20 @@ data class RenderResultStats constructor(
   /** Total class loading duration of -1 if unknown. */
   val totalClassLoadDurationMs: Long = -1,
   /** Total class rewrite duration of -1 if unknown. */
-  val totalClassRewriteDurationMs: Long = -1) {
+  val totalClassRewriteDurationMs: Long = -1,
+  /** Time in ms the render actions waited in the render queue before running, or -1 if unknown. It is included in the durations above. */
+  val queueWaitDurationMs: Long = -1) {
 
-  constructor(inflateDurationMs: Long = -1, renderDurationMs: Long = -1, classLoaderStats: ModuleClassLoaderDiagnosticsRead?) :
+  @JvmOverloads
+  constructor(inflateDurationMs: Long = -1,
+              renderDurationMs: Long = -1,
+              classLoaderStats: ModuleClassLoaderDiagnosticsRead?,
+              queueWaitDurationMs: Long = -1) :
     this(inflateDurationMs, renderDurationMs,
          classLoaderStats?.classesFound ?: -1,
          classLoaderStats?.accumulatedFindTimeMs ?: -1,
-         classLoaderStats?.accumulatedRewriteTimeMs ?: -1)
+         classLoaderStats?.accumulatedRewriteTimeMs ?: -1,
+         queueWaitDurationMs)
 
   /**
    * Total render time (inflate + render).
@@ -53,7 +60,8 @@ data class RenderResultStats constructor(
       renderDurationMs = maxOf(renderDurationMs, stats.renderDurationMs),
       classesFound = maxOf(classesFound, stats.classesFound),
       totalClassLoadDurationMs = maxOf(totalClassLoadDurationMs, stats.totalClassLoadDurationMs),
-      totalClassRewriteDurationMs = maxOf(totalClassRewriteDurationMs, stats.totalClassRewriteDurationMs))
+      totalClassRewriteDurationMs = maxOf(totalClassRewriteDurationMs, stats.totalClassRewriteDurationMs),
+      queueWaitDurationMs = maxOf(queueWaitDurationMs, stats.queueWaitDurationMs))
 
   companion object {
     @JvmStatic
@@ -104,6 +104,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.sdk.CompatibilityRenderTarget;
@@ -811,6 +812,14 @@ public class RenderTask {
     return future;
   }
 
+  /**
+   * Returns the time an action queued at {@code queuedTimeMs} waited before starting at {@code actionStartTimeMs}, or -1 if the action
+   * never started because it was cancelled or failed before running.
+   */
+  private static long getQueueWaitMs(long queuedTimeMs, long actionStartTimeMs) {
+    return actionStartTimeMs < 0 ? -1 : actionStartTimeMs - queuedTimeMs;
+  }
+
   /**
    * Executes the passed {@link Callable} as an async render action and keeps track of it. If {@link #dispose()} is called, the call will
    * wait until all the async actions have finished running.
@@ -875,15 +884,19 @@ public class RenderTask {
     }
 
     long startInflateTimeMs = System.currentTimeMillis();
+    AtomicLong inflateActionStartTimeMs = new AtomicLong(-1);
     // Inflation can be way slower than a regular render since it will load classes and initiate most of the state.
     // That's why, for inflating, we allow a more generous timeout than for rendering.
-    return runAsyncRenderAction(() -> createRenderSession((width, height) -> {
-      if (myImageFactoryDelegate != null) {
-        return myImageFactoryDelegate.getImage(width, height);
-      }
+    return runAsyncRenderAction(() -> {
+      inflateActionStartTimeMs.set(System.currentTimeMillis());
+      return createRenderSession((width, height) -> {
+        if (myImageFactoryDelegate != null) {
+          return myImageFactoryDelegate.getImage(width, height);
+        }
 
-      return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-    }), RenderAsyncActionExecutor.DEFAULT_RENDER_THREAD_TIMEOUT_MS * 10, TimeUnit.MILLISECONDS)
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      });
+    }, RenderAsyncActionExecutor.DEFAULT_RENDER_THREAD_TIMEOUT_MS * 10, TimeUnit.MILLISECONDS)
       .handle((result, ex) -> {
         if (ex != null) {
           String message = ex.getMessage();
@@ -898,7 +911,8 @@ public class RenderTask {
             new RenderResultStats(
               System.currentTimeMillis() - startInflateTimeMs,
               -1,
-              myModuleClassLoader.getStats()));
+              myModuleClassLoader.getStats(),
+              getQueueWaitMs(startInflateTimeMs, inflateActionStartTimeMs.get())));
         }
         else {
           if (xmlFile.isValid()) {
@@ -1025,7 +1039,9 @@ public class RenderTask {
     return inflateCompletableResult.thenCompose(inflateResult -> {
       try {
         long startRenderTimeMs = System.currentTimeMillis();
+        AtomicLong renderActionStartTimeMs = new AtomicLong(-1);
         return runAsyncRenderAction(() -> {
+          renderActionStartTimeMs.set(System.currentTimeMillis());
           myRenderSession.render();
           RenderResult result =
             RenderResult.create(this, myRenderSession, psiFile, myLogger, myImagePool.copyOf(myRenderSession.getImage()));
@@ -1045,12 +1061,15 @@ public class RenderTask {
         }).handle((result, ex) -> {
           // After render clean-up. Dispose the GapWorker cache.
           clearGapWorkerCache();
+          long renderQueueWaitMs = getQueueWaitMs(startRenderTimeMs, renderActionStartTimeMs.get());
+          long inflateQueueWaitMs = inflateResult != null ? inflateResult.getStats().getQueueWaitDurationMs() : -1;
           return result.createWithStats(new RenderResultStats(
             inflateResult != null ? inflateResult.getStats().getInflateDurationMs() : result.getStats().getInflateDurationMs(),
             System.currentTimeMillis() - startRenderTimeMs,
             myModuleClassLoader.getStats().getClassesFound(),
             myModuleClassLoader.getStats().getAccumulatedFindTimeMs(),
-            myModuleClassLoader.getStats().getAccumulatedRewriteTimeMs()));
+            myModuleClassLoader.getStats().getAccumulatedRewriteTimeMs(),
+            renderQueueWaitMs < 0 ? -1 : renderQueueWaitMs + Math.max(inflateQueueWaitMs, 0)));
         });
       }
       catch (Exception e) {
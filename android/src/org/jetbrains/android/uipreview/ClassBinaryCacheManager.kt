@@ -17,21 +17,29 @@ package org.jetbrains.android.uipreview
 
 import com.android.annotations.concurrency.AnyThread
 import com.android.annotations.concurrency.GuardedBy
+import com.android.tools.idea.flags.StudioFlags
 import com.google.common.base.Ticker
 import com.google.common.cache.CacheBuilder
+import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.module.Module
 import org.jetbrains.annotations.TestOnly
 import java.time.Duration
 import java.util.WeakHashMap
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.locks.ReentrantLock
 import kotlin.concurrent.withLock
 
 private const val MAX_WEIGHT_BYTES = 100_000_000L // We will store no more than 100Mb of cached classes
 private const val EXPIRE_MINUTES = 30L // We will store cached classes for no longer than 30 minutes
+private const val MISS_EXPIRE_MINUTES = 1L // We will wait for a missed class to be loaded and put for no longer than 1 minute
 /**
  * A class binary representation cache.
  */
-class ClassBinaryCacheManager private constructor(ticker: Ticker, maxWeight: Long, expireMinutes: Long) {
+class ClassBinaryCacheManager private constructor(
+  private val ticker: Ticker,
+  maxWeight: Long,
+  expireMinutes: Long,
+  private val diskCache: ClassBinaryDiskCache?) {
   @GuardedBy("this")
   private val moduleCaches = WeakHashMap<Module, ModuleClassCache>()
   private var lock = ReentrantLock()
@@ -79,6 +87,16 @@ class ClassBinaryCacheManager private constructor(ticker: Ticker, maxWeight: Lon
     @GuardedBy("this")
     private var libraryPaths = setOf<String>()
 
+    /**
+     * The start time of the loads of the classes that were not in the cache, so the time it takes to load and transform them can be
+     * stored with them in [diskCache]. Classes that do not come from a library are never put, so their entries expire.
+     */
+    private val missTimesNanos = CacheBuilder
+      .newBuilder()
+      .ticker(ticker)
+      .expireAfterWrite(Duration.ofMinutes(MISS_EXPIRE_MINUTES))
+      .build<String, Long>()
+
     /**
      * Synchronously checks if there a library with [path] among the current module dependencies.
      */
@@ -94,16 +112,35 @@ class ClassBinaryCacheManager private constructor(ticker: Ticker, maxWeight: Lon
         libraryPath?.let {
           lock.withLock { libraryPath2ClassFqns.remove(libraryPath) }?.forEach { globalCache.invalidate(it) }
         }
-        return null
+        return getFromDisk(fqcn, transformationId)
       }
 
-      return globalCache.getIfPresent(key)
+      return globalCache.getIfPresent(key) ?: getFromDisk(fqcn, transformationId)
+    }
+
+    private fun getFromDisk(fqcn: String, transformationId: String): ByteArray? {
+      val dependencies = synchronized(this) { libraryPaths }
+      val cached = diskCache?.get(dependencies, transformationId, fqcn)
+      if (cached == null) {
+        missTimesNanos.put(getCachingKey(fqcn, transformationId), System.nanoTime())
+        return null
+      }
+      putInMemory(fqcn, transformationId, cached.libraryPath, cached.data)
+      return cached.data
     }
 
     private fun getCachingKey(fqcn: String, transformationId: String) = "$transformationId:$fqcn"
 
     // @LayoutlibRenderThread
     override fun put(fqcn: String, transformationId: String, libraryPath: String, data: ByteArray) {
+      putInMemory(fqcn, transformationId, libraryPath, data)
+      val key = getCachingKey(fqcn, transformationId)
+      val missTimeNanos = missTimesNanos.getIfPresent(key)?.also { missTimesNanos.invalidate(key) }
+      val loadTimeMs = missTimeNanos?.let { TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - it) } ?: 0L
+      diskCache?.put(fqcn, transformationId, libraryPath, data, loadTimeMs)
+    }
+
+    private fun putInMemory(fqcn: String, transformationId: String, libraryPath: String, data: ByteArray) {
       val key = getCachingKey(fqcn, transformationId)
       lock.withLock {
         classFqn2LibraryPath[key] = libraryPath
@@ -116,16 +153,27 @@ class ClassBinaryCacheManager private constructor(ticker: Ticker, maxWeight: Lon
     @Synchronized
     override fun setDependencies(paths: Collection<String>) {
       libraryPaths = paths.toSet()
+      diskCache?.prepare(libraryPaths)
     }
   }
 
   companion object {
-    private val globalManager = ClassBinaryCacheManager(Ticker.systemTicker(), MAX_WEIGHT_BYTES, EXPIRE_MINUTES)
+    private val globalManager by lazy {
+      val diskCache = if (StudioFlags.NELE_CLASS_BINARY_DISK_CACHE.get() && !ApplicationManager.getApplication().isUnitTestMode)
+        ClassBinaryDiskCache.create()
+      else null
+      ClassBinaryCacheManager(Ticker.systemTicker(), MAX_WEIGHT_BYTES, EXPIRE_MINUTES, diskCache)
+    }
 
     @JvmStatic
     fun getInstance() = globalManager
 
     @TestOnly
-    fun getTestInstance(ticker: Ticker, maxWeight: Long, expireMinutes: Long) = ClassBinaryCacheManager(ticker, maxWeight, expireMinutes)
+    fun getTestInstance(ticker: Ticker, maxWeight: Long, expireMinutes: Long) =
+      ClassBinaryCacheManager(ticker, maxWeight, expireMinutes, null)
+
+    @TestOnly
+    internal fun getTestInstance(ticker: Ticker, maxWeight: Long, expireMinutes: Long, diskCache: ClassBinaryDiskCache) =
+      ClassBinaryCacheManager(ticker, maxWeight, expireMinutes, diskCache)
   }
-}
\ No newline at end of file
+}
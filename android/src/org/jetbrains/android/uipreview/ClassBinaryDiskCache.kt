@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.uipreview
+
+import com.android.annotations.concurrency.AnyThread
+import com.android.annotations.concurrency.GuardedBy
+import com.android.tools.idea.concurrency.AndroidIoManager
+import com.android.tools.idea.res.getAndroidPluginVersion
+import com.google.common.hash.Funnels
+import com.google.common.hash.Hashing
+import com.google.common.io.ByteStreams
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.streams.toList
+
+private const val CACHE_DIRECTORY = "preview-class-cache"
+private const val SEGMENT_EXTENSION = ".bin"
+private const val SEGMENT_MAGIC = 0x43424443 // "CBDC"
+private const val SEGMENT_VERSION = 1
+private const val MAX_SIZE_BYTES = 500_000_000L // We will store no more than 500Mb of classes on disk
+private const val FLUSH_DELAY_SECONDS = 10L
+
+/**
+ * A class cached on disk together with the time it took to load and transform it when it was cached.
+ */
+internal class DiskCachedClass(val libraryPath: String, val data: ByteArray, val loadTimeMs: Long)
+
+/**
+ * A persistent tier of [ClassBinaryCacheManager] for the transformed classes of the libraries. The classes survive IDE restarts and are
+ * shared by all the projects.
+ *
+ * The classes are stored in packs identified by a fingerprint of the content of the library jar and the transformation id, so a library
+ * that changes simply uses a new pack. The packs also live in a directory specific to the version of the plugin, since the
+ * transformations might change between versions. A pack is made of segment files that are never modified once written and are memory
+ * mapped for reading. New classes are written to new segments in the background.
+ *
+ * The fingerprints are computed in the background by [prepare], once per set of dependencies, so looking up a class never reads the
+ * library jars. Libraries whose fingerprint is not known yet are skipped. In the same way, a pack is read in the background the first
+ * time it is looked up, and is skipped until then.
+ *
+ * When the cache grows over [maxSizeBytes], on startup or after a flush, the packs that were used least recently are deleted. The packs
+ * read by this session are never deleted, since their segments are memory mapped and a mapped file can not be deleted on Windows; if they
+ * alone are over [maxSizeBytes] the cache is trimmed further on the next startup, before anything is mapped.
+ */
+internal class ClassBinaryDiskCache(
+  rootDirectory: Path,
+  codeVersion: String,
+  private val maxSizeBytes: Long,
+  private val ioExecutor: Executor,
+  private val scheduleFlush: (Runnable) -> Unit) {
+
+  private val directory = rootDirectory.resolve(Hashing.farmHashFingerprint64().hashUnencodedChars(codeVersion).toString())
+
+  /** Fingerprints of the library jars, with the size and modification time of the jar they were computed for. */
+  private val fingerprints = ConcurrentHashMap<String, Fingerprint>()
+
+  /** The packs read so far, by pack directory. Segments written by [flush] are added to them. */
+  private val packs = ConcurrentHashMap<Path, Pack>()
+
+  /** The pack directories being read in the background. */
+  private val loading = ConcurrentHashMap.newKeySet<Path>()
+
+  /** The size of the packs of this version of the plugin, as of the last [trim] plus the segments written since. */
+  private val sizeBytes = AtomicLong()
+
+  @GuardedBy("pending")
+  private val pending = mutableMapOf<Path, MutableList<PendingClass>>()
+
+  init {
+    ioExecutor.execute {
+      deleteOtherVersions(rootDirectory)
+      trim()
+    }
+  }
+
+  /**
+   * Computes in the background the fingerprints of the given [libraryPaths] that are not known yet or whose jar changed, so their
+   * classes can be found by [get] and recorded by [put].
+   */
+  @AnyThread
+  fun prepare(libraryPaths: Collection<String>) {
+    val paths = libraryPaths.toList()
+    ioExecutor.execute { paths.forEach { updateFingerprint(it) } }
+  }
+
+  /**
+   * Returns the class [fqcn] with the transformations [transformationId] applied from any of the given [libraryPaths], or null if none
+   * of them has it cached.
+   */
+  @AnyThread
+  fun get(libraryPaths: Collection<String>, transformationId: String, fqcn: String): DiskCachedClass? {
+    for (libraryPath in libraryPaths) {
+      val packDirectory = packDirectory(libraryPath, transformationId) ?: continue
+      val pack = packs[packDirectory] ?: load(packDirectory) ?: continue
+      pack.get(fqcn)?.let { (data, loadTimeMs) -> return DiskCachedClass(libraryPath, data, loadTimeMs) }
+    }
+    return null
+  }
+
+  /**
+   * Records the class [fqcn] from [libraryPath] with the transformations [transformationId] applied. It is written to disk later.
+   */
+  @AnyThread
+  fun put(fqcn: String, transformationId: String, libraryPath: String, data: ByteArray, loadTimeMs: Long) {
+    val packDirectory = packDirectory(libraryPath, transformationId) ?: return
+    val schedule = synchronized(pending) {
+      val wasEmpty = pending.isEmpty()
+      pending.computeIfAbsent(packDirectory) { mutableListOf() }.add(PendingClass(fqcn, data, loadTimeMs))
+      wasEmpty
+    }
+    if (schedule) {
+      scheduleFlush(Runnable { ioExecutor.execute { flush() } })
+    }
+  }
+
+  /**
+   * Writes the classes recorded by [put] since the last flush to new segments, and trims the cache if it grew over [maxSizeBytes].
+   */
+  fun flush() {
+    val toWrite = synchronized(pending) {
+      HashMap(pending).also { pending.clear() }
+    }
+    for ((packDirectory, recorded) in toWrite) {
+      val pack = packs[packDirectory]
+      // The same class may have been loaded again before it was written, by another module or after being evicted from memory.
+      val classes = recorded.distinctBy { it.fqcn }.filter { pack?.contains(it.fqcn) != true }
+      if (classes.isEmpty()) continue
+      try {
+        Files.createDirectories(packDirectory)
+        val temp = Files.createTempFile(packDirectory, "segment", ".tmp")
+        DataOutputStream(Files.newOutputStream(temp).buffered()).use { output ->
+          output.writeInt(SEGMENT_MAGIC)
+          output.writeInt(SEGMENT_VERSION)
+          output.writeInt(classes.size)
+          for (cls in classes) {
+            output.writeUTF(cls.fqcn)
+            output.writeLong(cls.loadTimeMs)
+            output.writeInt(cls.data.size)
+            output.write(cls.data)
+          }
+        }
+        val segment = packDirectory.resolve("${System.nanoTime()}$SEGMENT_EXTENSION")
+        // Either the segment is added to the pack or the pack is read after the segment is in place.
+        synchronized(this) {
+          Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE)
+          packs[packDirectory]?.addSegment(segment)
+        }
+        sizeBytes.addAndGet(Files.size(segment))
+      }
+      catch (e: IOException) {
+        LOG.warn("Unable to write cached classes to $packDirectory", e)
+      }
+    }
+    if (sizeBytes.get() > maxSizeBytes) {
+      trim()
+    }
+  }
+
+  /**
+   * Reads the pack in [packDirectory] in the background, unless it is already being read. Returns the pack if it was read by the time
+   * this returns, which is only the case with a synchronous [ioExecutor].
+   */
+  private fun load(packDirectory: Path): Pack? {
+    if (loading.add(packDirectory)) {
+      ioExecutor.execute {
+        try {
+          read(packDirectory)
+        }
+        finally {
+          loading.remove(packDirectory)
+        }
+      }
+    }
+    return packs[packDirectory]
+  }
+
+  @Synchronized
+  private fun read(packDirectory: Path) {
+    if (!packs.containsKey(packDirectory)) {
+      packs[packDirectory] = Pack.read(packDirectory)
+    }
+  }
+
+  /**
+   * Returns the directory of the pack of [libraryPath] with the transformations [transformationId] applied, or null if the fingerprint
+   * of the library is not known.
+   */
+  private fun packDirectory(libraryPath: String, transformationId: String): Path? {
+    val fingerprint = fingerprints[libraryPath] ?: return null
+    return fingerprint.packDirectories.computeIfAbsent(transformationId) {
+      directory.resolve("${fingerprint.hash}_${Hashing.farmHashFingerprint64().hashUnencodedChars(it)}")
+    }
+  }
+
+  /**
+   * Computes the fingerprint of the content of the library at [libraryPath], or forgets it if the library can not be read. The
+   * fingerprint is only computed again when the size or the modification time of the library change.
+   */
+  private fun updateFingerprint(libraryPath: String) {
+    val path = Paths.get(libraryPath)
+    try {
+      val size = Files.size(path)
+      val modified = Files.getLastModifiedTime(path)
+      val current = fingerprints[libraryPath]
+      if (current != null && current.size == size && current.modified == modified) {
+        return
+      }
+      // The jar is streamed rather than mapped, since a mapped jar could not be replaced or deleted on Windows until the mapping is
+      // collected.
+      val hasher = Hashing.farmHashFingerprint64().newHasher()
+      Files.newInputStream(path).use { ByteStreams.copy(it, Funnels.asOutputStream(hasher)) }
+      val hash = hasher.hash().toString()
+      fingerprints[libraryPath] = Fingerprint(size, modified, hash)
+    }
+    catch (e: IOException) {
+      fingerprints.remove(libraryPath)
+    }
+  }
+
+  /**
+   * Deletes the packs of other versions of the plugin.
+   */
+  private fun deleteOtherVersions(rootDirectory: Path) {
+    try {
+      if (!Files.isDirectory(rootDirectory)) return
+      Files.list(rootDirectory).use { versions -> versions.toList() }
+        .filter { it != directory }
+        .forEach { FileUtil.delete(it) }
+    }
+    catch (e: IOException) {
+      LOG.warn("Unable to delete the class caches of other versions in $rootDirectory", e)
+    }
+  }
+
+  /**
+   * Deletes the packs that were used least recently until the cache is no larger than [maxSizeBytes], except the ones that were read.
+   */
+  @Synchronized
+  private fun trim() {
+    try {
+      if (!Files.isDirectory(directory)) return
+      val packDirectories = Files.list(directory).use { it.toList() }
+        .map { it to Files.getLastModifiedTime(it) }
+        .sortedBy { it.second }
+        .map { it.first }
+      val sizes = packDirectories.associateWith { pack -> Files.list(pack).use { files -> files.mapToLong { Files.size(it) }.sum() } }
+      var total = sizes.values.sum()
+      for (pack in packDirectories) {
+        if (total <= maxSizeBytes) break
+        if (packs.containsKey(pack)) continue
+        FileUtil.delete(pack)
+        total -= sizes.getValue(pack)
+      }
+      sizeBytes.set(total)
+    }
+    catch (e: IOException) {
+      LOG.warn("Unable to trim the class cache in $directory", e)
+    }
+  }
+
+  private class Fingerprint(val size: Long, val modified: FileTime, val hash: String) {
+    /** The pack directories of the library by transformation id, so they are not computed again on every lookup. */
+    val packDirectories = ConcurrentHashMap<String, Path>()
+  }
+
+  private class PendingClass(val fqcn: String, val data: ByteArray, val loadTimeMs: Long)
+
+  /**
+   * The classes of the segments of a pack, as slices of the memory mapped segments.
+   */
+  private class Pack(private val classes: MutableMap<String, Slot>) {
+    private class Slot(val buffer: ByteBuffer, val offset: Int, val length: Int, val loadTimeMs: Long)
+
+    fun contains(fqcn: String) = classes.containsKey(fqcn)
+
+    /**
+     * Adds the classes of a [segment] written after the pack was read.
+     */
+    fun addSegment(segment: Path) = readSegment(segment, classes)
+
+    fun get(fqcn: String): Pair<ByteArray, Long>? {
+      val slot = classes[fqcn] ?: return null
+      val data = ByteArray(slot.length)
+      // Use a duplicate so concurrent reads don't share the position of the buffer.
+      slot.buffer.duplicate().apply { position(slot.offset) }.get(data)
+      return data to slot.loadTimeMs
+    }
+
+    companion object {
+      fun read(packDirectory: Path): Pack {
+        val classes = ConcurrentHashMap<String, Slot>()
+        if (!Files.isDirectory(packDirectory)) {
+          return Pack(classes)
+        }
+        try {
+          // Mark the pack as recently used for trim.
+          Files.setLastModifiedTime(packDirectory, FileTime.fromMillis(System.currentTimeMillis()))
+          Files.list(packDirectory).use { it.toList() }
+            .filter { it.fileName.toString().endsWith(SEGMENT_EXTENSION) }
+            .forEach { readSegment(it, classes) }
+        }
+        catch (e: IOException) {
+          LOG.warn("Unable to read cached classes from $packDirectory", e)
+        }
+        return Pack(classes)
+      }
+
+      /**
+       * Reads the classes of [segment] into [classes]. The segment is checked with plain reads before it is mapped, so that a corrupted
+       * one can be deleted: a mapped file can not be deleted on Windows until the mapping is garbage collected.
+       */
+      private fun readSegment(segment: Path, classes: MutableMap<String, Slot>) {
+        class Entry(val fqcn: String, val offset: Int, val length: Int, val loadTimeMs: Long)
+
+        val entries = mutableListOf<Entry>()
+        val size = try {
+          val fileSize = Files.size(segment)
+          DataInputStream(Files.newInputStream(segment).buffered()).use { input ->
+            if (input.readInt() != SEGMENT_MAGIC || input.readInt() != SEGMENT_VERSION) {
+              throw IOException("Unknown segment format")
+            }
+            var offset = 12L
+            repeat(input.readInt()) {
+              val nameBytes = ByteArray(input.readUnsignedShort())
+              input.readFully(nameBytes)
+              // writeUTF uses modified UTF-8, which only differs from UTF-8 for characters not found in class names.
+              val fqcn = String(nameBytes, Charsets.UTF_8)
+              val loadTimeMs = input.readLong()
+              val length = input.readInt()
+              offset += 2 + nameBytes.size + 8 + 4
+              if (length < 0 || offset + length > fileSize || input.skipBytes(length) != length) {
+                throw IOException("Truncated segment")
+              }
+              entries.add(Entry(fqcn, offset.toInt(), length, loadTimeMs))
+              offset += length
+            }
+          }
+          fileSize
+        }
+        catch (e: IOException) {
+          // Truncated or corrupted segment. It is never going to be readable so delete it.
+          LOG.warn("Deleting corrupted class cache segment $segment", e)
+          Files.deleteIfExists(segment)
+          return
+        }
+        val buffer = FileChannel.open(segment, StandardOpenOption.READ).use { it.map(FileChannel.MapMode.READ_ONLY, 0, size) }
+        entries.forEach { classes[it.fqcn] = Slot(buffer, it.offset, it.length, it.loadTimeMs) }
+      }
+    }
+  }
+
+  companion object {
+    private val LOG = Logger.getInstance(ClassBinaryDiskCache::class.java)
+
+    /**
+     * Creates the cache in the system directory of the IDE, or returns null if the version of the plugin is not known.
+     */
+    fun create(): ClassBinaryDiskCache? {
+      val codeVersion = getAndroidPluginVersion() ?: return null
+      return ClassBinaryDiskCache(
+        Paths.get(PathManager.getSystemPath(), CACHE_DIRECTORY),
+        codeVersion,
+        MAX_SIZE_BYTES,
+        AndroidIoManager.getInstance().getBackgroundDiskIoExecutor()) {
+        AppExecutorUtil.getAppScheduledExecutorService().schedule(it, FLUSH_DELAY_SECONDS, TimeUnit.SECONDS)
+      }
+    }
+  }
+}
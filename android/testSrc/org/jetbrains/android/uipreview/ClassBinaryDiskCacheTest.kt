@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.uipreview
+
+import com.google.common.base.Ticker
+import com.intellij.openapi.module.Module
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mockito.Mockito.mock
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.Executor
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class ClassBinaryDiskCacheTest {
+  @get:Rule
+  val folder = TemporaryFolder()
+
+  private val flushes = mutableListOf<Runnable>()
+
+  private fun createCache(codeVersion: String = "1.0",
+                          maxSize: Long = 1_000_000,
+                          libraries: List<String> = listOf(),
+                          ioExecutor: Executor = Executor { it.run() }) =
+    ClassBinaryDiskCache(folder.root.toPath().resolve("cache"), codeVersion, maxSize, ioExecutor) { flushes.add(it) }
+      .apply { prepare(libraries) }
+
+  private fun library(name: String, content: String): String {
+    val path = folder.root.toPath().resolve(name)
+    Files.write(path, content.toByteArray())
+    return path.toString()
+  }
+
+  @Test
+  fun testClassesSurviveRestart() {
+    val libraryA = library("a.jar", "A")
+    val libraryB = library("b.jar", "B")
+    val cache = createCache(libraries = listOf(libraryA, libraryB))
+    cache.put("a.A", "t1", libraryA, "transformed A".toByteArray(), 12)
+    cache.put("b.B", "t1", libraryB, "transformed B".toByteArray(), 5)
+    assertEquals(1, flushes.size)
+    flushes.forEach { it.run() }
+
+    val restarted = createCache(libraries = listOf(libraryA, libraryB))
+    val cached = restarted.get(listOf(libraryA, libraryB), "t1", "a.A")!!
+    assertEquals("transformed A", cached.data.toString(Charsets.UTF_8))
+    assertEquals(libraryA, cached.libraryPath)
+    assertEquals(12, cached.loadTimeMs)
+    assertEquals("transformed B", restarted.get(listOf(libraryA, libraryB), "t1", "b.B")?.data?.toString(Charsets.UTF_8))
+    // Other transformations, other dependencies and other versions of the code don't see the classes.
+    assertNull(restarted.get(listOf(libraryA), "t2", "a.A"))
+    assertNull(restarted.get(listOf(libraryB), "t1", "a.A"))
+    assertNull(createCache("2.0", libraries = listOf(libraryA)).get(listOf(libraryA), "t1", "a.A"))
+  }
+
+  @Test
+  fun testChangedLibraryIsNotUsed() {
+    val library = library("a.jar", "A")
+    createCache(libraries = listOf(library)).apply {
+      put("a.A", "t1", library, ByteArray(10), 0)
+      flush()
+    }
+
+    library("a.jar", "Changed A")
+    assertNull(createCache(libraries = listOf(library)).get(listOf(library), "t1", "a.A"))
+  }
+
+  @Test
+  fun testCorruptedSegmentIsIgnored() {
+    val library = library("a.jar", "A")
+    createCache(libraries = listOf(library)).apply {
+      put("a.A", "t1", library, ByteArray(100), 0)
+      flush()
+    }
+    val segment = Files.walk(versionDirectory()).use { paths -> paths.filter { it.toString().endsWith(".bin") }.findFirst().get() }
+    Files.write(segment, Files.readAllBytes(segment).copyOf(50))
+
+    assertNull(createCache(libraries = listOf(library)).get(listOf(library), "t1", "a.A"))
+    assertTrue(Files.notExists(segment))
+  }
+
+  @Test
+  fun testTrim() {
+    val libraryA = library("a.jar", "A")
+    val libraryB = library("b.jar", "B")
+    createCache(libraries = listOf(libraryA, libraryB)).apply {
+      put("a.A", "t1", libraryA, ByteArray(100), 0)
+      put("b.B", "t1", libraryB, ByteArray(100), 0)
+      flush()
+    }
+    Files.list(versionDirectory()).use { packs -> packs.forEach { Files.setLastModifiedTime(it, FileTime.fromMillis(0)) } }
+    // Reading from the pack of library B makes it the most recently used one.
+    createCache(libraries = listOf(libraryB)).get(listOf(libraryB), "t1", "b.B")
+
+    val trimmed = createCache(maxSize = 150, libraries = listOf(libraryA, libraryB))
+    assertNull(trimmed.get(listOf(libraryA), "t1", "a.A"))
+    assertEquals(100, trimmed.get(listOf(libraryB), "t1", "b.B")?.data?.size)
+  }
+
+  @Test
+  fun testTrimOnFlush() {
+    val libraryA = library("a.jar", "A")
+    val libraryB = library("b.jar", "B")
+    val cache = createCache(maxSize = 150, libraries = listOf(libraryA, libraryB))
+    cache.put("a.A", "t1", libraryA, ByteArray(100), 0)
+    cache.flush()
+    Files.list(versionDirectory()).use { packs -> packs.forEach { Files.setLastModifiedTime(it, FileTime.fromMillis(0)) } }
+    cache.put("b.B", "t1", libraryB, ByteArray(100), 0)
+    cache.flush()
+
+    assertNull(cache.get(listOf(libraryA), "t1", "a.A"))
+    assertEquals(100, cache.get(listOf(libraryB), "t1", "b.B")?.data?.size)
+    assertEquals(1, Files.list(versionDirectory()).use { it.count() })
+  }
+
+  @Test
+  fun testTrimKeepsReadPacks() {
+    val libraryA = library("a.jar", "A")
+    val libraryB = library("b.jar", "B")
+    val cache = createCache(maxSize = 150, libraries = listOf(libraryA, libraryB))
+    cache.put("a.A", "t1", libraryA, ByteArray(100), 0)
+    cache.flush()
+    // The pack of library A is now mapped, so it is not deleted by this session even though it was used least recently.
+    assertEquals(100, cache.get(listOf(libraryA), "t1", "a.A")?.data?.size)
+    Files.list(versionDirectory()).use { packs -> packs.forEach { Files.setLastModifiedTime(it, FileTime.fromMillis(0)) } }
+    cache.put("b.B", "t1", libraryB, ByteArray(100), 0)
+    cache.flush()
+
+    assertEquals(100, cache.get(listOf(libraryA), "t1", "a.A")?.data?.size)
+    assertNull(cache.get(listOf(libraryB), "t1", "b.B"))
+    assertEquals(1, Files.list(versionDirectory()).use { it.count() })
+  }
+
+  @Test
+  fun testPackIsReadInBackground() {
+    val library = library("a.jar", "A")
+    createCache(libraries = listOf(library)).apply {
+      put("a.A", "t1", library, "A".toByteArray(), 0)
+      flush()
+    }
+
+    val tasks = mutableListOf<Runnable>()
+    val cache = createCache(libraries = listOf(library), ioExecutor = Executor { tasks.add(it) })
+    generateSequence { tasks.removeFirstOrNull() }.forEach { it.run() }
+    // The first lookup only schedules the read of the pack.
+    assertNull(cache.get(listOf(library), "t1", "a.A"))
+    assertNull(cache.get(listOf(library), "t1", "a.A"))
+    assertEquals(1, tasks.size)
+    tasks.removeFirst().run()
+    assertEquals("A", cache.get(listOf(library), "t1", "a.A")?.data?.toString(Charsets.UTF_8))
+  }
+
+  @Test
+  fun testFlushedClassesAreReadWithoutDuplicates() {
+    val library = library("a.jar", "A")
+    val cache = createCache(libraries = listOf(library))
+    // Reads the pack before it has any segment.
+    assertNull(cache.get(listOf(library), "t1", "a.A"))
+    cache.put("a.A", "t1", library, "A".toByteArray(), 0)
+    cache.put("a.A", "t1", library, "A".toByteArray(), 0)
+    cache.flush()
+
+    assertEquals("A", cache.get(listOf(library), "t1", "a.A")?.data?.toString(Charsets.UTF_8))
+    cache.put("a.A", "t1", library, "A".toByteArray(), 0)
+    cache.flush()
+    assertEquals(1, Files.walk(versionDirectory()).use { paths -> paths.filter { it.toString().endsWith(".bin") }.count() })
+  }
+
+  @Test
+  fun testUnpreparedLibraryIsNotRead() {
+    val library = library("a.jar", "A")
+    createCache(libraries = listOf(library)).apply {
+      put("a.A", "t1", library, ByteArray(10), 0)
+      flush()
+    }
+
+    assertNull(createCache().get(listOf(library), "t1", "a.A"))
+  }
+
+  @Test
+  fun testManagerUsesDiskCache() {
+    val library = library("a.jar", "A")
+    val module = mock(Module::class.java)
+    ClassBinaryCacheManager.getTestInstance(Ticker.systemTicker(), 1000, 1, createCache()).getCache(module).apply {
+      setDependencies(listOf(library))
+      assertNull(get("a.A", "t1"))
+      put("a.A", "t1", library, "A".toByteArray())
+    }
+    flushes.forEach { it.run() }
+
+    val manager = ClassBinaryCacheManager.getTestInstance(Ticker.systemTicker(), 1000, 1, createCache())
+    val moduleCache = manager.getCache(module)
+    moduleCache.setDependencies(listOf(library))
+    assertEquals("A", moduleCache.get("a.A", "t1")?.toString(Charsets.UTF_8))
+    assertEquals("A", moduleCache.get("a.A", "t1")?.toString(Charsets.UTF_8))
+    assertNull(moduleCache.get("a.B", "t1"))
+    moduleCache.put("a.B", "t1", library, "B".toByteArray())
+    flushes.forEach { it.run() }
+
+    assertEquals("B", createCache(libraries = listOf(library)).get(listOf(library), "t1", "a.B")?.data?.toString(Charsets.UTF_8))
+  }
+
+  private fun versionDirectory(): Path = Files.list(folder.root.toPath().resolve("cache")).use { it.findFirst().get() }
+}
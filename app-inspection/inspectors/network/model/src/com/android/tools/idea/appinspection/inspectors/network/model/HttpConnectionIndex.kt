@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.appinspection.inspectors.network.model
+
+import studio.network.inspection.NetworkInspectorProtocol.Event
+
+private const val INITIAL_CAPACITY = 64
+
+/**
+ * The events of the HTTP connections of a session, indexed by the time span of each connection so that finding the connections that
+ * intersect a range costs time proportional to the number of connections found, not to the number of connections in the session.
+ *
+ * A connection spans from the timestamp of its first event to the latest timestamp of its events. Connections are kept in the order of
+ * their start, which is almost always the order they are added in, so the ones starting before the end of a range are a prefix found by
+ * binary search. Over that prefix, an interval tree in the form of a segment tree of the end of each connection leads to the ones ending
+ * after the start of the range, skipping every subtree where all connections end before it.
+ *
+ * This class is not thread safe.
+ */
+internal class HttpConnectionIndex {
+  private val connections = ArrayList<MutableList<Event>>()
+  private val connectionIndices = mutableMapOf<Long, Int>()
+  private var starts = LongArray(INITIAL_CAPACITY)
+
+  /**
+   * The segment tree of the ends of the connections: node 1 is the root, the children of node `n` are `2n` and `2n + 1`, and the
+   * leaf of connection `i` is node `capacity + i`. Each node holds the latest end of the connections below it.
+   */
+  private var ends = LongArray(2 * INITIAL_CAPACITY) { Long.MIN_VALUE }
+  private var capacity = INITIAL_CAPACITY
+
+  val size: Int
+    get() = connections.size
+
+  fun add(event: Event) {
+    val connectionId = event.httpConnectionEvent.connectionId
+    val index = connectionIndices[connectionId]
+    if (index != null) {
+      connections[index].add(event)
+      if (event.timestamp > ends[capacity + index]) {
+        updateEnd(index, event.timestamp)
+      }
+      return
+    }
+    val size = connections.size
+    if (size == capacity) {
+      grow()
+    }
+    if (size == 0 || starts[size - 1] <= event.timestamp) {
+      connections.add(mutableListOf(event))
+      connectionIndices[connectionId] = size
+      starts[size] = event.timestamp
+      updateEnd(size, event.timestamp)
+    }
+    else {
+      // A connection that started before the last one arrived late. Keep the connections sorted by start.
+      val insertAt = partitionPoint(size) { starts[it] > event.timestamp }
+      connections.add(insertAt, mutableListOf(event))
+      System.arraycopy(starts, insertAt, starts, insertAt + 1, size - insertAt)
+      starts[insertAt] = event.timestamp
+      for (i in insertAt..size) {
+        connectionIndices[connections[i].first().httpConnectionEvent.connectionId] = i
+      }
+      // Shift the ends of the later connections along with them, and only update the nodes above the leaves that moved.
+      System.arraycopy(ends, capacity + insertAt, ends, capacity + insertAt + 1, size - insertAt)
+      ends[capacity + insertAt] = event.timestamp
+      updateNodes(insertAt, size)
+    }
+  }
+
+  /**
+   * Returns the events of the connections with events in [min, max], in the order of their start. The events of each connection are in
+   * the order they were added.
+   */
+  fun query(min: Long, max: Long): List<List<Event>> {
+    val result = mutableListOf<List<Event>>()
+    val count = partitionPoint(connections.size) { starts[it] > max }
+    if (count > 0 && min <= max) {
+      collect(1, 0, capacity, count, min, result)
+    }
+    return result
+  }
+
+  /**
+   * Adds the connections below [node], which covers the connections in [from, to), that are before [count] and end at or after [min].
+   */
+  private fun collect(node: Int, from: Int, to: Int, count: Int, min: Long, result: MutableList<List<Event>>) {
+    if (from >= count || ends[node] < min) {
+      return
+    }
+    if (node >= capacity) {
+      result.add(connections[from])
+      return
+    }
+    val middle = (from + to) ushr 1
+    collect(2 * node, from, middle, count, min, result)
+    collect(2 * node + 1, middle, to, count, min, result)
+  }
+
+  private fun updateEnd(index: Int, end: Long) {
+    var node = capacity + index
+    ends[node] = end
+    node = node shr 1
+    while (node >= 1 && ends[node] < end) {
+      ends[node] = end
+      node = node shr 1
+    }
+  }
+
+  private fun grow() {
+    val oldEnds = ends
+    val oldCapacity = capacity
+    capacity *= 2
+    starts = starts.copyOf(capacity)
+    ends = LongArray(2 * capacity) { Long.MIN_VALUE }
+    System.arraycopy(oldEnds, oldCapacity, ends, capacity, connections.size)
+    updateNodes(0, connections.size - 1)
+  }
+
+  /**
+   * Recomputes the nodes above the leaves of the connections in [from, to] from their children, level by level.
+   */
+  private fun updateNodes(from: Int, to: Int) {
+    var low = (capacity + from) shr 1
+    var high = (capacity + to) shr 1
+    while (low >= 1) {
+      for (node in low..high) {
+        ends[node] = maxOf(ends[2 * node], ends[2 * node + 1])
+      }
+      low = low shr 1
+      high = high shr 1
+    }
+  }
+
+  /**
+   * Returns the first index in [0, to) for which [predicate] is true, or [to] if there is none.
+   */
+  private inline fun partitionPoint(to: Int, predicate: (Int) -> Boolean): Int {
+    var low = 0
+    var high = to
+    while (low < high) {
+      val middle = (low + high) ushr 1
+      if (predicate(middle)) {
+        high = middle
+      }
+      else {
+        low = middle + 1
+      }
+    }
+    return low
+  }
+}
@@ -17,6 +17,8 @@ package com.android.tools.idea.appinspection.inspectors.network.model
 
 import com.android.tools.adtui.model.Range
 import com.android.tools.idea.appinspection.inspector.api.AppInspectorMessenger
+import com.android.tools.idea.appinspection.inspectors.network.model.httpdata.Payload
+import com.android.tools.idea.appinspection.inspectors.network.model.httpdata.PayloadStore
 import com.android.tools.idea.concurrency.createChildScope
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CompletableDeferred
@@ -34,6 +36,7 @@ import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import studio.network.inspection.NetworkInspectorProtocol.Event
 import studio.network.inspection.NetworkInspectorProtocol.HttpConnectionEvent
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.TimeUnit
 
 
@@ -118,9 +121,9 @@ private sealed class Intention {
  *   1) collects events sent from the network inspector and accumulates them.
  *   2) performs queries from UI frontend on the collected data.
  */
-private fun CoroutineScope.processEvents(commandChannel: ReceiveChannel<Intention>) = launch {
+private fun CoroutineScope.processEvents(commandChannel: ReceiveChannel<Intention>, payloads: StoredPayloads) = launch {
   val speedData = mutableListOf<Event>()
-  val httpMap = mutableMapOf<Long, MutableList<Event>>()
+  val httpConnections = HttpConnectionIndex()
 
   for (command in commandChannel) {
     if (command is Intention.InsertData) {
@@ -128,7 +131,7 @@ private fun CoroutineScope.processEvents(commandChannel: ReceiveChannel<Intentio
         speedData.add(command.event)
       }
       else if (command.event.hasHttpConnectionEvent()) {
-        httpMap.getOrPut(command.event.httpConnectionEvent.connectionId) { mutableListOf() }.add(command.event)
+        httpConnections.add(payloads.store(command.event))
       }
     }
     else if (command is Intention.QueryForSpeedData) {
@@ -137,7 +140,7 @@ private fun CoroutineScope.processEvents(commandChannel: ReceiveChannel<Intentio
     else if (command is Intention.QueryForHttpData) {
       val min = TimeUnit.MICROSECONDS.toNanos(command.range.min.toLong())
       val max = TimeUnit.MICROSECONDS.toNanos(command.range.max.toLong())
-      val results = httpMap.values.filter { data -> intersectsRange(min, max, data) }
+      val results = httpConnections.query(min, max)
         .flatten()
         .sortedBy { event -> event.timestamp }
       command.deferred.complete(results)
@@ -145,13 +148,33 @@ private fun CoroutineScope.processEvents(commandChannel: ReceiveChannel<Intentio
   }
 }
 
-private fun intersectsRange(min: Long, max: Long, data: List<Event>): Boolean {
-  val firstEventTimestamp = data.firstOrNull()?.timestamp ?: return false
-  val lastEventTimestamp = data.last().timestamp
-  if (firstEventTimestamp in min..max || lastEventTimestamp in min..max || (firstEventTimestamp < min && lastEventTimestamp > max)) {
-    return true
+/**
+ * The bodies of the requests and responses of a session. The bodies are moved out of their events to a [PayloadStore], which can keep
+ * the large ones on disk, so the events kept by the data source stay small.
+ */
+private class StoredPayloads(private val store: PayloadStore) {
+  private val payloads = ConcurrentHashMap<Pair<Long, HttpConnectionEvent.UnionCase>, Payload>()
+
+  /**
+   * Returns [event], without its payload if it has one.
+   */
+  fun store(event: Event): Event {
+    val connectionEvent = event.httpConnectionEvent
+    val bytes = when {
+      connectionEvent.hasRequestPayload() -> connectionEvent.requestPayload.payload
+      connectionEvent.hasResponsePayload() -> connectionEvent.responsePayload.payload
+      else -> return event
+    }
+    payloads.putIfAbsent(connectionEvent.connectionId to connectionEvent.unionCase, store.add(bytes))
+    return event.toBuilder().apply {
+      if (connectionEvent.hasRequestPayload()) httpConnectionEventBuilder.requestPayloadBuilder.clearPayload()
+      else httpConnectionEventBuilder.responsePayloadBuilder.clearPayload()
+    }.build()
   }
-  return false
+
+  fun get(event: Event): Payload? = payloads[event.httpConnectionEvent.connectionId to event.httpConnectionEvent.unionCase]
+
+  fun close() = store.close()
 }
 
 /**
@@ -164,24 +187,37 @@ interface NetworkInspectorDataSource {
   val connectionEventFlow: Flow<HttpConnectionEvent>
   suspend fun queryForHttpData(range: Range): List<Event>
   suspend fun queryForSpeedData(range: Range): List<Event>
+
+  /**
+   * Returns the body carried by [event], a request or response payload event returned by [queryForHttpData]. The bytes of large bodies
+   * are not kept in the events and are only read when the returned [Payload] is.
+   */
+  fun getPayload(event: Event): Payload {
+    val connectionEvent = event.httpConnectionEvent
+    return Payload.of(if (connectionEvent.hasRequestPayload()) connectionEvent.requestPayload.payload
+                      else connectionEvent.responsePayload.payload)
+  }
 }
 
 class NetworkInspectorDataSourceImpl(
   messenger: AppInspectorMessenger,
   parentScope: CoroutineScope,
-  replayCacheSize: Int = 1
+  replayCacheSize: Int = 1,
+  payloadStore: PayloadStore = PayloadStore()
 ) : NetworkInspectorDataSource {
   val scope = parentScope.createChildScope()
   private val channel = Channel<Intention>()
+  private val payloads = StoredPayloads(payloadStore)
   override val connectionEventFlow: Flow<HttpConnectionEvent>
 
   init {
     scope.coroutineContext[Job]!!.invokeOnCompletion { e ->
       channel.close(e)
+      payloads.close()
     }
     scope.launch {
       try {
-        processEvents(channel)
+        processEvents(channel, payloads)
       }
       catch (e: CancellationException) {
         channel.close(e.cause)
@@ -205,4 +241,6 @@ class NetworkInspectorDataSourceImpl(
     channel.send(Intention.QueryForSpeedData(range, deferred))
     deferred.await()
   }
+
+  override fun getPayload(event: Event) = payloads.get(event) ?: super.getPayload(event)
 }
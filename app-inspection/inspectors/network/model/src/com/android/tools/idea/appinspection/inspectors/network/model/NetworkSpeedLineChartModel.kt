@@ -19,6 +19,7 @@ import com.android.tools.adtui.model.DataSeries
 import com.android.tools.adtui.model.LineChartModel
 import com.android.tools.adtui.model.Range
 import com.android.tools.adtui.model.RangedContinuousSeries
+import com.android.tools.adtui.model.StreamingContinuousSeries
 import com.android.tools.adtui.model.StreamingTimeline
 import java.util.concurrent.Executor
 
@@ -46,9 +47,13 @@ class NetworkSpeedLineChartModel(
     add(txSeries)
   }
 
+  /**
+   * The speed samples are cached and summarized in buckets by [StreamingContinuousSeries], so each frame only reads the new samples from
+   * the data source and draws about as many points as the chart has pixels, however long the session is.
+   */
   private fun createSeries(trafficType: NetworkTrafficLabel): DataSeries<Long> {
-    return NetworkInspectorDataSeries(dataSource) { event ->
+    return StreamingContinuousSeries(NetworkInspectorDataSeries(dataSource) { event ->
       if (trafficType == NetworkTrafficLabel.BYTES_RECEIVED) event.speedEvent.rxSpeed else event.speedEvent.txSpeed
-    }
+    })
   }
 }
@@ -18,7 +18,6 @@ package com.android.tools.idea.appinspection.inspectors.network.model.httpdata
 import com.android.tools.idea.protobuf.ByteString
 import com.intellij.openapi.vfs.CharsetToolkit
 import com.intellij.util.io.URLUtil
-import java.io.ByteArrayInputStream
 import java.io.IOException
 import java.io.UnsupportedEncodingException
 import java.net.URI
@@ -45,9 +44,9 @@ data class HttpData(
   val method: String,
   val trace: String,
   val requestFields: String,
-  val requestPayload: ByteString,
+  private val rawRequestPayload: Payload,
   val responseFields: String,
-  private val rawResponsePayload: ByteString
+  private val rawResponsePayload: Payload
 ) {
 
   /**
@@ -57,6 +56,9 @@ data class HttpData(
   val requestHeader = RequestHeader(requestFields)
   val responseHeader = ResponseHeader(responseFields)
 
+  val requestPayload: ByteString
+    get() = rawRequestPayload.bytes()
+
   // The unzipped version of the response payload. Note not all response payloads are zipped,
   // so this could be the same as the rawResponsePayload.
   private lateinit var unzippedResponsePayload: ByteString
@@ -66,25 +68,38 @@ data class HttpData(
         return unzippedResponsePayload
       }
       else {
-        if (responseHeader.getField("content-encoding").lowercase().contains("gzip")) {
+        val rawBytes = rawResponsePayload.bytes()
+        if (isGzipEncoded()) {
           try {
-            GZIPInputStream(ByteArrayInputStream(rawResponsePayload.toByteArray())).use { inputStream ->
+            GZIPInputStream(rawBytes.newInput()).use { inputStream ->
               unzippedResponsePayload = ByteString.copyFrom(inputStream.readBytes())
             }
           }
           catch (ignored: IOException) {
             // If we got here, it means we failed to unzip data that was supposedly zipped. Just
             // fallback and return the content directly.
-            unzippedResponsePayload = rawResponsePayload
+            unzippedResponsePayload = rawBytes
           }
         }
         else {
-          unzippedResponsePayload = rawResponsePayload
+          unzippedResponsePayload = rawBytes
         }
         return unzippedResponsePayload
       }
     }
 
+  /**
+   * The size of [responsePayload], found without reading or decompressing the payload when possible.
+   */
+  val responsePayloadSize: Int
+    get() = when {
+      this::unzippedResponsePayload.isInitialized -> unzippedResponsePayload.size()
+      isGzipEncoded() -> rawResponsePayload.gzipDecodedSize()
+      else -> rawResponsePayload.size
+    }
+
+  private fun isGzipEncoded() = responseHeader.getField("content-encoding").lowercase().contains("gzip")
+
   class ContentType(private val contentType: String) {
     val isEmpty = contentType.isEmpty()
 
@@ -120,6 +135,27 @@ data class HttpData(
       requestPayload: ByteString = ByteString.EMPTY,
       responseFields: String = "",
       responsePayload: ByteString = ByteString.EMPTY
+    ): HttpData {
+      return createHttpData(id, requestStartTimeUs, requestCompleteTimeUs, responseStartTimeUs, responseCompleteTimeUs,
+                            connectionEndTimeUs, threads, url, method, trace, requestFields, Payload.of(requestPayload), responseFields,
+                            Payload.of(responsePayload))
+    }
+
+    fun createHttpData(
+      id: Long,
+      requestStartTimeUs: Long,
+      requestCompleteTimeUs: Long,
+      responseStartTimeUs: Long,
+      responseCompleteTimeUs: Long,
+      connectionEndTimeUs: Long,
+      threads: List<JavaThread>,
+      url: String,
+      method: String,
+      trace: String,
+      requestFields: String,
+      requestPayload: Payload,
+      responseFields: String,
+      responsePayload: Payload
     ): HttpData {
       assert(threads.isNotEmpty()) { "HttpData must be initialized with at least one thread" }
       return HttpData(id, requestStartTimeUs, requestCompleteTimeUs, responseStartTimeUs, responseCompleteTimeUs, connectionEndTimeUs,
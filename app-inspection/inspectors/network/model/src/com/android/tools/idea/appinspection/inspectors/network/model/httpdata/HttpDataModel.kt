@@ -83,10 +83,10 @@ class HttpDataModelImpl(
                                     ?: Event.getDefaultInstance()
         val httpCloseEvent = eventByType[HttpConnectionEvent.UnionCase.HTTP_CLOSED]?.first()
                              ?: Event.getDefaultInstance()
-        val requestPayloadEvent = eventByType[HttpConnectionEvent.UnionCase.REQUEST_PAYLOAD]?.first()
-                                  ?: Event.getDefaultInstance()
-        val responsePayloadEvent = eventByType[HttpConnectionEvent.UnionCase.RESPONSE_PAYLOAD]?.first()
-                                   ?: Event.getDefaultInstance()
+        val requestPayload = eventByType[HttpConnectionEvent.UnionCase.REQUEST_PAYLOAD]?.first()?.let { dataSource.getPayload(it) }
+                             ?: Payload.EMPTY
+        val responsePayload = eventByType[HttpConnectionEvent.UnionCase.RESPONSE_PAYLOAD]?.first()?.let { dataSource.getPayload(it) }
+                              ?: Payload.EMPTY
 
         val requestStartTimeUs = TimeUnit.NANOSECONDS.toMicros(requestStartEvent.timestamp)
         val requestCompleteTimeUs = TimeUnit.NANOSECONDS.toMicros(requestCompleteEvent.timestamp)
@@ -109,9 +109,9 @@ class HttpDataModelImpl(
           requestStartData.method,
           requestStartData.trace,
           requestStartData.fields,
-          requestPayloadEvent.httpConnectionEvent.requestPayload.payload,
+          requestPayload,
           responseStartEvent.httpConnectionEvent.httpResponseStarted.fields,
-          responsePayloadEvent.httpConnectionEvent.responsePayload.payload
+          responsePayload
         )
       }
   }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.appinspection.inspectors.network.model.httpdata
+
+import com.android.tools.idea.protobuf.ByteString
+
+/**
+ * The body of a request or a response, as sent by the app. The bytes of a large body may only be read from a [PayloadStore] when they
+ * are needed.
+ */
+abstract class Payload {
+  /**
+   * The number of bytes of the payload.
+   */
+  abstract val size: Int
+
+  /**
+   * Returns the bytes of the payload.
+   */
+  abstract fun bytes(): ByteString
+
+  /**
+   * Returns [length] bytes of the payload from [offset]. This does not need to read the whole payload.
+   */
+  open fun bytes(offset: Int, length: Int): ByteString = bytes().substring(offset, offset + length)
+
+  /**
+   * Returns the size of the payload once decompressed if it is gzip compressed, or [size] otherwise, without decompressing it.
+   */
+  open fun gzipDecodedSize(): Int = gzipDecodedSize(bytes())
+
+  private class InMemoryPayload(private val bytes: ByteString) : Payload() {
+    override val size: Int
+      get() = bytes.size()
+
+    override fun bytes() = bytes
+
+    override fun equals(other: Any?) = other is InMemoryPayload && bytes == other.bytes
+
+    override fun hashCode() = bytes.hashCode()
+  }
+
+  companion object {
+    private val GZIP_MAGIC = ByteString.copyFrom(byteArrayOf(0x1f, 0x8b.toByte()))
+
+    val EMPTY: Payload = InMemoryPayload(ByteString.EMPTY)
+
+    fun of(bytes: ByteString): Payload = if (bytes.isEmpty) EMPTY else InMemoryPayload(bytes)
+
+    internal fun gzipDecodedSize(bytes: ByteString): Int {
+      // A gzip member starts with a 10 bytes header and ends with the size of the uncompressed data modulo 2^32, in little endian.
+      val size = bytes.size()
+      if (size < 18 || bytes.substring(0, 2) != GZIP_MAGIC) {
+        return size
+      }
+      return (0 until 4).fold(0) { decodedSize, i -> decodedSize or ((bytes.byteAt(size - 4 + i).toInt() and 0xFF) shl (8 * i)) }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.appinspection.inspectors.network.model.httpdata
+
+import com.android.annotations.concurrency.GuardedBy
+import com.android.tools.idea.protobuf.ByteString
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.util.io.FileUtil
+import java.io.EOFException
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+private const val DEFAULT_SPILL_THRESHOLD_BYTES = 64 * 1024
+private const val DEFAULT_CACHE_SIZE_BYTES = 16L * 1024 * 1024
+
+/**
+ * Keeps the bodies of the requests and responses of a Network Inspector session. Bodies up to [spillThresholdBytes] stay in memory, larger
+ * ones are appended to a session file and read back, with positional reads of their part of the file, when the details of their
+ * connection are shown. The decoded size of gzip bodies is found when they are added, so showing it never reads the file. The bodies read last are kept in memory, up to [cacheSizeBytes], so switching between tabs doesn't read them again.
+ *
+ * The session file is created when the first large body is added and deleted by [close].
+ */
+class PayloadStore(
+  private val spillThresholdBytes: Int = DEFAULT_SPILL_THRESHOLD_BYTES,
+  private val cacheSizeBytes: Long = DEFAULT_CACHE_SIZE_BYTES,
+  private val createFile: () -> Path = { FileUtil.createTempFile("network-inspector-payloads", ".bin", true).toPath() }
+) {
+  @GuardedBy("this")
+  private var file: Path? = null
+
+  @GuardedBy("this")
+  private var channel: FileChannel? = null
+
+  @GuardedBy("this")
+  private var fileSize = 0L
+
+  @GuardedBy("this")
+  private var closed = false
+
+  @GuardedBy("this")
+  private val cache = LinkedHashMap<StoredPayload, ByteString>(16, 0.75f, true)
+
+  @GuardedBy("this")
+  private var cachedBytes = 0L
+
+  /**
+   * Returns a [Payload] for [bytes], which may be kept on disk.
+   */
+  fun add(bytes: ByteString): Payload {
+    if (bytes.size() <= spillThresholdBytes) {
+      return Payload.of(bytes)
+    }
+    synchronized(this) {
+      if (closed) {
+        return Payload.of(bytes)
+      }
+      return try {
+        val channel = channel ?: openChannel()
+        val offset = fileSize
+        val buffer = bytes.asReadOnlyByteBuffer()
+        while (buffer.hasRemaining()) {
+          channel.write(buffer, offset + buffer.position())
+        }
+        fileSize += bytes.size()
+        StoredPayload(offset, bytes.size(), Payload.gzipDecodedSize(bytes))
+      }
+      catch (e: IOException) {
+        LOG.warn("Unable to write a payload to $file, keeping it in memory", e)
+        Payload.of(bytes)
+      }
+    }
+  }
+
+  /**
+   * Deletes the session file. The payloads that were stored in it are empty afterwards.
+   */
+  @Synchronized
+  fun close() {
+    closed = true
+    cache.clear()
+    cachedBytes = 0
+    try {
+      channel?.close()
+      file?.let { Files.deleteIfExists(it) }
+    }
+    catch (e: IOException) {
+      LOG.warn("Unable to delete $file", e)
+    }
+    channel = null
+  }
+
+  @GuardedBy("this")
+  private fun openChannel(): FileChannel {
+    val path = createFile()
+    file = path
+    return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE).also { channel = it }
+  }
+
+  @Synchronized
+  private fun read(payload: StoredPayload, offset: Int, length: Int): ByteString {
+    cache[payload]?.let { return it.substring(offset, offset + length) }
+    val channel = channel ?: return ByteString.EMPTY
+    return try {
+      // Not a memory mapping: mappings are only released by the garbage collector, and until then the file can't be deleted on Windows.
+      val buffer = ByteBuffer.allocate(length)
+      val start = payload.offset + offset
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, start + buffer.position()) < 0) {
+          throw EOFException("Payload ends past the end of $file")
+        }
+      }
+      buffer.flip()
+      ByteString.copyFrom(buffer)
+    }
+    catch (e: IOException) {
+      LOG.warn("Unable to read a payload from $file", e)
+      ByteString.EMPTY
+    }
+  }
+
+  @Synchronized
+  private fun cache(payload: StoredPayload, bytes: ByteString) {
+    if (closed || bytes.size() > cacheSizeBytes || cache.put(payload, bytes) != null) {
+      return
+    }
+    cachedBytes += bytes.size()
+    val iterator = cache.entries.iterator()
+    while (cachedBytes > cacheSizeBytes) {
+      cachedBytes -= iterator.next().value.size()
+      iterator.remove()
+    }
+  }
+
+  /**
+   * A payload stored in the session file, [size] bytes from [offset].
+   */
+  private inner class StoredPayload(val offset: Long, override val size: Int, private val decodedSize: Int) : Payload() {
+    override fun bytes(): ByteString = read(this, 0, size).also { if (it.size() == size) cache(this, it) }
+
+    override fun bytes(offset: Int, length: Int): ByteString = read(this, offset, length)
+
+    override fun gzipDecodedSize() = decodedSize
+  }
+
+  companion object {
+    private val LOG = Logger.getInstance(PayloadStore::class.java)
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.appinspection.inspectors.network.model
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import studio.network.inspection.NetworkInspectorProtocol.Event
+import studio.network.inspection.NetworkInspectorProtocol.HttpConnectionEvent
+import kotlin.random.Random
+
+class HttpConnectionIndexTest {
+  private val index = HttpConnectionIndex()
+
+  @Test
+  fun connectionsIntersectingRange() {
+    // 1: [10, 30], 2: [20, 25], 3: [40, 100], 4: [50, 60]
+    index.add(event(1, 10))
+    index.add(event(2, 20))
+    index.add(event(2, 25))
+    index.add(event(1, 30))
+    index.add(event(3, 40))
+    index.add(event(4, 50))
+    index.add(event(4, 60))
+    index.add(event(3, 100))
+
+    assertThat(connectionIds(0, 5)).isEmpty()
+    assertThat(connectionIds(0, 10)).containsExactly(1L)
+    assertThat(connectionIds(26, 35)).containsExactly(1L)
+    assertThat(connectionIds(22, 23)).containsExactly(1L, 2L).inOrder()
+    assertThat(connectionIds(31, 39)).isEmpty()
+    assertThat(connectionIds(70, 80)).containsExactly(3L)
+    assertThat(connectionIds(0, 1000)).containsExactly(1L, 2L, 3L, 4L).inOrder()
+    assertThat(index.query(0, 1000)[0].map { it.timestamp }).containsExactly(10L, 30L).inOrder()
+  }
+
+  @Test
+  fun lateConnectionIsKeptInOrder() {
+    index.add(event(1, 100))
+    index.add(event(2, 200))
+    index.add(event(3, 50))
+    index.add(event(3, 150))
+
+    assertThat(connectionIds(0, 1000)).containsExactly(3L, 1L, 2L).inOrder()
+    assertThat(connectionIds(120, 160)).containsExactly(3L)
+    index.add(event(1, 300))
+    assertThat(connectionIds(250, 260)).containsExactly(1L)
+  }
+
+  @Test
+  fun matchesLinearSearch() {
+    val random = Random(42)
+    val spans = mutableMapOf<Long, LongRange>()
+    var time = 0L
+    repeat(5000) {
+      time += random.nextLong(0, 20)
+      val id = if (spans.isEmpty() || random.nextInt(3) == 0) spans.size.toLong() else random.nextLong(spans.size.toLong())
+      val span = spans[id]
+      spans[id] = if (span == null) time..time else span.first..time
+      index.add(event(id, time))
+    }
+    assertThat(index.size).isEqualTo(spans.size)
+
+    repeat(1000) {
+      val min = random.nextLong(-100, time + 100)
+      val max = min + random.nextLong(0, 500)
+      val expected = spans.filterValues { it.first <= max && it.last >= min }.keys
+      assertThat(connectionIds(min, max)).containsExactlyElementsIn(expected)
+    }
+  }
+
+  @Test
+  fun matchesLinearSearchWithLateConnections() {
+    val random = Random(7)
+    val spans = mutableMapOf<Long, LongRange>()
+    var time = 0L
+    repeat(2000) {
+      time += random.nextLong(0, 20)
+      val id = if (spans.isEmpty() || random.nextInt(3) == 0) spans.size.toLong() else random.nextLong(spans.size.toLong())
+      val span = spans[id]
+      // Some connections are first seen after others that started later.
+      val timestamp = if (span == null && random.nextInt(4) == 0) time - random.nextLong(0, 200) else time
+      spans[id] = if (span == null) timestamp..timestamp else span.first..maxOf(span.last, timestamp)
+      index.add(event(id, timestamp))
+
+      val min = random.nextLong(-100, time + 100)
+      val max = min + random.nextLong(0, 500)
+      val expected = spans.filterValues { it.first <= max && it.last >= min }.keys
+      assertThat(connectionIds(min, max)).containsExactlyElementsIn(expected)
+    }
+  }
+
+  /**
+   * A session with 100k connections of a few events each. A query over a short range only visits the connections it returns, so it
+   * takes about as long as with a handful of connections.
+   */
+  @Test
+  fun largeSession() {
+    for (id in 0 until 100_000L) {
+      index.add(event(id, id * 1000))
+      index.add(event(id, id * 1000 + 1500))
+      index.add(event(id, id * 1000 + 3500))
+    }
+    // One long lived connection, like a web socket.
+    index.add(event(100_000, 0))
+    index.add(event(100_000, 100_000_000))
+
+    repeat(9000) {
+      val min = (it + 1) * 10_000L
+      assertThat(index.query(min, min + 5000)).hasSize(10)
+    }
+    assertThat(connectionIds(50_000_000, 50_000_000)).containsExactly(49_997L, 49_998L, 49_999L, 50_000L, 100_000L)
+  }
+
+  private fun connectionIds(min: Long, max: Long) = index.query(min, max).map { it.first().httpConnectionEvent.connectionId }
+
+  private fun event(connectionId: Long, timestamp: Long) = Event.newBuilder()
+    .setTimestamp(timestamp)
+    .setHttpConnectionEvent(HttpConnectionEvent.newBuilder().setConnectionId(connectionId))
+    .build()
+}
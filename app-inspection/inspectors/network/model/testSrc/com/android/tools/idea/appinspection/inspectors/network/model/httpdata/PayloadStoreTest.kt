@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.appinspection.inspectors.network.model.httpdata
+
+import com.android.tools.idea.protobuf.ByteString
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.GZIPOutputStream
+
+class PayloadStoreTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private var file: Path? = null
+
+  private val store = PayloadStore(spillThresholdBytes = 10, cacheSizeBytes = 100) {
+    temporaryFolder.newFile("payloads.bin").toPath().also { file = it }
+  }
+
+  @Test
+  fun smallPayloadsStayInMemory() {
+    val payload = store.add(ByteString.copyFromUtf8("small"))
+
+    assertThat(payload).isEqualTo(Payload.of(ByteString.copyFromUtf8("small")))
+    assertThat(file).isNull()
+  }
+
+  @Test
+  fun largePayloadsAreWrittenToFile() {
+    val first = store.add(ByteString.copyFromUtf8("a payload larger than the threshold"))
+    val second = store.add(ByteString.copyFromUtf8("another large payload"))
+
+    assertThat(Files.size(file!!)).isEqualTo(first.size + second.size.toLong())
+    assertThat(first.bytes().toStringUtf8()).isEqualTo("a payload larger than the threshold")
+    assertThat(second.bytes().toStringUtf8()).isEqualTo("another large payload")
+    assertThat(second.bytes(8, 5).toStringUtf8()).isEqualTo("large")
+  }
+
+  @Test
+  fun closeDeletesFile() {
+    val payload = store.add(ByteString.copyFromUtf8("a payload larger than the threshold"))
+    store.close()
+
+    assertThat(Files.exists(file!!)).isFalse()
+    assertThat(payload.bytes()).isEqualTo(ByteString.EMPTY)
+  }
+
+  @Test
+  fun gzipDecodedSizeIsReadFromTrailer() {
+    val text = "compressed ".repeat(100)
+    val output = ByteArrayOutputStream()
+    GZIPOutputStream(output).use { it.write(text.toByteArray()) }
+    val payload = store.add(ByteString.copyFrom(output.toByteArray()))
+
+    assertThat(payload.gzipDecodedSize()).isEqualTo(text.length)
+    assertThat(store.add(ByteString.copyFromUtf8("not compressed at all")).gzipDecodedSize()).isEqualTo(21)
+    // The decoded size is found when the payload is added, so it doesn't need the file.
+    store.close()
+    assertThat(payload.gzipDecodedSize()).isEqualTo(text.length)
+  }
+
+  @Test
+  fun decodedSizeMatchesPayload() {
+    val text = "compressed ".repeat(100)
+    val output = ByteArrayOutputStream()
+    GZIPOutputStream(output).use { it.write(text.toByteArray()) }
+    val data = createFakeHttpData(1, responseFields = "response-status-code = 200 \n content-encoding = gzip").copy(
+      rawResponsePayload = store.add(ByteString.copyFrom(output.toByteArray())))
+
+    assertThat(data.responsePayloadSize).isEqualTo(text.length)
+    assertThat(data.responsePayload.toStringUtf8()).isEqualTo(text)
+  }
+}
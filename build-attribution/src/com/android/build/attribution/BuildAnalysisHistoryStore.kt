@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.build.attribution
+
+import com.android.annotations.concurrency.GuardedBy
+import com.android.annotations.concurrency.Slow
+import com.android.build.attribution.data.GarbageCollectionData
+import com.android.build.attribution.data.TaskData
+import com.intellij.openapi.diagnostic.Logger
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.Executor
+import kotlin.streams.toList
+
+private const val FILE_EXTENSION = ".bin"
+private const val FILE_MAGIC = 0x42414853 // "BAHS"
+private const val FILE_VERSION = 1
+
+/**
+ * The results of the build analyzer for one build, in the compact form kept by [BuildAnalysisHistoryStore].
+ *
+ * The tasks are the tasks determining the build duration and are stored column by column: the i-th element of each of the task arrays
+ * describes the same task. [taskPluginIndices] are indices in [pluginIds], which are the plugins determining the build duration.
+ */
+class StoredBuildAnalysis(
+  val buildSessionID: String,
+  val buildStartedTimestamp: Long,
+  val buildFinishedTimestamp: Long,
+  val taskPaths: List<String>,
+  val taskPluginIndices: IntArray,
+  val taskDurationsMs: LongArray,
+  val taskExecutionModes: List<TaskData.TaskExecutionMode>,
+  val taskOnCriticalPath: BooleanArray,
+  val pluginIds: List<String>,
+  val pluginDurationsMs: LongArray,
+  val garbageCollectionData: List<GarbageCollectionData>
+) {
+  val totalBuildTimeMs: Long
+    get() = buildFinishedTimestamp - buildStartedTimestamp
+
+  val totalGarbageCollectionTimeMs: Long
+    get() = garbageCollectionData.sumOf { it.collectionTimeMs }
+
+  val criticalPathTaskPaths: List<String>
+    get() = taskPaths.filterIndexed { i, _ -> taskOnCriticalPath[i] }
+
+  companion object {
+    fun from(results: BuildAnalysisResults): StoredBuildAnalysis {
+      val plugins = results.getPluginsDeterminingBuildDuration()
+      val pluginIds = plugins.mapTo(mutableListOf()) { it.plugin.idName }
+      val pluginDurations = plugins.mapTo(mutableListOf()) { it.buildDuration }
+      val tasks = results.getTasksDeterminingBuildDuration()
+      val taskPluginIndices = tasks.map { task ->
+        pluginIds.indexOf(task.originPlugin.idName).takeIf { it >= 0 } ?: run {
+          pluginIds.add(task.originPlugin.idName)
+          pluginDurations.add(0L)
+          pluginIds.size - 1
+        }
+      }
+      return StoredBuildAnalysis(
+        buildSessionID = results.getBuildSessionID(),
+        buildStartedTimestamp = results.getBuildStartedTimestamp(),
+        buildFinishedTimestamp = results.getBuildFinishedTimestamp(),
+        taskPaths = tasks.map { it.getTaskPath() },
+        taskPluginIndices = taskPluginIndices.toIntArray(),
+        taskDurationsMs = tasks.map { it.executionTime }.toLongArray(),
+        taskExecutionModes = tasks.map { it.executionMode },
+        taskOnCriticalPath = tasks.map { it.isOnTheCriticalPath }.toBooleanArray(),
+        pluginIds = pluginIds,
+        pluginDurationsMs = pluginDurations.toLongArray(),
+        garbageCollectionData = results.getGarbageCollectionData()
+      )
+    }
+  }
+}
+
+/**
+ * A task whose execution time increased over the builds queried by [BuildAnalysisHistoryStore.findRegressedTasks].
+ *
+ * @param baselineMedianMs the median execution time of the task in the older half of the builds
+ * @param recentMedianMs the median execution time of the task in the newer half of the builds
+ */
+data class TaskRegression(
+  val taskPath: String,
+  val pluginId: String,
+  val baselineMedianMs: Long,
+  val recentMedianMs: Long
+) {
+  val regressionMs: Long
+    get() = recentMedianMs - baselineMedianMs
+}
+
+/**
+ * Keeps the [StoredBuildAnalysis] of the last [maxStoredBuilds] builds of a project in [directory], one file per build, so they survive
+ * restarts of the IDE. The builds are read from disk the first time they are needed and kept in memory afterwards.
+ *
+ * [ioExecutor] must run the tasks in the order they are submitted.
+ */
+class BuildAnalysisHistoryStore(
+  private val directory: Path,
+  private val maxStoredBuilds: Int,
+  private val ioExecutor: Executor
+) {
+  /** The stored builds, oldest first, or null if they were not read from disk yet. */
+  @GuardedBy("this")
+  private var builds: MutableList<StoredBuildAnalysis>? = null
+
+  /**
+   * Records [build] and writes it to disk in the background, deleting the oldest builds over [maxStoredBuilds].
+   */
+  fun store(build: StoredBuildAnalysis) {
+    ioExecutor.execute {
+      val removed = synchronized(this) {
+        val builds = loadedBuilds()
+        builds.add(build)
+        val removeCount = (builds.size - maxStoredBuilds).coerceAtLeast(0)
+        builds.subList(0, removeCount).toList().also { builds.subList(0, removeCount).clear() }
+      }
+      try {
+        write(build)
+        removed.forEach { Files.deleteIfExists(fileOf(it)) }
+      }
+      catch (e: IOException) {
+        LOG.warn("Unable to store build analysis ${build.buildSessionID} in $directory", e)
+      }
+    }
+  }
+
+  /**
+   * Returns the stored builds, oldest first.
+   */
+  @Slow
+  @Synchronized
+  fun getBuilds(): List<StoredBuildAnalysis> = loadedBuilds().toList()
+
+  /**
+   * Returns the tasks whose median execution time in the newer half of the last [buildCount] builds is at least [minRegressionMs] more
+   * than in the older half, the largest regressions first. Builds where a task was up to date are not taken into account for that task.
+   */
+  @Slow
+  fun findRegressedTasks(buildCount: Int, minRegressionMs: Long): List<TaskRegression> {
+    val builds = getBuilds().takeLast(buildCount)
+    if (builds.size < 2) return emptyList()
+    val baseline = durationsByTask(builds.subList(0, builds.size / 2))
+    val recent = durationsByTask(builds.subList(builds.size / 2, builds.size))
+    return recent.mapNotNull { (taskPath, recentDurations) ->
+      val baselineDurations = baseline[taskPath] ?: return@mapNotNull null
+      TaskRegression(taskPath, recentDurations.pluginId, baselineDurations.median(), recentDurations.median())
+        .takeIf { it.regressionMs >= minRegressionMs }
+    }.sortedByDescending { it.regressionMs }
+  }
+
+  private class TaskDurations(val pluginId: String, val durationsMs: MutableList<Long> = mutableListOf()) {
+    fun median(): Long = durationsMs.sorted().let { (it[(it.size - 1) / 2] + it[it.size / 2]) / 2 }
+  }
+
+  private fun durationsByTask(builds: List<StoredBuildAnalysis>): Map<String, TaskDurations> {
+    val durations = mutableMapOf<String, TaskDurations>()
+    for (build in builds) {
+      build.taskPaths.forEachIndexed { i, taskPath ->
+        if (build.taskExecutionModes[i] != TaskData.TaskExecutionMode.UP_TO_DATE) {
+          val taskDurations = durations.getOrPut(taskPath) { TaskDurations(build.pluginIds[build.taskPluginIndices[i]]) }
+          taskDurations.durationsMs.add(build.taskDurationsMs[i])
+        }
+      }
+    }
+    return durations
+  }
+
+  @GuardedBy("this")
+  private fun loadedBuilds(): MutableList<StoredBuildAnalysis> {
+    builds?.let { return it }
+    val read = try {
+      if (Files.isDirectory(directory)) {
+        Files.list(directory).use { it.toList() }
+          .filter { it.fileName.toString().endsWith(FILE_EXTENSION) }
+          .mapNotNull { read(it) }
+          .sortedBy { it.buildStartedTimestamp }
+          .toMutableList()
+      }
+      else {
+        mutableListOf()
+      }
+    }
+    catch (e: IOException) {
+      LOG.warn("Unable to read stored build analysis from $directory", e)
+      mutableListOf()
+    }
+    builds = read
+    return read
+  }
+
+  private fun fileOf(build: StoredBuildAnalysis): Path =
+    directory.resolve("${build.buildStartedTimestamp}_${build.buildSessionID.hashCode().toUInt()}$FILE_EXTENSION")
+
+  private fun write(build: StoredBuildAnalysis) {
+    Files.createDirectories(directory)
+    val temp = Files.createTempFile(directory, "build", ".tmp")
+    DataOutputStream(Files.newOutputStream(temp).buffered()).use { output ->
+      output.writeInt(FILE_MAGIC)
+      output.writeInt(FILE_VERSION)
+      output.writeUTF(build.buildSessionID)
+      output.writeLong(build.buildStartedTimestamp)
+      output.writeLong(build.buildFinishedTimestamp)
+      output.writeInt(build.pluginIds.size)
+      build.pluginIds.forEach { output.writeUTF(it) }
+      build.pluginDurationsMs.forEach { output.writeLong(it) }
+      output.writeInt(build.taskPaths.size)
+      build.taskPaths.forEach { output.writeUTF(it) }
+      build.taskPluginIndices.forEach { output.writeInt(it) }
+      build.taskDurationsMs.forEach { output.writeLong(it) }
+      build.taskExecutionModes.forEach { output.writeByte(it.ordinal) }
+      build.taskOnCriticalPath.forEach { output.writeBoolean(it) }
+      output.writeInt(build.garbageCollectionData.size)
+      build.garbageCollectionData.forEach {
+        output.writeUTF(it.name)
+        output.writeLong(it.collectionTimeMs)
+      }
+    }
+    Files.move(temp, fileOf(build), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+  }
+
+  private fun read(file: Path): StoredBuildAnalysis? {
+    return try {
+      DataInputStream(Files.newInputStream(file).buffered()).use { input ->
+        if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION) {
+          throw IOException("Unknown file format")
+        }
+        val buildSessionID = input.readUTF()
+        val buildStartedTimestamp = input.readLong()
+        val buildFinishedTimestamp = input.readLong()
+        val pluginCount = input.readInt()
+        val pluginIds = List(pluginCount) { input.readUTF() }
+        val pluginDurations = LongArray(pluginCount) { input.readLong() }
+        val taskCount = input.readInt()
+        val taskPaths = List(taskCount) { input.readUTF() }
+        val taskPluginIndices = IntArray(taskCount) { input.readInt() }
+        val taskDurations = LongArray(taskCount) { input.readLong() }
+        val taskExecutionModes = List(taskCount) { TaskData.TaskExecutionMode.values()[input.readByte().toInt()] }
+        val taskOnCriticalPath = BooleanArray(taskCount) { input.readBoolean() }
+        val garbageCollectionData = List(input.readInt()) { GarbageCollectionData(input.readUTF(), input.readLong()) }
+        StoredBuildAnalysis(buildSessionID, buildStartedTimestamp, buildFinishedTimestamp, taskPaths, taskPluginIndices, taskDurations,
+                            taskExecutionModes, taskOnCriticalPath, pluginIds, pluginDurations, garbageCollectionData)
+      }
+    }
+    catch (e: Exception) {
+      // Truncated or written by another version, it is never going to be readable so delete it.
+      LOG.warn("Deleting unreadable stored build analysis $file", e)
+      try {
+        Files.deleteIfExists(file)
+      }
+      catch (ignored: IOException) {
+      }
+      null
+    }
+  }
+
+  companion object {
+    private val LOG = Logger.getInstance(BuildAnalysisHistoryStore::class.java)
+  }
+}
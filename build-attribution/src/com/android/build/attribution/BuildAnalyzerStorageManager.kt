@@ -15,6 +15,7 @@
  */
 package com.android.build.attribution
 
+import com.android.annotations.concurrency.Slow
 import com.android.build.attribution.analyzers.BuildEventsAnalyzersProxy
 import com.android.build.attribution.data.BuildRequestHolder
 import com.intellij.openapi.project.Project
@@ -41,6 +42,20 @@ interface BuildAnalyzerStorageManager {
   fun getHistoricBuildResultByID(buildID : String) : BuildAnalysisResults
   fun getListOfHistoricBuildIDs() : Set<String>
 
+  /**
+   * Returns the compact results of the last builds stored on disk, oldest first. Only the last few builds are available through
+   * [getHistoricBuildResultByID], these include builds from previous sessions of the IDE.
+   */
+  @Slow
+  fun getStoredBuildHistory() : List<StoredBuildAnalysis>
+
+  /**
+   * Returns the tasks whose execution time regressed by at least [minRegressionMs] over the last [buildCount] stored builds, comparing
+   * the newer half of the builds with the older half.
+   */
+  @Slow
+  fun findRegressedTasks(buildCount: Int, minRegressionMs: Long) : List<TaskRegression>
+
   interface Listener {
     fun newDataAvailable()
   }
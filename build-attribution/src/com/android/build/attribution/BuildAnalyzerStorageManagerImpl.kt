@@ -20,13 +20,34 @@ import com.android.build.attribution.analyzers.DownloadsAnalyzer
 import com.android.build.attribution.data.BuildRequestHolder
 import com.intellij.openapi.project.Project
 import com.android.tools.idea.flags.StudioFlags
+import com.intellij.openapi.application.PathManager
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.nio.file.Paths
 
+private const val HISTORY_DIRECTORY = "build-analyzer-history"
+private const val MAX_STORED_BUILDS = 100
+private const val MAX_HISTORIC_RESULTS_IN_MEMORY = 10
 
 class BuildAnalyzerStorageManagerImpl(
   val project: Project
 ) : BuildAnalyzerStorageManager {
   private var buildResults : BuildAnalysisResults? = null
-  private var historicBuildResults : MutableMap<String, BuildAnalysisResults> = mutableMapOf()
+  private var historicBuildResults : MutableMap<String, BuildAnalysisResults> =
+    object : LinkedHashMap<String, BuildAnalysisResults>() {
+      override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, BuildAnalysisResults>) =
+        size > MAX_HISTORIC_RESULTS_IN_MEMORY
+    }
+
+  /**
+   * Compact results of the last builds of the project, kept on disk so trends can be tracked across restarts of the IDE.
+   */
+  private val historyStore by lazy {
+    BuildAnalysisHistoryStore(
+      Paths.get(PathManager.getSystemPath(), HISTORY_DIRECTORY, project.locationHash),
+      MAX_STORED_BUILDS,
+      AppExecutorUtil.createBoundedApplicationPoolExecutor("BuildAnalysisHistoryStore", 1)
+    )
+  }
 
   private fun notifyDataListeners() {
     var publisher = project.messageBus.syncPublisher(BuildAnalyzerStorageManager.DATA_IS_READY_TOPIC);
@@ -65,7 +86,10 @@ class BuildAnalyzerStorageManagerImpl(
   override fun storeNewBuildResults(analyzersProxy: BuildEventsAnalyzersProxy, buildID : String, requestHolder : BuildRequestHolder) {
     val buildResults = createBuildResultsObject(analyzersProxy, buildID, requestHolder)
     this.buildResults = buildResults
-    if(StudioFlags.BUILD_ANALYZER_HISTORY.get()) historicBuildResults[buildID] = buildResults
+    if(StudioFlags.BUILD_ANALYZER_HISTORY.get()) {
+      historicBuildResults[buildID] = buildResults
+      historyStore.store(StoredBuildAnalysis.from(buildResults))
+    }
     notifyDataListeners()
   }
 
@@ -77,6 +101,14 @@ class BuildAnalyzerStorageManagerImpl(
     return historicBuildResults.keys
   }
 
+  override fun getStoredBuildHistory(): List<StoredBuildAnalysis> {
+    return historyStore.getBuilds()
+  }
+
+  override fun findRegressedTasks(buildCount: Int, minRegressionMs: Long): List<TaskRegression> {
+    return historyStore.findRegressedTasks(buildCount, minRegressionMs)
+  }
+
   override fun hasData(): Boolean {
     return buildResults != null
   }
@@ -15,21 +15,29 @@
  */
 package com.android.build.attribution.analyzers
 
+import com.android.annotations.concurrency.GuardedBy
 import com.android.build.attribution.data.PluginBuildData
 import com.android.build.attribution.data.PluginContainer
 import com.android.build.attribution.data.PluginData
 import com.android.build.attribution.data.StudioProvidedInfo
 import com.android.build.attribution.data.TaskContainer
 import com.android.build.attribution.data.TaskData
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap
 import org.gradle.tooling.events.FinishEvent
 import org.gradle.tooling.events.ProgressEvent
 import org.gradle.tooling.events.task.TaskFinishEvent
 import org.gradle.tooling.events.task.TaskOperationDescriptor
 import org.gradle.tooling.events.task.TaskSuccessResult
-import kotlin.math.max
+
+private const val INITIAL_CAPACITY = 1024
 
 /**
  * An analyzer for calculating the critical path, that is the path of tasks determining the total build duration.
+ *
+ * The critical path based on the dependencies is computed while the build is running: when a task finishes, the longest chain of
+ * dependencies ending with it is its own execution time plus the longest of the chains ending with its dependencies. Only these durations
+ * and the previous task of each chain are kept, in arrays indexed by task id, and [getCurrentCriticalPath] gives the critical path of the
+ * tasks that finished so far.
  */
 class CriticalPathAnalyzer(
   private val taskContainer: TaskContainer,
@@ -37,12 +45,32 @@ class CriticalPathAnalyzer(
 ) : BaseAnalyzer<CriticalPathAnalyzer.Result>(),
     BuildEventsAnalyzer,
     PostBuildProcessAnalyzer {
-  private val tasksSet = HashSet<TaskData>()
+  /**
+   * The tasks that finished successfully, indexed by an id given in the order they finished.
+   */
+  @GuardedBy("this")
+  private val tasks = ArrayList<TaskData>()
+
+  @GuardedBy("this")
+  private val taskIds = Object2IntOpenHashMap<String>().apply { defaultReturnValue(-1) }
 
   /**
-   * Contains for each task, a list of tasks that this task depends on.
+   * For each task id, the duration of the longest chain of dependencies ending with the task, the task included.
    */
-  private val dependenciesMap = HashMap<TaskData, List<TaskData>>()
+  @GuardedBy("this")
+  private var criticalPathToTask = LongArray(INITIAL_CAPACITY)
+
+  /**
+   * For each task id, the id of the task before it in the longest chain of dependencies ending with it, or -1 if there is none.
+   */
+  @GuardedBy("this")
+  private var criticalPathPreviousTask = IntArray(INITIAL_CAPACITY)
+
+  /**
+   * The id of the last task of the critical path of the tasks that finished so far, or -1 if no task finished yet.
+   */
+  @GuardedBy("this")
+  private var criticalPathLastTask = -1
 
   private val tasksDeterminingBuildDuration = ArrayList<TaskData>()
   private val pluginsDeterminingBuildDuration = ArrayList<PluginBuildData>()
@@ -50,6 +78,7 @@ class CriticalPathAnalyzer(
   private var buildStartedTimestamp = Long.MAX_VALUE
   private var buildFinishedTimestamp = Long.MIN_VALUE
 
+  @Synchronized
   override fun receiveEvent(event: ProgressEvent) {
     // Since we stopped listening to generic events, we don't get build finished event. But we can calculate the build time from the start
     // of the first received event and the end of the last received event.
@@ -60,88 +89,63 @@ class CriticalPathAnalyzer(
 
     if (event is TaskFinishEvent && event.result is TaskSuccessResult) {
       val task = taskContainer.getTask(event, pluginContainer)
-      val dependenciesList = ArrayList<TaskData>()
-
+      if (taskIds.containsKey(task.getTaskPath())) {
+        return
+      }
+      // Gradle only starts a task once all its dependencies finished, so the chains ending with the dependencies are already known.
+      var previousTask = -1
+      var criticalPathToDependencies = -1L
       event.descriptor.dependencies.forEach { dependency ->
         if (dependency is TaskOperationDescriptor) {
-          taskContainer.getTask(dependency.taskPath)?.let {
-            dependenciesList.add(it)
+          val dependencyId = taskIds.getInt(dependency.taskPath)
+          if (dependencyId != -1 && criticalPathToDependencies < criticalPathToTask[dependencyId]) {
+            criticalPathToDependencies = criticalPathToTask[dependencyId]
+            previousTask = dependencyId
           }
         }
       }
-
-      tasksSet.add(task)
-      dependenciesMap[task] = dependenciesList
+      addTask(task, criticalPathToDependencies.coerceAtLeast(0) + task.executionTime, previousTask)
     }
   }
 
-  /**
-   * returns the duration of the critical path that starts from task [startTask]
-   */
-  private fun calculateCriticalPathStartingFromTask(
-    startTask: TaskData,
-    criticalPathFromTaskMap: MutableMap<TaskData, Long>
-  ): Long {
-    // Avoid recomputing the subpath critical path if it's already calculated
-    criticalPathFromTaskMap[startTask]?.let { return it }
-
-    var criticalPathDuration = 0L
-    dependenciesMap[startTask]!!.forEach { dependency ->
-      criticalPathDuration = max(criticalPathDuration, calculateCriticalPathStartingFromTask(dependency, criticalPathFromTaskMap))
+  @GuardedBy("this")
+  private fun addTask(task: TaskData, criticalPathDuration: Long, previousTask: Int) {
+    val id = tasks.size
+    if (id == criticalPathToTask.size) {
+      criticalPathToTask = criticalPathToTask.copyOf(id * 2)
+      criticalPathPreviousTask = criticalPathPreviousTask.copyOf(id * 2)
+    }
+    tasks.add(task)
+    taskIds.put(task.getTaskPath(), id)
+    criticalPathToTask[id] = criticalPathDuration
+    criticalPathPreviousTask[id] = previousTask
+    if (criticalPathLastTask == -1 || criticalPathToTask[criticalPathLastTask] < criticalPathDuration) {
+      criticalPathLastTask = id
     }
-
-    // Add task execution time
-    criticalPathDuration += startTask.executionTime
-    // Memoize the calculated value in the map
-    criticalPathFromTaskMap[startTask] = criticalPathDuration
-
-    return criticalPathDuration
   }
 
   /**
-   * We are using dynamic programming to calculate the critical path for the task graph that is a direct acyclic graph.
-   *
-   * The algorithm should run in linear time of the number of tasks and the number of dependencies in the graph. The memory used is in order
-   * of the number of tasks in the graph.
+   * Returns the critical path, based on the dependencies, of the tasks that finished so far. It can be called from any thread while the
+   * build is running.
    */
-  private fun calculateTasksCriticalPathBasedOnDependencies(): List<TaskData> {
+  @Synchronized
+  fun getCurrentCriticalPath(): List<TaskData> {
     val tasksCriticalPath = ArrayList<TaskData>()
-    val criticalPathFromTaskMap = HashMap<TaskData, Long>()
-
-    var startTask: TaskData? = null
-    var currentCriticalPathDuration = -1L
-
-    // Calculate the critical path starting from each task
-    tasksSet.forEach {
-      val criticalPathFromTask = calculateCriticalPathStartingFromTask(it, criticalPathFromTaskMap)
-      if (currentCriticalPathDuration < criticalPathFromTask) {
-        currentCriticalPathDuration = criticalPathFromTask
-        startTask = it
-      }
+    var id = criticalPathLastTask
+    while (id != -1) {
+      tasksCriticalPath.add(tasks[id])
+      id = criticalPathPreviousTask[id]
     }
-
-    // Construct critical path
-    while (startTask != null) {
-      tasksCriticalPath.add(startTask!!)
-
-      var nextTask: TaskData? = null
-      currentCriticalPathDuration = -1
-
-      dependenciesMap[startTask!!]!!.forEach { dependency ->
-        val criticalPathFromTask = criticalPathFromTaskMap[dependency]!!
-        if (currentCriticalPathDuration < criticalPathFromTask) {
-          currentCriticalPathDuration = criticalPathFromTask
-          nextTask = dependency
-        }
-      }
-
-      startTask = nextTask
-    }
-
     tasksCriticalPath.reverse()
     return tasksCriticalPath
   }
 
+  /**
+   * Returns the duration of the path returned by [getCurrentCriticalPath].
+   */
+  @Synchronized
+  fun getCurrentCriticalPathDuration(): Long = if (criticalPathLastTask == -1) 0L else criticalPathToTask[criticalPathLastTask]
+
   /**
    * Runs binary search to find the first task that starts at or after the given [timestamp], if there is no such task returns -1.
    * [tasks] should be sorted in non decreasing order of execution start time.
@@ -291,7 +295,7 @@ class CriticalPathAnalyzer(
   private fun calculateTasksDeterminingBuildDuration(tasksCriticalPath: List<TaskData>) {
     val tasksDeterminingBuildDurationList = ArrayList<TaskData>()
 
-    val taskListSortedByStartTime = tasksSet.sortedBy { it.executionStartTime }
+    val taskListSortedByStartTime = tasks.sortedBy { it.executionStartTime }
 
     // Since the critical path tasks are not intersecting, and we iterate through them in start time order, we are able to reuse the
     // iterator across all queries without having to iterate through the whole list each time
@@ -348,9 +352,13 @@ class CriticalPathAnalyzer(
     pluginsDeterminingBuildDuration.sortByDescending { it.buildDuration }
   }
 
+  @Synchronized
   override fun cleanupTempState() {
-    tasksSet.clear()
-    dependenciesMap.clear()
+    tasks.clear()
+    taskIds.clear()
+    criticalPathToTask = LongArray(INITIAL_CAPACITY)
+    criticalPathPreviousTask = IntArray(INITIAL_CAPACITY)
+    criticalPathLastTask = -1
     tasksDeterminingBuildDuration.clear()
     pluginsDeterminingBuildDuration.clear()
     buildStartedTimestamp = Long.MAX_VALUE
@@ -361,8 +369,9 @@ class CriticalPathAnalyzer(
     ensureResultCalculated()
   }
 
+  @Synchronized
   override fun calculateResult(): Result {
-    calculateTasksDeterminingBuildDuration(calculateTasksCriticalPathBasedOnDependencies())
+    calculateTasksDeterminingBuildDuration(getCurrentCriticalPath())
     calculatePluginsDeterminingBuildDuration()
     return Result(
       tasksDeterminingBuildDuration.toList(),
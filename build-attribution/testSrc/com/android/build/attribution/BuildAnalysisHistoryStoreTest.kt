@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.build.attribution
+
+import com.android.build.attribution.data.GarbageCollectionData
+import com.android.build.attribution.data.TaskData
+import com.google.common.truth.Truth.assertThat
+import com.google.common.util.concurrent.MoreExecutors
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.file.Files
+
+class BuildAnalysisHistoryStoreTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private fun createStore(maxStoredBuilds: Int = 100) =
+    BuildAnalysisHistoryStore(temporaryFolder.root.toPath().resolve("history"), maxStoredBuilds, MoreExecutors.directExecutor())
+
+  private fun build(index: Int,
+                    compileDurationMs: Long,
+                    mergeMode: TaskData.TaskExecutionMode = TaskData.TaskExecutionMode.FULL) = StoredBuildAnalysis(
+    buildSessionID = "build$index",
+    buildStartedTimestamp = index * 10_000L,
+    buildFinishedTimestamp = index * 10_000L + compileDurationMs + 500,
+    taskPaths = listOf(":app:compileDebugKotlin", ":app:mergeDebugResources"),
+    taskPluginIndices = intArrayOf(0, 1),
+    taskDurationsMs = longArrayOf(compileDurationMs, 500),
+    taskExecutionModes = listOf(TaskData.TaskExecutionMode.INCREMENTAL, mergeMode),
+    taskOnCriticalPath = booleanArrayOf(true, false),
+    pluginIds = listOf("org.jetbrains.kotlin.gradle.plugin.KotlinAndroidPluginWrapper", "com.android.build.gradle.AppPlugin"),
+    pluginDurationsMs = longArrayOf(compileDurationMs, 500),
+    garbageCollectionData = listOf(GarbageCollectionData("G1 Young Generation", index.toLong()))
+  )
+
+  @Test
+  fun testBuildsAreReadBack() {
+    createStore().store(build(1, 1000))
+
+    val builds = createStore().getBuilds()
+    assertThat(builds).hasSize(1)
+    val build = builds.single()
+    assertThat(build.buildSessionID).isEqualTo("build1")
+    assertThat(build.totalBuildTimeMs).isEqualTo(1500)
+    assertThat(build.taskPaths).containsExactly(":app:compileDebugKotlin", ":app:mergeDebugResources").inOrder()
+    assertThat(build.taskDurationsMs.toList()).containsExactly(1000L, 500L).inOrder()
+    assertThat(build.taskExecutionModes).containsExactly(TaskData.TaskExecutionMode.INCREMENTAL, TaskData.TaskExecutionMode.FULL).inOrder()
+    assertThat(build.criticalPathTaskPaths).containsExactly(":app:compileDebugKotlin")
+    assertThat(build.pluginIds[build.taskPluginIndices[1]]).isEqualTo("com.android.build.gradle.AppPlugin")
+    assertThat(build.garbageCollectionData).containsExactly(GarbageCollectionData("G1 Young Generation", 1))
+  }
+
+  @Test
+  fun testOldestBuildsAreRemoved() {
+    val store = createStore(maxStoredBuilds = 3)
+    (1..5).forEach { store.store(build(it, 1000)) }
+
+    assertThat(store.getBuilds().map { it.buildSessionID }).containsExactly("build3", "build4", "build5").inOrder()
+    assertThat(createStore().getBuilds().map { it.buildSessionID }).containsExactly("build3", "build4", "build5").inOrder()
+  }
+
+  @Test
+  fun testUnreadableFilesAreDeleted() {
+    val directory = temporaryFolder.root.toPath().resolve("history")
+    Files.createDirectories(directory)
+    val corrupted = directory.resolve("1_1.bin")
+    Files.write(corrupted, byteArrayOf(1, 2, 3))
+
+    assertThat(createStore().getBuilds()).isEmpty()
+    assertThat(Files.exists(corrupted)).isFalse()
+  }
+
+  @Test
+  fun testFindRegressedTasks() {
+    val store = createStore()
+    (1..10).forEach { store.store(build(it, 1000, TaskData.TaskExecutionMode.UP_TO_DATE)) }
+    (11..20).forEach { store.store(build(it, 1800)) }
+
+    val regressions = store.findRegressedTasks(20, 100)
+    assertThat(regressions).containsExactly(
+      TaskRegression(":app:compileDebugKotlin", "org.jetbrains.kotlin.gradle.plugin.KotlinAndroidPluginWrapper", 1000, 1800))
+    // Only the recent builds, where the task did not regress.
+    assertThat(store.findRegressedTasks(10, 100)).isEmpty()
+    assertThat(store.findRegressedTasks(20, 1000)).isEmpty()
+  }
+}
@@ -184,6 +184,45 @@ class CriticalPathAnalyzerTest {
     assertThat(analyzer.result.pluginsDeterminingBuildDuration[1].buildDuration).isEqualTo(25)
   }
 
+  @Test
+  fun testCurrentCriticalPathDuringBuild() {
+    val pluginContainer = PluginContainer()
+    val taskContainer = TaskContainer()
+    val analyzer = CriticalPathAnalyzer(taskContainer, pluginContainer)
+    val wrapper = BuildAnalyzersWrapper(listOf(analyzer), taskContainer, pluginContainer)
+
+    val pluginA = createBinaryPluginIdentifierStub("pluginA", "my.gradle.plugin.PluginA")
+
+    wrapper.onBuildStart()
+    assertThat(analyzer.getCurrentCriticalPath()).isEmpty()
+
+    // A(0-10) -> B(10-15) -> D(15-40)
+    // |
+    // ---------> C(10-------------------50)
+    val taskA = createTaskFinishEventStub(":app:taskA", pluginA, emptyList(), 0, 10)
+    val taskB = createTaskFinishEventStub(":app:taskB", pluginA, listOf(taskA), 10, 15)
+    val taskD = createTaskFinishEventStub(":app:taskD", pluginA, listOf(taskB), 15, 40)
+    val taskC = createTaskFinishEventStub(":lib:taskC", pluginA, listOf(taskA), 10, 50)
+
+    wrapper.receiveEvent(taskA)
+    wrapper.receiveEvent(taskB)
+    assertThat(analyzer.getCurrentCriticalPath().map { it.getTaskPath() }).containsExactly(":app:taskA", ":app:taskB").inOrder()
+    assertThat(analyzer.getCurrentCriticalPathDuration()).isEqualTo(15)
+
+    wrapper.receiveEvent(taskD)
+    assertThat(analyzer.getCurrentCriticalPath().map { it.getTaskPath() })
+      .containsExactly(":app:taskA", ":app:taskB", ":app:taskD").inOrder()
+    assertThat(analyzer.getCurrentCriticalPathDuration()).isEqualTo(40)
+
+    wrapper.receiveEvent(taskC)
+    assertThat(analyzer.getCurrentCriticalPath().map { it.getTaskPath() }).containsExactly(":app:taskA", ":lib:taskC").inOrder()
+    assertThat(analyzer.getCurrentCriticalPathDuration()).isEqualTo(50)
+
+    // A new build starts from scratch.
+    wrapper.onBuildStart()
+    assertThat(analyzer.getCurrentCriticalPath()).isEmpty()
+  }
+
   @Test
   fun testCriticalPathAnalyzerOnNoOpBuild() {
     myProjectRule.load(TestProjectPaths.SIMPLE_APPLICATION)
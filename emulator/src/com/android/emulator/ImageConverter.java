@@ -34,11 +34,13 @@ import org.jetbrains.annotations.VisibleForTesting;
 public final class ImageConverter {
   private static Field bytesField;
   private static Field offsetField;
+  private static boolean nativeAvailable;
 
   static {
     try {
       loadNativeLibrary();
       initNative();
+      nativeAvailable = true;
       initByteStringFields();
     }
     catch (Throwable e) {
@@ -73,6 +75,35 @@ public final class ImageConverter {
     unpackRgb888Slow(imageBytes, pixels);
   }
 
+  /**
+   * Converts pixel values in RGB888 format to the 32-bit integers in the 0xAARRGGBB format.
+   * Unlike {@link #unpackRgb888(ByteString, int[])}, can convert a part of an image, e.g. a band
+   * of rows that changed since the previous frame.
+   *
+   * @param imageBytes the array containing pixel values to convert
+   * @param offset the offset of the first image byte to convert
+   * @param length the number of image bytes to convert; has to be a multiple of 3
+   * @param pixels the converted pixel values
+   * @param pixelOffset the index in {@code pixels} of the first converted pixel
+   */
+  public static void unpackRgb888(byte @NotNull [] imageBytes, int offset, int length, int @NotNull [] pixels, int pixelOffset) {
+    if (length % 3 != 0) {
+      throw new IllegalArgumentException("Number of bytes (" + length + ") is not a multiple of 3");
+    }
+    if (pixelOffset == 0 && nativeAvailable) {
+      unpackRgb888(imageBytes, offset, length, pixels);
+      return;
+    }
+    int end = offset + length;
+    int j = pixelOffset;
+    for (int i = offset; i < end; i += 3) {
+      int red = imageBytes[i] & 0xFF;
+      int green = imageBytes[i + 1] & 0xFF;
+      int blue = imageBytes[i + 2] & 0xFF;
+      pixels[j++] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+  }
+
   /**
    * Converts pixel values in RGB888 format to the 32-bit integers in the 0xAARRGGBB format without
    * using native code.
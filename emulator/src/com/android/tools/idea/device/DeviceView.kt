@@ -33,6 +33,7 @@ import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.Disposer
 import com.intellij.openapi.util.SystemInfo
+import com.intellij.util.Alarm
 import com.intellij.util.ui.UIUtil
 import kotlinx.coroutines.launch
 import java.awt.Component
@@ -120,6 +121,7 @@ class DeviceView(
   private val deviceDisplaySize = Dimension()
 
   private val displayTransform = AffineTransform()
+  private val paintAlarm = Alarm(this)
   private var disposed = false
 
   private var multiTouchMode = false
@@ -210,12 +212,18 @@ class DeviceView(
   private fun updateVideoSize() {
     val deviceClient = deviceClient ?: return
     val videoDecoder = deviceClient.videoDecoder
-    if (videoDecoder.maxOutputSize != realSize) {
-      videoDecoder.maxOutputSize = realSize
-      deviceClient.deviceController.sendControlMessage(SetMaxVideoResolutionMessage(realWidth, realHeight))
+    // Request a lower video resolution when painting can't keep up with the frames.
+    val maxOutputSize = realSize.scaled(framePacer.resolutionScale)
+    if (videoDecoder.maxOutputSize != maxOutputSize) {
+      videoDecoder.maxOutputSize = maxOutputSize
+      deviceClient.deviceController.sendControlMessage(SetMaxVideoResolutionMessage(maxOutputSize.width, maxOutputSize.height))
     }
   }
 
+  override fun frameQualityChanged() {
+    updateVideoSize()
+  }
+
   private fun disconnected(initialDisplayOrientation: Int, exception: Throwable? = null) {
     UIUtil.invokeLaterIfNeeded {
       if (disposed) {
@@ -259,6 +267,7 @@ class DeviceView(
     deviceDisplaySize.rotatedByQuadrants(rotationQuadrants)
 
   override fun paintComponent(g: Graphics) {
+    val paintStart = System.nanoTime()
     super.paintComponent(g)
 
     if (width == 0 || height == 0) {
@@ -295,7 +304,10 @@ class DeviceView(
       deviceDisplaySize.size = displayFrame.displaySize
       displayOrientationQuadrants = displayFrame.orientation
       displayOrientationCorrectionQuadrants = displayFrame.orientationCorrection
-      frameNumber = displayFrame.frameNumber
+      if (frameNumber != displayFrame.frameNumber) {
+        frameNumber = displayFrame.frameNumber
+        framePacer.framePainted(System.nanoTime() - paintStart)
+      }
       notifyFrameListeners(displayRect, displayFrame.image)
 
       deviceClient?.apply {
@@ -456,7 +468,14 @@ class DeviceView(
           connectionState = ConnectionState.CONNECTED
         }
         if (width != 0 && height != 0 && deviceClient != null) {
-          repaint()
+          // When the frame rate is limited, the frame is painted after a delay unless replaced by a newer one.
+          val paintDelay = framePacer.paintDelayMillis()
+          if (paintDelay == 0L) {
+            repaint()
+          }
+          else if (paintAlarm.isEmpty) {
+            paintAlarm.addRequest({ repaint() }, paintDelay)
+          }
         }
       }
     }
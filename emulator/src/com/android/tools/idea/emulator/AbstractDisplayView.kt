@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.emulator
 
+import com.android.annotations.concurrency.UiThread
 import com.android.tools.adtui.actions.ZoomType
 import com.android.tools.adtui.common.primaryPanelBackground
 import com.android.tools.idea.concurrency.AndroidCoroutineScope
@@ -24,6 +25,7 @@ import com.intellij.ui.scale.JBUIScale
 import kotlinx.coroutines.launch
 import org.jetbrains.annotations.VisibleForTesting
 import java.awt.Color
+import java.awt.EventQueue
 import java.awt.Graphics
 import java.awt.Graphics2D
 import java.awt.KeyboardFocusManager.getCurrentKeyboardFocusManager
@@ -63,6 +65,14 @@ abstract class AbstractDisplayView(val displayId: Int) : ZoomablePanel(), Dispos
   @get:VisibleForTesting
   var frameNumber: Int = 0
     protected set
+  /** Frame rate, latency and quality of the display frames, for diagnostics. */
+  val frameStatistics: FramePacer.Statistics
+    get() = framePacer.statistics
+
+  /** Paces painting of the display frames and adapts their quality to the load. */
+  protected val framePacer = FramePacer(this) {
+    EventQueue.invokeLater { frameQualityChanged() } // This is safe because this code doesn't touch PSI or VFS.
+  }
 
   private val disconnectedStateMessage = JBLabel("", SwingConstants.CENTER)
   private val reconnectButton = JButton("Reconnect")
@@ -243,6 +253,12 @@ abstract class AbstractDisplayView(val displayId: Int) : ZoomablePanel(), Dispos
     return round(value * multiplier) / multiplier
   }
 
+  /**
+   * Called on the UI thread when [framePacer] changes the resolution or the frame rate of the display frames.
+   */
+  @UiThread
+  protected abstract fun frameQualityChanged()
+
   protected fun notifyFrameListeners(displayRectangle: Rectangle, frame: BufferedImage) {
     for (listener in frameListeners) {
       listener.frameRendered(frameNumber, displayRectangle, displayOrientationQuadrants, frame)
@@ -18,7 +18,6 @@ package com.android.tools.idea.emulator
 import com.android.annotations.concurrency.GuardedBy
 import com.android.annotations.concurrency.Slow
 import com.android.annotations.concurrency.UiThread
-import com.android.emulator.ImageConverter
 import com.android.emulator.control.DisplayModeValue
 import com.android.emulator.control.ImageFormat
 import com.android.emulator.control.KeyboardEvent
@@ -40,6 +39,7 @@ import com.android.tools.idea.emulator.EmulatorConfiguration.DisplayMode
 import com.android.tools.idea.emulator.EmulatorController.ConnectionState
 import com.android.tools.idea.emulator.EmulatorController.ConnectionStateListener
 import com.android.tools.idea.flags.StudioFlags
+import com.android.tools.idea.flags.StudioFlags.EMBEDDED_EMULATOR_SHARED_MEMORY_SCREENSHOTS
 import com.android.tools.idea.flags.StudioFlags.EMBEDDED_EMULATOR_TRACE_NOTIFICATIONS
 import com.android.tools.idea.flags.StudioFlags.EMBEDDED_EMULATOR_TRACE_SCREENSHOTS
 import com.google.protobuf.TextFormat.shortDebugString
@@ -72,9 +72,7 @@ import java.awt.EventQueue
 import java.awt.Graphics
 import java.awt.Graphics2D
 import java.awt.MouseInfo
-import java.awt.Point
 import java.awt.Rectangle
-import java.awt.color.ColorSpace
 import java.awt.event.ComponentAdapter
 import java.awt.event.ComponentEvent
 import java.awt.event.FocusEvent
@@ -110,11 +108,6 @@ import java.awt.event.MouseEvent.BUTTON2
 import java.awt.event.MouseEvent.BUTTON3
 import java.awt.geom.AffineTransform
 import java.awt.image.BufferedImage
-import java.awt.image.DataBuffer
-import java.awt.image.DataBufferInt
-import java.awt.image.DirectColorModel
-import java.awt.image.Raster
-import java.awt.image.SinglePixelPackedSampleModel
 import java.util.concurrent.atomic.AtomicReference
 import kotlin.math.PI
 import kotlin.math.abs
@@ -174,6 +167,8 @@ class EmulatorView(
   private var screenshotFeed: Cancelable? = null
   @Volatile
   private var screenshotReceiver: ScreenshotReceiver? = null
+  /** Shared with the successive screenshot feeds of the display, sized for frames of the full display resolution. */
+  private var screenshotSharedMemory: ScreenshotSharedMemory? = null
 
   private var notificationFeed: Cancelable? = null
   @Volatile
@@ -268,6 +263,10 @@ class EmulatorView(
           requestNotificationFeed()
         }
       }
+
+      override fun componentHidden(event: ComponentEvent) {
+        cancelScreenshotFeed() // Don't receive frames that nobody will see.
+      }
     })
 
     // Forward mouse & keyboard events.
@@ -306,6 +305,8 @@ class EmulatorView(
   override fun dispose() {
     cancelNotificationFeed()
     cancelScreenshotFeed()
+    screenshotSharedMemory?.let { Disposer.dispose(it) }
+    screenshotSharedMemory = null
     emulator.removeConnectionStateListener(this)
     stats?.let { Disposer.dispose(it) } // The stats object has to be disposed last.
   }
@@ -390,6 +391,7 @@ class EmulatorView(
   }
 
   override fun paintComponent(g: Graphics) {
+    val paintStart = System.nanoTime()
     super.paintComponent(g)
 
     val screenshot = lastScreenshot ?: return
@@ -428,6 +430,7 @@ class EmulatorView(
       screenshot.painted = true
       val paintTime = System.currentTimeMillis()
       stats?.recordLatencyEndToEnd(paintTime - screenshot.frameOriginationTime)
+      framePacer.framePainted(System.nanoTime() - paintStart)
     }
   }
 
@@ -473,6 +476,13 @@ class EmulatorView(
       maxSize.width = maxSize.width.coerceAtMost(displaySize.width)
       maxSize.height = maxSize.height.coerceAtMost(displaySize.height)
 
+      // Request smaller frames when painting can't keep up with them.
+      val resolutionScale = framePacer.resolutionScale
+      if (resolutionScale < 1) {
+        maxSize.width = maxSize.width.scaled(resolutionScale)
+        maxSize.height = maxSize.height.scaled(resolutionScale)
+      }
+
       val maxImageSize = maxSize.rotatedByQuadrants(orientationQuadrants)
 
       val currentReceiver = screenshotReceiver
@@ -487,10 +497,36 @@ class EmulatorView(
         .setFormat(ImageFormat.ImgFormat.RGB888)
         .setWidth(maxImageSize.width)
         .setHeight(maxImageSize.height)
-        .build()
-      val receiver = ScreenshotReceiver(maxImageSize, orientationQuadrants)
+      val sharedMemory = if (EMBEDDED_EMULATOR_SHARED_MEMORY_SCREENSHOTS.get()) {
+        getScreenshotSharedMemory(displaySize)?.also { imageFormat.transport = it.transport }
+      }
+      else {
+        null
+      }
+      val receiver = ScreenshotReceiver(maxImageSize, orientationQuadrants, resolutionScale, sharedMemory)
       screenshotReceiver = receiver
-      screenshotFeed = emulator.streamScreenshot(imageFormat, receiver)
+      screenshotFeed = emulator.streamScreenshot(imageFormat.build(), receiver)
+    }
+  }
+
+  /**
+   * Returns the shared memory for screenshots of the display, creating it if it doesn't exist yet or is too small for [displaySize].
+   * The frames requested by the screenshot feeds never exceed the display resolution, so the same shared memory is reused when a feed
+   * is restarted with a different image size or orientation.
+   */
+  private fun getScreenshotSharedMemory(displaySize: Dimension): ScreenshotSharedMemory? {
+    val current = screenshotSharedMemory
+    if (current != null && current.size >= displaySize.width * displaySize.height * 3) {
+      return current
+    }
+    current?.let { Disposer.dispose(it) }
+    return ScreenshotSharedMemory.create(displaySize.width, displaySize.height).also { screenshotSharedMemory = it }
+  }
+
+  override fun frameQualityChanged() {
+    // The frame rate is applied when painting, only a different resolution requires a new screenshot feed.
+    if (screenshotReceiver?.resolutionScale != framePacer.resolutionScale) {
+      requestScreenshotFeed()
     }
   }
 
@@ -844,13 +880,17 @@ class EmulatorView(
 
   private inner class ScreenshotReceiver(
     val maxImageSize: Dimension,
-    val orientationQuadrants: Int
+    val orientationQuadrants: Int,
+    val resolutionScale: Double,
+    private val sharedMemory: ScreenshotSharedMemory?
   ) : EmptyStreamObserver<ImageMessage>(), Disposable {
     private val screenshotForProcessing = AtomicReference<Screenshot?>()
     private val screenshotForDisplay = AtomicReference<Screenshot?>()
     private val skinLayoutCache = SkinLayoutCache(emulator)
     private val recycledImage = AtomicReference<SofterReference<BufferedImage>?>()
     private val alarm = Alarm(this)
+    private val paintAlarm = Alarm(this)
+    private val decoder = ScreenshotDecoder()
     private var expectedFrameNumber = -1
 
     override fun onNext(response: ImageMessage) {
@@ -877,10 +917,16 @@ class EmulatorView(
         return // Ignore empty screenshot.
       }
 
-      if (response.image.size() != imageFormat.width * imageFormat.height * 3) {
-        LOG.error("Inconsistent ImageMessage: ${imageFormat.width}x${imageFormat.width} image contains ${response.image.size()} bytes" +
-                  " instead of ${imageFormat.width * imageFormat.height * 3}")
-        return
+      val imageSize = imageFormat.width * imageFormat.height * 3
+      val imageBytes = when {
+        response.image.size() == imageSize -> response.image.asReadOnlyByteBuffer()
+        // With the shared memory transport the image is not included in the message.
+        response.image.isEmpty && sharedMemory != null && sharedMemory.size >= imageSize -> sharedMemory.buffer
+        else -> {
+          LOG.error("Inconsistent ImageMessage: ${imageFormat.width}x${imageFormat.width} image contains ${response.image.size()} bytes" +
+                    " instead of $imageSize")
+          return
+        }
       }
 
       // It is possible that the snapshot feed was requested assuming an out of date device rotation.
@@ -907,24 +953,13 @@ class EmulatorView(
       }
 
       alarm.cancelAllRequests()
-      val recycledImage = recycledImage.getAndSet(null)?.get()
-      val image = if (recycledImage?.width == imageFormat.width && recycledImage.height == imageFormat.height) {
-        val pixels = (recycledImage.raster.dataBuffer as DataBufferInt).data
-        ImageConverter.unpackRgb888(response.image, pixels)
-        recycledImage
-      }
-      else {
-        val pixels = IntArray(imageFormat.width * imageFormat.height)
-        ImageConverter.unpackRgb888(response.image, pixels)
-        val buffer = DataBufferInt(pixels, pixels.size)
-        val sampleModel = SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, imageFormat.width, imageFormat.height, SAMPLE_MODEL_BIT_MASKS)
-        val raster = Raster.createWritableRaster(sampleModel, buffer, ZERO_POINT)
-        @Suppress("UndesirableClassUsage")
-        BufferedImage(COLOR_MODEL, raster, false, null)
-      }
+      val image = decoder.decode(imageBytes, imageFormat.width, imageFormat.height, recycledImage.getAndSet(null)?.get())
 
       val lostFrames = if (expectedFrameNumber > 0) response.seq - expectedFrameNumber else 0
       stats?.recordFrameArrival(arrivalTime - frameOriginationTime, lostFrames, imageFormat.width * imageFormat.height)
+      if (frameOriginationTime != 0L) {
+        framePacer.frameArrived(arrivalTime - frameOriginationTime)
+      }
       expectedFrameNumber = response.seq + 1
 
       if (displayMode != null && !checkAspectRatioConsistency(imageFormat, displayMode)) {
@@ -983,25 +1018,38 @@ class EmulatorView(
     }
 
     private fun updateDisplayImageOnUiThread(screenshot: Screenshot) {
-      screenshotForDisplay.set(screenshot)
+      if (screenshotForDisplay.getAndSet(screenshot) != null) {
+        // The previous screenshot has not been displayed yet and is replaced by a newer one.
+        stats?.recordDroppedFrame()
+        framePacer.frameDropped()
+      }
 
-      EventQueue.invokeLater { // This is safe because this code doesn't touch PSI or VFS.
-        // If the screenshot feed has not been cancelled, update the display image.
-        if (screenshotReceiver == this) {
-          updateDisplayImage()
+      val paintDelay = framePacer.paintDelayMillis()
+      if (paintDelay == 0L) {
+        EventQueue.invokeLater { // This is safe because this code doesn't touch PSI or VFS.
+          // If the screenshot feed has not been cancelled, update the display image.
+          if (screenshotReceiver == this) {
+            updateDisplayImage()
+          }
         }
       }
+      else {
+        // The frame rate is limited. The screenshot is displayed unless replaced by a newer one before the delay expires.
+        paintAlarm.cancelAllRequests()
+        paintAlarm.addRequest({
+          if (screenshotReceiver == this) {
+            updateDisplayImage()
+          }
+        }, paintDelay, ModalityState.any())
+      }
     }
 
     @UiThread
     private fun updateDisplayImage() {
       hideLongRunningOperationIndicatorInstantly()
 
-      val screenshot = screenshotForDisplay.getAndSet(null)
-      if (screenshot == null) {
-        stats?.recordDroppedFrame()
-        return
-      }
+      // The screenshot may have already been displayed by an earlier call.
+      val screenshot = screenshotForDisplay.getAndSet(null) ?: return
 
       // Creation of a large BufferedImage is expensive. Recycle the old image if it has the proper size.
       lastScreenshot?.image?.let {
@@ -1154,11 +1202,6 @@ private var emulatorOutOfDateNotificationShown = false
 private const val VIRTUAL_SCENE_CAMERA_ROTATION_STEP_DEGREES = 5
 private const val VIRTUAL_SCENE_CAMERA_ROTATION_STEP_RADIAN = VIRTUAL_SCENE_CAMERA_ROTATION_STEP_DEGREES * PI / 180
 
-private val ZERO_POINT = Point()
-private const val ALPHA_MASK = 0xFF shl 24
-private val SAMPLE_MODEL_BIT_MASKS = intArrayOf(0xFF0000, 0xFF00, 0xFF, ALPHA_MASK)
-private val COLOR_MODEL = DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
-                                           32, 0xFF0000, 0xFF00, 0xFF, ALPHA_MASK, false, DataBuffer.TYPE_INT)
 private const val CACHED_IMAGE_LIVE_TIME_MILLIS = 2000
 // In Android MotionEvent, the right button is secondary and the middle button is tertiary, while in AWT the middle button is secondary and
 // the right button is tertiary. Here the bits are for the Android (and the emulator gRPC) definition.
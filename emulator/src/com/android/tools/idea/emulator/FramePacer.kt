@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.emulator
+
+import com.android.annotations.concurrency.GuardedBy
+import com.android.tools.idea.flags.StudioFlags
+import com.intellij.openapi.Disposable
+import com.intellij.util.Alarm
+import org.jetbrains.annotations.VisibleForTesting
+import java.util.concurrent.TimeUnit
+import kotlin.math.max
+
+/**
+ * Paces the display frames of an [AbstractDisplayView] and adapts their quality to the load of the UI thread and of the connection
+ * to the device.
+ *
+ * The view reports the frames it receives, the frames it drops because a newer one arrived before they were painted, and the time
+ * it takes to paint each frame. When painting is slow, frames arrive late, or frames are dropped because the UI thread doesn't get
+ * to them, the pacer lowers the quality level by one step: the view requests frames of a lower resolution ([resolutionScale]) and
+ * paints them at a lower rate ([paintDelayMillis]). Each quality level is kept for at least [RESTORE_INTERVAL_NANOS] after the last
+ * sign of pressure, after which the quality is raised one step at a time, also when no frames arrive.
+ *
+ * [qualityListener] is called on an arbitrary thread when the quality level changes. The quality level stays at its highest unless the
+ * [StudioFlags.EMBEDDED_EMULATOR_ADAPTIVE_FRAME_QUALITY] flag is set.
+ */
+class FramePacer(
+  parentDisposable: Disposable,
+  private val clock: () -> Long = System::nanoTime,
+  private val qualityListener: () -> Unit
+) {
+  private val restoreAlarm = Alarm(Alarm.ThreadToUse.POOLED_THREAD, parentDisposable)
+  private val adaptive = StudioFlags.EMBEDDED_EMULATOR_ADAPTIVE_FRAME_QUALITY.get()
+
+  @GuardedBy("this")
+  private var qualityLevel = 0
+  @GuardedBy("this")
+  private var lastQualityChangeTime = clock()
+  @GuardedBy("this")
+  private var lastPressureTime = lastQualityChangeTime
+  @GuardedBy("this")
+  private var lastPaintTime = 0L
+  @GuardedBy("this")
+  private var paintedFrames = 0
+  @GuardedBy("this")
+  private var droppedFrames = 0
+  /** Frames dropped since the last paint that were not held back by pacing, i.e. that the UI thread didn't get to. */
+  @GuardedBy("this")
+  private var overrunFrames = 0
+  @GuardedBy("this")
+  private var averagePaintTimeNanos = 0.0
+  @GuardedBy("this")
+  private var averagePaintIntervalNanos = 0.0
+  @GuardedBy("this")
+  private var averageLatencyMillis = 0.0
+
+  /** The factor by which the view should scale down the resolution of the frames it requests. */
+  val resolutionScale: Double
+    @Synchronized get() = QUALITY_LEVELS[qualityLevel].resolutionScale
+
+  /** The maximum number of frames per second the view should paint, or 0 if not limited. */
+  val maxFrameRate: Int
+    @Synchronized get() = QUALITY_LEVELS[qualityLevel].maxFrameRate
+
+  val statistics: Statistics
+    @Synchronized get() = Statistics(
+      frameRate = if (averagePaintIntervalNanos > 0) TimeUnit.SECONDS.toNanos(1) / averagePaintIntervalNanos else 0.0,
+      averagePaintTimeMillis = averagePaintTimeNanos / TimeUnit.MILLISECONDS.toNanos(1),
+      averageLatencyMillis = averageLatencyMillis,
+      paintedFrames = paintedFrames,
+      droppedFrames = droppedFrames,
+      resolutionScale = QUALITY_LEVELS[qualityLevel].resolutionScale,
+      maxFrameRate = QUALITY_LEVELS[qualityLevel].maxFrameRate)
+
+  /**
+   * Records the arrival of a frame [latencyMillis] after it was produced by the device.
+   */
+  fun frameArrived(latencyMillis: Long) {
+    val qualityChanged = synchronized(this) {
+      averageLatencyMillis = movingAverage(averageLatencyMillis, latencyMillis.toDouble())
+      updateQuality(clock())
+    }
+    if (qualityChanged) {
+      qualityChanged()
+    }
+  }
+
+  /**
+   * Records a frame that was replaced by a newer one before being painted.
+   */
+  fun frameDropped() {
+    val qualityChanged = synchronized(this) {
+      droppedFrames++
+      val now = clock()
+      if (nanosUntilNextPaint(now) <= 0) {
+        overrunFrames++
+      }
+      updateQuality(now)
+    }
+    if (qualityChanged) {
+      qualityChanged()
+    }
+  }
+
+  /**
+   * Records painting of a new frame that took [paintTimeNanos].
+   */
+  fun framePainted(paintTimeNanos: Long) {
+    val qualityChanged = synchronized(this) {
+      val now = clock()
+      if (paintedFrames > 0) {
+        averagePaintIntervalNanos = movingAverage(averagePaintIntervalNanos, (now - lastPaintTime).toDouble())
+      }
+      averagePaintTimeNanos = movingAverage(averagePaintTimeNanos, paintTimeNanos.toDouble())
+      lastPaintTime = now
+      paintedFrames++
+      val changed = updateQuality(now)
+      overrunFrames = 0
+      changed
+    }
+    if (qualityChanged) {
+      qualityChanged()
+    }
+  }
+
+  /**
+   * Returns the number of milliseconds the view should wait before painting a new frame.
+   */
+  @Synchronized
+  fun paintDelayMillis(): Long {
+    val nanos = nanosUntilNextPaint(clock())
+    return if (nanos <= 0) 0 else TimeUnit.NANOSECONDS.toMillis(nanos) + 1
+  }
+
+  @GuardedBy("this")
+  private fun nanosUntilNextPaint(now: Long): Long {
+    val maxFrameRate = QUALITY_LEVELS[qualityLevel].maxFrameRate
+    if (maxFrameRate == 0 || paintedFrames == 0) {
+      return 0
+    }
+    return lastPaintTime + TimeUnit.SECONDS.toNanos(1) / maxFrameRate - now
+  }
+
+  /**
+   * Lowers the quality level if there are signs of pressure and the current level has been in effect long enough to judge it.
+   * Returns true if the quality level changed.
+   */
+  @GuardedBy("this")
+  private fun updateQuality(now: Long): Boolean {
+    val underPressure = averagePaintTimeNanos > PAINT_TIME_BUDGET_NANOS ||
+                        averageLatencyMillis > MAX_LATENCY_MILLIS ||
+                        overrunFrames > MAX_OVERRUN_FRAMES
+    if (!underPressure || !adaptive) {
+      return false
+    }
+    lastPressureTime = now
+    if (qualityLevel == QUALITY_LEVELS.size - 1 || now - lastQualityChangeTime < DEGRADE_INTERVAL_NANOS) {
+      return false
+    }
+    setQualityLevel(qualityLevel + 1, now)
+    return true
+  }
+
+  /**
+   * Raises the quality level if there were no signs of pressure for [RESTORE_INTERVAL_NANOS]. Returns the number of nanoseconds after
+   * which the quality level may be raised next, or 0 if it is at its highest.
+   */
+  @VisibleForTesting
+  internal fun restoreQuality(): Long {
+    val delay: Long
+    val qualityChanged: Boolean
+    synchronized(this) {
+      if (qualityLevel == 0) {
+        return 0
+      }
+      val now = clock()
+      val remaining = max(lastPressureTime, lastQualityChangeTime) + RESTORE_INTERVAL_NANOS - now
+      qualityChanged = remaining <= 0
+      if (qualityChanged) {
+        setQualityLevel(qualityLevel - 1, now)
+      }
+      delay = if (qualityLevel == 0) 0 else if (qualityChanged) RESTORE_INTERVAL_NANOS else remaining
+    }
+    if (qualityChanged) {
+      qualityListener()
+    }
+    return delay
+  }
+
+  @GuardedBy("this")
+  private fun setQualityLevel(level: Int, now: Long) {
+    qualityLevel = level
+    lastQualityChangeTime = now
+    // The averages reflect the previous quality level.
+    averagePaintTimeNanos = 0.0
+    averageLatencyMillis = 0.0
+    overrunFrames = 0
+  }
+
+  private fun qualityChanged() {
+    qualityListener()
+    scheduleRestore(RESTORE_INTERVAL_NANOS)
+  }
+
+  private fun scheduleRestore(delayNanos: Long) {
+    restoreAlarm.cancelAllRequests()
+    restoreAlarm.addRequest({
+      val delay = restoreQuality()
+      if (delay > 0) {
+        scheduleRestore(delay)
+      }
+    }, TimeUnit.NANOSECONDS.toMillis(delayNanos) + 1)
+  }
+
+  private fun movingAverage(average: Double, value: Double) = average + (value - average) / MOVING_AVERAGE_WINDOW
+
+  /** Frame rate, latency and quality of the frames of a display view, for diagnostics. */
+  data class Statistics(
+    val frameRate: Double,
+    val averagePaintTimeMillis: Double,
+    val averageLatencyMillis: Double,
+    val paintedFrames: Int,
+    val droppedFrames: Int,
+    val resolutionScale: Double,
+    val maxFrameRate: Int
+  )
+
+  private class QualityLevel(val resolutionScale: Double, val maxFrameRate: Int)
+
+  companion object {
+    private val QUALITY_LEVELS = arrayOf(QualityLevel(1.0, 0), QualityLevel(0.75, 60), QualityLevel(0.5, 30), QualityLevel(0.5, 15))
+    /** Half of the frame interval at 60 frames per second. */
+    private val PAINT_TIME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(8)
+    private const val MAX_LATENCY_MILLIS = 100
+    private const val MAX_OVERRUN_FRAMES = 2
+    private val DEGRADE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1)
+    @VisibleForTesting
+    internal val RESTORE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5)
+    private const val MOVING_AVERAGE_WINDOW = 8
+  }
+}
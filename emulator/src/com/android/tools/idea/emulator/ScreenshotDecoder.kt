@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.emulator
+
+import com.android.emulator.ImageConverter
+import java.awt.Point
+import java.awt.color.ColorSpace
+import java.awt.image.BufferedImage
+import java.awt.image.DataBuffer
+import java.awt.image.DataBufferInt
+import java.awt.image.DirectColorModel
+import java.awt.image.Raster
+import java.awt.image.SinglePixelPackedSampleModel
+import java.nio.ByteBuffer
+import java.util.Arrays
+import java.util.WeakHashMap
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Converts the RGB888 frames of a screenshot stream to images.
+ *
+ * Each frame is copied once from the gRPC message or the shared memory it was received in, and compared to the previous frame to find
+ * the band of rows that changed. An image that holds one of the recent frames is brought up to date by converting only the rows that
+ * changed since that frame, which for a typical UI, with a blinking cursor or a small animation, is a small part of the display.
+ *
+ * This class is not thread safe.
+ */
+internal class ScreenshotDecoder {
+  private var width = 0
+  private var height = 0
+  private var frame = ByteArray(0)
+  private var previousFrame = ByteArray(0)
+  /** The number of frames decoded since the last change of the image size. */
+  private var frameCount = 0
+  /** The first changed row and the row after the last changed row of each of the recent frames, indexed by frame count. */
+  private val changedRowStarts = IntArray(CHANGE_HISTORY_SIZE)
+  private val changedRowEnds = IntArray(CHANGE_HISTORY_SIZE)
+  /** The count of the frame held by each image returned by [decode]. */
+  private val imageFrames = WeakHashMap<BufferedImage, Int>()
+
+  /**
+   * Returns an image containing a [width] by [height] frame read from [imageBytes] starting at its current position. [recycledImage],
+   * if not null and of the right size, is updated and returned instead of a new image.
+   */
+  fun decode(imageBytes: ByteBuffer, width: Int, height: Int, recycledImage: BufferedImage?): BufferedImage {
+    val size = width * height * 3
+    if (width != this.width || height != this.height) {
+      this.width = width
+      this.height = height
+      frame = ByteArray(size)
+      previousFrame = ByteArray(size)
+      frameCount = 0
+      imageFrames.clear()
+    }
+    else {
+      val temp = previousFrame
+      previousFrame = frame
+      frame = temp
+    }
+    imageBytes.slice().get(frame, 0, size)
+    frameCount++
+    recordChangedRows()
+
+    val image: BufferedImage
+    val imageFrame = recycledImage?.let { imageFrames[it] }
+    if (recycledImage != null && imageFrame != null && frameCount - imageFrame <= CHANGE_HISTORY_SIZE) {
+      image = recycledImage
+      var start = height
+      var end = 0
+      for (i in imageFrame + 1..frameCount) {
+        val index = i % CHANGE_HISTORY_SIZE
+        if (changedRowStarts[index] < changedRowEnds[index]) {
+          start = min(start, changedRowStarts[index])
+          end = max(end, changedRowEnds[index])
+        }
+      }
+      if (start < end) {
+        convertRows(image, start, end)
+      }
+    }
+    else {
+      image = if (recycledImage?.width == width && recycledImage.height == height) recycledImage else createImage(width, height)
+      convertRows(image, 0, height)
+    }
+    imageFrames[image] = frameCount
+    return image
+  }
+
+  private fun recordChangedRows() {
+    val index = frameCount % CHANGE_HISTORY_SIZE
+    if (frameCount == 1) {
+      changedRowStarts[index] = 0
+      changedRowEnds[index] = height
+      return
+    }
+    val rowSize = width * 3
+    val firstMismatch = Arrays.mismatch(frame, 0, frame.size, previousFrame, 0, previousFrame.size)
+    if (firstMismatch < 0) {
+      changedRowStarts[index] = 0
+      changedRowEnds[index] = 0
+      return
+    }
+    val start = firstMismatch / rowSize
+    var end = height
+    while (end > start + 1) {
+      val rowOffset = (end - 1) * rowSize
+      if (Arrays.mismatch(frame, rowOffset, rowOffset + rowSize, previousFrame, rowOffset, rowOffset + rowSize) >= 0) {
+        break
+      }
+      end--
+    }
+    changedRowStarts[index] = start
+    changedRowEnds[index] = end
+  }
+
+  private fun convertRows(image: BufferedImage, start: Int, end: Int) {
+    val pixels = (image.raster.dataBuffer as DataBufferInt).data
+    ImageConverter.unpackRgb888(frame, start * width * 3, (end - start) * width * 3, pixels, start * width)
+  }
+
+  private fun createImage(width: Int, height: Int): BufferedImage {
+    val buffer = DataBufferInt(width * height)
+    val sampleModel = SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, height, SAMPLE_MODEL_BIT_MASKS)
+    val raster = Raster.createWritableRaster(sampleModel, buffer, ZERO_POINT)
+    @Suppress("UndesirableClassUsage")
+    return BufferedImage(COLOR_MODEL, raster, false, null)
+  }
+}
+
+/** The number of recent frames for which the changed rows are remembered. */
+private const val CHANGE_HISTORY_SIZE = 8
+
+private val ZERO_POINT = Point()
+private const val ALPHA_MASK = 0xFF shl 24
+private val SAMPLE_MODEL_BIT_MASKS = intArrayOf(0xFF0000, 0xFF00, 0xFF, ALPHA_MASK)
+private val COLOR_MODEL = DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                                           32, 0xFF0000, 0xFF00, 0xFF, ALPHA_MASK, false, DataBuffer.TYPE_INT)
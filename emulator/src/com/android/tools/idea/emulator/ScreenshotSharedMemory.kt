@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.emulator
+
+import com.android.emulator.control.ImageTransport
+import com.android.emulator.control.ImageTransport.TransportChannel
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.util.io.FileUtil
+import java.io.IOException
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * A memory mapped file through which the emulator sends screenshots. When requested with [transport], the emulator writes each frame
+ * to the file and sends only the metadata of the frame over gRPC, which saves copying the frame into and out of a gRPC message.
+ */
+internal class ScreenshotSharedMemory private constructor(
+  private val file: Path,
+  private val channel: FileChannel,
+  val size: Int
+) : Disposable {
+  val buffer: MappedByteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size.toLong())
+
+  val transport: ImageTransport
+    get() = ImageTransport.newBuilder()
+      .setChannel(TransportChannel.MMAP)
+      .setHandle(file.toUri().toString())
+      .build()
+
+  override fun dispose() {
+    try {
+      channel.close()
+      Files.deleteIfExists(file)
+    }
+    catch (e: IOException) {
+      // The file is deleted on exit if it cannot be deleted while mapped.
+      logger.warn("Unable to delete $file", e)
+    }
+  }
+
+  companion object {
+    private val logger = Logger.getInstance(ScreenshotSharedMemory::class.java)
+
+    /**
+     * Creates a shared memory large enough for an RGB888 image of [maxWidth] by [maxHeight] pixels, or returns null if it cannot be
+     * created.
+     */
+    fun create(maxWidth: Int, maxHeight: Int): ScreenshotSharedMemory? {
+      var file: Path? = null
+      var channel: FileChannel? = null
+      return try {
+        file = FileUtil.createTempFile("emulator-screenshot", ".rgb", true).toPath()
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        ScreenshotSharedMemory(file, channel, maxWidth * maxHeight * 3)
+      }
+      catch (e: IOException) {
+        logger.warn("Unable to create shared memory for screenshots, they will be received over gRPC", e)
+        channel?.close()
+        file?.let { FileUtil.delete(it) }
+        null
+      }
+    }
+  }
+}
@@ -16,6 +16,8 @@
 package com.android.tools.idea.emulator
 
 import com.android.emulator.control.FoldedDisplay
+import com.android.emulator.control.ImageFormat
+import com.android.emulator.control.ImageTransport.TransportChannel
 import com.android.emulator.control.ThemingStyle
 import com.android.testutils.ImageDiffUtil
 import com.android.testutils.MockitoKt.any
@@ -26,6 +28,7 @@ import com.android.tools.adtui.actions.ZoomType
 import com.android.tools.adtui.swing.*
 import com.android.tools.idea.concurrency.waitForCondition
 import com.android.tools.idea.emulator.FakeEmulator.GrpcCallRecord
+import com.android.tools.idea.flags.StudioFlags
 import com.android.tools.idea.protobuf.TextFormat.shortDebugString
 import com.android.tools.idea.testing.mockStatic
 import com.google.common.truth.Truth.assertThat
@@ -296,6 +299,32 @@ class EmulatorViewTest {
     assertThat(call.completion.isDone).isFalse() // The latest call is still ongoing.
   }
 
+  @Test
+  fun testSharedMemoryScreenshots() {
+    StudioFlags.EMBEDDED_EMULATOR_SHARED_MEMORY_SCREENSHOTS.override(true)
+    try {
+      val view = emulatorViewRule.newEmulatorView()
+
+      val container = createScrollPane(view)
+      val ui = FakeUi(container, 2.0)
+
+      var frameNumber = view.frameNumber
+      assertThat(frameNumber).isEqualTo(0)
+      container.size = Dimension(200, 300)
+      ui.layoutAndDispatchEvents()
+      val call = getStreamScreenshotCallAndWaitForFrame(ui, view, ++frameNumber)
+      val request = call.request as ImageFormat
+      assertThat(request.transport.channel).isEqualTo(TransportChannel.MMAP)
+      assertThat(request.transport.handle).startsWith("file:")
+      assertThat(shortDebugString(request.toBuilder().clearTransport())).isEqualTo("format: RGB888 width: 363 height: 547")
+      // The image received through shared memory looks the same as the one received in the gRPC message.
+      assertAppearance(ui, "EmulatorView1")
+    }
+    finally {
+      StudioFlags.EMBEDDED_EMULATOR_SHARED_MEMORY_SCREENSHOTS.clearOverride()
+    }
+  }
+
   @Test
   fun testFolding() {
     val view = emulatorViewRule.newEmulatorView { path -> FakeEmulator.createFoldableAvd(path) }
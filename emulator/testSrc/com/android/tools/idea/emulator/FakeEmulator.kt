@@ -26,6 +26,7 @@ import com.android.emulator.control.FoldedDisplay
 import com.android.emulator.control.Image
 import com.android.emulator.control.ImageFormat
 import com.android.emulator.control.ImageFormat.ImgFormat
+import com.android.emulator.control.ImageTransport.TransportChannel
 import com.android.emulator.control.KeyboardEvent
 import com.android.emulator.control.MouseEvent
 import com.android.emulator.control.Notification
@@ -84,16 +85,21 @@ import java.awt.geom.Path2D
 import java.awt.image.BufferedImage
 import java.awt.image.BufferedImage.TYPE_INT_ARGB
 import java.io.ByteArrayOutputStream
+import java.net.URI
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
 import java.nio.charset.StandardCharsets.UTF_8
 import java.nio.file.CopyOption
 import java.nio.file.FileVisitResult
 import java.nio.file.Files
 import java.nio.file.NoSuchFileException
 import java.nio.file.Path
+import java.nio.file.Paths
 import java.nio.file.SimpleFileVisitor
 import java.nio.file.StandardCopyOption
 import java.nio.file.StandardOpenOption.CREATE
 import java.nio.file.StandardOpenOption.CREATE_NEW
+import java.nio.file.StandardOpenOption.WRITE
 import java.nio.file.attribute.BasicFileAttributes
 import java.util.concurrent.CancellationException
 import java.util.concurrent.ExecutorService
@@ -446,9 +452,15 @@ class FakeEmulator(val avdFolder: Path, val grpcPort: Int, registrationDirectory
     displayMode?.let { imageFormat.displayMode = it.displayModeId }
 
     val response = Image.newBuilder()
-      .setImage(ByteString.copyFrom(imageBytes))
       .setFormat(imageFormat)
       .setSeq(++frameNumber)
+    if (request.transport.channel == TransportChannel.MMAP) {
+      // Like the real emulator, write the image to the shared memory and send only its format.
+      FileChannel.open(Paths.get(URI(request.transport.handle)), WRITE).use { it.write(ByteBuffer.wrap(imageBytes), 0) }
+    }
+    else {
+      response.image = ByteString.copyFrom(imageBytes)
+    }
     sendStreamingResponse(responseObserver, response.build())
   }
 
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.emulator
+
+import com.android.tools.idea.flags.StudioFlags
+import com.google.common.truth.Truth.assertThat
+import com.intellij.testFramework.ApplicationRule
+import com.intellij.testFramework.DisposableRule
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.RuleChain
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for [FramePacer].
+ */
+class FramePacerTest {
+  private val disposableRule = DisposableRule()
+  @get:Rule
+  val ruleChain: RuleChain = RuleChain.outerRule(ApplicationRule()).around(disposableRule)
+
+  private var time = 0L
+  private var qualityChanges = 0
+  private lateinit var pacer: FramePacer
+
+  @Before
+  fun setUp() {
+    StudioFlags.EMBEDDED_EMULATOR_ADAPTIVE_FRAME_QUALITY.override(true)
+    pacer = FramePacer(disposableRule.disposable, { time }) { qualityChanges++ }
+  }
+
+  @Test
+  fun testSlowPaintingLowersQuality() {
+    paintFrames(100, paintTimeMillis = 20)
+
+    assertThat(qualityChanges).isEqualTo(1) // The quality is lowered at most once per second.
+    assertThat(pacer.resolutionScale).isEqualTo(0.75)
+    assertThat(pacer.maxFrameRate).isEqualTo(60)
+    assertThat(pacer.statistics.frameRate).isWithin(0.1).of(62.5)
+  }
+
+  @Test
+  fun testFastPaintingKeepsQuality() {
+    paintFrames(100, paintTimeMillis = 2)
+
+    assertThat(qualityChanges).isEqualTo(0)
+    assertThat(pacer.resolutionScale).isEqualTo(1.0)
+    assertThat(pacer.paintDelayMillis()).isEqualTo(0)
+  }
+
+  @Test
+  fun testHighLatencyLowersQuality() {
+    advanceMillis(1000)
+    repeat(10) {
+      pacer.frameArrived(300)
+    }
+
+    assertThat(pacer.resolutionScale).isEqualTo(0.75)
+  }
+
+  @Test
+  fun testFrameRateIsLimited() {
+    paintFrames(100, paintTimeMillis = 20)
+    assertThat(pacer.maxFrameRate).isEqualTo(60)
+
+    pacer.framePainted(TimeUnit.MILLISECONDS.toNanos(1))
+    assertThat(pacer.paintDelayMillis()).isEqualTo(17)
+    advanceMillis(10)
+    assertThat(pacer.paintDelayMillis()).isEqualTo(7)
+    advanceMillis(7)
+    assertThat(pacer.paintDelayMillis()).isEqualTo(0)
+  }
+
+  @Test
+  fun testFramesDroppedByUiThreadLowerQuality() {
+    advanceMillis(1000)
+    pacer.framePainted(TimeUnit.MILLISECONDS.toNanos(1))
+    repeat(3) {
+      pacer.frameDropped()
+    }
+
+    assertThat(pacer.resolutionScale).isEqualTo(0.75)
+    assertThat(pacer.statistics.droppedFrames).isEqualTo(3)
+  }
+
+  @Test
+  fun testFramesHeldBackByPacingDoNotLowerQuality() {
+    advanceMillis(1000)
+    pacer.framePainted(TimeUnit.MILLISECONDS.toNanos(1))
+    repeat(3) {
+      pacer.frameDropped()
+    }
+    assertThat(pacer.maxFrameRate).isEqualTo(60)
+
+    advanceMillis(1500)
+    pacer.framePainted(TimeUnit.MILLISECONDS.toNanos(1))
+    advanceMillis(1)
+    repeat(5) {
+      pacer.frameDropped()
+    }
+
+    assertThat(pacer.maxFrameRate).isEqualTo(60)
+  }
+
+  @Test
+  fun testQualityIsRestored() {
+    paintFrames(100, paintTimeMillis = 20)
+    assertThat(pacer.resolutionScale).isEqualTo(0.75)
+
+    assertThat(pacer.restoreQuality()).isGreaterThan(0L) // Too early.
+    assertThat(pacer.resolutionScale).isEqualTo(0.75)
+
+    time += FramePacer.RESTORE_INTERVAL_NANOS
+    assertThat(pacer.restoreQuality()).isEqualTo(0L)
+    assertThat(pacer.resolutionScale).isEqualTo(1.0)
+    assertThat(pacer.maxFrameRate).isEqualTo(0)
+    assertThat(qualityChanges).isEqualTo(2)
+  }
+
+  @After
+  fun tearDown() {
+    StudioFlags.EMBEDDED_EMULATOR_ADAPTIVE_FRAME_QUALITY.clearOverride()
+  }
+
+  private fun paintFrames(count: Int, paintTimeMillis: Long) {
+    repeat(count) {
+      advanceMillis(16)
+      pacer.framePainted(TimeUnit.MILLISECONDS.toNanos(paintTimeMillis))
+    }
+  }
+
+  private fun advanceMillis(millis: Long) {
+    time += TimeUnit.MILLISECONDS.toNanos(millis)
+  }
+}
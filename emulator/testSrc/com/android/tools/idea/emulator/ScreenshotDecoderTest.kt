@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.emulator
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.awt.image.BufferedImage
+import java.nio.ByteBuffer
+import kotlin.random.Random
+
+/**
+ * Tests for [ScreenshotDecoder].
+ */
+class ScreenshotDecoderTest {
+  private val decoder = ScreenshotDecoder()
+  private val random = Random(1)
+
+  @Test
+  fun testDecode() {
+    val frame = randomFrame()
+
+    val image = decoder.decode(ByteBuffer.wrap(frame), WIDTH, HEIGHT, null)
+
+    assertThat(image.width).isEqualTo(WIDTH)
+    assertThat(image.height).isEqualTo(HEIGHT)
+    assertPixels(image, frame)
+  }
+
+  @Test
+  fun testRecycledImageIsUpdatedWithChangedRows() {
+    val frame1 = randomFrame()
+    val frame2 = frame1.copyOf().also { changeRow(it, 3) }
+    val frame3 = frame2.copyOf().also { changeRow(it, 5) }
+    val image1 = decoder.decode(ByteBuffer.wrap(frame1), WIDTH, HEIGHT, null)
+    val image2 = decoder.decode(ByteBuffer.wrap(frame2), WIDTH, HEIGHT, null)
+    assertPixels(image2, frame2)
+    // Mark a pixel in a row that doesn't change between frame 1 and frame 3.
+    image1.setRGB(0, 7, MARKER)
+
+    val image3 = decoder.decode(ByteBuffer.wrap(frame3), WIDTH, HEIGHT, image1)
+
+    assertThat(image3).isSameAs(image1)
+    assertThat(image3.getRGB(0, 7)).isEqualTo(MARKER) // Row 7 was not converted again.
+    image3.setRGB(0, 7, pixel(frame3, 0, 7))
+    assertPixels(image3, frame3)
+  }
+
+  @Test
+  fun testUnchangedFrame() {
+    val frame = randomFrame()
+    val image = decoder.decode(ByteBuffer.wrap(frame), WIDTH, HEIGHT, null)
+    image.setRGB(1, 1, MARKER)
+
+    assertThat(decoder.decode(ByteBuffer.wrap(frame.copyOf()), WIDTH, HEIGHT, image).getRGB(1, 1)).isEqualTo(MARKER)
+  }
+
+  @Test
+  fun testOldImageIsConvertedEntirely() {
+    val frame = randomFrame()
+    val image = decoder.decode(ByteBuffer.wrap(frame), WIDTH, HEIGHT, null)
+    image.setRGB(1, 1, MARKER)
+    for (i in 1..20) {
+      changeRow(frame, i % HEIGHT)
+      decoder.decode(ByteBuffer.wrap(frame), WIDTH, HEIGHT, null)
+    }
+
+    assertPixels(decoder.decode(ByteBuffer.wrap(frame), WIDTH, HEIGHT, image), frame)
+  }
+
+  @Test
+  fun testSizeChange() {
+    val image = decoder.decode(ByteBuffer.wrap(randomFrame()), WIDTH, HEIGHT, null)
+    val frame = ByteArray(HEIGHT * WIDTH * 3).also { random.nextBytes(it) }
+
+    val rotatedImage = decoder.decode(ByteBuffer.wrap(frame), HEIGHT, WIDTH, image)
+
+    assertThat(rotatedImage).isNotSameAs(image)
+    assertThat(rotatedImage.width).isEqualTo(HEIGHT)
+    assertThat(rotatedImage.height).isEqualTo(WIDTH)
+  }
+
+  @Test
+  fun testDecodeFromBufferPosition() {
+    val frame = randomFrame()
+    val buffer = ByteBuffer.allocateDirect(frame.size + 10)
+    buffer.position(10)
+    buffer.put(frame)
+    buffer.position(10)
+
+    assertPixels(decoder.decode(buffer, WIDTH, HEIGHT, null), frame)
+    assertThat(buffer.position()).isEqualTo(10)
+  }
+
+  private fun randomFrame(): ByteArray = ByteArray(WIDTH * HEIGHT * 3).also { random.nextBytes(it) }
+
+  private fun changeRow(frame: ByteArray, y: Int) {
+    val offset = (y * WIDTH + random.nextInt(WIDTH)) * 3
+    frame[offset] = (frame[offset] + 1).toByte()
+  }
+
+  private fun pixel(frame: ByteArray, x: Int, y: Int): Int {
+    val offset = (y * WIDTH + x) * 3
+    return (0xFF shl 24) or ((frame[offset].toInt() and 0xFF) shl 16) or ((frame[offset + 1].toInt() and 0xFF) shl 8) or
+           (frame[offset + 2].toInt() and 0xFF)
+  }
+
+  private fun assertPixels(image: BufferedImage, frame: ByteArray) {
+    for (y in 0 until HEIGHT) {
+      for (x in 0 until WIDTH) {
+        assertThat(image.getRGB(x, y)).isEqualTo(pixel(frame, x, y))
+      }
+    }
+  }
+}
+
+private const val WIDTH = 10
+private const val HEIGHT = 8
+private const val MARKER = 0xFF123456.toInt()
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.dsl.model;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.LowMemoryWatcher;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+/**
+ * Keeps the syntax trees of the build files of a project loaded between {@link ProjectBuildModelImpl} instances, keyed by the
+ * modification stamp of each file, and loads the syntax trees of many build files in parallel.
+ * <p>
+ * Building the model of a project with hundreds of modules is dominated by parsing the build files into syntax trees. The platform
+ * only keeps the syntax trees of build files softly reachable, so without this cache each new {@link ProjectBuildModelImpl}, e.g. for the
+ * Project Structure dialog and then for the AGP Upgrade Assistant, may parse every build file again. The {@link GradleDslFile} trees
+ * built from the syntax trees are not cached here: they are mutable and belong to a single {@link BuildModelContext}, and sharing them
+ * would make the pending changes of one model visible in the others.
+ * <p>
+ * The syntax trees are only held softly, and are cleared when memory is low. The entry of a file is dropped when the file is deleted,
+ * moved or renamed.
+ */
+public final class BuildFileSyntaxTreeCache implements Disposable {
+  private static final Logger LOG = Logger.getInstance(BuildFileSyntaxTreeCache.class);
+
+  @NotNull private final Project myProject;
+  @NotNull private final ExecutorService myExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("BuildFileSyntaxTreeCache", Runtime.getRuntime().availableProcessors());
+  /** The syntax tree of each file, as of the modification stamp it was loaded at. Guarded by itself. */
+  @NotNull private final Map<VirtualFile, Entry> mySyntaxTrees = new HashMap<>();
+
+  @NotNull
+  public static BuildFileSyntaxTreeCache getInstance(@NotNull Project project) {
+    return project.getService(BuildFileSyntaxTreeCache.class);
+  }
+
+  public BuildFileSyntaxTreeCache(@NotNull Project project) {
+    myProject = project;
+    LowMemoryWatcher.register(this::clear, this);
+    project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+      @Override
+      public void before(@NotNull List<? extends @NotNull VFileEvent> events) {
+        for (VFileEvent event : events) {
+          if (event instanceof VFileDeleteEvent || event instanceof VFileMoveEvent ||
+              (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent)event).isRename())) {
+            VirtualFile file = event.getFile();
+            if (file != null) {
+              remove(file);
+            }
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Makes sure that the syntax trees of the given files are loaded. Files that changed since their syntax tree was loaded are parsed
+   * again. The files are parsed in parallel, each in its own read action, unless the calling thread holds the read lock or is the
+   * event dispatch thread, in which case they are parsed on the calling thread.
+   */
+  public void loadAll(@NotNull Collection<VirtualFile> files) {
+    Application application = ApplicationManager.getApplication();
+    if (application.isReadAccessAllowed() || application.isDispatchThread() || files.size() < 2) {
+      // Waiting for read actions on other threads while holding the read lock could deadlock with a pending write action, and the event
+      // dispatch thread must not block waiting for other threads.
+      files.forEach(this::load);
+      return;
+    }
+    List<Future<?>> futures = new ArrayList<>(files.size());
+    for (VirtualFile file : files) {
+      futures.add(myExecutor.submit(() -> load(file)));
+    }
+    try {
+      for (Future<?> future : futures) {
+        await(future);
+      }
+    }
+    finally {
+      futures.forEach(future -> future.cancel(false));
+    }
+  }
+
+  private static void await(@NotNull Future<?> future) {
+    while (true) {
+      ProgressManager.checkCanceled();
+      try {
+        future.get(10, TimeUnit.MILLISECONDS);
+        return;
+      }
+      catch (TimeoutException e) {
+        // Check for cancellation and wait again.
+      }
+      catch (ExecutionException e) {
+        // The build file will be parsed again when its model is built.
+        LOG.warn("Unable to parse a build file", e.getCause());
+        return;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ProcessCanceledException(e);
+      }
+    }
+  }
+
+  private void load(@NotNull VirtualFile file) {
+    ReadAction.run(() -> {
+      if (myProject.isDisposed() || !file.isValid()) {
+        return;
+      }
+      PsiFile psiFile = PsiManager.getInstance(myProject).findFile(file);
+      if (psiFile == null) {
+        return;
+      }
+      long modificationStamp = psiFile.getModificationStamp();
+      synchronized (mySyntaxTrees) {
+        Entry entry = mySyntaxTrees.get(file);
+        SyntaxTree syntaxTree = entry != null && entry.modificationStamp == modificationStamp ? entry.syntaxTree.get() : null;
+        if (syntaxTree != null && syntaxTree.psiFile == psiFile) {
+          return;
+        }
+      }
+      // Getting the root node parses the file unless its syntax tree is already loaded.
+      ASTNode root = psiFile.getNode();
+      synchronized (mySyntaxTrees) {
+        mySyntaxTrees.put(file, new Entry(modificationStamp, new SyntaxTree(psiFile, root)));
+      }
+    });
+  }
+
+  /**
+   * Drops the syntax trees of {@code file} and, if it is a directory, of the files under it.
+   */
+  private void remove(@NotNull VirtualFile file) {
+    synchronized (mySyntaxTrees) {
+      mySyntaxTrees.keySet().removeIf(cached -> VfsUtilCore.isAncestor(file, cached, false));
+    }
+  }
+
+  public void clear() {
+    synchronized (mySyntaxTrees) {
+      mySyntaxTrees.clear();
+    }
+  }
+
+  @TestOnly
+  boolean isLoaded(@NotNull VirtualFile file) {
+    synchronized (mySyntaxTrees) {
+      Entry entry = mySyntaxTrees.get(file);
+      return entry != null && entry.syntaxTree.get() != null;
+    }
+  }
+
+  @Override
+  public void dispose() {
+    clear();
+  }
+
+  /**
+   * The syntax tree of a build file as of {@code modificationStamp}, held softly.
+   */
+  private static final class Entry {
+    final long modificationStamp;
+    @NotNull final SoftReference<SyntaxTree> syntaxTree;
+
+    Entry(long modificationStamp, @NotNull SyntaxTree syntaxTree) {
+      this.modificationStamp = modificationStamp;
+      this.syntaxTree = new SoftReference<>(syntaxTree);
+    }
+  }
+
+  /**
+   * The syntax tree of a build file, which stays loaded as long as this object is referenced.
+   */
+  private static final class SyntaxTree {
+    @NotNull final PsiFile psiFile;
+    @NotNull final ASTNode root;
+
+    SyntaxTree(@NotNull PsiFile psiFile, @NotNull ASTNode root) {
+      this.psiFile = psiFile;
+      this.root = root;
+    }
+  }
+}
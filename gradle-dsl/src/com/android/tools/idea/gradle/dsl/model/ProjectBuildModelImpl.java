@@ -29,7 +29,9 @@ import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -174,18 +176,26 @@ public class ProjectBuildModelImpl implements ProjectBuildModel {
     Set<String> modulePaths = settingsModel.modulePaths();
     Integer nModelsToConsider = nModelsSeen[0] + modulePaths.size();
 
-    allModels.addAll(modulePaths.stream().map((modulePath) -> {
-      GradleBuildModel model = null;
+    // Find the build files of the modules first so that their syntax trees can be loaded in parallel. The models themselves are built
+    // one at a time since the build model context is not thread safe.
+    Map<String, VirtualFile> moduleBuildFiles = new LinkedHashMap<>();
+    for (String modulePath : modulePaths) {
       // This should have already been added above
       if (!modulePath.equals(":")) {
         File moduleDir = settingsModel.moduleDirectory(modulePath);
         if (moduleDir != null) {
           VirtualFile file = myBuildModelContext.getGradleBuildFile(moduleDir);
           if (file != null) {
-            model = getModuleBuildModel(file);
+            moduleBuildFiles.put(modulePath, file);
           }
         }
       }
+    }
+    BuildFileSyntaxTreeCache.getInstance(myBuildModelContext.getProject()).loadAll(moduleBuildFiles.values());
+
+    allModels.addAll(modulePaths.stream().map((modulePath) -> {
+      VirtualFile file = moduleBuildFiles.get(modulePath);
+      GradleBuildModel model = file == null ? null : getModuleBuildModel(file);
       func.accept(++nModelsSeen[0], nModelsToConsider);
       return model;
     }).filter(Objects::nonNull).collect(Collectors.toList()));
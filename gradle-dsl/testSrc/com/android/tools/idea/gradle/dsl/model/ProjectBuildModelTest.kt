@@ -17,6 +17,7 @@ package com.android.tools.idea.gradle.dsl.model
 
 import com.android.tools.idea.flags.StudioFlags
 import com.android.tools.idea.gradle.dsl.TestFileName
+import com.android.tools.idea.gradle.dsl.api.GradleBuildModel
 import com.android.tools.idea.gradle.dsl.api.ext.GradlePropertyModel.BOOLEAN_TYPE
 import com.android.tools.idea.gradle.dsl.api.ext.GradlePropertyModel.INTEGER_TYPE
 import com.android.tools.idea.gradle.dsl.api.ext.GradlePropertyModel.STRING_TYPE
@@ -31,12 +32,15 @@ import com.android.tools.idea.gradle.dsl.parser.files.GradlePropertiesFile
 import com.android.tools.idea.gradle.dsl.parser.files.GradleSettingsFile
 import com.android.tools.idea.gradle.dsl.parser.files.GradleVersionCatalogFile
 import com.android.tools.idea.gradle.dsl.parser.semantics.AndroidGradlePluginVersion
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.vfs.LocalFileSystem
 import org.hamcrest.CoreMatchers.hasItems
 import org.hamcrest.MatcherAssert.assertThat
 import org.jetbrains.annotations.SystemDependent
 import org.junit.Test
 import java.io.File
 import java.io.IOException
+import java.util.concurrent.TimeUnit
 
 class ProjectBuildModelTest : GradleFileModelTestCase() {
   override fun setUp(){
@@ -353,6 +357,65 @@ class ProjectBuildModelTest : GradleFileModelTestCase() {
     assertEquals(listOf(1 to null, 2 to null, 3 to 4, 4 to 4), args)
   }
 
+  @Test
+  fun testGetAllIncludedBuildModelsLoadsSyntaxTrees() {
+    writeToBuildFile("")
+    writeToSubModuleBuildFile("")
+    writeToSettingsFile(subModuleSettingsText)
+
+    val cache = BuildFileSyntaxTreeCache.getInstance(project)
+    cache.clear()
+    projectBuildModel.getAllIncludedBuildModels()
+    assertTrue(cache.isLoaded(mySubModuleBuildFile))
+
+    // The syntax trees are kept for the next project build model.
+    val models = projectBuildModel.getAllIncludedBuildModels()
+    assertTrue(cache.isLoaded(mySubModuleBuildFile))
+    assertEquals(2, models.size)
+  }
+
+  @Test
+  fun testDeletedBuildFileSyntaxTreeIsDropped() {
+    writeToBuildFile("")
+    writeToSubModuleBuildFile("")
+    writeToSettingsFile(subModuleSettingsText)
+
+    val cache = BuildFileSyntaxTreeCache.getInstance(project)
+    cache.clear()
+    projectBuildModel.getAllIncludedBuildModels()
+    assertTrue(cache.isLoaded(mySubModuleBuildFile))
+
+    runWriteAction<Unit, IOException> { mySubModuleBuildFile.delete(this) }
+    assertFalse(cache.isLoaded(mySubModuleBuildFile))
+  }
+
+  @Test
+  fun testGetAllIncludedBuildModelsLoadsSyntaxTreesInParallel() {
+    writeToBuildFile("")
+    writeToSubModuleBuildFile("")
+    val moduleNames = listOf("a", "b", "c")
+    val moduleBuildFiles = moduleNames.map { name ->
+      val module = writeToNewSubModule(name, "", "")
+      LocalFileSystem.getInstance().findFileByNioFile(module.moduleNioFile.parent.resolve(buildFileName))!!
+    } + mySubModuleBuildFile
+    writeToSettingsFile(subModuleSettingsText + moduleNames.joinToString("") { getSubModuleSettingsText(it) })
+
+    val cache = BuildFileSyntaxTreeCache.getInstance(project)
+    cache.clear()
+    // The syntax trees are only loaded in parallel from a thread that doesn't hold the read lock.
+    val models = ApplicationManager.getApplication().executeOnPooledThread<List<GradleBuildModel>> {
+      assertFalse(ApplicationManager.getApplication().isReadAccessAllowed)
+      projectBuildModel.getAllIncludedBuildModels()
+    }.get(1, TimeUnit.MINUTES)
+    assertEquals(5, models.size)
+    moduleBuildFiles.forEach { assertTrue(cache.isLoaded(it)) }
+
+    // The syntax trees are kept for a new project build model.
+    val newProjectBuildModel = projectBuildModel
+    moduleBuildFiles.forEach { assertTrue(cache.isLoaded(it)) }
+    assertEquals(5, newProjectBuildModel.getAllIncludedBuildModels().size)
+  }
+
   @Test
   fun testGetContext() {
     val pbm = projectBuildModel
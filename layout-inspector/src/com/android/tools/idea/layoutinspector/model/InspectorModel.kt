@@ -61,8 +61,16 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
   /** Holds the highest highlightCount seen since last time all highlight counts were zero */
   var maxHighlight = 0f
 
+  /** All the nodes in the model by drawId. This is kept up to date by [update]. */
   private val idLookup = ConcurrentHashMap<Long, ViewNode>()
 
+  /**
+   * All the nodes in the model by viewId name, in the order they were added. This is kept up to date by [update] together with
+   * [idLookup], from the viewIds the nodes have when they are added. It is only accessed with [ViewNode.readAccess] or
+   * [ViewNode.writeAccess].
+   */
+  private val viewIdLookup = mutableMapOf<String, MutableSet<ViewNode>>()
+
   override var selection: ViewNode? = null
     private set
 
@@ -78,7 +86,7 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
 
   val windows = mutableMapOf<Any, AndroidWindow>()
   // synthetic node to hold the roots of the current windows.
-  val root = ViewNode("android.root - hide")
+  val root = ViewNode("android.root - hide").also { idLookup[it.drawId] = it }
 
   enum class Posture { HALF_OPEN, FLAT }
   enum class FoldOrientation { VERTICAL, HORIZONTAL }
@@ -128,19 +136,12 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
   /**
    * Get a ViewNode by drawId
    */
-  override operator fun get(id: Long): ViewNode? {
-    if (idLookup.isEmpty()) {
-      ViewNode.readAccess {
-        root.flatten().forEach { idLookup[it.drawId] = it }
-      }
-    }
-    return idLookup[id]
-  }
+  override operator fun get(id: Long): ViewNode? = idLookup[id]
 
   /**
    * Get a ViewNode by viewId name
    */
-  operator fun get(id: String) = ViewNode.readAccess { root.flatten().find { it.viewId?.name == id } }
+  operator fun get(id: String): ViewNode? = ViewNode.readAccess { viewIdLookup[id]?.firstOrNull { it.viewId?.name == id } }
 
   fun fireAttachStateEvent(state: DynamicLayoutInspectorErrorInfo.AttachErrorState) {
     attachStageListeners.forEach { it.invoke(state) }
@@ -230,11 +231,13 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
       // Reset the recomposition counters if this is a new connection:
       resetRecompositionCounters()
     }
+    val removedWindows = windows.filterKeys { it !in allIds }.values
     var structuralChange: Boolean = windows.keys.retainAll(allIds)
     val oldWindow = windows[newWindow?.id]
     updating = true
     try {
       ViewNode.writeAccess {
+        removedWindows.forEach { window -> window.root.flatten().forEach { removeFromLookup(it) } }
         if (newWindow != null) {
           // changes in DIM_BEHIND will cause a structural change
           structuralChange = structuralChange || (newWindow.isDimBehind != oldWindow?.isDimBehind)
@@ -244,6 +247,8 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
           else if (newWindow.root.drawId != oldWindow?.root?.drawId || newWindow.root.qualifiedName != oldWindow.root.qualifiedName) {
             windows[newWindow.id] = newWindow
             structuralChange = true
+            oldWindow?.root?.flatten()?.forEach { removeFromLookup(it) }
+            addToLookup(newWindow.root)
             if (oldWindow == null) {
               // build draw tree on initial load of the window, so we can scale and scroll correctly.
               // We only want to do this on initial load since otherwise there'll be flickering between when the tree is updated and when
@@ -255,6 +260,8 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
             oldWindow.copyFrom(newWindow)
             val updater = Updater(oldWindow.root, newWindow.root, this)
             structuralChange = updater.update() || structuralChange
+            updater.removedNodes.forEach { removeFromLookup(it) }
+            updater.addedSubtrees.forEach { addToLookup(it) }
           }
         }
 
@@ -266,9 +273,7 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
           hoveredNode = null
         }
         lastGeneration = generation
-        idLookup.clear()
-        val allNodes = root.flatten().toSet()
-        hiddenNodes.removeIf { !allNodes.contains(it) }
+        hiddenNodes.removeIf { it.parentSequence.lastOrNull() !== root }
         maxRecomposition.reset()
         root.flatten().forEach { maxRecomposition.maxOf(it) }
         if (StudioFlags.DYNAMIC_LAYOUT_INSPECTOR_ENABLE_RECOMPOSITION_HIGHLIGHTS.get() &&
@@ -303,6 +308,26 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
     }
   }
 
+  private fun ViewNode.WriteAccess.addToLookup(subtreeRoot: ViewNode) {
+    subtreeRoot.flatten().forEach { node ->
+      idLookup[node.drawId] = node
+      node.viewId?.name?.let { viewIdLookup.getOrPut(it) { LinkedHashSet() }.add(node) }
+    }
+  }
+
+  /**
+   * Remove a node that left the model. If the node has since been replaced by another node with the same drawId, the other node is
+   * left alone.
+   */
+  private fun ViewNode.WriteAccess.removeFromLookup(node: ViewNode) {
+    idLookup.remove(node.drawId, node)
+    val name = node.viewId?.name ?: return
+    val nodes = viewIdLookup[name] ?: return
+    if (nodes.remove(node) && nodes.isEmpty()) {
+      viewIdLookup.remove(name)
+    }
+  }
+
   /**
    * Build draw nodes
    */
@@ -371,9 +396,16 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
     private val newRoot: ViewNode,
     private val access: ViewNode.WriteAccess
   ) {
-    private val oldNodes = access.run {
-      oldRoot.flatten().filter { it.drawId != 0L }.associateByTo(mutableMapOf()) { it.drawId }
-    }
+    private val allOldNodes = access.run { oldRoot.flatten().toList() }
+    private val oldNodes = allOldNodes.filter { it.drawId != 0L }.associateByTo(mutableMapOf()) { it.drawId }
+    private val reusedNodes = mutableSetOf(oldRoot)
+
+    /** The old nodes that are no longer in the tree after [update] */
+    val removedNodes: List<ViewNode>
+      get() = allOldNodes.filter { it !in reusedNodes }
+
+    /** The roots of the new subtrees that were added to the tree by [update] */
+    val addedSubtrees = mutableListOf<ViewNode>()
 
     fun update(): Boolean {
       return access.run {
@@ -416,11 +448,13 @@ class InspectorModel(val project: Project, private val scheduler: ScheduledExecu
           modified = update(oldChild, oldNode, newChild) || modified
           oldNode.children.add(oldChild)
           oldNodes.remove(newChild.drawId)
+          reusedNodes.add(oldChild)
         }
         else {
           modified = true
           oldNode.children.add(newChild)
           newChild.parent = oldNode
+          addedSubtrees.add(newChild)
         }
       }
       return modified
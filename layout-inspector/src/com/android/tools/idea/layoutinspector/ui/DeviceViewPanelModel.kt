@@ -87,6 +87,13 @@ class DeviceViewPanelModel(
 
   @VisibleForTesting
   var hitRects = listOf<ViewDrawInfo>()
+    set(value) {
+      field = value
+      hitRectIndex = null
+    }
+
+  /** Index of [hitRects] for hit testing. This is built on the first hit test after [hitRects] changes. */
+  private var hitRectIndex: HitRectIndex? = null
 
   val modificationListeners = mutableListOf<() -> Unit>()
 
@@ -138,12 +145,16 @@ class DeviceViewPanelModel(
       .mapNotNull { it.node.findFilteredOwner(treeSettings) }
       .distinct()
 
-  fun findDrawInfoAt(x: Double, y: Double): Sequence<ViewDrawInfo> =
-    hitRects.asReversed()
+  fun findDrawInfoAt(x: Double, y: Double): Sequence<ViewDrawInfo> {
+    val rects = hitRects
+    val index = hitRectIndex ?: HitRectIndex(rects).also { hitRectIndex = it }
+    return index.findAt(x, y)
+      .asReversed()
       .asSequence()
-      .filter { it.bounds.contains(x, y) }
+      .map { rects[it] }
       .sortedByDescending { it.hitLevel }
       .distinct()
+  }
 
   fun findTopViewAt(x: Double, y: Double): ViewNode? = findViewsAt(x, y).firstOrNull()
 
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.layoutinspector.ui
+
+import kotlin.math.ceil
+import kotlin.math.sqrt
+
+private const val NODE_CAPACITY = 16
+
+/**
+ * A static R-tree over the bounding boxes of the [ViewDrawInfo]s of a [DeviceViewPanelModel], used to find the ones under the mouse
+ * without checking every one of them.
+ *
+ * The tree is packed with the Sort-Tile-Recursive algorithm: the boxes are sorted into vertical slices by the x of their center, each
+ * slice is sorted by y, and runs of [NODE_CAPACITY] boxes become the leaves. The levels above are built by grouping consecutive nodes
+ * of the level below in the same way.
+ */
+internal class HitRectIndex(private val infos: List<ViewDrawInfo>) {
+  /**
+   * The boxes of each level, bottom up, as (minX, minY, maxX, maxY) quadruples. Box `i` of level `l > 0` covers boxes
+   * `i * NODE_CAPACITY` until `(i + 1) * NODE_CAPACITY` of level `l - 1`. Box `i` of level 0 is the box of `infos[order[i]]`.
+   */
+  private val levels = mutableListOf<DoubleArray>()
+  private val order: IntArray
+
+  init {
+    val boxes = infos.map { it.bounds.bounds2D }
+    val slices = ceil(sqrt(ceil(boxes.size.toDouble() / NODE_CAPACITY))).toInt().coerceAtLeast(1)
+    val sliceSize = slices * NODE_CAPACITY
+    order = boxes.indices
+      .sortedBy { boxes[it].centerX }
+      .chunked(sliceSize) { slice -> slice.sortedBy { boxes[it].centerY } }
+      .flatten()
+      .toIntArray()
+
+    var level = DoubleArray(order.size * 4)
+    order.forEachIndexed { i, index ->
+      val box = boxes[index]
+      level[i * 4] = box.minX
+      level[i * 4 + 1] = box.minY
+      level[i * 4 + 2] = box.maxX
+      level[i * 4 + 3] = box.maxY
+    }
+    levels.add(level)
+    while (level.size > 4 * NODE_CAPACITY) {
+      level = group(level)
+      levels.add(level)
+    }
+  }
+
+  /**
+   * Returns the indices in the original list of the [ViewDrawInfo]s whose bounds contain ([x], [y]), in ascending order.
+   */
+  fun findAt(x: Double, y: Double): List<Int> {
+    val result = mutableListOf<Int>()
+    if (order.isNotEmpty()) {
+      val top = levels.size - 1
+      for (i in 0 until levels[top].size / 4) {
+        collect(top, i, x, y, result)
+      }
+    }
+    result.sort()
+    return result.filter { infos[it].bounds.contains(x, y) }
+  }
+
+  private fun collect(level: Int, i: Int, x: Double, y: Double, result: MutableList<Int>) {
+    val boxes = levels[level]
+    if (x < boxes[i * 4] || y < boxes[i * 4 + 1] || x > boxes[i * 4 + 2] || y > boxes[i * 4 + 3]) {
+      return
+    }
+    if (level == 0) {
+      result.add(order[i])
+      return
+    }
+    val childCount = levels[level - 1].size / 4
+    for (child in i * NODE_CAPACITY until minOf((i + 1) * NODE_CAPACITY, childCount)) {
+      collect(level - 1, child, x, y, result)
+    }
+  }
+
+  private fun group(boxes: DoubleArray): DoubleArray {
+    val count = boxes.size / 4
+    val parentCount = (count + NODE_CAPACITY - 1) / NODE_CAPACITY
+    val parents = DoubleArray(parentCount * 4)
+    for (parent in 0 until parentCount) {
+      val first = parent * NODE_CAPACITY
+      parents[parent * 4] = boxes[first * 4]
+      parents[parent * 4 + 1] = boxes[first * 4 + 1]
+      parents[parent * 4 + 2] = boxes[first * 4 + 2]
+      parents[parent * 4 + 3] = boxes[first * 4 + 3]
+      for (child in first + 1 until minOf(first + NODE_CAPACITY, count)) {
+        parents[parent * 4] = minOf(parents[parent * 4], boxes[child * 4])
+        parents[parent * 4 + 1] = minOf(parents[parent * 4 + 1], boxes[child * 4 + 1])
+        parents[parent * 4 + 2] = maxOf(parents[parent * 4 + 2], boxes[child * 4 + 2])
+        parents[parent * 4 + 3] = maxOf(parents[parent * 4 + 3], boxes[child * 4 + 3])
+      }
+    }
+    return parents
+  }
+}
@@ -16,6 +16,7 @@
 package com.android.tools.idea.layoutinspector;
 
 import com.android.testutils.JarTestSuiteRunner;
+import com.android.tools.idea.layoutinspector.performance.LiveUpdateBenchmarkTest;
 import com.android.tools.tests.IdeaTestSuiteBase;
 import com.android.tools.tests.LeakCheckerRule;
 import org.junit.ClassRule;
@@ -24,6 +25,9 @@ import org.junit.runner.RunWith;
 @RunWith(JarTestSuiteRunner.class)
 @JarTestSuiteRunner.ExcludeClasses({
   LayoutInspectorTestSuite.class,
+  // Benchmark performance tests should not be part of this suite, because they will be run on their own test rule
+  // See intellij.android.layout-inspector.performance in layout-inspector/BUILD
+  LiveUpdateBenchmarkTest.class,
 })
 public class LayoutInspectorTestSuite extends IdeaTestSuiteBase {
   @ClassRule public static final LeakCheckerRule checker = new LeakCheckerRule();
@@ -16,7 +16,10 @@
 package com.android.tools.idea.layoutinspector.model
 
 import com.android.flags.junit.SetFlagRule
+import com.android.ide.common.rendering.api.ResourceNamespace
+import com.android.ide.common.rendering.api.ResourceReference
 import com.android.io.readImage
+import com.android.resources.ResourceType
 import com.android.testutils.MockitoKt.mock
 import com.android.testutils.TestUtils
 import com.android.testutils.VirtualTimeScheduler
@@ -363,6 +366,86 @@ class InspectorModelTest {
     exception?.let { throw it }
   }
 
+  @Test
+  fun testLookupAfterUpdates() {
+    val model = model {
+      view(ROOT, 2, 4, 6, 8, qualifiedName = "rootType") {
+        view(VIEW1, 8, 6, 4, 2, qualifiedName = "v1Type") {
+          view(VIEW3, 9, 8, 7, 6, qualifiedName = "v3Type")
+        }
+        view(VIEW2, 6, 7, 8, 9, qualifiedName = "v2Type")
+      }
+    }
+
+    // Replace VIEW1 with a new subtree
+    val window1 =
+      window(ROOT, ROOT, 2, 4, 6, 8, rootViewQualifiedName = "rootType") {
+        view(VIEW4, 8, 6, 4, 2, qualifiedName = "v4Type") {
+          view(VIEW3, 9, 8, 7, 6, qualifiedName = "v3Type")
+        }
+        view(VIEW2, 6, 7, 8, 9, qualifiedName = "v2Type")
+      }
+    model.update(window1, listOf(ROOT), 0)
+    assertThat(model[VIEW1]).isNull()
+    assertThat(model[VIEW3]).isSameAs(children(model[VIEW4]!!).single())
+    assertLookupMatchesTree(model)
+
+    // Add a window
+    val window2 = window(ROOT2, ROOT2, 0, 0, 10, 10, rootViewQualifiedName = "root2Type") {
+      view(VIEW1, 0, 0, 5, 5, qualifiedName = "v1Type")
+    }
+    model.update(window2, listOf(ROOT, ROOT2), 1)
+    assertThat(model[VIEW1]).isNotNull()
+    assertLookupMatchesTree(model)
+
+    // Replace the root of the first window
+    val window3 = window(ROOT, VIEW2, 2, 4, 6, 8, rootViewQualifiedName = "v2Type")
+    model.update(window3, listOf(ROOT, ROOT2), 2)
+    assertThat(model[ROOT]).isNull()
+    assertThat(model[VIEW3]).isNull()
+    assertLookupMatchesTree(model)
+
+    // Remove the second window
+    model.update(null, listOf(ROOT), 3)
+    assertThat(model[ROOT2]).isNull()
+    assertThat(model[VIEW1]).isNull()
+    assertLookupMatchesTree(model)
+  }
+
+  @Test
+  fun testLookupByViewId() {
+    val exampleNS = ResourceNamespace.fromPackageName("com.example")
+    val model = model {
+      view(ROOT, 2, 4, 6, 8, qualifiedName = "rootType") {
+        view(VIEW1, 8, 6, 4, 2, qualifiedName = "v1Type", viewId = ResourceReference(exampleNS, ResourceType.ID, "v1"))
+        view(VIEW2, 6, 7, 8, 9, qualifiedName = "v2Type")
+      }
+    }
+    assertThat(model["v1"]).isSameAs(model[VIEW1])
+    assertThat(model["v2"]).isNull()
+
+    val window1 =
+      window(ROOT, ROOT, 2, 4, 6, 8, rootViewQualifiedName = "rootType") {
+        view(VIEW2, 6, 7, 8, 9, qualifiedName = "v2Type") {
+          view(VIEW3, 9, 8, 7, 6, qualifiedName = "v3Type", viewId = ResourceReference(exampleNS, ResourceType.ID, "v1"))
+        }
+      }
+    model.update(window1, listOf(ROOT), 1)
+    assertThat(model["v1"]).isSameAs(model[VIEW3])
+
+    // Views with the same viewId are found in the order they were added.
+    val window2 = window(ROOT2, ROOT2, 0, 0, 10, 10, rootViewQualifiedName = "root2Type") {
+      view(VIEW4, 0, 0, 5, 5, qualifiedName = "v4Type", viewId = ResourceReference(exampleNS, ResourceType.ID, "v1"))
+    }
+    model.update(window2, listOf(ROOT, ROOT2), 2)
+    assertThat(model["v1"]).isSameAs(model[VIEW3])
+    model.update(window(ROOT, ROOT, 2, 4, 6, 8, rootViewQualifiedName = "rootType"), listOf(ROOT, ROOT2), 3)
+    assertThat(model["v1"]).isSameAs(model[VIEW4])
+
+    model.update(null, listOf(ROOT), 4)
+    assertThat(model["v1"]).isNull()
+  }
+
   @Test
   fun fireAttachStateEvent() {
     val model = InspectorModel(mock())
@@ -546,6 +629,12 @@ class InspectorModelTest {
     assertThat(countdownStopped).isFalse()
   }
 
+  private fun assertLookupMatchesTree(model: InspectorModel) {
+    for (node in model.root.flattenedList()) {
+      assertThat(model[node.drawId]).isSameAs(node)
+    }
+  }
+
   private fun children(view: ViewNode): List<ViewNode> =
     ViewNode.readAccess { view.children }
 
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.layoutinspector.performance
+
+import com.android.tools.idea.layoutinspector.InspectorViewDescriptor
+import com.android.tools.idea.layoutinspector.model
+import com.android.tools.idea.layoutinspector.model.ViewNode
+import com.android.tools.idea.layoutinspector.ui.DeviceViewPanelModel
+import com.android.tools.idea.layoutinspector.util.FakeTreeSettings
+import com.android.tools.idea.layoutinspector.window
+import com.android.tools.perflogger.Benchmark
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import kotlin.system.measureTimeMillis
+
+private const val ROOT = 1L
+private const val CONTAINERS = 20
+private const val ROWS = 10
+private const val CELLS = 10
+private const val CONTAINER_WIDTH = 200
+private const val CONTAINER_HEIGHT = 400
+private const val ROW_HEIGHT = CONTAINER_HEIGHT / ROWS
+private const val CELL_WIDTH = CONTAINER_WIDTH / CELLS
+private const val UPDATES = 200
+
+/**
+ * Perfgate test measuring how the model and the device view keep up with live mode, where the device sends a new version of the
+ * view tree whenever something changes on the screen. Each update replaces the contents of one container of a tree of a few thousand
+ * views, as a scrolling list would.
+ */
+class LiveUpdateBenchmarkTest {
+  private val benchmark = Benchmark.Builder("Layout Inspector Live Updates").setProject("Android Studio Layout Inspector").build()
+
+  @Test
+  fun measureLiveUpdates() {
+    val model = model { view(ROOT, 0, 0, CONTAINER_WIDTH * 5, CONTAINER_HEIGHT * 4) { content(0) } }
+    val panelModel = DeviceViewPanelModel(model, FakeTreeSettings())
+    panelModel.rotate(0.1, 0.1)
+
+    var lookups = 0
+    val updateMillis = measureTimeMillis {
+      for (generation in 1..UPDATES) {
+        val window = window(ROOT, ROOT, 0, 0, CONTAINER_WIDTH * 5, CONTAINER_HEIGHT * 4) { content(generation) }
+        model.update(window, listOf(ROOT), generation)
+        // Look up the views the way the properties panel and the image loading do after an update.
+        for (container in 0 until CONTAINERS) {
+          for (row in 0 until ROWS) {
+            if (model[rowId(container, row, generation)] != null) lookups++
+          }
+        }
+      }
+    }
+    assertThat(lookups).isEqualTo(UPDATES * CONTAINERS * ROWS)
+    benchmark.log("live_update_time", updateMillis)
+
+    panelModel.refresh()
+    var hits = 0
+    val hitTestMillis = measureTimeMillis {
+      for (y in -500 until 1500 step 10) {
+        for (x in -700 until 700 step 10) {
+          hits += panelModel.findViewsAt(x.toDouble(), y.toDouble()).count()
+        }
+      }
+    }
+    assertThat(hits).isGreaterThan(0)
+    benchmark.log("hit_test_time", hitTestMillis)
+
+    val nodes = model.root.flattenedList()
+    val lookupMillis = measureTimeMillis {
+      repeat(10) { nodes.forEach { assertThat(model[it.drawId]).isSameAs(it) } }
+    }
+    benchmark.log("lookup_time", lookupMillis)
+    ViewNode.readAccess { assertThat(model[rowId(0, 0, UPDATES)]?.parent?.drawId).isEqualTo(containerId(0)) }
+  }
+
+  /**
+   * The views of each generation of the tree. The rows and cells of the container that changes in [generation] get new ids.
+   */
+  private fun InspectorViewDescriptor.content(generation: Int) {
+    for (container in 0 until CONTAINERS) {
+      val x = (container % 5) * CONTAINER_WIDTH
+      val y = (container / 5) * CONTAINER_HEIGHT
+      view(containerId(container), x, y, CONTAINER_WIDTH, CONTAINER_HEIGHT) {
+        for (row in 0 until ROWS) {
+          view(rowId(container, row, generation), x, y + row * ROW_HEIGHT, CONTAINER_WIDTH, ROW_HEIGHT) {
+            for (cell in 0 until CELLS) {
+              view(cellId(container, row, cell, generation), x + cell * CELL_WIDTH, y + row * ROW_HEIGHT, CELL_WIDTH, ROW_HEIGHT)
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private fun containerId(container: Int) = 1000L + container
+
+  private fun rowId(container: Int, row: Int, generation: Int) =
+    10_000L + container * 100 + row + replacedOffset(container, generation)
+
+  private fun cellId(container: Int, row: Int, cell: Int, generation: Int) =
+    100_000L + container * 1000 + row * 10 + cell + replacedOffset(container, generation)
+
+  /** The ids of the views in a container change each time the container is updated. */
+  private fun replacedOffset(container: Int, generation: Int) =
+    (generation + CONTAINERS - 1 - container) / CONTAINERS * 1_000_000L
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.layoutinspector.ui
+
+import com.android.tools.idea.layoutinspector.model.DrawViewChild
+import com.android.tools.idea.layoutinspector.model.ViewNode
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.awt.Rectangle
+import java.awt.Shape
+import java.awt.geom.AffineTransform
+import kotlin.random.Random
+
+class HitRectIndexTest {
+  private val node = DrawViewChild(ViewNode("view"))
+
+  @Test
+  fun testEmpty() {
+    assertThat(HitRectIndex(listOf()).findAt(1.0, 1.0)).isEmpty()
+  }
+
+  @Test
+  fun testNestedRects() {
+    val infos = listOf(info(Rectangle(0, 0, 100, 100)), info(Rectangle(10, 10, 20, 20)), info(Rectangle(50, 50, 10, 10)))
+    val index = HitRectIndex(infos)
+
+    assertThat(index.findAt(15.0, 15.0)).containsExactly(0, 1).inOrder()
+    assertThat(index.findAt(55.0, 55.0)).containsExactly(0, 2).inOrder()
+    assertThat(index.findAt(5.0, 5.0)).containsExactly(0)
+    assertThat(index.findAt(-5.0, 5.0)).isEmpty()
+  }
+
+  @Test
+  fun testMatchesLinearSearch() {
+    val random = Random(42)
+    val infos = (0 until 1000).map {
+      val transform = AffineTransform()
+      transform.rotate(random.nextDouble(-0.5, 0.5))
+      transform.scale(random.nextDouble(0.5, 1.0), 1.0)
+      val rect = Rectangle(random.nextInt(1000), random.nextInt(1000), random.nextInt(1, 200), random.nextInt(1, 200))
+      info(transform.createTransformedShape(rect))
+    }
+    val index = HitRectIndex(infos)
+
+    repeat(1000) {
+      val x = random.nextDouble(-100.0, 1200.0)
+      val y = random.nextDouble(-100.0, 1200.0)
+      assertThat(index.findAt(x, y)).isEqualTo(infos.indices.filter { infos[it].bounds.contains(x, y) })
+    }
+  }
+
+  private fun info(bounds: Shape) = ViewDrawInfo(bounds, AffineTransform(), node, 0, false)
+}
@@ -500,7 +500,7 @@ internal class LogcatMainPanel(
   override fun reloadMessages() {
     document.setText("")
     coroutineScope.launch(workerThread) {
-      messageProcessor.appendMessages(messageBacklog.get().messages)
+      messageProcessor.appendMessages(messageBacklog.get())
       withContext(uiThread) {
         noLogsBanner.isVisible = isLogsMissing()
       }
@@ -510,7 +510,7 @@ internal class LogcatMainPanel(
   override fun getConnectedDevice() = connectedDevice.get()
 
   override fun countFilterMatches(filter: String): Int {
-    return LogcatMasterFilter(logcatFilterParser.parse(filter)).filter(messageBacklog.get().messages).size
+    return LogcatMasterFilter(logcatFilterParser.parse(filter)).filter(messageBacklog.get().chunks).size
   }
 
   override fun getTags(): Set<String> = tags
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.filters
+
+import com.android.tools.idea.logcat.filters.LogcatFilterField.APP
+import com.android.tools.idea.logcat.filters.LogcatFilterField.IMPLICIT_LINE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.LINE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.MESSAGE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.PROCESS
+import com.android.tools.idea.logcat.filters.LogcatFilterField.TAG
+import com.android.tools.idea.logcat.message.LogLevel
+
+/**
+ * A [LogcatFilter] compiled into a form that is cheaper to evaluate on each message.
+ *
+ * Compiling:
+ * * Flattens nested [AndLogcatFilter]s and [OrLogcatFilter]s and orders their operands so the cheap ones (log level, exact header
+ *   fields) are evaluated first and short-circuit the expensive ones (message text, formatted line, regular expressions).
+ * * Drops operands that always match, like `name:` terms.
+ * * Precomputes the case folded needles of `contains` matches.
+ * * Replaces regular expressions that are plain text with a `contains` match, and checks the longest literal that any match of the
+ *   others must contain before running them.
+ *
+ * Filters are compiled after [LogcatFilter.prepare], and filters that are not known to the compiler are evaluated by calling
+ * [LogcatFilter.matches].
+ */
+internal abstract class CompiledFilter private constructor(
+  /**
+   * Relative cost of evaluating this filter.
+   */
+  val cost: Int,
+) {
+  abstract fun matches(message: LogcatMessageWrapper): Boolean
+
+  private object Always : CompiledFilter(0) {
+    override fun matches(message: LogcatMessageWrapper) = true
+  }
+
+  private class And(val filters: Array<CompiledFilter>) : CompiledFilter(filters.sumOf { it.cost }) {
+    override fun matches(message: LogcatMessageWrapper): Boolean {
+      for (filter in filters) {
+        if (!filter.matches(message)) return false
+      }
+      return true
+    }
+  }
+
+  private class Or(val filters: Array<CompiledFilter>) : CompiledFilter(filters.sumOf { it.cost }) {
+    override fun matches(message: LogcatMessageWrapper): Boolean {
+      for (filter in filters) {
+        if (filter.matches(message)) return true
+      }
+      return false
+    }
+  }
+
+  private class Level(private val level: LogLevel) : CompiledFilter(0) {
+    override fun matches(message: LogcatMessageWrapper) = message.logcatMessage.header.logLevel >= level
+  }
+
+  private class Equals(private val field: LogcatFilterField, private val string: String, private val negated: Boolean)
+    : CompiledFilter(field.cost) {
+    override fun matches(message: LogcatMessageWrapper) = (field.getValue(message) == string) != negated
+  }
+
+  private class Contains(private val field: LogcatFilterField, string: String, private val negated: Boolean)
+    : CompiledFilter(field.cost + 1) {
+    private val needle = IgnoreCaseNeedle(string)
+
+    override fun matches(message: LogcatMessageWrapper) = needle.isFoundIn(field.getValue(message)) != negated
+  }
+
+  private class ContainsLiteral(private val field: LogcatFilterField, private val literal: String, private val negated: Boolean)
+    : CompiledFilter(field.cost + 1) {
+    override fun matches(message: LogcatMessageWrapper) = field.getValue(message).contains(literal) != negated
+  }
+
+  private class Matches(
+    private val field: LogcatFilterField,
+    private val regex: Regex,
+    private val requiredLiteral: String?,
+    private val negated: Boolean,
+  ) : CompiledFilter(field.cost + 5) {
+    override fun matches(message: LogcatMessageWrapper): Boolean {
+      val value = field.getValue(message)
+      val found = (requiredLiteral == null || value.contains(requiredLiteral)) && regex.containsMatchIn(value)
+      return found != negated
+    }
+  }
+
+  private class Delegate(private val filter: LogcatFilter, cost: Int) : CompiledFilter(cost) {
+    override fun matches(message: LogcatMessageWrapper) = filter.matches(message)
+  }
+
+  companion object {
+    fun compile(filter: LogcatFilter): CompiledFilter = when (filter) {
+      is AndLogcatFilter -> compileAnd(filter.filters)
+      is OrLogcatFilter -> compileOr(filter.filters)
+      is LevelFilter -> Level(filter.level)
+      is NameFilter -> Always
+      is ExactStringFilter -> Equals(filter.field, filter.string, negated = false)
+      is NegatedExactStringFilter -> Equals(filter.field, filter.string, negated = true)
+      is StringFilter -> Contains(filter.field, filter.string, negated = false)
+      is NegatedStringFilter -> Contains(filter.field, filter.string, negated = true)
+      is RegexFilter -> compileRegex(filter.field, filter.string, filter.regex, negated = false)
+      is NegatedRegexFilter -> compileRegex(filter.field, filter.string, filter.regex, negated = true)
+      is AgeFilter, is CrashFilter -> Delegate(filter, 1)
+      is ProjectAppFilter -> Delegate(filter, 3)
+      else -> Delegate(filter, 10)
+    }
+
+    private fun compileAnd(filters: List<LogcatFilter>): CompiledFilter {
+      val operands = mutableListOf<CompiledFilter>()
+      for (compiled in filters.map { compile(it) }) {
+        when (compiled) {
+          is Always -> {}
+          is And -> operands.addAll(compiled.filters)
+          else -> operands.add(compiled)
+        }
+      }
+      return when (operands.size) {
+        0 -> Always
+        1 -> operands[0]
+        else -> And(operands.sortedBy { it.cost }.toTypedArray())
+      }
+    }
+
+    private fun compileOr(filters: List<LogcatFilter>): CompiledFilter {
+      val operands = mutableListOf<CompiledFilter>()
+      for (compiled in filters.map { compile(it) }) {
+        when (compiled) {
+          is Always -> return Always
+          is Or -> operands.addAll(compiled.filters)
+          else -> operands.add(compiled)
+        }
+      }
+      return if (operands.size == 1) operands[0] else Or(operands.sortedBy { it.cost }.toTypedArray())
+    }
+
+    private fun compileRegex(field: LogcatFilterField, pattern: String, regex: Regex, negated: Boolean): CompiledFilter {
+      if (pattern.none { it in REGEX_META_CHARS }) {
+        return ContainsLiteral(field, pattern, negated)
+      }
+      return Matches(field, regex, findRequiredLiteral(pattern), negated)
+    }
+  }
+}
+
+private const val REGEX_META_CHARS = "\\.[]{}()*+?^$|"
+
+/**
+ * Relative cost of reading a field. The line is formatted on first use.
+ */
+private val LogcatFilterField.cost: Int
+  get() = when (this) {
+    TAG, APP, PROCESS -> 1
+    MESSAGE -> 2
+    LINE, IMPLICIT_LINE -> 4
+  }
+
+/**
+ * Returns the longest run of literal characters that any match of the regular expression [pattern] has to contain, or null if there is
+ * none worth checking.
+ *
+ * This is conservative: anything that is not understood (alternations, groups, escapes, inline flags) ends the current run.
+ */
+internal fun findRequiredLiteral(pattern: String): String? {
+  // Alternations can make any literal optional and quoting or inline flags change the meaning of what follows.
+  if (pattern.contains('|') || pattern.contains("\\Q") || pattern.contains("(?")) {
+    return null
+  }
+  var longest = ""
+  val run = StringBuilder()
+  fun endRun() {
+    if (run.length > longest.length) {
+      longest = run.toString()
+    }
+    run.clear()
+  }
+
+  var depth = 0
+  var i = 0
+  while (i < pattern.length) {
+    val c = pattern[i]
+    when {
+      c == '\\' -> {
+        endRun()
+        i = skipEscape(pattern, i)
+      }
+      c == '[' -> {
+        endRun()
+        i = skipCharacterClass(pattern, i) ?: return null
+      }
+      c == '(' -> {
+        endRun()
+        depth++
+      }
+      c == ')' -> {
+        endRun()
+        depth--
+      }
+      c == '*' || c == '?' || c == '{' -> {
+        // The previous character is optional.
+        if (run.isNotEmpty()) run.setLength(run.length - 1)
+        endRun()
+        if (c == '{') {
+          while (i < pattern.length && pattern[i] != '}') i++
+        }
+      }
+      c in REGEX_META_CHARS -> endRun()
+      depth == 0 -> run.append(c)
+    }
+    i++
+  }
+  endRun()
+  return if (longest.length >= 2) longest else null
+}
+
+/**
+ * Returns the index of the last character of the escape sequence that starts at [start], e.g. `\.`, `\x41` or `\p{Lu}`.
+ */
+private fun skipEscape(pattern: String, start: Int): Int {
+  var i = start + 1
+  if (i < pattern.length && pattern[i].isLetterOrDigit()) {
+    while (i + 1 < pattern.length && pattern[i + 1].isLetterOrDigit()) i++
+    val close = when (pattern.getOrNull(i + 1)) {
+      '{' -> '}'
+      '<' -> '>'
+      else -> null
+    }
+    if (close != null) {
+      while (i < pattern.length && pattern[i] != close) i++
+    }
+  }
+  return i
+}
+
+/**
+ * Returns the index of the `]` that closes the character class that starts at [start], or null if it's not understood.
+ */
+private fun skipCharacterClass(pattern: String, start: Int): Int? {
+  var i = start + 1
+  if (pattern.getOrNull(i) == '^') i++
+  if (pattern.getOrNull(i) == ']') return null
+  var depth = 1
+  while (i < pattern.length) {
+    when (pattern[i]) {
+      '\\' -> i++
+      '[' -> depth++
+      ']' -> if (--depth == 0) return i
+    }
+    i++
+  }
+  return null
+}
+
+/**
+ * Same as `String.contains(needle, ignoreCase = true)`, with the case variants of the needle computed once.
+ */
+private class IgnoreCaseNeedle(private val needle: String) {
+  private val lowerChars = CharArray(needle.length) { needle[it].lowercaseChar() }
+  private val upperChars = CharArray(needle.length) { needle[it].uppercaseChar() }
+  private val isAscii = needle.all { it.code < 128 }
+
+  fun isFoundIn(text: String): Boolean {
+    if (!isAscii) {
+      return text.contains(needle, ignoreCase = true)
+    }
+    for (i in 0..text.length - needle.length) {
+      if (matchesAt(text, i)) {
+        return true
+      }
+    }
+    return false
+  }
+
+  private fun matchesAt(text: String, offset: Int): Boolean {
+    for (j in needle.indices) {
+      val c = text[offset + j]
+      // Some non-ASCII characters are equal to ASCII ones ignoring case, e.g. the Kelvin sign and 'k'.
+      if (c != lowerChars[j] && c != upperChars[j] && (c.code < 128 || !c.equals(needle[j], ignoreCase = true))) {
+        return false
+      }
+    }
+    return true
+  }
+}
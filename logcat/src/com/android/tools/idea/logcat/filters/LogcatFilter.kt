@@ -44,7 +44,29 @@ internal class LogcatMasterFilter(private val logcatFilter: LogcatFilter?) {
       return messages
     }
     logcatFilter.prepare()
-    return messages.filter { it.header === SYSTEM_HEADER || logcatFilter.matches(LogcatMessageWrapper(it, zoneId)) }
+    val compiledFilter = CompiledFilter.compile(logcatFilter)
+    return messages.filter { it.header === SYSTEM_HEADER || compiledFilter.matches(LogcatMessageWrapper(it, zoneId)) }
+  }
+
+  /**
+   * Filters messages in chunks, skipping the chunks whose [MessageIndex] rules out any match without looking at their messages.
+   */
+  fun filter(chunks: List<MessageChunk>, zoneId: ZoneId = ZoneId.systemDefault()): List<LogcatMessage> {
+    if (logcatFilter == null) {
+      return chunks.flatMap { it.messages }
+    }
+    logcatFilter.prepare()
+    val compiledFilter = CompiledFilter.compile(logcatFilter)
+    val result = mutableListOf<LogcatMessage>()
+    for (chunk in chunks) {
+      val index = chunk.index
+      when {
+        index == null || logcatFilter.canMatch(index) ->
+          chunk.messages.filterTo(result) { it.header === SYSTEM_HEADER || compiledFilter.matches(LogcatMessageWrapper(it, zoneId)) }
+        index.hasSystemMessages -> chunk.messages.filterTo(result) { it.header === SYSTEM_HEADER }
+      }
+    }
+    return result
   }
 }
 
@@ -66,6 +88,13 @@ internal abstract class LogcatFilter(open val textRange: TextRange) {
 
   abstract fun matches(message: LogcatMessageWrapper): Boolean
 
+  /**
+   * Returns false if none of the messages summarized by [index] can match this filter. Called after [prepare].
+   *
+   * Returning true is always correct, it only means that [matches] is called for each message.
+   */
+  open fun canMatch(index: MessageIndex): Boolean = true
+
   open fun findFilterForOffset(offset: Int): LogcatFilter? {
     return if (textRange.contains(offset)) this else null
   }
@@ -96,12 +125,16 @@ internal data class AndLogcatFilter(override val filters: List<LogcatFilter>) :
   constructor(vararg filters: LogcatFilter) : this(filters.asList())
 
   override fun matches(message: LogcatMessageWrapper) = filters.all { it.matches(message) }
+
+  override fun canMatch(index: MessageIndex) = filters.all { it.canMatch(index) }
 }
 
 internal data class OrLogcatFilter(override val filters: List<LogcatFilter>) : ParentFilter(filters) {
   constructor(vararg filters: LogcatFilter) : this(filters.asList())
 
   override fun matches(message: LogcatMessageWrapper) = filters.any { it.matches(message) }
+
+  override fun canMatch(index: MessageIndex) = filters.any { it.canMatch(index) }
 }
 
 internal enum class LogcatFilterField(val displayName: String) {
@@ -144,8 +177,27 @@ internal data class StringFilter(
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key") {
   override fun matches(message: LogcatMessageWrapper) = field.getValue(message).contains(string, ignoreCase = true)
+
+  override fun canMatch(index: MessageIndex) = when (field) {
+    LogcatFilterField.TAG -> index.tags.any { it.contains(string, ignoreCase = true) }
+    LogcatFilterField.APP -> index.applicationIds.any { it.contains(string, ignoreCase = true) }
+    LogcatFilterField.PROCESS -> index.processNames.any { it.contains(string, ignoreCase = true) }
+    LogcatFilterField.MESSAGE -> index.mayContainInMessage(string)
+    LogcatFilterField.LINE, LogcatFilterField.IMPLICIT_LINE -> !string.fitsInOneLineField()
+                                                               || index.tags.any { it.contains(string, ignoreCase = true) }
+                                                               || index.applicationIds.any { it.contains(string, ignoreCase = true) }
+                                                               || index.mayContainInMessage(string)
+  }
 }
 
+/**
+ * True if a match of this string in [LogcatMessageWrapper.logLine] has to be entirely within the tag, the application id or the message.
+ *
+ * The fields of the line are separated by ' ', '-' and ':', and the date, time, pid, tid and level only contain digits, separators, '.'
+ * and a single letter.
+ */
+private fun String.fitsInOneLineField() = length > 1 && none { it == ' ' || it == '-' || it == ':' } && any { !it.isDigit() && it != '.' }
+
 internal data class NegatedStringFilter(
   val string: String,
   val field: LogcatFilterField,
@@ -160,6 +212,14 @@ internal data class ExactStringFilter(
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key.exact") {
   override fun matches(message: LogcatMessageWrapper) = field.getValue(message) == string
+
+  override fun canMatch(index: MessageIndex) = when (field) {
+    LogcatFilterField.TAG -> index.tags.contains(string)
+    LogcatFilterField.APP -> index.applicationIds.contains(string)
+    LogcatFilterField.PROCESS -> index.processNames.contains(string)
+    LogcatFilterField.MESSAGE -> index.mayContainInMessage(string)
+    LogcatFilterField.LINE, LogcatFilterField.IMPLICIT_LINE -> true
+  }
 }
 
 internal data class NegatedExactStringFilter(
@@ -175,7 +235,7 @@ internal data class RegexFilter(
   val field: LogcatFilterField,
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key.regex") {
-  private val regex = try {
+  val regex = try {
     string.toRegex()
   }
   catch (e: PatternSyntaxException) {
@@ -190,7 +250,7 @@ internal data class NegatedRegexFilter(
   val field: LogcatFilterField,
   override val textRange: TextRange,
 ) : FieldFilter(string, field, textRange, "logcat.filter.completion.hint.key.regex.negated") {
-  private val regex = try {
+  val regex = try {
     string.toRegex()
   }
   catch (e: PatternSyntaxException) {
@@ -206,6 +266,8 @@ internal data class LevelFilter(
 ) : LogcatFilter(textRange) {
   override val displayText: String = message("logcat.filter.completion.hint.level.value", level.name)
   override fun matches(message: LogcatMessageWrapper) = message.logcatMessage.header.logLevel >= level
+
+  override fun canMatch(index: MessageIndex) = index.hasLevelAtLeast(level)
 }
 
 internal data class AgeFilter(
@@ -244,6 +306,8 @@ internal data class AgeFilter(
 
   override fun matches(message: LogcatMessageWrapper) =
     clock.millis() - message.logcatMessage.header.timestamp.toEpochMilli() <= age.toMillis()
+
+  override fun canMatch(index: MessageIndex) = clock.millis() - index.maxTimestampMillis <= age.toMillis()
 }
 
 /**
@@ -275,6 +339,8 @@ internal class ProjectAppFilter(
            || (header.logLevel >= ERROR && packageNamesRegex?.containsMatchIn(message.logcatMessage.message) == true)
   }
 
+  override fun canMatch(index: MessageIndex) = index.hasLevelAtLeast(ERROR) || packageNames.any { index.appNames.contains(it) }
+
   override fun equals(other: Any?) = other is ProjectAppFilter && packageNamesProvider == other.packageNamesProvider
 
   override fun hashCode() = packageNamesProvider.hashCode()
@@ -310,6 +376,10 @@ internal data class CrashFilter(override val textRange: TextRange) : LogcatFilte
     return (level == ERROR && tag == "AndroidRuntime" && message.logcatMessage.message.startsWith("FATAL EXCEPTION"))
            || (level == ASSERT && (tag == "DEBUG" || tag == "libc"))
   }
+
+  override fun canMatch(index: MessageIndex) =
+    (index.hasLevel(ERROR) && index.tags.contains("AndroidRuntime"))
+    || (index.hasLevel(ASSERT) && (index.tags.contains("DEBUG") || index.tags.contains("libc")))
 }
 
 internal data class NameFilter(
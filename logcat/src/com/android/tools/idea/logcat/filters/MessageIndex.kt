@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.filters
+
+import com.android.tools.idea.logcat.SYSTEM_HEADER
+import com.android.tools.idea.logcat.message.LogLevel
+import com.android.tools.idea.logcat.message.LogcatMessage
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+
+/** Size of the trigram bitmap per distinct trigram. With 16 bits, about 6% of the trigrams that don't occur are reported as present. */
+private const val BITS_PER_TRIGRAM = 16
+private const val NON_ASCII: Int = 0x7f
+
+/**
+ * A run of consecutive [LogcatMessage]s, with an optional [MessageIndex] summarizing all of them.
+ */
+internal class MessageChunk(val messages: List<LogcatMessage>, val index: MessageIndex?)
+
+/**
+ * A summary of a group of [LogcatMessage]s that lets a [LogcatFilter] rule out the whole group without looking at each message.
+ *
+ * The summary is an over-approximation: it can tell that a group has no message with a given tag, but not that it has one. It holds the
+ * distinct tags, application ids, app names and process names, the log levels that occur, the newest timestamp and a bitmap of the
+ * (hashed, case folded) trigrams of the message texts. The bitmap is sized from the number of distinct trigrams, so that it stays sparse
+ * for chunks of real logcat text, which have thousands of them.
+ */
+internal class MessageIndex private constructor(
+  val tags: Set<String>,
+  val applicationIds: Set<String>,
+  val appNames: Set<String>,
+  val processNames: Set<String>,
+  private val levels: Int,
+  val maxTimestampMillis: Long,
+  val hasSystemMessages: Boolean,
+  private val trigrams: LongArray,
+  private val trigramShift: Int,
+) {
+
+  fun hasLevel(level: LogLevel) = levels and (1 shl level.ordinal) != 0
+
+  fun hasLevelAtLeast(level: LogLevel) = levels ushr level.ordinal != 0
+
+  /**
+   * Returns false if no message text can contain [text], ignoring case.
+   */
+  fun mayContainInMessage(text: String): Boolean {
+    // Non-ASCII characters can be equal ignoring case to ASCII ones (e.g. the Kelvin sign and 'k') so they are not indexed precisely.
+    if (text.length < 3 || text.any { it.code >= NON_ASCII }) {
+      return true
+    }
+    for (i in 0..text.length - 3) {
+      if (!isSet(trigramBit(trigram(fold(text[i]), fold(text[i + 1]), fold(text[i + 2])), trigramShift))) {
+        return false
+      }
+    }
+    return true
+  }
+
+  private fun isSet(bit: Int) = trigrams[bit ushr 6] and (1L shl bit) != 0L
+
+  companion object {
+    fun of(messages: List<LogcatMessage>): MessageIndex {
+      val tags = HashSet<String>()
+      val applicationIds = HashSet<String>()
+      val appNames = HashSet<String>()
+      val processNames = HashSet<String>()
+      var levels = 0
+      var maxTimestampMillis = Long.MIN_VALUE
+      var hasSystemMessages = false
+      // All the trigrams that occur, exactly. Only used to build the smaller bitmap once their number is known.
+      val seen = IntOpenHashSet()
+      for (message in messages) {
+        val header = message.header
+        if (header === SYSTEM_HEADER) {
+          hasSystemMessages = true
+          continue
+        }
+        tags.add(header.tag)
+        applicationIds.add(header.applicationId)
+        appNames.add(header.getAppName())
+        processNames.add(header.processName)
+        levels = levels or (1 shl header.logLevel.ordinal)
+        maxTimestampMillis = maxOf(maxTimestampMillis, header.timestamp.toEpochMilli())
+
+        val text = message.message
+        if (text.length >= 3) {
+          var c1 = fold(text[0])
+          var c2 = fold(text[1])
+          for (i in 2 until text.length) {
+            val c3 = fold(text[i])
+            seen.add(trigram(c1, c2, c3))
+            c1 = c2
+            c2 = c3
+          }
+        }
+      }
+
+      val bits = maxOf(64, Integer.highestOneBit(maxOf(1, seen.size * BITS_PER_TRIGRAM - 1)) shl 1)
+      val trigramShift = 32 - Integer.numberOfTrailingZeros(bits)
+      val trigrams = LongArray(bits / 64)
+      val iterator = seen.iterator()
+      while (iterator.hasNext()) {
+        val bit = trigramBit(iterator.nextInt(), trigramShift)
+        trigrams[bit ushr 6] = trigrams[bit ushr 6] or (1L shl bit)
+      }
+      return MessageIndex(tags, applicationIds, appNames, processNames, levels, maxTimestampMillis, hasSystemMessages, trigrams,
+                          trigramShift)
+    }
+
+    /**
+     * Folds a character so that characters that are equal ignoring case (as in [String.contains]) fold to the same value when one of them
+     * is ASCII. All other characters fold to [NON_ASCII].
+     */
+    private fun fold(c: Char): Int {
+      val lower = c.lowercaseChar()
+      if (lower.code < NON_ASCII) {
+        return lower.code
+      }
+      val upperLower = c.uppercaseChar().lowercaseChar()
+      return if (upperLower.code < NON_ASCII) upperLower.code else NON_ASCII
+    }
+
+    /** Folded characters fit in 7 bits, so a trigram fits in 21. */
+    private fun trigram(c1: Int, c2: Int, c3: Int) = (c1 shl 14) or (c2 shl 7) or c3
+
+    /**
+     * Hashes a trigram to a bit of a bitmap of `1 shl (32 - shift)` bits.
+     */
+    private fun trigramBit(trigram: Int, shift: Int) = trigram * -0x61c88647 ushr shift
+  }
+}
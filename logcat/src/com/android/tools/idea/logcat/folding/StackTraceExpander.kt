@@ -51,6 +51,10 @@ internal object StackTraceExpander {
 
   @JvmStatic
   fun process(inputLines: Collection<String>): Collection<String> {
+    // Nothing is changed until a frame line is found and frame lines end with a ')'. This is the case for most messages.
+    if (inputLines.none { it.endsWith(')') }) {
+      return inputLines
+    }
     val context = Context()
     return inputLines.flatMap { process(context, it) }
   }
@@ -39,6 +39,13 @@ private val PRIORITY = Regex("(?<priority>[VDIWEAF])")
 
 private val TAG = Regex("(?<tag>.*?)")
 
+private val LOG_LEVELS = LogLevel.values()
+
+/**
+ * Maximum number of distinct tags and process names kept for interning. A device normally uses far fewer.
+ */
+private const val MAX_INTERNED_STRINGS = 10_000
+
 /**
  * Pattern for "logcat -v long" ([ MM-DD HH:MM:SS.mmm PID:TID LEVEL/TAG ]) or "logcat -v long,epoch"
  * header ([ SSSSSSSSSS.mmm PID:TID LEVEL/TAG ]). Example:
@@ -88,6 +95,13 @@ internal class LogcatHeaderParser(
    * header.
    */
   fun parseHeader(line: String, serialNumber: String): LogcatHeader? {
+    // Both formats start with a '[', this rejects most message lines without running the regex.
+    if (!line.startsWith('[')) {
+      return null
+    }
+    if (format == EPOCH_FORMAT) {
+      parseEpochHeader(line, serialNumber)?.let { return it }
+    }
     val result = format.regex.matchEntire(line) ?: return null
 
     val timestamp = when (format) {
@@ -98,18 +112,111 @@ internal class LogcatHeaderParser(
     // We can use `!!.` below because the regex matched so the group must exist
     val groups = result.groups
     val pid = parsePid(groups["pid"]!!.value)
-    val processNames = processNameMonitor.getProcessNames(serialNumber, pid)
-    return LogcatHeader(
+    return createHeader(
+      serialNumber,
       parsePriority(groups["priority"]!!.value),
       pid,
       parseThreadId(groups["tid"]!!.value),
-      processNames?.applicationId ?: "",
-      if (pid == 0) "kernel" else processNames?.processName ?: "pid-$pid",
       groups["tag"]!!.value,
+      timestamp)
+  }
+
+  private val tags = HashMap<String, String>()
+  private val unknownProcessNames = HashMap<Int, String>()
+
+  private fun createHeader(serialNumber: String, logLevel: LogLevel, pid: Int, tid: Int, tag: String, timestamp: Instant): LogcatHeader {
+    val processNames = processNameMonitor.getProcessNames(serialNumber, pid)
+    // Tags and unknown process names are shared by all the messages that use them rather than kept once per message in the backlog.
+    if (tags.size >= MAX_INTERNED_STRINGS) {
+      tags.clear()
+    }
+    val processName = when {
+      pid == 0 -> "kernel"
+      processNames != null -> processNames.processName
+      else -> {
+        if (unknownProcessNames.size >= MAX_INTERNED_STRINGS) {
+          unknownProcessNames.clear()
+        }
+        unknownProcessNames.getOrPut(pid) { "pid-$pid" }
+      }
+    }
+    return LogcatHeader(
+      logLevel,
+      pid,
+      tid,
+      processNames?.applicationId ?: "",
+      processName,
+      tags.getOrPut(tag) { tag },
       timestamp
     )
   }
 
+  /**
+   * Parses an [EPOCH_FORMAT] header, same as [HEADER_EPOCH_REGEX] but without allocating anything but the tag.
+   *
+   * Returns null if the line is not understood, in which case the regex is used.
+   */
+  private fun parseEpochHeader(line: String, serialNumber: String): LogcatHeader? {
+    val end = line.length - 1
+    if (end < 1 || line[end] != ']') return null
+
+    var i = line.skipSpaces(1)
+    if (i == 1) return null
+    val secondsStart = i
+    i = line.skipDigits(i)
+    if (i == secondsStart || i + 4 > end || line[i] != '.') return null
+    val secondsEnd = i
+    val millisStart = i + 1
+    i = line.skipDigits(millisStart)
+    if (i != millisStart + 3) return null
+
+    var start = i
+    i = line.skipSpaces(i)
+    if (i == start) return null
+    val pidStart = i
+    i = line.skipDigits(i)
+    if (i == pidStart || i >= end || line[i] != ':') return null
+    val pidEnd = i
+
+    val tidStart = line.skipSpaces(i + 1)
+    i = tidStart
+    while (i < end && line[i].isWordChar()) i++
+    if (i == tidStart) return null
+    val tidEnd = i
+
+    start = i
+    i = line.skipSpaces(i)
+    if (i == start || i + 2 > end || line[i + 1] != '/') return null
+    val priority = line[i]
+    if (priority !in "VDIWEAF") return null
+
+    val tagStart = i + 2
+    var tagEnd = end
+    while (tagEnd > tagStart && line[tagEnd - 1] == ' ') tagEnd--
+    if (tagEnd == end) return null
+    for (j in tagStart until tagEnd) {
+      // The regex doesn't allow line terminators in the tag.
+      if (line[j] == '\n' || line[j] == '\r' || line[j] == '\u0085' || line[j] == '\u2028' || line[j] == '\u2029') return null
+    }
+
+    val seconds = if (secondsEnd - secondsStart <= 18) line.parseDecimal(secondsStart, secondsEnd)
+    else parseEpochSeconds(line.substring(secondsStart, secondsEnd))
+    val millis = line.parseDecimal(millisStart, millisStart + 3)
+    val pid = if (pidEnd - pidStart <= 9) line.parseDecimal(pidStart, pidEnd).toInt() else parsePid(line.substring(pidStart, pidEnd))
+    // Leading zeros are octal for Integer.decode()
+    val isDecimalTid =
+      tidEnd - tidStart <= 9 && (tidEnd - tidStart == 1 || line[tidStart] != '0') && line.skipDigits(tidStart) == tidEnd
+    val tid = if (isDecimalTid) line.parseDecimal(tidStart, tidEnd).toInt() else parseThreadId(line.substring(tidStart, tidEnd))
+
+    return createHeader(
+      serialNumber,
+      parsePriority(priority),
+      pid,
+      tid,
+      line.substring(tagStart, tagEnd),
+      Instant.ofEpochSecond(seconds, MILLISECONDS.toNanos(millis)))
+  }
+
   /**
    * Parses the [priority part of a logcat message header:](https://developer.android.com/studio/command-line/logcat.html)
    * , the "I" in
@@ -129,6 +236,9 @@ internal class LogcatHeaderParser(
     }
     return ASSERT
   }
+
+  private fun parsePriority(letter: Char): LogLevel =
+    LOG_LEVELS.firstOrNull { it.priorityLetter == letter } ?: if (letter == 'F') ASSERT else WARN
 }
 
 private fun MatchResult.getEpochTimestamp(): Instant {
@@ -183,3 +293,29 @@ private fun parseThreadId(string: String): Int {
     -1
   }
 }
+
+private fun String.skipSpaces(start: Int): Int {
+  var i = start
+  while (i < length && this[i] == ' ') i++
+  return i
+}
+
+private fun String.skipDigits(start: Int): Int {
+  var i = start
+  while (i < length && this[i] in '0'..'9') i++
+  return i
+}
+
+// Same as `\w` in a regex
+private fun Char.isWordChar() = this in 'a'..'z' || this in 'A'..'Z' || this in '0'..'9' || this == '_'
+
+/**
+ * Parses the digits between [start] and [end], which must be short enough not to overflow.
+ */
+private fun String.parseDecimal(start: Int, end: Int): Long {
+  var value = 0L
+  for (i in start until end) {
+    value = value * 10 + (this[i] - '0')
+  }
+  return value
+}
@@ -15,8 +15,13 @@
  */
 package com.android.tools.idea.logcat.messages
 
+import com.android.tools.idea.logcat.filters.MessageChunk
+import com.android.tools.idea.logcat.filters.MessageIndex
 import com.android.tools.idea.logcat.message.LogcatMessage
-import java.util.Collections
+import org.jetbrains.annotations.VisibleForTesting
+
+@VisibleForTesting
+internal const val BACKLOG_CHUNK_SIZE = 1024
 
 /**
  * Manages a cyclic collection of [LogcatMessage]s that is limited by the size in bytes of the payload.
@@ -29,59 +34,150 @@ import java.util.Collections
  * than the minimal size required to render a message. Therefore, the backlog will contain more messages than the actual displayed window,
  * even if no filters are applied and the formatting options are at their minimum.
  *
+ * Messages are stored in fixed size chunks. Once a chunk is full it never changes again and gets a [MessageIndex] that lets filters
+ * skip it without looking at its messages. Messages evicted from the first chunk stay in its index, which is fine since an index is only
+ * ever used to rule out matches.
+ *
+ * Changes are serialized but reads are not: [messages] and [chunks] return an immutable snapshot, so they can be used by a background
+ * thread while new messages are added.
+ *
  * TODO(aalbert): Maybe pass in the current formatting options setting and calculate the size more accurately.
  */
 internal class MessageBacklog(private var maxSize: Int) {
 
-  // The internal messages collection is exposed as a read-only list
-  private val _messages = ArrayDeque<LogcatMessage>()
-  val messages: List<LogcatMessage>
-    get() = Collections.unmodifiableList(_messages)
+  private class Chunk {
+    val messages = arrayOfNulls<LogcatMessage>(BACKLOG_CHUNK_SIZE)
+    var count = 0
+
+    // Only set once the chunk is full
+    @Volatile
+    var index: MessageIndex? = null
+  }
+
+  /**
+   * A read-only view of [size] messages starting at [start] in the first of [chunks]. All chunks except the last one are full.
+   */
+  private class Snapshot(val chunks: List<Chunk>, val start: Int, override val size: Int) : AbstractList<LogcatMessage>() {
+    override fun get(index: Int): LogcatMessage {
+      if (index !in 0 until size) throw IndexOutOfBoundsException("Index $index out of $size")
+      val position = start + index
+      return chunks[position / BACKLOG_CHUNK_SIZE].messages[position % BACKLOG_CHUNK_SIZE]!!
+    }
+  }
 
+  private val chunks = mutableListOf<Chunk>()
+  private var start = 0
+  private var count = 0
   private var size = 0
 
+  @Volatile
+  private var snapshot = Snapshot(emptyList(), 0, 0)
+
+  val messages: List<LogcatMessage>
+    get() = snapshot
+
+  /**
+   * The messages split into chunks. Each chunk has a [MessageIndex] except for the last one if it's still being filled.
+   */
+  val chunks: List<MessageChunk>
+    get() {
+      val snapshot = snapshot
+      val result = ArrayList<MessageChunk>(snapshot.chunks.size)
+      var from = 0
+      for ((i, chunk) in snapshot.chunks.withIndex()) {
+        val to = minOf(snapshot.size, (i + 1) * BACKLOG_CHUNK_SIZE - snapshot.start)
+        if (to > from) {
+          result.add(MessageChunk(snapshot.subList(from, to), chunk.index))
+        }
+        from = to
+      }
+      return result
+    }
+
   init {
     assert(maxSize > 0)
   }
 
+  @Synchronized
   fun addAll(collection: List<LogcatMessage>) {
     val addedSize = collection.sumOf { it.message.length }
 
-    // We split into 2 flows.
-    //  If the new messages are larger than maxSize already, we clear the backlog and only add the messages that will fit using a sublist.
-    //  Otherwise, we first remove the messages that would overflow and then add the new ones.
-    // It would be simpler to just add the messages and then remove the overflowing ones but this way is slightly more efficient in terms of
-    // memory thrashing.
+    // If the new messages are larger than maxSize already, we clear the backlog and only add the messages that will fit.
+    // Otherwise, we first remove the messages that would overflow and then add the new ones.
     if (addedSize >= maxSize) {
-      _messages.clear()
-      size = addedSize
+      reset()
+      var remaining = addedSize
       val i = collection.indexOfFirst {
-        size -= it.message.length
-        size <= maxSize
+        remaining -= it.message.length
+        remaining <= maxSize
       }
-      _messages.addAll(collection.subList(i + 1, collection.size))
+      append(collection.subList(i + 1, collection.size))
     }
     else {
-      size += addedSize
-      while (size > maxSize) {
-        size -= _messages.removeFirst().message.length
-      }
-      _messages.addAll(collection)
+      removeFirst(size + addedSize - maxSize)
+      append(collection)
     }
+    publish()
   }
 
+  @Synchronized
   fun setMaxSize(newSize: Int) {
     if (newSize < maxSize) {
-      while (size > newSize) {
-        size -= _messages.removeFirst().message.length
-      }
+      removeFirst(size - newSize)
+      publish()
     }
     maxSize = newSize
-
   }
 
+  @Synchronized
   fun clear() {
-    _messages.clear()
+    reset()
+    publish()
+  }
+
+  private fun append(messages: List<LogcatMessage>) {
+    for (message in messages) {
+      var last = chunks.lastOrNull()
+      if (last == null || last.count == BACKLOG_CHUNK_SIZE) {
+        last = Chunk()
+        chunks.add(last)
+      }
+      last.messages[last.count++] = message
+      if (last.count == BACKLOG_CHUNK_SIZE) {
+        last.index = MessageIndex.of(last.messages.requireNoNulls().asList())
+      }
+      count++
+      size += message.message.length
+    }
+  }
+
+  /**
+   * Removes messages from the start until at least [sizeToRemove] is freed.
+   */
+  private fun removeFirst(sizeToRemove: Int) {
+    var removed = 0
+    while (removed < sizeToRemove && count > 0) {
+      val first = chunks.first()
+      removed += first.messages[start]!!.message.length
+      count--
+      start++
+      if (start == first.count) {
+        // Readers might still be using the chunk, so it's dropped rather than reused.
+        chunks.removeFirst()
+        start = 0
+      }
+    }
+    size -= removed
+  }
+
+  private fun reset() {
+    chunks.clear()
+    start = 0
+    count = 0
     size = 0
   }
-}
\ No newline at end of file
+
+  private fun publish() {
+    snapshot = Snapshot(chunks.toList(), start, count)
+  }
+}
@@ -76,6 +76,17 @@ internal class MessageProcessor @TestOnly constructor(
     return filteredMessages
   }
 
+  /**
+   * Same as [appendMessages] for all the messages of a [MessageBacklog], using its index to skip the chunks that cannot match.
+   */
+  internal suspend fun appendMessages(backlog: MessageBacklog): List<LogcatMessage> {
+    val filteredMessages = LogcatMasterFilter(logcatFilter).filter(backlog.chunks)
+    if (filteredMessages.isNotEmpty()) {
+      messageChannel.send(filteredMessages)
+    }
+    return filteredMessages
+  }
+
   // TODO(b/200212377): @ExperimentalCoroutinesApi ReceiveChannel#isEmpty is required. See bug for details.
   @Suppress("OPT_IN_USAGE")
   @TestOnly
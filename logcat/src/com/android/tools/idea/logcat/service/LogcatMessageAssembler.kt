@@ -135,7 +135,8 @@ internal class LogcatMessageAssembler(
     val lastLines = state?.lines?.toMutableList() ?: mutableListOf()
     val batchMessages = mutableListOf<LogcatMessage>()
 
-    for (line in newLines.map { it.fixLine() }) {
+    for (newLine in newLines) {
+      val line = newLine.fixLine()
       if (line.isSystemLine()) {
         batchMessages.add(LogcatMessage(SYSTEM_HEADER, line))
         continue
@@ -205,7 +206,14 @@ private fun String.isSystemLine(): Boolean {
  * MultiLineReceiver isn't right either because it is used for more than just receiving logcat.
  */
 private fun String.fixLine(): String {
-  return replace("\r", "")
+  return if (indexOf('\r') < 0) this else replace("\r", "")
 }
 
-private fun List<String>.toMessage(): String = StackTraceExpander.process(this).joinToString("\n").trimEnd('\n')
+private fun List<String>.toMessage(): String {
+  val lines = StackTraceExpander.process(this)
+  // Most messages are a single line followed by the empty line that terminates the entry.
+  if (lines.size == 1 || (lines.size == 2 && lines.last().isEmpty())) {
+    return lines.first().trimEnd('\n')
+  }
+  return lines.joinToString("\n").trimEnd('\n')
+}
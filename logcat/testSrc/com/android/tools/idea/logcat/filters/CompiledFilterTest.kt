@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.filters
+
+import com.android.tools.idea.logcat.filters.LogcatFilterField.APP
+import com.android.tools.idea.logcat.filters.LogcatFilterField.IMPLICIT_LINE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.LINE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.MESSAGE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.TAG
+import com.android.tools.idea.logcat.logcatMessage
+import com.android.tools.idea.logcat.message.LogLevel.DEBUG
+import com.android.tools.idea.logcat.message.LogLevel.ERROR
+import com.android.tools.idea.logcat.message.LogLevel.INFO
+import com.android.tools.idea.logcat.message.LogLevel.WARN
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import com.intellij.openapi.util.TextRange.EMPTY_RANGE
+import org.junit.Test
+import java.time.ZoneId
+
+private val ZONE_ID = ZoneId.of("UTC")
+
+/**
+ * Tests for [CompiledFilter]
+ */
+class CompiledFilterTest {
+  private val messages = listOf(
+    logcatMessage(INFO, appId = "com.example.app", tag = "MainActivity", message = "onCreate called"),
+    logcatMessage(DEBUG, appId = "com.google.android.gms", tag = "GmsCore", message = "Connecting to 10.0.0.1:443"),
+    logcatMessage(WARN, appId = "com.example.app", tag = "Service", message = "Kelvin is ok"),
+    logcatMessage(ERROR, appId = "com.example.app", tag = "AndroidRuntime", message = "FATAL EXCEPTION: main"),
+  ).map { LogcatMessageWrapper(it, ZONE_ID) }
+
+  @Test
+  fun matchesSameMessagesAsFilter() {
+    val filters = listOf(
+      StringFilter("activity", TAG, EMPTY_RANGE),
+      StringFilter("kelvin", MESSAGE, EMPTY_RANGE),
+      StringFilter("", MESSAGE, EMPTY_RANGE),
+      StringFilter("Ünï", MESSAGE, EMPTY_RANGE),
+      NegatedStringFilter("example", APP, EMPTY_RANGE),
+      ExactStringFilter("Service", TAG, EMPTY_RANGE),
+      NegatedExactStringFilter("Service", TAG, EMPTY_RANGE),
+      RegexFilter("Main", TAG, EMPTY_RANGE),
+      RegexFilter("on[A-Z]\\w+ called", MESSAGE, EMPTY_RANGE),
+      RegexFilter("\\d+\\.\\d+\\.\\d+\\.\\d+", MESSAGE, EMPTY_RANGE),
+      RegexFilter("FATAL|Kelvin", LINE, EMPTY_RANGE),
+      NegatedRegexFilter("^Gms", TAG, EMPTY_RANGE),
+      LevelFilter(WARN, EMPTY_RANGE),
+      StackTraceFilter(EMPTY_RANGE),
+      NameFilter("name", EMPTY_RANGE),
+      AndLogcatFilter(
+        StringFilter("called", IMPLICIT_LINE, EMPTY_RANGE),
+        NameFilter("name", EMPTY_RANGE),
+        AndLogcatFilter(LevelFilter(INFO, EMPTY_RANGE), StringFilter("example", APP, EMPTY_RANGE))),
+      OrLogcatFilter(
+        RegexFilter("Runtime$", TAG, EMPTY_RANGE),
+        OrLogcatFilter(LevelFilter(ERROR, EMPTY_RANGE), ExactStringFilter("GmsCore", TAG, EMPTY_RANGE))),
+      OrLogcatFilter(StringFilter("nothing", MESSAGE, EMPTY_RANGE), NameFilter("name", EMPTY_RANGE)),
+    )
+
+    for (filter in filters) {
+      val compiled = CompiledFilter.compile(filter)
+      assertWithMessage(filter.toString()).that(messages.filter { compiled.matches(it) }).isEqualTo(messages.filter { filter.matches(it) })
+    }
+  }
+
+  @Test
+  fun cheapOperandsAreEvaluatedFirst() {
+    var evaluated = 0
+    val expensive = object : LogcatFilter(EMPTY_RANGE) {
+      override val displayText = ""
+      override fun matches(message: LogcatMessageWrapper): Boolean {
+        evaluated++
+        return true
+      }
+    }
+    val compiled = CompiledFilter.compile(AndLogcatFilter(expensive, AndLogcatFilter(ExactStringFilter("Service", TAG, EMPTY_RANGE))))
+
+    assertThat(messages.count { compiled.matches(it) }).isEqualTo(1)
+    assertThat(evaluated).isEqualTo(1)
+  }
+
+  @Test
+  fun findRequiredLiteral() {
+    assertThat(findRequiredLiteral("on[A-Z]\\w+ called")).isEqualTo(" called")
+    assertThat(findRequiredLiteral("^Connecting to \\d+")).isEqualTo("Connecting to ")
+    assertThat(findRequiredLiteral("colou?r")).isEqualTo("colo")
+    assertThat(findRequiredLiteral("abc*def")).isEqualTo("def")
+    assertThat(findRequiredLiteral("ab+")).isEqualTo("ab")
+    assertThat(findRequiredLiteral("x{2,3}yz")).isEqualTo("yz")
+    assertThat(findRequiredLiteral("\\x41bc.de")).isEqualTo("de")
+    assertThat(findRequiredLiteral("\\p{Lu}xy")).isEqualTo("xy")
+    assertThat(findRequiredLiteral("[a[bc]de]fg")).isEqualTo("fg")
+    assertThat(findRequiredLiteral("(abc)?de")).isEqualTo("de")
+    assertThat(findRequiredLiteral("abc|def")).isNull()
+    assertThat(findRequiredLiteral("(?i)abc")).isNull()
+    assertThat(findRequiredLiteral("[]ab]cd")).isNull()
+    assertThat(findRequiredLiteral("a.b")).isNull()
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.filters
+
+import com.android.tools.idea.adb.processnamemonitor.testing.FakeProcessNameMonitor
+import com.android.tools.idea.logcat.filters.LogcatFilterField.APP
+import com.android.tools.idea.logcat.filters.LogcatFilterField.IMPLICIT_LINE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.MESSAGE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.TAG
+import com.android.tools.idea.logcat.message.LogLevel.WARN
+import com.android.tools.idea.logcat.message.LogcatHeaderParser
+import com.android.tools.idea.logcat.message.LogcatHeaderParser.LogcatFormat.EPOCH_FORMAT
+import com.android.tools.idea.logcat.message.LogcatMessage
+import com.intellij.openapi.util.TextRange.EMPTY_RANGE
+import java.io.File
+import java.time.ZoneId
+
+private const val WARMUP_ITERATIONS = 5
+private const val ITERATIONS = 20
+
+/**
+ * Compares the time it takes to filter a captured logcat with [LogcatFilter.matches] and with a [CompiledFilter].
+ *
+ * The first argument is a file captured with `adb logcat -v long -v epoch -d`. The default is the 50000 line test resource.
+ */
+fun main(args: Array<String>) {
+  val file = File(args.getOrElse(0) { "tools/adt/idea/logcat/testResources/logcatFiles/logcat-50000.txt" })
+  val messages = LogcatFilterBenchmark.readLogcat(file)
+  println("Read ${messages.size} messages from $file")
+
+  for ((name, filter) in LogcatFilterBenchmark.filters) {
+    filter.prepare()
+    val compiled = CompiledFilter.compile(filter)
+    val interpretedTime = LogcatFilterBenchmark.measure(messages) { filter.matches(it) }
+    val compiledTime = LogcatFilterBenchmark.measure(messages) { compiled.matches(it) }
+    println("%-40s interpreted: %8.2f ms  compiled: %8.2f ms".format(name, interpretedTime, compiledTime))
+  }
+}
+
+internal object LogcatFilterBenchmark {
+  val filters = listOf(
+    "text" to StringFilter("activity", IMPLICIT_LINE, EMPTY_RANGE),
+    "tag & level" to AndLogcatFilter(StringFilter("Tag0001", TAG, EMPTY_RANGE), LevelFilter(WARN, EMPTY_RANGE)),
+    "message regex" to RegexFilter("Message0\\d+5$", MESSAGE, EMPTY_RANGE),
+    "negated tags" to AndLogcatFilter(
+      NegatedStringFilter("chatty", TAG, EMPTY_RANGE),
+      NegatedExactStringFilter("system_server", APP, EMPTY_RANGE),
+      NegatedRegexFilter("^Tag00+1", TAG, EMPTY_RANGE)),
+    "app | text" to OrLogcatFilter(StringFilter("com.example", APP, EMPTY_RANGE), StringFilter("exception", IMPLICIT_LINE, EMPTY_RANGE)),
+  )
+
+  fun readLogcat(file: File): List<LogcatMessage> {
+    val parser = LogcatHeaderParser(EPOCH_FORMAT, FakeProcessNameMonitor())
+    val messages = mutableListOf<LogcatMessage>()
+    val lines = file.readLines()
+    var i = 0
+    while (i < lines.size) {
+      val header = parser.parseHeader(lines[i++], "device")
+      if (header == null) {
+        continue
+      }
+      val start = i
+      while (i < lines.size && lines[i].isNotEmpty()) i++
+      messages.add(LogcatMessage(header, lines.subList(start, i).joinToString("\n")))
+    }
+    return messages
+  }
+
+  /**
+   * Returns the average time in ms of filtering all the messages, wrapping them the same way [LogcatMasterFilter] does.
+   */
+  fun measure(messages: List<LogcatMessage>, matches: (LogcatMessageWrapper) -> Boolean): Double {
+    val zoneId = ZoneId.of("UTC")
+    var count = 0
+    repeat(WARMUP_ITERATIONS) { count += messages.count { matches(LogcatMessageWrapper(it, zoneId)) } }
+    val start = System.nanoTime()
+    repeat(ITERATIONS) { count += messages.count { matches(LogcatMessageWrapper(it, zoneId)) } }
+    val elapsed = System.nanoTime() - start
+    // Keep the result alive so the JIT can't drop the work.
+    if (count < 0) println(count)
+    return elapsed / 1_000_000.0 / ITERATIONS
+  }
+}
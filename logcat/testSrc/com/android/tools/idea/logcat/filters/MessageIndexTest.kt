@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat.filters
+
+import com.android.testutils.TestResources
+import com.android.tools.idea.logcat.FakePackageNamesProvider
+import com.android.tools.idea.logcat.SYSTEM_HEADER
+import com.android.tools.idea.logcat.filters.LogcatFilterField.APP
+import com.android.tools.idea.logcat.filters.LogcatFilterField.IMPLICIT_LINE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.MESSAGE
+import com.android.tools.idea.logcat.filters.LogcatFilterField.PROCESS
+import com.android.tools.idea.logcat.filters.LogcatFilterField.TAG
+import com.android.tools.idea.logcat.logcatMessage
+import com.android.tools.idea.logcat.message.LogLevel.ASSERT
+import com.android.tools.idea.logcat.message.LogLevel.DEBUG
+import com.android.tools.idea.logcat.message.LogLevel.ERROR
+import com.android.tools.idea.logcat.message.LogLevel.INFO
+import com.android.tools.idea.logcat.message.LogLevel.WARN
+import com.android.tools.idea.logcat.message.LogcatMessage
+import com.android.tools.idea.logcat.messages.BACKLOG_CHUNK_SIZE
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import com.intellij.openapi.util.TextRange.EMPTY_RANGE
+import org.junit.Test
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneId
+
+private val ZONE_ID = ZoneId.of("UTC")
+
+/**
+ * Tests for [MessageIndex] and [LogcatFilter.canMatch]
+ */
+class MessageIndexTest {
+  private val messages = listOf(
+    logcatMessage(INFO, appId = "com.example.app", processName = "com.example.app", tag = "MainActivity", message = "onCreate called"),
+    logcatMessage(DEBUG, appId = "", processName = "system_server", tag = "ActivityManager", message = "Start proc 1234"),
+    logcatMessage(WARN, appId = "com.example.app", processName = "com.example.app:remote", tag = "Service", message = "Ünïcode KELVIN"),
+  )
+  private val index = MessageIndex.of(messages)
+
+  @Test
+  fun summarizesHeaders() {
+    assertThat(index.tags).containsExactly("MainActivity", "ActivityManager", "Service")
+    assertThat(index.applicationIds).containsExactly("com.example.app", "")
+    assertThat(index.appNames).containsExactly("com.example.app", "system_server")
+    assertThat(index.processNames).containsExactly("com.example.app", "system_server", "com.example.app:remote")
+    assertThat(index.hasLevel(WARN)).isTrue()
+    assertThat(index.hasLevel(ERROR)).isFalse()
+    assertThat(index.hasLevelAtLeast(WARN)).isTrue()
+    assertThat(index.hasLevelAtLeast(ERROR)).isFalse()
+    assertThat(index.hasSystemMessages).isFalse()
+  }
+
+  @Test
+  fun mayContainInMessage() {
+    assertThat(index.mayContainInMessage("ONCREATE")).isTrue()
+    assertThat(index.mayContainInMessage("proc 12")).isTrue()
+    assertThat(index.mayContainInMessage("onDestroy")).isFalse()
+    // Too short or non-ASCII strings cannot be ruled out.
+    assertThat(index.mayContainInMessage("zz")).isTrue()
+    assertThat(index.mayContainInMessage("Ünï")).isTrue()
+  }
+
+  @Test
+  fun mayContainInMessage_nonAsciiMatchesIgnoringCase() {
+    // The Kelvin sign is equal to 'k' ignoring case.
+    val index = MessageIndex.of(listOf(logcatMessage(message = "\u212Aelvin")))
+
+    assertThat("\u212Aelvin".contains("kel", ignoreCase = true)).isTrue()
+    assertThat(index.mayContainInMessage("kel")).isTrue()
+  }
+
+  @Test
+  fun systemMessagesAreNotIndexed() {
+    val index = MessageIndex.of(listOf(LogcatMessage(SYSTEM_HEADER, "Logcat cleared")))
+
+    assertThat(index.hasSystemMessages).isTrue()
+    assertThat(index.tags).isEmpty()
+    assertThat(index.mayContainInMessage("cleared")).isFalse()
+  }
+
+  @Test
+  fun canMatch_isConsistentWithMatches() {
+    val filters = listOf(
+      StringFilter("main", TAG, EMPTY_RANGE),
+      StringFilter("Window", TAG, EMPTY_RANGE),
+      StringFilter("example", APP, EMPTY_RANGE),
+      StringFilter("other", APP, EMPTY_RANGE),
+      StringFilter("remote", PROCESS, EMPTY_RANGE),
+      StringFilter("oncreate", MESSAGE, EMPTY_RANGE),
+      StringFilter("onResume", MESSAGE, EMPTY_RANGE),
+      StringFilter("kelvin", IMPLICIT_LINE, EMPTY_RANGE),
+      StringFilter("Activity", IMPLICIT_LINE, EMPTY_RANGE),
+      StringFilter("Fragment", IMPLICIT_LINE, EMPTY_RANGE),
+      StringFilter("app W: Ünï", IMPLICIT_LINE, EMPTY_RANGE),
+      ExactStringFilter("Service", TAG, EMPTY_RANGE),
+      ExactStringFilter("service", TAG, EMPTY_RANGE),
+      ExactStringFilter("system_server", PROCESS, EMPTY_RANGE),
+      LevelFilter(WARN, EMPTY_RANGE),
+      LevelFilter(ERROR, EMPTY_RANGE),
+      AgeFilter("5s", Clock.fixed(Instant.ofEpochSecond(12), ZONE_ID), EMPTY_RANGE),
+      AgeFilter("5s", Clock.fixed(Instant.ofEpochSecond(30), ZONE_ID), EMPTY_RANGE),
+      CrashFilter(EMPTY_RANGE),
+      ProjectAppFilter(FakePackageNamesProvider("com.example.app"), EMPTY_RANGE),
+      ProjectAppFilter(FakePackageNamesProvider("com.other"), EMPTY_RANGE),
+      AndLogcatFilter(StringFilter("Service", TAG, EMPTY_RANGE), LevelFilter(WARN, EMPTY_RANGE)),
+      OrLogcatFilter(StringFilter("Window", TAG, EMPTY_RANGE), LevelFilter(ERROR, EMPTY_RANGE)),
+    )
+
+    for (filter in filters) {
+      filter.prepare()
+      val matches = messages.any { filter.matches(LogcatMessageWrapper(it, ZONE_ID)) }
+      // canMatch must never rule out a match. For these filters it should also be precise.
+      assertWithMessage(filter.toString()).that(filter.canMatch(index)).isEqualTo(matches)
+    }
+  }
+
+  @Test
+  fun logcatMasterFilter_skipsChunks() {
+    val chunks = listOf(MessageChunk(messages, index), MessageChunk(messages.reversed(), index))
+    val filter = object : LogcatFilter(EMPTY_RANGE) {
+      override val displayText: String = ""
+      override fun matches(message: LogcatMessageWrapper) = true
+      override fun canMatch(index: MessageIndex) = false
+    }
+
+    assertThat(LogcatMasterFilter(filter).filter(chunks, ZONE_ID)).isEmpty()
+    assertThat(LogcatMasterFilter(filter).filter(chunks.map { MessageChunk(it.messages, null) }, ZONE_ID))
+      .containsExactlyElementsIn(chunks.flatMap { it.messages })
+      .inOrder()
+  }
+
+  @Test
+  fun logcatMasterFilter_keepsSystemMessagesOfSkippedChunks() {
+    val systemMessage = LogcatMessage(SYSTEM_HEADER, "Logcat cleared")
+    val chunkMessages = listOf(systemMessage) + messages
+    val filter = LevelFilter(ASSERT, EMPTY_RANGE)
+
+    assertThat(LogcatMasterFilter(filter).filter(listOf(MessageChunk(chunkMessages, MessageIndex.of(chunkMessages))), ZONE_ID))
+      .containsExactly(systemMessage)
+  }
+
+  @Test
+  fun logcatMasterFilter_skipsMostChunksOfLogcatFile() {
+    val messages = LogcatFilterBenchmark.readLogcat(TestResources.getFile("/logcatFiles/logcat-50000.txt"))
+    val chunks = messages.chunked(BACKLOG_CHUNK_SIZE).map { MessageChunk(it, MessageIndex.of(it)) }
+    val filter = StringFilter("Message012345", MESSAGE, EMPTY_RANGE)
+
+    val candidates = chunks.filter { filter.canMatch(it.index!!) }
+
+    // The trigrams of the query occur, spread over different messages, in about a fifth of the chunks of this file.
+    assertThat(candidates.size).isAtMost(chunks.size / 4)
+    assertThat(LogcatMasterFilter(filter).filter(chunks, ZONE_ID).map { it.message }).containsExactly("Message012345")
+  }
+}
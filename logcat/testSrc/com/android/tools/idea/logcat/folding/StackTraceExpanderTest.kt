@@ -24,6 +24,13 @@ private const val NBSP = "\u00A0"
 
 class StackTraceExpanderTest {
 
+  @Test
+  fun linesWithoutFramesAreReturnedAsIs() {
+    val lines = listOf("Message", "  ... 1 more", "")
+
+    assertThat(StackTraceExpander.process(lines)).isSameInstanceAs(lines)
+  }
+
   // From http://docs.oracle.com/javase/7/docs/api/java/lang/Throwable.html#printStackTrace%28%29
   @Test
   fun sampleStacktraceExpandsCorrectly() {
@@ -150,6 +150,61 @@ internal class LogcatHeaderParserTest {
     ).isEqualTo(LogcatHeader(INFO, 5755, 601, "", "pid-5755", "Tag", Instant.ofEpochSecond(0, TimeUnit.MILLISECONDS.toNanos(472))))
   }
 
+  @Test
+  fun parseHeader_withSpacesInTag() {
+    val logCatHeaderParser = logcatHeaderParser(EPOCH_FORMAT)
+
+    assertThat(logCatHeaderParser.parseHeader("[ 1517266949.472 5755:601 I/DisplayPowerController [0] ]  ]", "device")?.tag)
+      .isEqualTo("DisplayPowerController [0] ]")
+    assertThat(logCatHeaderParser.parseHeader("[ 1517266949.472 5755:601 I/ ]", "device")?.tag).isEqualTo("")
+  }
+
+  @Test
+  fun parseHeader_withOctalTid() {
+    val logCatHeaderParser = logcatHeaderParser(EPOCH_FORMAT)
+
+    assertThat(logCatHeaderParser.parseHeader("[ 1517266949.472 5755:010 I/Tag ]", "device")?.tid).isEqualTo(8)
+    assertThat(logCatHeaderParser.parseHeader("[ 1517266949.472 5755:0 I/Tag ]", "device")?.tid).isEqualTo(0)
+    assertThat(logCatHeaderParser.parseHeader("[ 1517266949.472 5755:abc I/Tag ]", "device")?.tid).isEqualTo(-1)
+  }
+
+  @Test
+  fun parseHeader_fatalPriority() {
+    val logCatHeaderParser = logcatHeaderParser(EPOCH_FORMAT)
+
+    assertThat(logCatHeaderParser.parseHeader("[ 1517266949.472 5755:601 F/Tag ]", "device")?.logLevel).isEqualTo(LogLevel.ASSERT)
+  }
+
+  @Test
+  fun parseHeader_notHeader() {
+    val logCatHeaderParser = logcatHeaderParser(EPOCH_FORMAT)
+
+    for (line in listOf(
+      "Message",
+      "[ Message ]",
+      "[ 1517266949.4720 5755:601 I/Tag ]",
+      "[ 1517266949.47 5755:601 I/Tag ]",
+      "[ 1517266949.472 5755:601 I/Tag]",
+      "[ 1517266949.472 5755:601 X/Tag ]",
+      "[ 1517266949.472 5755 601 I/Tag ]",
+      "[1517266949.472 5755:601 I/Tag ]",
+      "[ 1517266949.472 5755:601 I/Tag\u2028Tag ]",
+    )) {
+      assertThat(logCatHeaderParser.parseHeader(line, "device")).named(line).isNull()
+    }
+  }
+
+  @Test
+  fun parseHeader_sharesTagsAndProcessNames() {
+    val logCatHeaderParser = logcatHeaderParser(EPOCH_FORMAT)
+
+    val header1 = logCatHeaderParser.parseHeader("[ 1517266949.472 5755:601 I/Tag ]", "device")!!
+    val header2 = logCatHeaderParser.parseHeader("[ 1517266950.472 5755:602 W/Tag ]", "device")!!
+
+    assertThat(header2.tag).isSameInstanceAs(header1.tag)
+    assertThat(header2.processName).isSameInstanceAs(header1.processName)
+  }
+
   fun logcatHeaderParser(
     format: LogcatHeaderParser.LogcatFormat,
     processNameMonitor: ProcessNameMonitor = FakeProcessNameMonitor(),
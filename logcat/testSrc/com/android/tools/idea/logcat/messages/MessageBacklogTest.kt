@@ -95,6 +95,47 @@ class MessageBacklogTest {
     assertThat(messageBacklog.messages).containsExactly(message2, message3)
   }
 
+  @Test
+  fun chunks_indexedOnceFull() {
+    val messageBacklog = MessageBacklog(Int.MAX_VALUE)
+    val messages = List(BACKLOG_CHUNK_SIZE * 2 + 10) { logcatMessage(message = "Message $it") }
+
+    messageBacklog.addAll(messages)
+
+    assertThat(messageBacklog.chunks.flatMap { it.messages }).containsExactlyElementsIn(messages).inOrder()
+    assertThat(messageBacklog.chunks.map { it.index != null }).containsExactly(true, true, false).inOrder()
+  }
+
+  @Test
+  fun chunks_afterEviction() {
+    val messages = List(BACKLOG_CHUNK_SIZE * 2) { logcatMessage(message = "0123456789") }
+    val messageBacklog = MessageBacklog(messages.size * 10)
+    messageBacklog.addAll(messages)
+
+    val newMessages = List(BACKLOG_CHUNK_SIZE + 1) { message1 }
+
+    messageBacklog.addAll(newMessages)
+
+    // Each new message is 9 chars long, so it takes 923 of the old 10 char messages to make room for them.
+    val expected = messages.drop(923) + newMessages
+    assertThat(messageBacklog.messages).containsExactlyElementsIn(expected).inOrder()
+    assertThat(messageBacklog.chunks.flatMap { it.messages }).containsExactlyElementsIn(expected).inOrder()
+    assertThat(messageBacklog.chunks.map { it.messages.size })
+      .containsExactly(BACKLOG_CHUNK_SIZE - 923, BACKLOG_CHUNK_SIZE, BACKLOG_CHUNK_SIZE, 1).inOrder()
+  }
+
+  @Test
+  fun messages_snapshotIsNotAffectedByChanges() {
+    val messageBacklog = MessageBacklog(20)
+    messageBacklog.addAll(listOf(message1, message2))
+    val messages = messageBacklog.messages
+
+    messageBacklog.addAll(listOf(message3))
+
+    assertThat(messages).containsExactly(message1, message2).inOrder()
+    assertThat(messageBacklog.messages).containsExactly(message2, message3).inOrder()
+  }
+
   @Test
   fun messages_isUnmodifiable() {
     val mutableList = MessageBacklog(20).messages as MutableList<LogcatMessage>
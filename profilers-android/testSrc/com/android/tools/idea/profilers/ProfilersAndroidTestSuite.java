@@ -20,8 +20,10 @@ import com.android.tools.idea.profilers.performance.CaptureDetailsTest;
 import com.android.tools.idea.profilers.performance.CpuProfilerAtraceCaptureTest;
 import com.android.tools.idea.profilers.performance.CpuProfilerEmptyCaptureTest;
 import com.android.tools.idea.profilers.performance.CpuProfilerPerfettoCaptureTest;
+import com.android.tools.idea.profilers.performance.HTreeChartBenchmarkTest;
 import com.android.tools.idea.profilers.performance.MemoryClassifierViewFindSuperSetNodeTest;
 import com.android.tools.idea.profilers.performance.MemoryProfilerHeapDumpTest;
+import com.android.tools.idea.profilers.performance.SimpleperfTraceParserBenchmarkTest;
 import com.android.tools.idea.profilers.performance.TraceProcessorDaemonBenchmarkTest;
 import com.android.tools.tests.IdeaTestSuiteBase;
 import org.junit.runner.RunWith;
@@ -37,6 +39,8 @@ import org.junit.runner.RunWith;
   MemoryProfilerHeapDumpTest.class, // b/152344964
   MemoryClassifierViewFindSuperSetNodeTest.class,
   TraceProcessorDaemonBenchmarkTest.class,
+  HTreeChartBenchmarkTest.class,
+  SimpleperfTraceParserBenchmarkTest.class,
   CaptureDetailsTest.class,
 })
 public class ProfilersAndroidTestSuite extends IdeaTestSuiteBase {
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.profilers.performance
+
+import com.android.tools.adtui.chart.hchart.HTreeChart
+import com.android.tools.adtui.model.Range
+import com.android.tools.profilers.cpu.CaptureNode
+import com.android.tools.profilers.cpu.CpuCapture
+import com.android.tools.profilers.cpu.CpuProfilerTestUtils.getTraceFile
+import com.android.tools.profilers.cpu.TraceParser
+import com.android.tools.profilers.cpu.art.ArtTraceParser
+import com.android.tools.profilers.cpu.capturedetails.CaptureDetails
+import com.android.tools.profilers.cpu.capturedetails.CaptureNodeHRenderer
+import com.android.tools.profilers.cpu.simpleperf.SimpleperfTraceParser
+import com.intellij.testFramework.ApplicationRule
+import org.junit.Rule
+import org.junit.Test
+import java.awt.Dimension
+import java.awt.Point
+import java.awt.image.BufferedImage
+
+/**
+ * Perfgate test measuring how long the call chart of the largest thread of a capture takes to index its tree, redraw while zooming
+ * and panning, and find the node under the mouse.
+ */
+class HTreeChartBenchmarkTest {
+  @get:Rule
+  val appRule = ApplicationRule()
+
+  private val benchmarkIndex = benchmarkMemoryAndTime("Call Chart Index", "Set-Tree", memUnit = MemoryUnit.KB)
+  private val benchmarkRangeChange = benchmarkMemoryAndTime("Call Chart Range Change", "Range-Change", memUnit = MemoryUnit.KB)
+  private val benchmarkHitTest = benchmarkMemoryAndTime("Call Chart Hit Test", "Mouse-Move", memUnit = MemoryUnit.KB)
+
+  @Test
+  fun measureArtTrace() {
+    measureCallChart("valid_trace.trace", ArtTraceParser())
+  }
+
+  @Test
+  fun measureSimpleperfTrace() {
+    measureCallChart("simpleperf.trace", SimpleperfTraceParser())
+  }
+
+  @Test
+  fun measureSimpleperfCallchainTrace() {
+    measureCallChart("simpleperf_callchain.trace", SimpleperfTraceParser())
+  }
+
+  private fun measureCallChart(traceName: String, parser: TraceParser) {
+    val name = traceName.removeSuffix(".trace")
+    val root = largestTree(parser.parse(getTraceFile(traceName), 0))
+    val range = Range(root.start.toDouble(), root.end.toDouble())
+    val chart = HTreeChart.Builder(root, range, CaptureNodeHRenderer(CaptureDetails.Type.CALL_CHART))
+      .setGlobalXRange(Range(range))
+      .setRootVisible(false)
+      .build()
+    chart.size = Dimension(WIDTH, HEIGHT)
+    val image = BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB)
+    fun paint() = image.createGraphics().let {
+      chart.paint(it)
+      it.dispose()
+    }
+    paint()
+
+    benchmarkIndex(name) {
+      repeat(ITERATIONS) { chart.setHTree(root) }
+    }
+
+    benchmarkRangeChange(name) {
+      val lo = range.min
+      val hi = range.max
+      val delta = (hi - lo) / (ITERATIONS * 2 + 1)
+      // Zoom in around the middle, pan right and zoom back out, redrawing after each step.
+      repeat(ITERATIONS) {
+        range.set(range.min + delta, range.max - delta)
+        paint()
+      }
+      repeat(ITERATIONS) {
+        range.shift(delta / 2)
+        paint()
+      }
+      range.set(lo, hi)
+      paint()
+    }
+
+    val nodesFound = benchmarkHitTest(name) {
+      var found = 0
+      for (y in 0 until HEIGHT step 4) {
+        for (x in 0 until WIDTH step 4) {
+          if (chart.getNodeAt(Point(x, y)) != null) found++
+        }
+      }
+      found
+    }
+    // Keep the result alive so the JIT can't drop the hit tests.
+    if (nodesFound < 0) println(nodesFound)
+  }
+
+  private fun largestTree(capture: CpuCapture): CaptureNode = capture.captureNodes.maxByOrNull { it.descendantsStream.count() }!!
+
+  private companion object {
+    const val ITERATIONS = 50
+    const val WIDTH = 1920
+    const val HEIGHT = 1080
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.profilers.performance
+
+import com.android.tools.profilers.cpu.CpuProfilerTestUtils.getTraceFile
+import com.android.tools.profilers.cpu.simpleperf.SimpleperfTraceParser
+import com.google.common.truth.Truth.assertThat
+import com.google.common.util.concurrent.MoreExecutors
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Perfgate test comparing the time it takes to build the per-thread call trees of simpleperf traces on a single thread and on the
+ * common fork-join pool.
+ */
+class SimpleperfTraceParserBenchmarkTest {
+  private val benchmark = benchmarkMemoryAndTime("Simpleperf Parsing", "Parse-Trace", memUnit = MemoryUnit.KB)
+
+  @Test
+  fun measureParsingOfSimpleperfTrace() {
+    compareParsers("simpleperf.trace")
+  }
+
+  @Test
+  fun measureParsingOfSimpleperfCallchainTrace() {
+    compareParsers("simpleperf_callchain.trace")
+  }
+
+  @Test
+  fun measureParsingOfSimpleperfTraceWithoutSymbols() {
+    compareParsers("simpleperf_trace_without_symbols.trace")
+  }
+
+  private fun compareParsers(traceName: String) {
+    val trace = getTraceFile(traceName)
+    val name = traceName.removeSuffix(".trace")
+    // Warm up both paths so that class loading and JIT don't count towards the first one measured.
+    parse(trace, SimpleperfTraceParser(MoreExecutors.directExecutor()))
+    parse(trace, SimpleperfTraceParser(ForkJoinPool.commonPool()))
+
+    val sequentialThreads = benchmark("$name-Sequential") {
+      (0 until ITERATIONS).map { parse(trace, SimpleperfTraceParser(MoreExecutors.directExecutor())) }.last()
+    }
+    val parallelThreads = benchmark("$name-Parallel") {
+      (0 until ITERATIONS).map { parse(trace, SimpleperfTraceParser(ForkJoinPool.commonPool())) }.last()
+    }
+    assertThat(parallelThreads).isEqualTo(sequentialThreads)
+  }
+
+  private fun parse(trace: File, parser: SimpleperfTraceParser) = parser.parse(trace, 0).captureNodes.size
+
+  private companion object {
+    const val ITERATIONS = 20
+  }
+}
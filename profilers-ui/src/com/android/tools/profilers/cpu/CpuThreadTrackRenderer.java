@@ -221,9 +221,11 @@ public class CpuThreadTrackRenderer implements TrackRenderer<CpuThreadTrackModel
         .installNavigationContextMenu(chart, navigator, handler::getCodeLocation);
     }
     if (node != null) {
-      // Force the call chart to update when a filter is applied to the root node. By setting the root to the same node we're not changing
-      // the tree model but just triggering a model-changed event.
-      node.getAspectModel().addDependency(myObserver).onChange(CaptureNode.Aspect.FILTER_APPLIED, () -> chart.setHTree(node));
+      // Force the call chart to update when a filter is applied to the root node, or when the clock type changes the start and end of its
+      // nodes. By setting the root to the same node we're not changing the tree model but just triggering a model-changed event.
+      node.getAspectModel().addDependency(myObserver)
+        .onChange(CaptureNode.Aspect.FILTER_APPLIED, () -> chart.setHTree(node))
+        .onChange(CaptureNode.Aspect.CLOCK_TYPE_CHANGED, () -> chart.setHTree(node));
     }
     return chart;
   }
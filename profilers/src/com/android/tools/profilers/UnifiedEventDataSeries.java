@@ -37,6 +37,12 @@ public class UnifiedEventDataSeries<T> implements DataSeries<T> {
 
   public static final int DEFAULT_GROUP_ID = Common.Event.EventGroupIds.INVALID_VALUE;
 
+  /**
+   * How far back (in microseconds) a {@link com.android.tools.adtui.model.StreamingDataSeries} wrapping this series reads events again
+   * on each update, since events from the device can reach the datastore a little after newer ones have been queried.
+   */
+  public static final long STREAMING_REFETCH_WINDOW_US = TimeUnit.SECONDS.toMicros(1);
+
   @NotNull private final TransportServiceGrpc.TransportServiceBlockingStub myClient;
   private final long myStreamId;
   private final int myPid;
@@ -98,7 +98,7 @@ open class BaseCpuCapture @JvmOverloads constructor(/**
     if (this.clockType != clockType) {
       this.clockType = clockType
       for (tree in captureNodes) {
-        tree.descendantsStream.forEach { it.clockType = clockType }
+        tree.updateClockType(clockType)
       }
     }
   }
@@ -149,6 +149,14 @@ open class CaptureNode(val data: CaptureNodeModel, var clockType: ClockType) : H
     return candidates.sortedWith(comparator.reversed())
   }
 
+  /**
+   * Sets the [clockType] of this node and all its descendants.
+   */
+  fun updateClockType(clockType: ClockType) {
+    descendantsStream.forEach { it.clockType = clockType }
+    aspectModelPlaceHolder?.changed(Aspect.CLOCK_TYPE_CHANGED)
+  }
+
   /**
    * Apply a filter to this node and its children.
    *
@@ -253,7 +261,12 @@ open class CaptureNode(val data: CaptureNodeModel, var clockType: ClockType) : H
     /**
      * Fired when a [Filter] is applied to this node.
      */
-    FILTER_APPLIED
+    FILTER_APPLIED,
+
+    /**
+     * Fired when the [clockType] of this node and its descendants changes, which changes their start and end.
+     */
+    CLOCK_TYPE_CHANGED
   }
 }
 
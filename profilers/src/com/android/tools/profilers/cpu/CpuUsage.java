@@ -20,6 +20,7 @@ import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.StreamingContinuousSeries;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Cpu;
 import com.android.tools.profilers.StudioProfilers;
@@ -62,6 +63,9 @@ public class CpuUsage extends LineChartModel {
       series = new MergeCaptureDataSeries<>(cpuCapture, series,
                                             new LazyDataSeries<>(() -> cpuCapture.getSystemTraceData().getCpuUtilizationSeries()));
     }
+    else {
+      series = new StreamingContinuousSeries(series, UnifiedEventDataSeries.STREAMING_REFETCH_WINDOW_US);
+    }
     myCpuSeries = new RangedContinuousSeries(getCpuSeriesLabel(), viewRange, myCpuRange, series, dataRange);
     add(myCpuSeries);
   }
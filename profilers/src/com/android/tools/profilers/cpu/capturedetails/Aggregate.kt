@@ -35,9 +35,26 @@ abstract class Aggregate<T: Aggregate<T>> {
   abstract val filterType: CaptureNode.FilterType
   val isUnmatched get() = filterType == CaptureNode.FilterType.UNMATCH
   abstract fun totalOver(clockType: ClockType, range: Range): Summary
-  fun overlapsWith(range: Range) = nodes.any { it.start < range.max && range.min < it.end }
+  fun overlapsWith(clockType: ClockType, range: Range) = index(clockType).nodes.overlaps(range)
   data class Summary(val total: Double, val childrenTotal: Double)
 
+  private val globalIndex by lazy { Index(ClockType.GLOBAL) }
+  private val threadIndex by lazy { Index(ClockType.THREAD) }
+
+  /**
+   * The nodes and their children sorted by time, built the first time a clock is queried. Selection changes then only cost a few binary
+   * searches per aggregate instead of a walk over all of its nodes.
+   */
+  internal fun index(clockType: ClockType) = when (clockType) {
+    ClockType.GLOBAL -> globalIndex
+    ClockType.THREAD -> threadIndex
+  }
+
+  internal inner class Index(clockType: ClockType) {
+    val nodes = IntervalSums(this@Aggregate.nodes, clockType)
+    val children = IntervalSums(this@Aggregate.nodes.flatMap { it.children }, clockType)
+  }
+
   class TopDown private constructor(override val id: String, override val nodes: List<CaptureNode>): Aggregate<TopDown>() {
     override val methodModel: CaptureNodeModel get() = nodes[0].data
     override val filterType: CaptureNode.FilterType get() = nodes[0].filterType
@@ -50,17 +67,8 @@ abstract class Aggregate<T: Aggregate<T>> {
       { nodes.all { it.childCount == 0 } }
     )
 
-    override fun totalOver(clockType: ClockType, range: Range): Summary {
-      var total = 0.0
-      var childrenTotal = 0.0
-      for (node in nodes) {
-        total += getIntersection(range, node, clockType)
-        for (child in node.children) {
-          childrenTotal += getIntersection(range, child, clockType)
-        }
-      }
-      return Summary(total, childrenTotal)
-    }
+    override fun totalOver(clockType: ClockType, range: Range) =
+      index(clockType).let { Summary(it.nodes.intersectionWith(range), it.children.intersectionWith(range)) }
 
     companion object {
       @JvmStatic fun rootAt(node: CaptureNode) = TopDown(node.data.id, listOf(node))
@@ -89,42 +97,41 @@ abstract class Aggregate<T: Aggregate<T>> {
       )
     }
 
-    override fun totalOver(clockType: ClockType, range: Range): Summary {
-      // how much time was spent in this call stack path, and in the functions it called
-      var total = 0.0
+    private val globalOuterSums by lazy { IntervalSums(outerNodes(ClockType.GLOBAL), ClockType.GLOBAL) }
+    private val threadOuterSums by lazy { IntervalSums(outerNodes(ClockType.THREAD), ClockType.THREAD) }
 
-      // The node that is at the top of the call stack, e.g if the call stack looks like B [0..30] -> B [1..20],
-      // then the second method can't be outerSoFarByParent.
-      // It's used to exclude nodes which aren't at the top of the
-      // call stack from the total time calculation.
+    /**
+     * The nodes at the top of the call stack, whose time is counted towards the total. e.g if the call stack looks like
+     * B [0..30] -> B [1..20], then the second method is excluded because its time is already part of the first one's.
+     * This doesn't depend on the range, so it is computed once per clock.
+     */
+    private fun outerNodes(clockType: ClockType): List<CaptureNode> {
+      fun CaptureNode.endOf() = if (clockType == ClockType.THREAD) endThread else endGlobal
+      val outerNodes = mutableListOf<CaptureNode>()
       // When multiple threads with the same ID are selected, the nodes are merged. When this happens nodes may be interlaced between
-      // each of the threads. As such we keep a mapping of outer so far by parents to keep the book keeping done properly.
-      val outerSoFarByParent = IdentityHashMap<CaptureNode, CaptureNode>()
-
-      // how much time was spent doing work directly in this call stack path
-      var self = 0.0
-      // myNodes is sorted by CaptureNode#getStart() in increasing order,
-      // if they are equal then ancestor comes first
+      // each of the threads. We use the root node to distinguish if two nodes share the same tree, and keep track of the outermost node
+      // so far for each of them.
+      val outerSoFarByRoot = IdentityHashMap<CaptureNode, CaptureNode>()
+      // nodes is sorted by CaptureNode#getStart() in increasing order, if they are equal then ancestor comes first
       for (node in nodes) {
-        // We use the root node to distinguish if two nodes share the same tree. In the event of multi-select we want to compute the bottom
-        // up calculation independently for each tree then sum them after the fact.
-        // TODO(153306735): Cache the root calculation, otherwise our update algorithm is going to be O(n*depth) instead of O(n)
         val root = node.findRootNode()
-        val outerSoFar = outerSoFarByParent[root]
-        if (outerSoFar == null || node.end > outerSoFar.end) {
-          if (outerSoFar != null) {
-            // |outerSoFarByParent| is at the top of the call stack
-            total += getIntersection(range, outerSoFar, clockType)
-          }
-          outerSoFarByParent[root] = node
+        val outerSoFar = outerSoFarByRoot[root]
+        if (outerSoFar == null || node.endOf() > outerSoFar.endOf()) {
+          outerSoFarByRoot[root] = node
+          outerNodes.add(node)
         }
-        self += getIntersection(range, node, clockType) -
-                node.children.sumOf { getIntersection(range, it, clockType) }
-      }
-      for (outerSoFar in outerSoFarByParent.values) {
-        // |outerSoFarByParent| is at the top of the call stack
-        total += getIntersection(range, outerSoFar, clockType)
       }
+      return outerNodes
+    }
+
+    override fun totalOver(clockType: ClockType, range: Range): Summary {
+      // how much time was spent in this call stack path, and in the functions it called
+      val total = when (clockType) {
+        ClockType.GLOBAL -> globalOuterSums
+        ClockType.THREAD -> threadOuterSums
+      }.intersectionWith(range)
+      // how much time was spent doing work directly in this call stack path
+      val self = index(clockType).let { it.nodes.intersectionWith(range) - it.children.intersectionWith(range) }
       val childrenTotal = total - self
       return Summary(total, childrenTotal)
     }
@@ -154,11 +161,106 @@ abstract class Aggregate<T: Aggregate<T>> {
       }
     }
   }
+}
+
+/**
+ * Sums the intersections of a fixed set of node intervals with any range in O(log n).
+ *
+ * The total intersection of intervals [s, e] with [a, b] is the integral over [a, b] of the number of intervals covering each point,
+ * i.e. the number of starts at or before it minus the number of ends at or before it. Each of the two integrals is answered with a binary
+ * search and a prefix sum over the sorted starts or the sorted ends. Timestamps are stored relative to the earliest start so that the
+ * prefix sums normally fit in a [Long] and are exact; sums that would overflow are kept as [Double] instead, with rounding errors.
+ */
+internal class IntervalSums(private val nodes: Collection<CaptureNode>, private val clockType: ClockType) {
+  private val base = nodes.minOfOrNull { it.startOf(clockType) } ?: 0L
+  private val starts = LongArray(nodes.size)
+  private val ends = LongArray(nodes.size)
+  private val startSums: PrefixSums
+  private val endSums: PrefixSums
+
+  init {
+    nodes.forEachIndexed { i, node ->
+      starts[i] = node.startOf(clockType) - base
+      // Intervals ending before they start don't intersect anything, make them empty.
+      ends[i] = maxOf(node.endOf(clockType) - base, starts[i])
+    }
+    starts.sort()
+    ends.sort()
+    startSums = PrefixSums(starts)
+    endSums = PrefixSums(ends)
+  }
+
+  /**
+   * Same as summing [Range.getIntersectionLength] of every interval.
+   */
+  fun intersectionWith(range: Range): Double {
+    if (starts.isEmpty()) return 0.0
+    // Parts of the range outside of all intervals don't contribute, clamping keeps the arithmetic on small numbers.
+    val a = maxOf(range.min - base, 0.0)
+    val b = minOf(range.max - base, ends.last().toDouble())
+    if (b <= a) return 0.0
+    return integral(starts, startSums, a, b) - integral(ends, endSums, a, b)
+  }
+
+  /**
+   * Whether any interval [s, e] has s < range.max and range.min < e.
+   */
+  fun overlaps(range: Range): Boolean {
+    if (starts.isEmpty()) return false
+    val a = range.min - base
+    val b = range.max - base
+    if (b <= a) {
+      // Only intervals strictly containing the (empty) range qualify, which the sorted starts and ends alone can't tell.
+      return nodes.any { it.startOf(clockType) < range.max && range.min < it.endOf(clockType) }
+    }
+    // Ends are never before starts, so an interval ending at or before a also starts before b.
+    return countBelow(starts, b) - countAtOrBelow(ends, a) > 0
+  }
+
+  /**
+   * The integral over [a, b] of the number of xs at or before each point, i.e. the sum over xs < b of (b - max(x, a)).
+   */
+  private fun integral(xs: LongArray, sums: PrefixSums, a: Double, b: Double): Double {
+    val j = countAtOrBelow(xs, a)
+    val k = countBelow(xs, b)
+    return j * (b - a) + (k - j) * b - sums.between(j, k)
+  }
+
+  private fun CaptureNode.startOf(clockType: ClockType) = if (clockType == ClockType.THREAD) startThread else startGlobal
+  private fun CaptureNode.endOf(clockType: ClockType) = if (clockType == ClockType.THREAD) endThread else endGlobal
+
+  /**
+   * Sums of the first i xs, exact unless they overflow a [Long].
+   */
+  private class PrefixSums(xs: LongArray) {
+    private val exact: LongArray? = try {
+      LongArray(xs.size + 1).also { sums -> xs.forEachIndexed { i, x -> sums[i + 1] = Math.addExact(sums[i], x) } }
+    }
+    catch (e: ArithmeticException) {
+      null
+    }
+    private val approximate: DoubleArray? =
+      if (exact != null) null else DoubleArray(xs.size + 1).also { sums -> xs.forEachIndexed { i, x -> sums[i + 1] = sums[i] + x } }
+
+    /** Sum of xs[j until k]. */
+    fun between(j: Int, k: Int): Double = exact?.let { (it[k] - it[j]).toDouble() } ?: approximate!!.let { it[k] - it[j] }
+  }
 
-  companion object {
-    internal fun getIntersection(range: Range, node: CaptureNode, type: ClockType): Double = when (type) {
-      ClockType.GLOBAL -> range.getIntersectionLength(node.startGlobal.toDouble(), node.endGlobal.toDouble())
-      ClockType.THREAD -> range.getIntersectionLength(node.startThread.toDouble(), node.endThread.toDouble())
+  private companion object {
+    /** Number of xs <= value, xs being sorted. */
+    fun countAtOrBelow(xs: LongArray, value: Double) = firstIndex(xs) { it > value }
+
+    /** Number of xs < value, xs being sorted. */
+    fun countBelow(xs: LongArray, value: Double) = firstIndex(xs) { it >= value }
+
+    inline fun firstIndex(xs: LongArray, predicate: (Double) -> Boolean): Int {
+      var low = 0
+      var high = xs.size
+      while (low < high) {
+        val mid = (low + high) ushr 1
+        if (predicate(xs[mid].toDouble())) high = mid else low = mid + 1
+      }
+      return low
     }
   }
 }
@@ -45,10 +45,10 @@ class CpuTreeNode<T: Aggregate<T>>(val base: T,
         childrenDelegate.isInitialized() -> {
           val oldNode = childrenDelegate.value.associateByTo(IdentityHashMap(), CpuTreeNode<T>::base)
           val children = base.children.asSequence()
-            .filter { it.overlapsWith(newRange) }
+            .filter { it.overlapsWith(clockType, newRange) }
             .map { child ->
               oldNode[child]?.let { childNode -> when {
-                diffs.any(child::overlapsWith) -> childNode.withRange(clockType, newRange, diffs, order)
+                diffs.any { child.overlapsWith(clockType, it) } -> childNode.withRange(clockType, newRange, diffs, order)
                 else -> childNode
               } } ?: of(child, clockType, newRange, order)
             }
@@ -103,7 +103,7 @@ class CpuTreeNode<T: Aggregate<T>>(val base: T,
 
     internal fun<T: Aggregate<T>> of(bases: List<T>, clockType: ClockType, range: Range, order: Comparator<CpuTreeNode<T>>?): List<CpuTreeNode<T>> =
       bases
-        .mapNotNull { base -> base.takeIf { base.overlapsWith(range) }?.let { of(base, clockType, range, order) } }
+        .mapNotNull { base -> base.takeIf { base.overlapsWith(clockType, range) }?.let { of(base, clockType, range, order) } }
         .maybe(List<CpuTreeNode<T>>::sortedWith, order)
 
     private fun<X> X.asLazy() = object: Lazy<X> {
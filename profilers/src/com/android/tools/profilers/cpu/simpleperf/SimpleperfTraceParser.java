@@ -28,6 +28,7 @@ import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.NoSymbolModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
 import java.io.File;
@@ -43,8 +44,14 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 
@@ -107,10 +114,22 @@ public class SimpleperfTraceParser implements TraceParser {
   @VisibleForTesting final List<SimpleperfReport.Sample> mySamples;
 
   /**
-   * Maps a {@link CpuThreadInfo} to its correspondent method call tree.
+   * Maps a {@link CpuThreadInfo} to its correspondent method call tree. Filled concurrently, one entry per thread.
    */
   private final Map<CpuThreadInfo, CaptureNode> myCaptureTrees;
 
+  /**
+   * Models shared by every node of every thread that refer to the same call chain entry. The name parsing is only done once per distinct
+   * entry, and identical frames across threads and samples don't each hold their own copy of the model.
+   */
+  private final Map<ModelKey, CaptureNodeModel> myModels = new ConcurrentHashMap<>();
+
+  /**
+   * Runs the per-thread call tree construction. Threads are independent of each other, so their trees are built in parallel.
+   */
+  @NotNull
+  private final Executor myExecutor;
+
   /**
    * Number of samples read from trace file.
    */
@@ -150,10 +169,16 @@ public class SimpleperfTraceParser implements TraceParser {
   private Set<String> myTags = new TreeSet<>(TAG_COMPARATOR);
 
   public SimpleperfTraceParser() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  @VisibleForTesting
+  public SimpleperfTraceParser(@NotNull Executor executor) {
     myFiles = new HashMap<>();
     mySamples = new ArrayList<>();
-    myCaptureTrees = new HashMap<>();
+    myCaptureTrees = new ConcurrentHashMap<>();
     myThreads = new HashMap<>();
+    myExecutor = executor;
   }
 
   /**
@@ -334,9 +359,27 @@ public class SimpleperfTraceParser implements TraceParser {
     // Split the samples per thread.
     Map<Integer, List<SimpleperfReport.Sample>> threadSamples = splitSamplesPerThread();
 
-    // Process the samples for each thread
-    for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : threadSamples.entrySet()) {
-      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
+    // Process the samples for each thread. The busiest threads are submitted first so that they don't end up last on a single worker.
+    List<Map.Entry<Integer, List<SimpleperfReport.Sample>>> entries = new ArrayList<>(threadSamples.entrySet());
+    entries.sort(Comparator.comparingInt((Map.Entry<Integer, List<SimpleperfReport.Sample>> entry) -> entry.getValue().size()).reversed());
+    List<CompletableFuture<Void>> futures = new ArrayList<>(entries.size());
+    for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : entries) {
+      futures.add(CompletableFuture.runAsync(() -> parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue()),
+                                             myExecutor));
+    }
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+    catch (CompletionException e) {
+      // Surface the parsing error as if it had been thrown on this thread.
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+
+    for (CaptureNodeModel model : myModels.values()) {
+      if (model.getTag() != null) {
+        myTags.add(model.getTag());
+      }
     }
   }
 
@@ -501,6 +544,14 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   private CaptureNodeModel methodModelFromCallchainEntry(SimpleperfReport.Sample.CallChainEntry callChainEntry, long parentVAddress) {
+    // Entries without a symbol are named after their own address, the others keep the address of the call site in their parent.
+    long vAddress = callChainEntry.getSymbolId() == INVALID_SYMBOL_ID ? callChainEntry.getVaddrInFile() : parentVAddress;
+    ModelKey key = new ModelKey(callChainEntry.getFileId(), callChainEntry.getSymbolId(), vAddress);
+    CaptureNodeModel model = myModels.get(key);
+    return model != null ? model : myModels.computeIfAbsent(key, k -> createMethodModel(callChainEntry, parentVAddress));
+  }
+
+  private CaptureNodeModel createMethodModel(SimpleperfReport.Sample.CallChainEntry callChainEntry, long parentVAddress) {
     int symbolId = callChainEntry.getSymbolId();
     SimpleperfReport.File symbolFile = myFiles.get(callChainEntry.getFileId());
     if (symbolFile == null) {
@@ -510,20 +561,41 @@ public class SimpleperfTraceParser implements TraceParser {
       // if symbol_id is -1, we report the method as fileName+vAddress (e.g. program.so+0x3039)
       String hexAddress = "0x" + Long.toHexString(callChainEntry.getVaddrInFile());
       String methodName = fileNameFromPath(symbolFile.getPath()) + "+" + hexAddress;
-      return nodeWithTagAdded(new NoSymbolModel(symbolFile.getPath(), methodName));
+      return new NoSymbolModel(symbolFile.getPath(), methodName);
     }
     // Otherwise, read the method from the symbol table and parse it into a CaptureNodeModel. User's code symbols come from
     // files located inside the app's directory, therefore we check if the symbol path has the same prefix of such directory.
     boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
-    return nodeWithTagAdded(NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId),
-                                                         isUserWritten, symbolFile.getPath(), parentVAddress));
+    return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten, symbolFile.getPath(), parentVAddress);
   }
 
-  private CaptureNodeModel nodeWithTagAdded(CaptureNodeModel node) {
-    if (node.getTag() != null) {
-      myTags.add(node.getTag());
+  /**
+   * Identifies the {@link CaptureNodeModel} of a call chain entry: everything {@link #createMethodModel} reads from the entry.
+   */
+  private static final class ModelKey {
+    private final int myFileId;
+    private final int mySymbolId;
+    private final long myVAddress;
+
+    private ModelKey(int fileId, int symbolId, long vAddress) {
+      myFileId = fileId;
+      mySymbolId = symbolId;
+      myVAddress = vAddress;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ModelKey)) {
+        return false;
+      }
+      ModelKey other = (ModelKey)o;
+      return myFileId == other.myFileId && mySymbolId == other.mySymbolId && myVAddress == other.myVAddress;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myFileId, mySymbolId, myVAddress);
     }
-    return node;
   }
 
   // Order the tags coarsely depending on whether they're full paths or wild cards
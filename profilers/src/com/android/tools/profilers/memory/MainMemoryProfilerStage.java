@@ -484,11 +484,20 @@ public class MainMemoryProfilerStage extends BaseStreamingMemoryProfilerStage {
   }
 
   public static boolean canSafelyLoadHprof(long fileSize) {
+    return canSafelyLoadHprof(fileSize, false);
+  }
+
+  /**
+   * @param isMemoryMapped whether the hprof will be read through a memory-mapped file rather than from a copy on the Java heap, in which
+   *                       case the file itself does not count towards the heap needed to load it.
+   */
+  public static boolean canSafelyLoadHprof(long fileSize, boolean isMemoryMapped) {
     System.gc(); // To avoid overly conservative estimation of free memory
     long leeway = 300 * 1024 * 1024; // Studio needs ~300MB to run without major freezes
     long requestableMemory = Runtime.getRuntime().maxMemory() -
                              Runtime.getRuntime().totalMemory() +
                              Runtime.getRuntime().freeMemory();
-    return requestableMemory >= MEMORY_HPROF_SAFE_FACTOR * fileSize + leeway;
+    long factor = isMemoryMapped ? Math.max(1, MEMORY_HPROF_SAFE_FACTOR - 1) : MEMORY_HPROF_SAFE_FACTOR;
+    return requestableMemory >= factor * fileSize + leeway;
   }
 }
\ No newline at end of file
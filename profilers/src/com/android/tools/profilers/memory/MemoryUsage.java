@@ -19,6 +19,7 @@ import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.StreamingContinuousSeries;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.MemorySample;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
@@ -65,7 +66,9 @@ public class MemoryUsage extends LineChartModel {
                                                                        Common.Event.Kind.MEMORY_USAGE,
                                                                        groupId,
                                                                        dataExtractor);
-    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series, profilers.getTimeline().getDataRange());
+    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range,
+                                      new StreamingContinuousSeries(series, UnifiedEventDataSeries.STREAMING_REFETCH_WINDOW_US),
+                                      profilers.getTimeline().getDataRange());
   }
 
   @NotNull
@@ -18,12 +18,12 @@
 package com.android.tools.profilers.memory.adapters
 
 import com.android.tools.adtui.model.Range
-import com.android.tools.idea.protobuf.ByteString
 import com.android.tools.perflib.heap.ClassObj
 import com.android.tools.perflib.heap.Instance
 import com.android.tools.perflib.heap.Snapshot
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor
-import com.android.tools.perflib.heap.io.InMemoryBuffer
+import com.android.tools.perflib.heap.io.HprofBuffer
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer
 import com.android.tools.profiler.proto.Common
 import com.android.tools.profiler.proto.Memory.HeapDumpInfo
 import com.android.tools.profiler.proto.Transport
@@ -52,12 +52,16 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.google.wireless.android.sdk.stats.AndroidProfilerEvent.Loading
 import gnu.trove.TObjectProcedure
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import java.io.File
 import java.io.OutputStream
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import java.util.stream.Collectors
 import java.util.stream.Stream
 
+private const val RELEASE_TIMEOUT_SECONDS = 30L // Time to wait for the instance filters to stop before unmapping the dump
+
 open class HeapDumpCaptureObject(private val client: ProfilerClient,
                                  private val _session: Common.Session,
                                  private val heapDumpInfo: HeapDumpInfo,
@@ -65,6 +69,10 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
                                  private val featureTracker: FeatureTracker,
                                  private val ideProfilerServices: IdeProfilerServices) : CaptureObject {
   private val _heapSets: MutableMap<Int, HeapSet> = HashMap()
+  /**
+   * The instances of the dump by id. Unlike the dump itself, which is memory mapped, the index and the instances live on the Java heap:
+   * perflib's [Snapshot] and the heap set classifiers both need materialized instances.
+   */
   private val instanceIndex = Long2ObjectOpenHashMap<InstanceObject>()
 
   @get:VisibleForTesting
@@ -75,6 +83,18 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
 
   @Volatile
   private var isLoadingError = false
+
+  /**
+   * The dump, fetched from the datastore once and spilled to disk so that perflib can memory-map it instead of parsing a copy of the
+   * whole file held on the Java heap. Null until first needed, or if the dump is empty.
+   */
+  private var hprofFile: File? = null
+
+  /**
+   * Keeps the mapping alive for as long as the snapshot is, since perflib reads instance fields from the buffer on demand. It is unmapped
+   * by [unload].
+   */
+  private var hprofBuffer: MemoryMappedFileBuffer? = null
   private var hasNativeAllocations = false
     private set
   private val activityFragmentLeakFilter = ActivityFragmentLeakInstanceFilter(classDb)
@@ -91,6 +111,9 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
   @VisibleForTesting
   val instanceFilterExecutor get() = executorService
 
+  @get:VisibleForTesting
+  val spilledHprofFile get() = hprofFile
+
   override fun getName() = "Heap Dump"
   override fun isExportable() = true
   override fun getExportableExtension() = "hprof"
@@ -104,19 +127,21 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
   override fun getClassDatabase() = classDb
   override fun getSession() = _session
 
-  override fun load(queryRange: Range?, queryJoiner: Executor?) = doGetBytesRequest().let { response ->
-    if (response.contents === ByteString.EMPTY) false.also { isLoadingError = true }
-    else true.also {
+  // Synchronized with releaseHprof, so the mapping is not released while the dump is being parsed.
+  @Synchronized
+  override fun load(queryRange: Range?, queryJoiner: Executor?) = when (val file = fetchHprofFile()) {
+    null -> false.also { isLoadingError = true }
+    else -> true.also {
       ideProfilerServices.featureTracker.trackLoading(Loading.Type.HPROF,
-                                                      sizeKb = countBytes() / 1024,
+                                                      sizeKb = (file.length() / 1024).toInt(),
                                                       measure = { instanceIndex.size.toLong() }) {
-        load(InMemoryBuffer(response.contents.asReadOnlyByteBuffer()))
+        load(MemoryMappedFileBuffer(file).also { hprofBuffer = it })
       }
     }
   }
 
   @VisibleForTesting
-  fun load(buffer: InMemoryBuffer) {
+  fun load(buffer: HprofBuffer) {
     val nativeRegistryPostProcessor = NativeRegistryPostProcessor()
     val snapshot = Snapshot.createSnapshot(buffer, proguardMap ?: ProguardMap(), listOf(nativeRegistryPostProcessor))
     snapshot.computeRetainedSizes()
@@ -159,6 +184,31 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
   override fun isError() = isLoadingError
   override fun unload() {
     executorService.shutdownNow()
+    // The instance filters or a load may still be reading from the mapping, so it is released in the background once they are done.
+    // If they do not stop in time, the mapping is left to the GC and the file to deleteOnExit, as unmapping it under them would crash.
+    ideProfilerServices.poolExecutor.execute {
+      val terminated = try {
+        executorService.awaitTermination(RELEASE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+      }
+      catch (e: InterruptedException) {
+        Thread.currentThread().interrupt()
+        false
+      }
+      if (terminated) {
+        releaseHprof()
+      }
+    }
+  }
+
+  /**
+   * Unmaps the dump and deletes its file. The file can not be deleted while it is mapped on Windows.
+   */
+  @Synchronized
+  private fun releaseHprof() {
+    hprofBuffer?.dispose()
+    hprofBuffer = null
+    hprofFile?.delete()
+    hprofFile = null
   }
 
   override fun getClassifierAttributes() =
@@ -228,14 +278,26 @@ open class HeapDumpCaptureObject(private val client: ProfilerClient,
     return null
   }
 
-  override fun canSafelyLoad() = MainMemoryProfilerStage.canSafelyLoadHprof(countBytes().toLong())
+  override fun canSafelyLoad() = MainMemoryProfilerStage.canSafelyLoadHprof(fetchHprofFile()?.length() ?: 0L, true)
 
   private fun doGetBytesRequest() = client.transportClient.getBytes(Transport.BytesRequest.newBuilder()
                                                                       .setStreamId(_session.streamId)
                                                                       .setId(heapDumpInfo.startTime.toString())
                                                                       .build())
 
-  private fun countBytes() = doGetBytesRequest().serializedSize
+  /**
+   * Fetches the dump on first call and writes it to a temporary file. Both the memory check and the load read from that file, so the
+   * bytes cross the transport once and are only on the heap until they have been written out.
+   */
+  @Synchronized
+  private fun fetchHprofFile(): File? = hprofFile ?: doGetBytesRequest().contents.let { contents ->
+    if (contents.isEmpty) null
+    else File.createTempFile("heapdump-${heapDumpInfo.startTime}", ".hprof").also { file ->
+      file.deleteOnExit()
+      file.outputStream().buffered().use { contents.writeTo(it) }
+      hprofFile = file
+    }
+  }
 
   private fun ClassObj.makeEntry(name: String = this.className) =
     if (superClassObj != null) classDb.registerClass(id, superClassObj!!.id, name, totalRetainedSize)
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails
+
+import com.android.tools.adtui.model.Range
+import com.android.tools.perflib.vmtrace.ClockType
+import com.android.tools.profilers.cpu.CaptureNode
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import kotlin.random.Random
+
+class IntervalSumsTest {
+  private val random = Random(42)
+
+  @Test
+  fun sumMatchesIntersectionOfEachInterval() {
+    // Overlapping, nested and empty intervals.
+    val nodes = (0 until 200).map { newNode(random.nextLong(1000, 2000), random.nextLong(0, 500)) }
+    val sums = IntervalSums(nodes, ClockType.GLOBAL)
+    repeat(500) {
+      val range = randomRange()
+      val expected = nodes.sumOf { range.getIntersectionLength(it.startGlobal.toDouble(), it.endGlobal.toDouble()) }
+      assertThat(sums.intersectionWith(range)).isWithin(1e-6).of(expected)
+      assertThat(sums.overlaps(range)).isEqualTo(nodes.any { it.startGlobal < range.max && range.min < it.endGlobal })
+    }
+  }
+
+  @Test
+  fun unboundedAndEmptyRanges() {
+    val sums = IntervalSums(listOf(newNode(10, 5), newNode(20, 10)), ClockType.GLOBAL)
+    assertThat(sums.intersectionWith(Range(-Double.MAX_VALUE, Double.MAX_VALUE))).isEqualTo(15.0)
+    assertThat(sums.intersectionWith(Range())).isEqualTo(0.0)
+    assertThat(sums.overlaps(Range(12.0, 12.0))).isTrue()
+    assertThat(sums.overlaps(Range(15.0, 15.0))).isFalse()
+    assertThat(IntervalSums(emptyList(), ClockType.GLOBAL).intersectionWith(Range(0.0, 10.0))).isEqualTo(0.0)
+  }
+
+  @Test
+  fun sumsThatOverflowLongAreApproximated() {
+    // The ends alone add up to more than Long.MAX_VALUE.
+    val nodes = (0 until 4).map { newNode(it * 1_000_000_000_000_000L, Long.MAX_VALUE / 3) }
+    val sums = IntervalSums(nodes, ClockType.GLOBAL)
+    for (range in listOf(Range(0.0, Long.MAX_VALUE.toDouble()), Range(5e14, Long.MAX_VALUE / 3 + 2.5e15))) {
+      val expected = nodes.sumOf { range.getIntersectionLength(it.startGlobal.toDouble(), it.endGlobal.toDouble()) }
+      assertThat(sums.intersectionWith(range)).isWithin(expected * 1e-9).of(expected)
+    }
+    assertThat(sums.overlaps(Range(10.0, 20.0))).isTrue()
+  }
+
+  @Test
+  fun usesRequestedClock() {
+    val node = newNode(100, 50).apply {
+      startThread = 10
+      endThread = 20
+    }
+    assertThat(IntervalSums(listOf(node), ClockType.GLOBAL).intersectionWith(Range(0.0, 1000.0))).isEqualTo(50.0)
+    assertThat(IntervalSums(listOf(node), ClockType.THREAD).intersectionWith(Range(0.0, 1000.0))).isEqualTo(10.0)
+  }
+
+  @Test
+  fun bottomUpTotalsMatchWalkOverRecursiveCalls() {
+    // A -> B [0..100] -> B [10..60] -> C [20..30], then B [120..150] directly under A.
+    val root = newNode("A", 0, 200).apply {
+      addChild(newNode("B", 0, 100).apply {
+        addChild(newNode("B", 10, 60).apply { addChild(newNode("C", 20, 30)) })
+      })
+      addChild(newNode("B", 120, 150))
+    }
+    val b = Aggregate.BottomUp.rootAt(root).children.first { it.id == "B" }
+    for (range in listOf(Range(0.0, 200.0), Range(15.0, 55.0), Range(90.0, 130.0), Range(65.0, 110.0))) {
+      val outer = listOf(root.children[0], root.children[1])
+      val total = outer.sumOf { range.getIntersectionLength(it.startGlobal.toDouble(), it.endGlobal.toDouble()) }
+      val self = b.nodes.sumOf { node ->
+        range.getIntersectionLength(node.startGlobal.toDouble(), node.endGlobal.toDouble()) -
+        node.children.sumOf { range.getIntersectionLength(it.startGlobal.toDouble(), it.endGlobal.toDouble()) }
+      }
+      assertThat(b.totalOver(ClockType.GLOBAL, range)).isEqualTo(Aggregate.Summary(total, total - self))
+    }
+  }
+
+  private fun randomRange(): Range {
+    val min = random.nextDouble(-100.0, 2600.0)
+    return Range(min, min + random.nextDouble(-50.0, 1500.0))
+  }
+
+  private fun newNode(start: Long, duration: Long) = newNode("node", start, start + duration)
+
+  private fun newNode(name: String, start: Long, end: Long) = CaptureNode(SingleNameModel(name)).apply {
+    startGlobal = start
+    endGlobal = end
+    startThread = start
+    endThread = end
+  }
+}
@@ -43,6 +43,7 @@ import com.android.tools.profilers.memory.adapters.classifiers.HeapSet;
 import com.android.tools.profilers.memory.adapters.instancefilters.ActivityFragmentLeakInstanceFilter;
 import com.android.tools.profilers.memory.adapters.instancefilters.CaptureObjectInstanceFilter;
 import com.google.common.truth.Truth;
+import java.io.File;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
@@ -184,6 +185,34 @@ public class HeapDumpCaptureObjectTest {
     assertNotNull(defaultHeap);
   }
 
+  @Test
+  public void testDumpIsFetchedOnce() throws Exception {
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getChannel()), ProfilersTestData.SESSION_DATA, dumpInfo,
+                                null,
+                                myIdeProfilerServices.getFeatureTracker(),
+                                myStage.getStudioProfilers().getIdeServices());
+    byte[] buffer = new SnapshotBuilder(2, 0, 0).addReferences(1, 2).addRoot(1).getByteBuffer();
+    myTransportService.addFile("3", ByteString.copyFrom(buffer));
+    assertTrue(capture.canSafelyLoad());
+
+    // The load reads the copy fetched by the memory check rather than going back to the transport.
+    myTransportService.addFile("3", ByteString.EMPTY);
+    capture.load(null, null);
+    assertTrue(capture.isDoneLoading());
+    assertFalse(capture.isError());
+    HeapSet testHeap = capture.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertEquals(6, testHeap.getInstancesCount());
+    File hprofFile = capture.getSpilledHprofFile();
+    assertTrue(hprofFile.exists());
+
+    // Unloading unmaps the dump so that its file can be deleted, including on Windows.
+    capture.unload();
+    assertFalse(hprofFile.exists());
+    assertNull(capture.getSpilledHprofFile());
+  }
+
   @Test
   public void testLoadingFailure() throws Exception {
     HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
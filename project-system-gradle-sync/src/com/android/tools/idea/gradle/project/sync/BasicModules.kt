@@ -157,7 +157,7 @@ internal class BasicV2AndroidModuleGradleProject(gradleProject: BasicGradleProje
           null
         }
 
-        val modelCache = modelCacheV2Impl(internedModels, modelCacheLock, agpVersion)
+        val modelCache = modelCacheV2Impl(internedModels, agpVersion)
         val rootBuildId = buildInfo.buildNameMap[":"] ?: error("Root build (':') not found")
         val buildId = buildInfo.buildNameMap[basicAndroidProject.buildName]
           ?: error("(Included) build named '${basicAndroidProject.buildName}' not found")
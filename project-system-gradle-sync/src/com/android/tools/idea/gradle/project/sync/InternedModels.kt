@@ -27,14 +27,39 @@ import com.android.tools.idea.gradle.model.impl.IdePreResolvedModuleLibraryImpl
 import com.android.tools.idea.gradle.model.impl.IdeResolvedLibraryTableImpl
 import com.android.tools.idea.gradle.model.impl.IdeUnresolvedLibraryTableImpl
 import com.android.tools.idea.gradle.model.impl.IdeUnresolvedModuleLibraryImpl
+import com.android.tools.idea.projectsystem.gradle.sync.Counter
 import org.jetbrains.annotations.TestOnly
 import java.io.File
-import java.util.concurrent.locks.ReentrantLock
-import kotlin.concurrent.withLock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 
-class InternedModels(private val buildRootDirectory: File?) {
-  private val strings: MutableMap<String, String> = HashMap()
-  private val libraries: MutableList<IdeLibrary> = mutableListOf()
+/**
+ * Interns strings and libraries while models are converted, possibly on many threads at once when models are fetched in parallel.
+ *
+ * Strings and libraries are looked up and added through concurrent maps, so threads converting different models do not wait for each
+ * other. The time spent inserting libraries that were not found by the lookup is recorded by [libraryInsertion]. It measures the
+ * insert itself, and only includes waiting when another thread adds a library to the same map bin at the same time.
+ *
+ * Artifact libraries are named after the fact, by [prepare] or [createLibraryTable], which are called once models have been converted.
+ * Until then [resolve] returns them unnamed. The libraries added since the last naming are named in the order of their content rather
+ * than in the order they were added in, so that the names given to libraries with the same artifact address do not depend on how the
+ * threads converting models interleaved.
+ */
+class InternedModels @JvmOverloads constructor(
+  private val buildRootDirectory: File?,
+  private val libraryInsertion: Counter? = null
+) {
+  private val strings: MutableMap<String, String> = ConcurrentHashMap()
+  private val libraries: MutableMap<Int, IdeLibrary> = ConcurrentHashMap()
+  private val libraryCount = AtomicInteger()
+
+  /**
+   * Guards [namedLibraryCount] and [allocatedLibraryNames], and the replacement of unnamed libraries in [libraries] with named ones.
+   */
+  private val namingLock = Any()
+
+  // The number of libraries, from the first one, that have been named.
+  private var namedLibraryCount = 0
 
   // Library names are expected to be unique, and thus we track already allocated library names to be able to uniqualize names when
   // necessary.
@@ -43,58 +68,57 @@ class InternedModels(private val buildRootDirectory: File?) {
   // Different modules (Gradle projects) may (usually do) share the same libraries. We create up to two library instances in this case.
   // One is when the library is used as a regular dependency and one when it is used as a "provided" dependency. This is going to change
   // when we add support for dependency graphs and different entities are used to represent libraries and dependencies.
-  // We use mutable [Instances] objects to keep record of already instantiated and named library objects for each of the cases.
-  private val androidLibraries: MutableMap<IdeAndroidLibraryImpl, Pair<LibraryReference, IdeAndroidLibraryImpl>> = HashMap()
-  private val javaLibraries: MutableMap<IdeJavaLibraryImpl, Pair<LibraryReference, IdeJavaLibraryImpl>> = HashMap()
-  private val moduleLibraries: MutableMap<IdeLibrary, Pair<LibraryReference, IdeLibrary>> = HashMap()
-  var artifactToLibraryReferenceMap: Map<File, LibraryReference>? = null ; private set
+  // We use these maps to keep record of already instantiated library objects for each of the cases.
+  private val androidLibraries: MutableMap<IdeAndroidLibraryImpl, LibraryReference> = ConcurrentHashMap()
+  private val javaLibraries: MutableMap<IdeJavaLibraryImpl, LibraryReference> = ConcurrentHashMap()
+  private val moduleLibraries: MutableMap<IdeLibrary, LibraryReference> = ConcurrentHashMap()
+  @Volatile var artifactToLibraryReferenceMap: Map<File, LibraryReference>? = null ; private set
 
-  fun resolve(reference: LibraryReference): IdeLibrary = libraries[reference.libraryIndex]
+  /**
+   * Returns the library [reference] refers to. Artifact libraries are unnamed until [prepare] or [createLibraryTable] is called.
+   */
+  fun resolve(reference: LibraryReference): IdeLibrary = libraries.getValue(reference.libraryIndex)
 
   fun intern(string: String): String {
-    return strings.getOrPut(string) { string }
+    return strings[string] ?: strings.putIfAbsent(string, string) ?: string
   }
 
   /**
-   * Finds an existing or creates a new library instance that match [unnamedAndroidLibrary]. When creating a new library generates a unique
-   * library name based on its artifact address.
+   * Finds an existing or creates a new library instance that match [unnamedAndroidLibrary]. The new library is named, based on its
+   * artifact address, when the library table is created.
    *
    * Note: Naming mechanism is going to change in the future when dependencies and libraries are separated. We will try to assign more
    * meaningful names to libraries representing different artifact variants under the same Gradle coordinates.
    */
   fun getOrCreate(unnamedAndroidLibrary: IdeAndroidLibraryImpl): LibraryReference {
     if (unnamedAndroidLibrary.name.isNotEmpty()) error("Unnamed library expected: $unnamedAndroidLibrary")
-    return androidLibraries.createOrGetLibrary(unnamedAndroidLibrary) { unnamed ->
-      unnamed.copy(name = nameLibrary(unnamed))
-    }
+    return androidLibraries.createOrGetLibrary(unnamedAndroidLibrary)
   }
 
   /**
-   * Finds an existing or creates a new library instance that match [unnamedJavaLibrary]. When creating a new library generates a unique
-   * library name based on its artifact address.
+   * Finds an existing or creates a new library instance that match [unnamedJavaLibrary]. The new library is named, based on its artifact
+   * address, when the library table is created.
    *
    * Note: Naming mechanism is going to change in the future when dependencies and libraries are separated. We will try to assign more
    * meaningful names to libraries representing different artifact variants under the same Gradle coordinates.
    */
   fun getOrCreate(unnamedJavaLibrary: IdeJavaLibraryImpl): LibraryReference {
     if (unnamedJavaLibrary.name.isNotEmpty()) error("Unnamed library expected: $unnamedJavaLibrary")
-    return javaLibraries.createOrGetLibrary(unnamedJavaLibrary) { unnamed ->
-      unnamed.copy(name = nameLibrary(unnamed))
-    }
+    return javaLibraries.createOrGetLibrary(unnamedJavaLibrary)
   }
 
   /**
    * Interns [moduleLibrary].
    */
   fun getOrCreate(moduleLibrary: IdePreResolvedModuleLibraryImpl): LibraryReference {
-    return moduleLibraries.createOrGetLibrary(moduleLibrary) { it }
+    return moduleLibraries.createOrGetLibrary(moduleLibrary)
   }
 
   /**
    * Interns [moduleLibrary].
    */
   fun getOrCreate(moduleLibrary: IdeUnresolvedModuleLibraryImpl): LibraryReference {
-    return moduleLibraries.createOrGetLibrary(moduleLibrary) { it }
+    return moduleLibraries.createOrGetLibrary(moduleLibrary)
   }
 
   /**
@@ -102,42 +126,43 @@ class InternedModels(private val buildRootDirectory: File?) {
    */
   @TestOnly
   fun getOrCreate(moduleLibrary: IdeModuleLibraryImpl): LibraryReference {
-    return moduleLibraries.createOrGetLibrary(moduleLibrary) { it }
+    return moduleLibraries.createOrGetLibrary(moduleLibrary)
   }
 
   /**
-   * Finds an existing or creates a new library instance that match [unnamed]. When creating a new library generates a unique library name
-   * based on its artifact address.
-   *
-   * Note: Naming mechanism is going to change in the future when dependencies and libraries are separated. We will try to assign more
-   * meaningful names to libraries representing different artifact variants under the same Gradle coordinates.
+   * Finds an existing or adds a new library instance that match [library].
    */
-  private fun <T : IdeLibrary> MutableMap<T, Pair<LibraryReference, T>>.createOrGetLibrary(
-    unnamed: T,
-    factory: (unnamed: T) -> T
-  ): LibraryReference {
-    return computeIfAbsent(unnamed) {
-      val library = factory(unnamed)
-      val index = libraries.size
-      libraries.add(library)
-      LibraryReference(index) to library
-    }.first
+  private fun <T : IdeLibrary> MutableMap<T, LibraryReference>.createOrGetLibrary(library: T): LibraryReference {
+    this[library]?.let { return it }
+    // Only threads adding the same library at the same time wait for each other here.
+    val create = {
+      computeIfAbsent(library) {
+        val index = libraryCount.getAndIncrement()
+        libraries[index] = library
+        LibraryReference(index)
+      }
+    }
+    return libraryInsertion?.invoke(create) ?: create()
   }
 
+  /**
+   * Names the libraries added since the library table was last created and returns the table. This must not be called while libraries
+   * are being added.
+   */
   fun createLibraryTable(): IdeUnresolvedLibraryTableImpl {
-    return IdeUnresolvedLibraryTableImpl(libraries.toList())
+    return IdeUnresolvedLibraryTableImpl(synchronized(namingLock) { nameNewLibraries() })
   }
 
   @TestOnly
   fun createResolvedLibraryTable(): IdeResolvedLibraryTableImpl {
-    return IdeResolvedLibraryTableImpl(libraries.map(::listOf))
+    return IdeResolvedLibraryTableImpl(createLibraryTable().libraries.map(::listOf))
   }
 
   /**
    * Prepares [ModelCache] for running any post-processors previously returned in [IdeModelWithPostProcessor] instances.
    */
-  fun prepare(lock: ReentrantLock) {
-    artifactToLibraryReferenceMap = lock.withLock {
+  fun prepare() {
+    artifactToLibraryReferenceMap =
       createLibraryTable()
         .libraries
         .mapIndexed { index, ideLibrary ->
@@ -152,7 +177,26 @@ class InternedModels(private val buildRootDirectory: File?) {
           }
         }
         .toMap()
-    }
+  }
+
+  /**
+   * Names the artifact libraries added since this was last called, in the order of their artifact addresses and then of their content,
+   * and returns all the libraries.
+   */
+  private fun nameNewLibraries(): List<IdeLibrary> {
+    val count = libraryCount.get()
+    (namedLibraryCount until count)
+      .mapNotNull { index -> (libraries.getValue(index) as? IdeArtifactLibrary)?.let { index to it } }
+      .sortedWith(compareBy({ (_, library) -> library.artifactAddress }, { (_, library) -> library.toString() }))
+      .forEach { (index, library) ->
+        libraries[index] = when (library) {
+          is IdeAndroidLibraryImpl -> library.copy(name = nameLibrary(library))
+          is IdeJavaLibraryImpl -> library.copy(name = nameLibrary(library))
+          else -> error("Unexpected library: $library")
+        }
+      }
+    namedLibraryCount = count
+    return List(count) { libraries.getValue(it) }
   }
 
   private fun nameLibrary(unnamed: IdeArtifactLibrary) =
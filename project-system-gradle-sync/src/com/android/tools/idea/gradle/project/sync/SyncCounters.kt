@@ -33,6 +33,8 @@ class SyncCounters {
   val nativeModel = Counter("nativeModel")
   val otherModel = Counter("otherModel")
 
+  val internedModelsLibraryInsertion = Counter("internedModelsLibraryInsertion")
+
   override fun toString(): String {
     return buildString {
       append(buildInfoPhase)
@@ -47,6 +49,7 @@ class SyncCounters {
       append(kaptModel)
       append(mppModel)
       append(otherModel)
+      append(internedModelsLibraryInsertion)
     }
   }
 }
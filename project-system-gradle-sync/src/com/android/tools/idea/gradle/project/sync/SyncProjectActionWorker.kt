@@ -29,7 +29,7 @@ internal class SyncProjectActionWorker(
   private val actionRunner: SyncActionRunner
 ) {
   private val modelCacheLock = ReentrantLock()
-  private val internedModels = InternedModels(buildInfo.buildRootDirectory)
+  private val internedModels = InternedModels(buildInfo.buildRootDirectory, syncCounters.internedModelsLibraryInsertion)
   private val androidModulesById: MutableMap<String, AndroidModule> = HashMap()
   private val rootBuildModel: BuildModel get() = buildInfo.rootBuild
 
@@ -91,7 +91,7 @@ internal class SyncProjectActionWorker(
     // Requesting ProjectSyncIssues must be performed "last" since all other model requests may produces additional issues.
     // Note that "last" here means last among Android models since many non-Android models are requested after this point.
     actionRunner.runActions(androidModules.mapNotNull { it.getFetchSyncIssuesAction() })
-    internedModels.prepare(modelCacheLock)
+    internedModels.prepare()
     val indexedModels = indexModels(modules)
     return modules.map { it.prepare(indexedModels) } + GradleProject(rootBuildModel, internedModels.createLibraryTable())
   }
@@ -26,6 +26,8 @@ import org.junit.Assert.assertEquals
 import org.junit.Assert.assertTrue
 import org.junit.Test
 import java.io.File
+import java.util.concurrent.Executors
+import kotlin.random.Random
 
 private const val BUILD_ROOT = "/tmp/abc"
 
@@ -33,7 +35,8 @@ class InternedModelsTest {
 
   private val internedModels = InternedModels(File(BUILD_ROOT))
 
-  private fun LibraryReference.resolve(): IdeArtifactLibrary = internedModels.resolve(this) as IdeArtifactLibrary
+  private fun LibraryReference.resolve(): IdeArtifactLibrary =
+    internedModels.createLibraryTable().libraries[libraryIndex] as IdeArtifactLibrary
 
   @Test
   fun `intern string`() {
@@ -181,6 +184,75 @@ class InternedModelsTest {
     assertEquals("./app/libs/artifactFile", named.name)
   }
 
+  @Test
+  fun `name libraries with matching artifact name independently of creation order`() {
+    val unnamed = (1..5).map { ideAndroidLibrary("/tmp/libs/lib$it", "com.example:lib:1.0", "/tmp/libs/lib$it/artifactFile") }
+
+    val references = unnamed.reversed().map { internedModels.getOrCreate(it) }
+    val names = references.map { reference -> (reference.resolve() as IdeAndroidLibraryImpl).let { it.name to it.folder } }
+
+    assertEquals(
+      listOf(
+        "com.example:lib:1.0 (4)" to File("/tmp/libs/lib5"),
+        "com.example:lib:1.0 (3)" to File("/tmp/libs/lib4"),
+        "com.example:lib:1.0 (2)" to File("/tmp/libs/lib3"),
+        "com.example:lib:1.0 (1)" to File("/tmp/libs/lib2"),
+        "com.example:lib:1.0" to File("/tmp/libs/lib1"),
+      ),
+      names
+    )
+  }
+
+  @Test
+  fun `intern concurrently`() {
+    val unnamed = (1..100).map { ideAndroidLibrary("/tmp/libs/lib${it % 10}", "com.example:lib${it % 20}:1.0", "/tmp/libs/artifactFile") }
+    val executor = Executors.newFixedThreadPool(4)
+    try {
+      val references = (1..4)
+        .map { seed -> executor.submit<List<LibraryReference>> { unnamed.shuffled(Random(seed)).map { internedModels.getOrCreate(it) } } }
+        .map { future -> unnamed.zip(future.get()).toMap() }
+
+      assertTrue(references.all { it == references.first() })
+      assertEquals(20, internedModels.createLibraryTable().libraries.size)
+      assertEquals(20, internedModels.createLibraryTable().libraries.map { (it as IdeArtifactLibrary).name }.toSet().size)
+    }
+    finally {
+      executor.shutdown()
+    }
+  }
+
+  @Test
+  fun `resolve unnamed libraries while interning concurrently`() {
+    val unnamed = (1..40).map { ideAndroidLibrary("/tmp/libs/lib$it", "com.example:lib${it % 4}:1.0", "/tmp/libs/lib$it/artifactFile") }
+
+    fun internConcurrently(seed: Int): List<String> {
+      val internedModels = InternedModels(File(BUILD_ROOT))
+      val executor = Executors.newFixedThreadPool(4)
+      try {
+        (1..4)
+          .map { thread ->
+            executor.submit {
+              unnamed.shuffled(Random(seed * 4 + thread)).forEach { library ->
+                val resolved = internedModels.resolve(internedModels.getOrCreate(library))
+                assertEquals(library, resolved)
+              }
+            }
+          }
+          .forEach { it.get() }
+      }
+      finally {
+        executor.shutdown()
+      }
+      val libraryTable = internedModels.createLibraryTable()
+      return unnamed.map { (libraryTable.libraries[internedModels.getOrCreate(it).libraryIndex] as IdeArtifactLibrary).name }
+    }
+
+    val names = internConcurrently(seed = 1)
+    assertEquals(40, names.toSet().size)
+    assertEquals("com.example:lib1:1.0", names[0])
+    assertEquals(names, internConcurrently(seed = 2))
+  }
+
   private fun ideAndroidLibrary(
     libRoot: String,
     address: String,
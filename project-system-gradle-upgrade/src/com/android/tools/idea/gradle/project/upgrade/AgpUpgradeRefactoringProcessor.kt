@@ -115,17 +115,27 @@ internal const val LOG_CATEGORY = "Upgrade Assistant"
 private val LOG = Logger.getInstance(LOG_CATEGORY)
 
 abstract class GradleBuildModelRefactoringProcessor : BaseRefactoringProcessor {
-  constructor(project: Project) : super(project) {
+  constructor(project: Project) : this(project, IncludedBuildModels(project, ProjectBuildModel.get(project)))
+  internal constructor(project: Project, includedBuildModels: IncludedBuildModels) : super(project) {
     this.project = project
-    this.projectBuildModel = ProjectBuildModel.get(project)
+    this.projectBuildModel = includedBuildModels.projectBuildModel
+    this.includedBuildModels = includedBuildModels
   }
   constructor(processor: GradleBuildModelRefactoringProcessor): super(processor.project) {
     this.project = processor.project
     this.projectBuildModel = processor.projectBuildModel
+    this.includedBuildModels = processor.includedBuildModels
   }
 
   val project: Project
   val projectBuildModel: ProjectBuildModel
+  internal val includedBuildModels: IncludedBuildModels
+
+  /**
+   * The build models of all the included builds and modules of the project, shared with the other processors of the same upgrade.
+   */
+  val allIncludedBuildModels: List<GradleBuildModel>
+    get() = includedBuildModels.get()
 
   private val otherAffectedFiles = mutableSetOf<PsiFile>()
   val psiSpoilingUsageInfos = mutableListOf<UsageInfo>()
@@ -162,7 +172,7 @@ abstract class GradleBuildModelRefactoringProcessor : BaseRefactoringProcessor {
     }
 
     if (psiSpoilingUsageInfos.isNotEmpty()) {
-      projectBuildModel.reparse()
+      includedBuildModels.reparse()
     }
 
     psiSpoilingUsageInfos.forEach {
@@ -254,11 +264,14 @@ abstract class SpoilingGradleBuildModelUsageInfo(
   }
 }
 
-class AgpUpgradeRefactoringProcessor(
+class AgpUpgradeRefactoringProcessor internal constructor(
   project: Project,
   val current: GradleVersion,
-  val new: GradleVersion
-) : GradleBuildModelRefactoringProcessor(project) {
+  val new: GradleVersion,
+  includedBuildModels: IncludedBuildModels
+) : GradleBuildModelRefactoringProcessor(project, includedBuildModels) {
+  constructor(project: Project, current: GradleVersion, new: GradleVersion) :
+    this(project, current, new, IncludedBuildModels(project, ProjectBuildModel.get(project)))
 
   val uuid = UUID.randomUUID().toString()
   val agpVersionRefactoringProcessor by lazy { componentRefactoringProcessors.firstNotNullOf { it as? AgpVersionRefactoringProcessor } }
@@ -315,12 +328,13 @@ class AgpUpgradeRefactoringProcessor(
 
   @VisibleForTesting
   fun doFindUsages(): Array<UsageInfo> {
-    projectBuildModel.reparse()
+    includedBuildModels.reparseIfChanged()
     val usages = ArrayList<UsageInfo>()
 
     componentRefactoringProcessors.forEach { processor ->
       usages.addAll(processor.findUsages())
     }
+    includedBuildModels.recordFileStamps()
     targets.clear()
     projectBuildModel.projectBuildModel?.let {
       targets.add(object : FakePsiElement() {
@@ -622,7 +636,7 @@ class AgpUpgradeRefactoringProcessor(
     progressManager.runProcessWithProgressSynchronously(
       {
         val indicator = progressManager.progressIndicator
-        projectBuildModel.getAllIncludedBuildModels { seen, total ->
+        includedBuildModels.get { seen, total ->
           indicator?.let {
             indicator.checkCanceled()
             // both "Parsing file ..." and "Parsing module ..." here are in general slightly wrong (given included and settings files).
@@ -634,6 +648,8 @@ class AgpUpgradeRefactoringProcessor(
         // Ensure that we have the information about no-ops, which might also involve inspecting Psi directly (and thus should not be
         // done on the EDT).
         componentRefactoringProcessors.forEach { it.initializeComponentCaches() }
+        // Finding usages to run the upgrade doesn't need to parse the project again unless its files change in the meantime.
+        includedBuildModels.recordFileStamps()
       },
       commandName, true, project)
   }
@@ -780,15 +796,15 @@ abstract class AgpUpgradeComponentRefactoringProcessor: GradleBuildModelRefactor
     }
     get() {
       if (_isAlwaysNoOpForProject == null) {
-        _isAlwaysNoOpForProject = runReadAction { computeIsAlwaysNoOpForProject() }
+        _isAlwaysNoOpForProject = runReadAction { computeIsAlwaysNoOpForProject(findComponentUsages().toList()) }
       }
       return _isAlwaysNoOpForProject!!
     }
 
   internal fun initializeComponentCaches() {
     runReadAction {
-      _isAlwaysNoOpForProject = computeIsAlwaysNoOpForProject()
       _cachedUsages = findComponentUsages().toList()
+      _isAlwaysNoOpForProject = computeIsAlwaysNoOpForProject(_cachedUsages)
       initializeComponentExtraCaches()
     }
   }
@@ -832,7 +848,7 @@ abstract class AgpUpgradeComponentRefactoringProcessor: GradleBuildModelRefactor
 
   public final override fun findUsages(): Array<out UsageInfo> {
     if (!hasParentProcessor) {
-      projectBuildModel.reparse()
+      includedBuildModels.reparseIfChanged()
     }
     if (!isEnabled) {
       trackComponentUsage(FIND_USAGES, 0, projectBuildModel.context.allRequestedFiles.size)
@@ -880,9 +896,9 @@ abstract class AgpUpgradeComponentRefactoringProcessor: GradleBuildModelRefactor
    * Return whether this refactoring processor is known to perform no changes to the project, no matter what the settings
    * of the processor are; a return value of false may nevertheless lead to no changes, but true must never be returned
    * if the processor does in fact make changes.  The default method checks whether the processor finds any usages, returning
-   * true if not and false otherwise; component processors may override or extend.
+   * true if not and false otherwise; component processors may override or extend, inspecting the [usages] already found.
    */
-  protected open fun computeIsAlwaysNoOpForProject(): Boolean = findComponentUsages().isEmpty()
+  protected open fun computeIsAlwaysNoOpForProject(usages: List<UsageInfo>): Boolean = usages.isEmpty()
 
   fun getComponentInfo(): UpgradeAssistantComponentInfo.Builder =
     completeComponentInfo(UpgradeAssistantComponentInfo.newBuilder().setIsEnabled(isEnabled))
@@ -919,7 +935,7 @@ data class PropertiesOperationsRefactoringInfo(
 
     override fun findComponentUsages(): Array<out UsageInfo> {
       val usages = ArrayList<UsageInfo>()
-      projectBuildModel.allIncludedBuildModels.forEach buildModel@{ buildModel ->
+      allIncludedBuildModels.forEach buildModel@{ buildModel ->
         propertiesOperationInfos.forEach propertyInfo@{ propertyInfo ->
           usages.addAll(propertyInfo.findBuildModelUsages(this, buildModel))
         }
@@ -74,7 +74,7 @@ class AgpVersionRefactoringProcessor : AgpUpgradeComponentRefactoringProcessor {
     }
 
   private fun computeIsPre80MavenPublish(): Boolean {
-    val mavenPublishUsed = projectBuildModel.allIncludedBuildModels.flatMap { it.plugins() }.any { it.name().toString() == "maven-publish" }
+    val mavenPublishUsed = allIncludedBuildModels.flatMap { it.plugins() }.any { it.name().toString() == "maven-publish" }
     val disableAutomaticComponentCreation =
       projectBuildModel.projectBuildModel?.propertiesModel?.declaredProperties
         ?.firstOrNull { it.name == "android.disableAutomaticComponentCreation" }
@@ -123,7 +123,7 @@ class AgpVersionRefactoringProcessor : AgpUpgradeComponentRefactoringProcessor {
     }
 
     val buildSrcDir = File(Projects.getBaseDirPath(project), "buildSrc").toVirtualFile()
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       // Using the buildModel, look for classpath dependencies on AGP, and if we find one, record it as a usage.
       model.buildscript().dependencies().artifacts(CommonConfigurationNames.CLASSPATH).forEach dep@{ dep ->
         when (isUpdatablePluginDependency(new, dep)) {
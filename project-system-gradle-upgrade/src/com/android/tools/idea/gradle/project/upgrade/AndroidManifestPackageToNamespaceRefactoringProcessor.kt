@@ -83,7 +83,7 @@ class AndroidManifestPackageToNamespaceRefactoringProcessor : AgpUpgradeComponen
 
   override fun blockProcessorReasons(): List<BlockReason> {
     val moduleNames = mutableListOf<String>()
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       model.psiElement ?: return@model
       val moduleDirectory = model.moduleRootDirectory
       val (namespace, testNamespace) = moduleDirectory.computeNamespacesFromManifestPackageAttributes()
@@ -103,7 +103,7 @@ class AndroidManifestPackageToNamespaceRefactoringProcessor : AgpUpgradeComponen
 
   override fun findComponentUsages(): Array<UsageInfo> {
     val usages = ArrayList<UsageInfo>()
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       val modelPsiElement = model.psiElement ?: return@model
       val moduleDirectory = model.moduleRootDirectory
       val (namespace, testNamespace) = moduleDirectory.computeNamespacesFromManifestPackageAttributesWith { packageAttribute ->
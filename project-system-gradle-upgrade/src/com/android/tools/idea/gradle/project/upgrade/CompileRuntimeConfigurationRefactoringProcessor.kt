@@ -77,7 +77,7 @@ class CompileRuntimeConfigurationRefactoringProcessor : AgpUpgradeComponentRefac
       }
     }
 
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       // if we don't have a PsiElement for the model, we don't have a file at all, and attempting to perform a refactoring is not
       // going to work
       val modelPsiElement = model.psiElement ?: return@model
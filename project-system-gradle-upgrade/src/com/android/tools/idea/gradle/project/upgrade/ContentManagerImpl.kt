@@ -416,6 +416,9 @@ class ToolWindowModel(
     root.removeAllChildren()
     treeModel.nodeStructureChanged(root)
     processor?.usageView?.close()
+    // When only the selected version changes, the build models parsed for the previous version can be used again if the project
+    // did not change in the meantime.
+    val includedBuildModels = processor?.includedBuildModels?.takeIf { !refindPlugin && it.isUpToDate() }
     processor = null
 
     if (refindPlugin) {
@@ -426,8 +429,11 @@ class ToolWindowModel(
     // TODO(xof/mlazeba): should we somehow preserve the existing uuid of the processor?
     val newProcessor = newVersion?.let {
       current?.let { current ->
-        if (newVersion >= current && !project.isDisposed)
-          project.getService(RefactoringProcessorInstantiator::class.java).createProcessor(project, current, it)
+        if (newVersion >= current && !project.isDisposed) {
+          val instantiator = project.getService(RefactoringProcessorInstantiator::class.java)
+          if (includedBuildModels != null) instantiator.createProcessor(project, current, it, includedBuildModels)
+          else instantiator.createProcessor(project, current, it)
+        }
         else
           null
       }
@@ -45,7 +45,7 @@ class FabricCrashlyticsRefactoringProcessor : AgpUpgradeComponentRefactoringProc
 
   override fun findComponentUsages(): Array<out UsageInfo> {
     val usages = ArrayList<UsageInfo>()
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       val modelPsiElement = model.psiElement ?: return@model
 
       // ref. https://firebase.google.com/docs/crashlytics/upgrade-sdk?platform=android Step 2.1:
@@ -39,7 +39,7 @@ class GMavenRepositoryRefactoringProcessor : AgpUpgradeComponentRefactoringProce
     val usages = ArrayList<UsageInfo>()
     // using the buildModel, look for classpath dependencies on AGP, and if we find one,
     // check the buildscript/repositories block for a google() gmaven entry, recording an additional usage if we don't find one
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       model.buildscript().dependencies().artifacts(CommonConfigurationNames.CLASSPATH).forEach dep@{ dep ->
         when (isUpdatablePluginDependency(new, dep)) {
           // consider returning a usage even if the dependency has the current version (in a chained upgrade, the dependency
@@ -80,7 +80,7 @@ class GradlePluginsRefactoringProcessor : AgpUpgradeComponentRefactoringProcesso
     // Check plugins for compatibility with our minimum Gradle version even if we're not upgrading (because the project has a higher
     // version, for example) because some compatibility issues are related to the (AGP,Gradle) version pair rather than just directly
     // the Gradle version.  (Also, this makes it substantially easier to test the action of this processor on a file at a time.)
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       model.buildscript().dependencies().artifacts(CommonConfigurationNames.CLASSPATH).forEach dep@{ dep ->
         GradleVersion.tryParse(dep.version().toString())?.let { currentVersion ->
           // GradleVersion.tryParse() looks like it should only parse plausibly-valid version strings.  Unfortunately, things like
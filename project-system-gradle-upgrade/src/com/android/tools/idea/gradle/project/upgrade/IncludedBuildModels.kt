@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.project.upgrade
+
+import com.android.tools.idea.gradle.dsl.api.GradleBuildModel
+import com.android.tools.idea.gradle.dsl.api.ProjectBuildModel
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.PsiManager
+
+/**
+ * The build models of the project being upgraded, shared by all the component processors of an [AgpUpgradeRefactoringProcessor] so
+ * that the included builds and modules of the project are only looked up once per parse rather than once per component.
+ *
+ * The modification stamps of the files the build models were parsed from are recorded once usages have been found, so that finding
+ * usages again, e.g. when running the upgrade after the Upgrade Assistant has shown its components, only reparses the project if one
+ * of these files changed or if a build model has changes that were not applied. The Upgrade Assistant also hands these models over
+ * to the processor it creates when another version is selected, as long as they are up to date.
+ *
+ * Any change causes the whole project to be reparsed and its builds to be discovered again: the files refer to each other's
+ * properties, and the settings files decide which builds and modules are included, so a single file can not safely be reparsed
+ * on its own.
+ */
+internal class IncludedBuildModels(private val project: Project, val projectBuildModel: ProjectBuildModel) {
+  private var buildModels: List<GradleBuildModel>? = null
+  private var fileStamps: Map<VirtualFile, Long> = mapOf()
+
+  /**
+   * Returns the build models of the project, calling [progress] with the number of models seen so far and the total number of models,
+   * if known, when they need to be parsed.
+   */
+  fun get(progress: (Int, Int?) -> Unit = { _, _ -> }): List<GradleBuildModel> =
+    buildModels ?: projectBuildModel.getAllIncludedBuildModels { seen, total -> progress(seen, total) }.also { buildModels = it }
+
+  /**
+   * Records the modification stamps of all the files parsed so far.
+   */
+  fun recordFileStamps() {
+    fileStamps = runReadAction { projectBuildModel.context.allRequestedFiles.associate { it.file to stampOf(it.file) } }
+  }
+
+  /**
+   * Reparses the project, unless none of its files changed since [recordFileStamps] was last called.
+   */
+  fun reparseIfChanged() {
+    if (!isUpToDate()) {
+      reparse()
+    }
+  }
+
+  fun reparse() {
+    projectBuildModel.reparse()
+    buildModels = null
+    fileStamps = mapOf()
+  }
+
+  /**
+   * Returns whether none of the files of the project changed since [recordFileStamps] was last called.
+   */
+  fun isUpToDate(): Boolean = runReadAction {
+    val files = projectBuildModel.context.allRequestedFiles
+    fileStamps.isNotEmpty() && files.none { it.isModified } && files.all { fileStamps[it.file] == stampOf(it.file) }
+  }
+
+  private fun stampOf(file: VirtualFile): Long =
+    if (file.isValid) PsiManager.getInstance(project).findFile(file)?.modificationStamp ?: file.modificationStamp else -1
+}
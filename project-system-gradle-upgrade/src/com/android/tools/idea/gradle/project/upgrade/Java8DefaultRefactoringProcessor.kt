@@ -60,7 +60,7 @@ class Java8DefaultRefactoringProcessor : AgpUpgradeComponentRefactoringProcessor
     }
 
     val usages = mutableListOf<UsageInfo>()
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       // TODO(xof): we should consolidate the various ways of guessing what a module is from its plugins (see also
       //  PsModuleType.kt)
       val pluginNames = model.appliedPlugins().map { it.name().forceString() }
@@ -136,8 +136,8 @@ class Java8DefaultRefactoringProcessor : AgpUpgradeComponentRefactoringProcessor
     }
   }
 
-  override fun computeIsAlwaysNoOpForProject(): Boolean =
-    findComponentUsages().all {
+  override fun computeIsAlwaysNoOpForProject(usages: List<UsageInfo>): Boolean =
+    usages.all {
       when (it) {
         is JavaLanguageLevelUsageInfo -> it.existing
         is KotlinLanguageLevelUsageInfo -> it.existing
@@ -60,7 +60,7 @@ class MigratePackagingOptionsToJniLibsAndResourcesRefactoringProcessor : AgpUpgr
       }
     }
 
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       usages.addAll(MOVE_PACKAGING_OPTIONS_PROPERTIES_INFO.findBuildModelUsages(this, model))
       model.android().packagingOptions().run {
         splitModel(excludes(), jniLibs().excludes(), resources().excludes())
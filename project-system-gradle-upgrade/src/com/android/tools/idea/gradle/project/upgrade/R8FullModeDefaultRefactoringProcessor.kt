@@ -111,8 +111,8 @@ class R8FullModeDefaultRefactoringProcessor : AgpUpgradeComponentRefactoringProc
     }
   }
 
-  override fun computeIsAlwaysNoOpForProject(): Boolean =
-    findComponentUsages().all {
+  override fun computeIsAlwaysNoOpForProject(usages: List<UsageInfo>): Boolean =
+    usages.all {
       it is R8FullModeUsageInfo && it.existing
     }
 
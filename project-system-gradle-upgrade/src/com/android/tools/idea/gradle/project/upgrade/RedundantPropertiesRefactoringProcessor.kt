@@ -35,7 +35,7 @@ class RedundantPropertiesRefactoringProcessor: AgpUpgradeComponentRefactoringPro
 
   override fun findComponentUsages(): Array<UsageInfo> {
     val usages = ArrayList<UsageInfo>()
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       val modelPsiElement = model.psiElement ?: return@model
       val buildToolsVersionModel = model.android().buildToolsVersion()
       val buildToolsVersion = buildToolsVersionModel.valueAsString()
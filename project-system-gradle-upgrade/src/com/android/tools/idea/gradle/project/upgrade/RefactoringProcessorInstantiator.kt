@@ -88,4 +88,11 @@ class RefactoringProcessorInstantiator {
   fun createProcessor(project: Project, current: GradleVersion, new: GradleVersion) =
     AgpUpgradeRefactoringProcessor(project, current, new)
 
+  /**
+   * Create a refactoring processor for upgrading from AGP version [current] to [new], reusing the build models already parsed by
+   * another processor.
+   */
+  internal fun createProcessor(project: Project, current: GradleVersion, new: GradleVersion, includedBuildModels: IncludedBuildModels) =
+    AgpUpgradeRefactoringProcessor(project, current, new, includedBuildModels)
+
 }
\ No newline at end of file
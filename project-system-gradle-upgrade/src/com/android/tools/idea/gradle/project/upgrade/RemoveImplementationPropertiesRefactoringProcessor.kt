@@ -48,7 +48,7 @@ class RemoveImplementationPropertiesRefactoringProcessor: AgpUpgradeComponentRef
 
   override fun findComponentUsages(): Array<UsageInfo> {
     val usages = ArrayList<UsageInfo>()
-    projectBuildModel.allIncludedBuildModels.forEach model@{ model ->
+    allIncludedBuildModels.forEach model@{ model ->
       val modelPsiElement = model.psiElement ?: return@model
       val moduleKind = model.moduleKind ?: return@model
       model.(moduleKind.implementationProperties)().forEach { propertyModel ->
@@ -128,6 +128,24 @@ class AgpUpgradeRefactoringProcessorTest : UpgradeGradleFileModelTestCase() {
     assertThat(processor.targets).isNotEmpty()
   }
 
+  @Test
+  fun testComponentProcessorsShareBuildModels() {
+    writeToBuildFile(TestFileName("AgpVersion/VersionInLiteral"))
+    val processor = AgpUpgradeRefactoringProcessor(project, GradleVersion.parse("3.5.0"), GradleVersion.parse("4.1.0"))
+    val buildModels = processor.allIncludedBuildModels
+    processor.componentRefactoringProcessors.forEach { assertThat(it.allIncludedBuildModels).isSameInstanceAs(buildModels) }
+  }
+
+  @Test
+  fun testFindUsagesAfterBuildFileChange() {
+    writeToBuildFile(TestFileName("AgpVersion/VersionInLiteral"))
+    val processor = AgpUpgradeRefactoringProcessor(project, GradleVersion.parse("3.5.0"), GradleVersion.parse("4.1.0"))
+    processor.componentRefactoringProcessors.forEach { it.isEnabled = it is AgpVersionRefactoringProcessor }
+    assertThat(processor.doFindUsages()).isNotEmpty()
+    writeToBuildFile(TestFileName("AgpVersion/VersionInLiteralExpected"))
+    assertThat(processor.doFindUsages()).isEmpty()
+  }
+
   @Test
   fun testDisabledHasNoEffectOnAgpVersion() {
     writeToBuildFile(TestFileName("AgpVersion/VersionInLiteral"))
@@ -274,6 +274,25 @@ class ContentManagerImplTest {
     ).inOrder()
   }
 
+  @Test
+  fun testChangingVersionReusesBuildModels() {
+    addMinimalBuildGradleToProject()
+    val toolWindowModel = ToolWindowModel(project, { currentAgpVersion })
+    val includedBuildModels = toolWindowModel.processor!!.includedBuildModels
+    toolWindowModel.newVersionSet(currentAgpVersion.toString())
+    assertThat(toolWindowModel.processor?.new).isEqualTo(currentAgpVersion)
+    assertThat(toolWindowModel.processor?.includedBuildModels).isSameAs(includedBuildModels)
+  }
+
+  @Test
+  fun testRefreshParsesBuildModelsAgain() {
+    addMinimalBuildGradleToProject()
+    val toolWindowModel = ToolWindowModel(project, { currentAgpVersion })
+    val includedBuildModels = toolWindowModel.processor!!.includedBuildModels
+    toolWindowModel.refresh(true)
+    assertThat(toolWindowModel.processor?.includedBuildModels).isNotSameAs(includedBuildModels)
+  }
+
   @Test
   fun testTreeModelInitialState() {
     addMinimalBuildGradleToProject()
@@ -21,6 +21,7 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class DataStoreDatabase {
   public enum Characteristic {
@@ -35,8 +36,10 @@ public class DataStoreDatabase {
   }
 
   @NotNull private final LogService myLogService;
+  @NotNull private final String myDbPath;
 
   private final Connection myConnection;
+  @Nullable private DataStoreWriteQueue myWriteQueue;
 
   /**
    * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE}.
@@ -52,6 +55,7 @@ public class DataStoreDatabase {
                            @NotNull LogService logService,
                            @NotNull Consumer<Throwable> noPiiExceptionHandler) {
     myLogService = logService;
+    myDbPath = dbPath;
     Connection connection = null;
     try {
       // For older versions of the JDBC we need to force load the sqlite.JDBC driver to trigger static initializer's and register
@@ -99,7 +103,31 @@ public class DataStoreDatabase {
     myConnection = connection;
   }
 
+  /**
+   * Returns the {@link DataStoreWriteQueue} of this database, creating it on first use.
+   */
+  @NotNull
+  public synchronized DataStoreWriteQueue getWriteQueue() {
+    if (myWriteQueue == null) {
+      myWriteQueue = new DataStoreWriteQueue(new File(myDbPath).getName(), myLogService);
+    }
+    return myWriteQueue;
+  }
+
+  /**
+   * Returns the {@link DataStoreWriteQueue} of this database if it was created by {@link #getWriteQueue()}, without creating it.
+   */
+  @Nullable
+  public synchronized DataStoreWriteQueue getWriteQueueIfCreated() {
+    return myWriteQueue;
+  }
+
   public void disconnect() {
+    synchronized (this) {
+      if (myWriteQueue != null) {
+        myWriteQueue.shutdown();
+      }
+    }
     try {
       myConnection.commit();
     }
@@ -16,11 +16,16 @@
 package com.android.tools.datastore;
 
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.DURABLE;
+import static com.android.tools.idea.flags.StudioFlags.PROFILER_COLUMNAR_EVENT_STORE;
+import static com.android.tools.idea.flags.StudioFlags.PROFILER_DATASTORE_WRITE_QUEUE;
+import static com.android.tools.idea.flags.StudioFlags.PROFILER_SHARED_POLL_SCHEDULER;
 import static com.android.tools.idea.flags.StudioFlags.PROFILER_UNIFIED_PIPELINE;
 
 import com.android.tools.analytics.UsageTracker;
 import com.android.tools.datastore.database.DataStoreTable;
 import com.android.tools.datastore.database.UnifiedEventsTable;
+import com.android.tools.datastore.poller.PollRunner;
+import com.android.tools.datastore.poller.PollScheduler;
 import com.android.tools.datastore.service.CpuService;
 import com.android.tools.datastore.service.EnergyService;
 import com.android.tools.datastore.service.EventService;
@@ -121,6 +126,7 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   private final Server myServer;
   private final List<ServicePassThrough> myServices = new ArrayList<>();
   private final Consumer<Runnable> myFetchExecutor;
+  @Nullable private final PollScheduler myPollScheduler;
   @NotNull
   private Consumer<Throwable> myNoPiiExceptionHandler;
   private TransportService myTransportService;
@@ -135,7 +141,8 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   /**
    * @param fetchExecutor A callback which is given a {@link Runnable} for each datastore service.
    *                      The runnable, when run, begins polling the target service. You probably
-   *                      want to run it on a background thread.
+   *                      want to run it on a background thread. If the shared poll scheduler is enabled,
+   *                      {@link PollRunner}s are run by the datastore's {@link PollScheduler} instead.
    */
   public DataStoreService(@NotNull String serviceName,
                           @NotNull String datastoreDirectory,
@@ -151,7 +158,22 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
                           @NotNull LogService logService,
                           @Nullable ServerInterceptor interceptor) {
     myLogService = logService;
-    myFetchExecutor = fetchExecutor;
+    if (PROFILER_SHARED_POLL_SCHEDULER.get()) {
+      PollScheduler pollScheduler = new PollScheduler(logService);
+      myPollScheduler = pollScheduler;
+      myFetchExecutor = runnable -> {
+        if (runnable instanceof PollRunner) {
+          pollScheduler.schedule((PollRunner)runnable);
+        }
+        else {
+          fetchExecutor.accept(runnable);
+        }
+      };
+    }
+    else {
+      myPollScheduler = null;
+      myFetchExecutor = fetchExecutor;
+    }
     myInterceptor = interceptor;
     myDatastoreDirectory = datastoreDirectory;
     myServerBuilder = InProcessServerBuilder.forName(serviceName).directExecutor();
@@ -196,7 +218,7 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   public void createPollers() {
     // TODO b/73538507 shared between all services to support inserting file content into generic byte cache (e.g. importing hprof)
     // We should be able to keep this inside TransportService after legacy pipeline removal.
-    UnifiedEventsTable unifiedTable = new UnifiedEventsTable();
+    UnifiedEventsTable unifiedTable = new UnifiedEventsTable(PROFILER_COLUMNAR_EVENT_STORE.get());
     myTransportService = new TransportService(this, unifiedTable, myFetchExecutor, !PROFILER_UNIFIED_PIPELINE.get());
     registerService(myTransportService);
     registerService(new ProfilerService(this, myLogService));
@@ -228,6 +250,9 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       DataStoreDatabase db = myDatabases.computeIfAbsent(namespace, backingNamespace -> createDatabase(
         myDatastoreDirectory + backingNamespace.myNamespace, backingNamespace.myCharacteristic, myNoPiiExceptionHandler));
       service.setBackingStore(namespace, db.getConnection());
+      if (PROFILER_DATASTORE_WRITE_QUEUE.get()) {
+        service.setWriteQueue(namespace, db.getWriteQueue());
+      }
     });
 
     // Build server and start listening for RPC calls for the registered service
@@ -273,10 +298,38 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       client.getChannel().shutdownNow();
     }
     myConnectedClients.clear();
+    if (myPollScheduler != null) {
+      myPollScheduler.shutdown();
+    }
     myDatabases.forEach((name, db) -> db.disconnect());
     DataStoreTable.removeDataStoreErrorCallback(this);
   }
 
+  /**
+   * @return a snapshot of the write queue counters (queue depth, batch latency, etc.) of each database that has batched writes enabled.
+   * Databases whose queue was not created yet are left out, rather than having their queue created.
+   */
+  @NotNull
+  public Map<BackingNamespace, DataStoreWriteQueue.Stats> getWriteQueueStats() {
+    Map<BackingNamespace, DataStoreWriteQueue.Stats> stats = new HashMap<>();
+    myDatabases.forEach((namespace, db) -> {
+      DataStoreWriteQueue writeQueue = db.getWriteQueueIfCreated();
+      if (writeQueue != null) {
+        stats.put(namespace, writeQueue.getStats());
+      }
+    });
+    return stats;
+  }
+
+  /**
+   * @return a snapshot of the latency and empty poll counters of each poller run by the shared poll scheduler, empty if the scheduler is
+   * not enabled.
+   */
+  @NotNull
+  public List<PollRunner.Stats> getPollerStats() {
+    return myPollScheduler == null ? new ArrayList<>() : myPollScheduler.getStats();
+  }
+
   @VisibleForTesting
   List<ServicePassThrough> getRegisteredServices() {
     return myServices;
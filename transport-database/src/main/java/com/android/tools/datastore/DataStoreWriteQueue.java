@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Write-behind pipeline for a {@link DataStoreDatabase} connection. Writes from all pollers are queued and executed by a single writer
+ * thread, which drains as many pending writes as are available (up to {@link #myMaxBatchSize}) and executes them as one batch.
+ * <p>
+ * The writes are not committed per batch: the connection is not in auto-commit mode and is only committed when the database is
+ * disconnected, so committing here would only add syncs to disk. Readers share the connection and see the executed writes anyway.
+ * <p>
+ * The queue is bounded: when the writer falls behind, {@link #enqueue(Runnable)} blocks the calling poller until there is room again.
+ * Readers call {@link #flush()} before querying so that they always observe the writes that were enqueued before the query.
+ */
+public class DataStoreWriteQueue {
+  @VisibleForTesting static final int DEFAULT_CAPACITY = 4096;
+  @VisibleForTesting static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+  private static final long POLL_TIMEOUT_MS = 100;
+
+  @NotNull private final LogService myLogService;
+  @NotNull private final BlockingQueue<Runnable> myQueue;
+  private final int myMaxBatchSize;
+  @NotNull private final Thread myWriterThread;
+
+  /**
+   * Guards {@link #myRunning} together with adding to {@link #myQueue}, so nothing can be added after {@link #shutdown()} stopped the
+   * writer, where it would never be executed.
+   */
+  private final Object myLock = new Object();
+  private volatile boolean myRunning = true;
+
+  /**
+   * Number of writes that have been handed to the queue but not yet executed. Used as a fast path in {@link #flush()}.
+   */
+  private final AtomicInteger myPendingWrites = new AtomicInteger();
+  private final AtomicLong myExecutedWrites = new AtomicLong();
+  private final AtomicLong myBatchCount = new AtomicLong();
+  private final AtomicLong myTotalBatchLatencyNs = new AtomicLong();
+  private final AtomicLong myMaxBatchLatencyNs = new AtomicLong();
+  private final AtomicLong myBackPressureCount = new AtomicLong();
+
+  public DataStoreWriteQueue(@NotNull String name, @NotNull LogService logService) {
+    this(name, logService, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  @VisibleForTesting
+  DataStoreWriteQueue(@NotNull String name,
+                      @NotNull LogService logService,
+                      int capacity,
+                      int maxBatchSize) {
+    myLogService = logService;
+    myQueue = new ArrayBlockingQueue<>(capacity);
+    myMaxBatchSize = maxBatchSize;
+    myWriterThread = new Thread(this::writeLoop, "DataStoreWriteQueue-" + name);
+    myWriterThread.setDaemon(true);
+    myWriterThread.start();
+  }
+
+  @NotNull
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(DataStoreWriteQueue.class);
+  }
+
+  /**
+   * Queues a write to be executed on the writer thread. If the queue is full, this blocks until the writer has made room. Writes issued
+   * from the writer thread itself, or after {@link #shutdown()}, are executed immediately.
+   */
+  public void enqueue(@NotNull Runnable write) {
+    if (Thread.currentThread() != myWriterThread) {
+      synchronized (myLock) {
+        if (myRunning && put(write)) {
+          return;
+        }
+      }
+    }
+    write.run();
+  }
+
+  /**
+   * Blocks until every write that was enqueued before this call has been executed.
+   */
+  public void flush() {
+    if (myPendingWrites.get() == 0 || Thread.currentThread() == myWriterThread) {
+      return;
+    }
+
+    FlushMarker marker = new FlushMarker();
+    synchronized (myLock) {
+      // After shutdown, everything that was queued has been executed.
+      if (!myRunning || !put(marker)) {
+        return;
+      }
+    }
+    try {
+      marker.myLatch.await();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Stops accepting new writes, then waits for the writer thread to execute everything that is still queued.
+   */
+  public void shutdown() {
+    synchronized (myLock) {
+      myRunning = false;
+    }
+    try {
+      myWriterThread.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Adds a write or a flush marker to the queue, blocking while it is full. Must be called with {@link #myLock} held while running: the
+   * writer doesn't need the lock, so it keeps making room.
+   *
+   * @return false if the calling thread was interrupted, in which case nothing was added.
+   */
+  private boolean put(@NotNull Runnable write) {
+    myPendingWrites.incrementAndGet();
+    if (myQueue.offer(write)) {
+      return true;
+    }
+    myBackPressureCount.incrementAndGet();
+    try {
+      myQueue.put(write);
+      return true;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      myPendingWrites.decrementAndGet();
+      return false;
+    }
+  }
+
+  @NotNull
+  public Stats getStats() {
+    return new Stats(myQueue.size(),
+                     myExecutedWrites.get(),
+                     myBatchCount.get(),
+                     myTotalBatchLatencyNs.get(),
+                     myMaxBatchLatencyNs.get(),
+                     myBackPressureCount.get());
+  }
+
+  private void writeLoop() {
+    List<Runnable> batch = new ArrayList<>(myMaxBatchSize);
+    List<FlushMarker> markers = new ArrayList<>();
+    while (myRunning || !myQueue.isEmpty()) {
+      try {
+        Runnable first = myQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+      }
+      catch (InterruptedException e) {
+        // Only shutdown stops the writer, keep draining.
+        continue;
+      }
+      myQueue.drainTo(batch, myMaxBatchSize - 1);
+
+      long startNs = System.nanoTime();
+      int writes = 0;
+      for (Runnable write : batch) {
+        if (write instanceof FlushMarker) {
+          markers.add((FlushMarker)write);
+          continue;
+        }
+        try {
+          write.run();
+          writes++;
+        }
+        catch (RuntimeException e) {
+          getLogger().error(e);
+        }
+      }
+      long latencyNs = System.nanoTime() - startNs;
+
+      myExecutedWrites.addAndGet(writes);
+      myBatchCount.incrementAndGet();
+      myTotalBatchLatencyNs.addAndGet(latencyNs);
+      myMaxBatchLatencyNs.accumulateAndGet(latencyNs, Math::max);
+      myPendingWrites.addAndGet(-batch.size());
+      markers.forEach(marker -> marker.myLatch.countDown());
+      batch.clear();
+      markers.clear();
+    }
+  }
+
+  private static final class FlushMarker implements Runnable {
+    private final CountDownLatch myLatch = new CountDownLatch(1);
+
+    @Override
+    public void run() {
+      // Handled by the writer loop.
+    }
+  }
+
+  /**
+   * Snapshot of the queue counters, exposed through {@link DataStoreService#getWriteQueueStats()}.
+   */
+  public static final class Stats {
+    public final int myQueueDepth;
+    public final long myExecutedWrites;
+    public final long myBatchCount;
+    public final long myTotalBatchLatencyNs;
+    public final long myMaxBatchLatencyNs;
+    public final long myBackPressureCount;
+
+    @VisibleForTesting
+    Stats(int queueDepth,
+          long executedWrites,
+          long batchCount,
+          long totalBatchLatencyNs,
+          long maxBatchLatencyNs,
+          long backPressureCount) {
+      myQueueDepth = queueDepth;
+      myExecutedWrites = executedWrites;
+      myBatchCount = batchCount;
+      myTotalBatchLatencyNs = totalBatchLatencyNs;
+      myMaxBatchLatencyNs = maxBatchLatencyNs;
+      myBackPressureCount = backPressureCount;
+    }
+
+    public long getAverageBatchLatencyNs() {
+      return myBatchCount == 0 ? 0 : myTotalBatchLatencyNs / myBatchCount;
+    }
+  }
+}
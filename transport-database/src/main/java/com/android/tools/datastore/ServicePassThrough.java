@@ -43,4 +43,14 @@ public interface ServicePassThrough {
    * @param connection {@link Connection} to the backing store
    */
   void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection);
+
+  /**
+   * Called after {@link #setBackingStore(DataStoreService.BackingNamespace, Connection)} when write batching is enabled. Services with
+   * high-volume tables should route their inserts through the queue, other services can ignore it.
+   *
+   * @param namespace  a namespace corresponding to an entry in the list returned from {@link #getBackingNamespaces()}
+   * @param writeQueue {@link DataStoreWriteQueue} that batches writes on the namespace's connection
+   */
+  default void setWriteQueue(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreWriteQueue writeQueue) {
+  }
 }
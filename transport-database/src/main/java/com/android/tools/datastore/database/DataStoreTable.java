@@ -15,6 +15,7 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreWriteQueue;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -26,8 +27,10 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Interface a {@link com.android.tools.datastore.ServicePassThrough} object returns to indicate this object is
@@ -37,6 +40,12 @@ public abstract class DataStoreTable<T extends Enum> {
   private static final Set<DataStoreTableErrorCallback> ERROR_CALLBACKS = ConcurrentHashMap.newKeySet();
 
   private Connection myConnection;
+  @Nullable private volatile DataStoreWriteQueue myWriteQueue;
+  /**
+   * Number of writes of this table that are in {@link #myWriteQueue} and not executed yet. Queries only wait for the queue when this table
+   * has some, so readers of other tables are not blocked by the writer.
+   */
+  private final AtomicInteger myPendingWrites = new AtomicInteger();
   private final ThreadLocal<Map<T, PreparedStatement>> myStatementMap = new ThreadLocal<>();
 
   // Cache custom queries we have a limited number and we call the same query multiple times.
@@ -55,6 +64,16 @@ public abstract class DataStoreTable<T extends Enum> {
     myConnection = connection;
   }
 
+  /**
+   * Routes writes made through {@link #executeDeferred(Enum, Object...)} to the given queue instead of executing them on the calling
+   * thread. Queries on this table flush the queue first so callers always read their own writes.
+   *
+   * @param writeQueue the queue of the database this table was initialized with, or null to execute writes directly.
+   */
+  public void setWriteQueue(@Nullable DataStoreWriteQueue writeQueue) {
+    myWriteQueue = writeQueue;
+  }
+
   /**
    * Helper function called after initialize to create {@link PreparedStatement} the implementor should cache
    * the statements for later use.
@@ -149,6 +168,7 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return;
     }
+    flushPendingWrites();
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       batchParams.forEach((object) -> {
@@ -171,10 +191,45 @@ public abstract class DataStoreTable<T extends Enum> {
     }
   }
 
+  /**
+   * Same as {@link #execute(Enum, Object...)} but, if a {@link DataStoreWriteQueue} was set, the statement is executed asynchronously
+   * together with other pending writes. Use this for inserts only, as callers don't observe the result.
+   */
+  protected void executeDeferred(@NotNull T statement, Object... params) {
+    DataStoreWriteQueue writeQueue = myWriteQueue;
+    if (writeQueue == null) {
+      execute(statement, params);
+    }
+    else {
+      myPendingWrites.incrementAndGet();
+      writeQueue.enqueue(() -> {
+        try {
+          execute(statement, params);
+        }
+        finally {
+          myPendingWrites.decrementAndGet();
+        }
+      });
+    }
+  }
+
+  /**
+   * Blocks until the writes of this table queued through {@link #executeDeferred(Enum, Object...)} have been executed. This is a no-op if
+   * no {@link DataStoreWriteQueue} was set or if this table has no pending writes.
+   */
+  protected void flushPendingWrites() {
+    DataStoreWriteQueue writeQueue = myWriteQueue;
+    if (writeQueue != null && myPendingWrites.get() > 0) {
+      writeQueue.flush();
+    }
+  }
+
   protected void execute(@NotNull T statement, Object... params) {
     if (isClosed()) {
       return;
     }
+    // Keep direct writes (e.g. deletes) ordered after the inserts that were queued before them.
+    flushPendingWrites();
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       applyParams(stmt, params);
@@ -192,6 +247,7 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    flushPendingWrites();
     PreparedStatement stmt = getStatementMap().get(statement);
     applyParams(stmt, params);
     return stmt.executeQuery();
@@ -201,6 +257,7 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    flushPendingWrites();
     if (myCustomQueryCache.get() == null) {
       myCustomQueryCache.set(new HashMap<>());
     }
@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.idea.protobuf.InvalidProtocolBufferException;
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Transport.EventGroup;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded in-memory index of the most recent {@link UnifiedEventsTable} events. Every event is also written to the SQL table, this store
+ * only keeps a copy of the recent ones so that most queries don't need to decode the whole table. Events are kept in per-(stream, kind)
+ * segments, each split by group id into columns sorted by timestamp. The header fields that queries filter on (timestamp, pid, command id,
+ * is ended) are stored as primitive columns, while the serialized {@link Event} is only decoded when it is part of a query result.
+ * <p>
+ * Once the stored events take more than the capacity given at construction, the oldest ones are evicted from memory; they stay in the
+ * SQL table. {@link #queryEventGroups(GetEventGroupsRequest)} returns null when the answer may depend on evicted events, in which case the
+ * caller needs to query the SQL table instead.
+ * <p>
+ * {@link #queryEventGroups(GetEventGroupsRequest)} follows the same -1/+1 semantics as
+ * {@link UnifiedEventsTable#queryUnifiedEventGroups(GetEventGroupsRequest)}, but each group is answered with binary searches over its
+ * timestamp column instead of a scan, so the cost of a query is proportional to the number of groups and returned events.
+ */
+final class UnifiedEventsColumnStore {
+  static final long DEFAULT_CAPACITY_BYTES = 32 * 1024 * 1024;
+
+  /**
+   * Approximate size of the primitive columns and the array header of a stored event, on top of its serialized size.
+   */
+  private static final int ROW_OVERHEAD_BYTES = 64;
+
+  private final ReadWriteLock myLock = new ReentrantReadWriteLock();
+  private final long myCapacityBytes;
+  /**
+   * Map of event kind to stream id to segment.
+   */
+  private final Map<Integer, Map<Long, Segment>> mySegments = new HashMap<>();
+  /**
+   * Monotonic insertion counter, the equivalent of the SQL ROWID. Guarded by the write lock.
+   */
+  private long myNextSequence;
+  /**
+   * Approximate size of the stored events. Guarded by the write lock.
+   */
+  private long mySizeBytes;
+
+  UnifiedEventsColumnStore() {
+    this(DEFAULT_CAPACITY_BYTES);
+  }
+
+  /**
+   * @param capacityBytes approximate number of bytes the stored events can take before the oldest ones are evicted.
+   */
+  UnifiedEventsColumnStore(long capacityBytes) {
+    myCapacityBytes = capacityBytes;
+  }
+
+  /**
+   * Inserts the event unless an event with the same stream, kind, pid, group, timestamp and ended state already exists, mirroring the
+   * INSERT OR IGNORE semantics of the SQL table. Events older than the ones already evicted from their segment are not stored.
+   */
+  public void insert(long streamId, @NotNull Event event) {
+    byte[] data = event.toByteArray();
+    myLock.writeLock().lock();
+    try {
+      Segment segment = mySegments.computeIfAbsent(event.getKind().getNumber(), kind -> new HashMap<>())
+        .computeIfAbsent(streamId, stream -> new Segment());
+      if (event.getTimestamp() < segment.myEvictedBefore) {
+        // The event is only in the SQL table. If its group has no events in memory, queries can't tell that the group exists.
+        if (!segment.myGroups.containsKey(event.getGroupId())) {
+          segment.myHasEvictedGroups = true;
+        }
+        return;
+      }
+      GroupColumns group = segment.myGroups.computeIfAbsent(event.getGroupId(), groupId -> new GroupColumns());
+      if (group.insert(event.getTimestamp(), event.getIsEnded(), event.getPid(), event.getCommandId(), myNextSequence, data)) {
+        myNextSequence++;
+        mySizeBytes += data.length + ROW_OVERHEAD_BYTES;
+        if (mySizeBytes > myCapacityBytes) {
+          evict();
+        }
+      }
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  public void delete(long streamId, int pid, long groupId, @NotNull Event.Kind kind, long fromTimestamp, long toTimestamp) {
+    myLock.writeLock().lock();
+    try {
+      Segment segment = mySegments.getOrDefault(kind.getNumber(), Collections.emptyMap()).get(streamId);
+      if (segment == null) {
+        return;
+      }
+      GroupColumns group = segment.myGroups.get(groupId);
+      if (group == null) {
+        return;
+      }
+      mySizeBytes -= group.delete(pid, fromTimestamp, toTimestamp);
+      if (group.mySize == 0) {
+        segment.removeGroup(groupId);
+      }
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the groups matching the request, or null if some of the events needed to answer it were evicted.
+   */
+  @Nullable
+  public List<EventGroup> queryEventGroups(@NotNull GetEventGroupsRequest request) throws InvalidProtocolBufferException {
+    boolean hasFrom = request.getFromTimestamp() > 0;
+    boolean hasTo = request.getToTimestamp() > 0 && request.getToTimestamp() != Long.MAX_VALUE;
+    long from = hasFrom ? request.getFromTimestamp() : Long.MIN_VALUE;
+    long to = hasTo ? request.getToTimestamp() : Long.MAX_VALUE;
+
+    Map<Long, Row> beforeRows = new HashMap<>();
+    Map<Long, List<Row>> inRangeRows = new LinkedHashMap<>();
+    Map<Long, Row> afterRows = new HashMap<>();
+
+    myLock.readLock().lock();
+    try {
+      Map<Long, Segment> streams = mySegments.getOrDefault(request.getKind().getNumber(), Collections.emptyMap());
+      Collection<Segment> segments;
+      if (request.getStreamId() != 0) {
+        Segment segment = streams.get(request.getStreamId());
+        segments = segment == null ? Collections.emptyList() : Collections.singletonList(segment);
+      }
+      else {
+        segments = streams.values();
+      }
+
+      for (Segment segment : segments) {
+        // Events in range are all in memory only if the range starts after the evicted ones.
+        if (from < segment.myEvictedBefore) {
+          return null;
+        }
+        boolean hasEvicted = segment.myEvictedBefore != Long.MIN_VALUE;
+        if (request.getGroupId() != 0) {
+          GroupColumns group = segment.myGroups.get(request.getGroupId());
+          if (group == null && segment.myHasEvictedGroups) {
+            return null;
+          }
+          if (group != null && !group.collect(request.getGroupId(), request.getPid(), request.getCommandId(), from, to, hasFrom, hasTo,
+                                              hasEvicted, beforeRows, inRangeRows, afterRows)) {
+            return null;
+          }
+        }
+        else {
+          if (segment.myHasEvictedGroups) {
+            return null;
+          }
+          for (Map.Entry<Long, GroupColumns> entry : segment.myGroups.entrySet()) {
+            if (!entry.getValue().collect(entry.getKey(), request.getPid(), request.getCommandId(), from, to, hasFrom, hasTo, hasEvicted,
+                                          beforeRows, inRangeRows, afterRows)) {
+              return null;
+            }
+          }
+        }
+      }
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+
+    // Decode outside of the lock, and only the events that are part of the result.
+    Map<Long, EventGroup.Builder> builderGroups = new LinkedHashMap<>();
+    for (Map.Entry<Long, Row> entry : beforeRows.entrySet()) {
+      if (!entry.getValue().myIsEnded) {
+        builderGroups.computeIfAbsent(entry.getKey(), EventGroup.newBuilder()::setGroupId)
+          .addEvents(Event.parser().parseFrom(entry.getValue().myData));
+      }
+    }
+    for (Map.Entry<Long, List<Row>> entry : inRangeRows.entrySet()) {
+      List<Row> rows = entry.getValue();
+      // Rows are already sorted per group, this only matters when the same group id shows up in multiple streams.
+      rows.sort(Row.ORDER);
+      EventGroup.Builder group = builderGroups.computeIfAbsent(entry.getKey(), EventGroup.newBuilder()::setGroupId);
+      for (Row row : rows) {
+        group.addEvents(Event.parser().parseFrom(row.myData));
+      }
+    }
+    for (Map.Entry<Long, Row> entry : afterRows.entrySet()) {
+      EventGroup.Builder group = builderGroups.get(entry.getKey());
+      if (group != null) {
+        group.addEvents(Event.parser().parseFrom(entry.getValue().myData));
+      }
+    }
+
+    List<EventGroup> groups = new ArrayList<>(builderGroups.size());
+    builderGroups.values().forEach(builder -> groups.add(builder.build()));
+    return groups;
+  }
+
+  /**
+   * Evicts the oldest events, across all segments, until the stored events take at most three quarters of the capacity. Must be called
+   * with the write lock held.
+   */
+  private void evict() {
+    long excessBytes = mySizeBytes - myCapacityBytes / 4 * 3;
+    // Merge the groups by timestamp until enough bytes are found, which only visits the evicted rows.
+    PriorityQueue<EvictionCursor> oldest = new PriorityQueue<>(EvictionCursor.ORDER);
+    for (Map<Long, Segment> streams : mySegments.values()) {
+      for (Segment segment : streams.values()) {
+        for (GroupColumns group : segment.myGroups.values()) {
+          if (group.mySize > 0) {
+            oldest.add(new EvictionCursor(group));
+          }
+        }
+      }
+    }
+    long cutoff = Long.MIN_VALUE;
+    long foundBytes = 0;
+    while (!oldest.isEmpty()) {
+      EvictionCursor cursor = oldest.poll();
+      long timestamp = cursor.timestamp();
+      // Rows sharing the timestamp of the last evicted one are evicted too. Rows at Long.MAX_VALUE can't be cut off.
+      if ((foundBytes >= excessBytes && timestamp >= cutoff) || timestamp == Long.MAX_VALUE) {
+        break;
+      }
+      cutoff = timestamp + 1;
+      foundBytes += cursor.rowBytes();
+      if (cursor.advance()) {
+        oldest.add(cursor);
+      }
+    }
+    if (cutoff == Long.MIN_VALUE) {
+      return;
+    }
+
+    for (Map<Long, Segment> streams : mySegments.values()) {
+      for (Segment segment : streams.values()) {
+        long evictedBytes = 0;
+        for (Iterator<GroupColumns> groups = segment.myGroups.values().iterator(); groups.hasNext(); ) {
+          GroupColumns group = groups.next();
+          evictedBytes += group.evictBefore(cutoff);
+          if (group.mySize == 0) {
+            groups.remove();
+            segment.myHasEvictedGroups = true;
+          }
+        }
+        if (evictedBytes > 0) {
+          segment.myEvictedBefore = Math.max(segment.myEvictedBefore, cutoff);
+          mySizeBytes -= evictedBytes;
+        }
+      }
+    }
+  }
+
+  /**
+   * All the events of one (stream, kind) pair.
+   */
+  private static final class Segment {
+    private final Map<Long, GroupColumns> myGroups = new HashMap<>();
+    /**
+     * Events of this segment older than this timestamp were evicted, or may not have been stored. They are only in the SQL table.
+     */
+    private long myEvictedBefore = Long.MIN_VALUE;
+    /**
+     * Whether groups whose events are only in the SQL table were removed from, or never added to, {@link #myGroups}. Queries that may
+     * need the events of such groups can't be answered from memory.
+     */
+    private boolean myHasEvictedGroups;
+
+    private void removeGroup(long groupId) {
+      myGroups.remove(groupId);
+      // Older events of the group may have been evicted.
+      if (myEvictedBefore != Long.MIN_VALUE) {
+        myHasEvictedGroups = true;
+      }
+    }
+  }
+
+  /**
+   * Append-mostly columns of a single group, sorted by (timestamp, is ended, sequence). Pollers deliver events roughly in timestamp
+   * order, so inserts are almost always appends; out of order events are shifted into place.
+   */
+  private static final class GroupColumns {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] myTimestamps = new long[INITIAL_CAPACITY];
+    private boolean[] myIsEnded = new boolean[INITIAL_CAPACITY];
+    private int[] myPids = new int[INITIAL_CAPACITY];
+    private long[] myCommandIds = new long[INITIAL_CAPACITY];
+    private long[] mySequences = new long[INITIAL_CAPACITY];
+    private byte[][] myData = new byte[INITIAL_CAPACITY][];
+    private int mySize;
+
+    private boolean insert(long timestamp, boolean isEnded, int pid, long commandId, long sequence, @NotNull byte[] data) {
+      // Find the end of the run of rows sharing this (timestamp, is ended) key, checking it for duplicates on the way.
+      int index = upperBound(timestamp, isEnded);
+      for (int i = index - 1; i >= 0 && myTimestamps[i] == timestamp && myIsEnded[i] == isEnded; i--) {
+        if (myPids[i] == pid) {
+          return false;
+        }
+      }
+
+      ensureCapacity(mySize + 1);
+      int tail = mySize - index;
+      if (tail > 0) {
+        System.arraycopy(myTimestamps, index, myTimestamps, index + 1, tail);
+        System.arraycopy(myIsEnded, index, myIsEnded, index + 1, tail);
+        System.arraycopy(myPids, index, myPids, index + 1, tail);
+        System.arraycopy(myCommandIds, index, myCommandIds, index + 1, tail);
+        System.arraycopy(mySequences, index, mySequences, index + 1, tail);
+        System.arraycopy(myData, index, myData, index + 1, tail);
+      }
+      myTimestamps[index] = timestamp;
+      myIsEnded[index] = isEnded;
+      myPids[index] = pid;
+      myCommandIds[index] = commandId;
+      mySequences[index] = sequence;
+      myData[index] = data;
+      mySize++;
+      return true;
+    }
+
+    /**
+     * @return the approximate number of bytes freed.
+     */
+    private long delete(int pid, long fromTimestamp, long toTimestamp) {
+      int start = lowerBound(fromTimestamp);
+      int end = toTimestamp == Long.MAX_VALUE ? mySize : lowerBound(toTimestamp + 1);
+      int write = start;
+      long freedBytes = 0;
+      for (int read = start; read < mySize; read++) {
+        if (read < end && myPids[read] == pid) {
+          freedBytes += myData[read].length + ROW_OVERHEAD_BYTES;
+          continue;
+        }
+        if (write != read) {
+          myTimestamps[write] = myTimestamps[read];
+          myIsEnded[write] = myIsEnded[read];
+          myPids[write] = myPids[read];
+          myCommandIds[write] = myCommandIds[read];
+          mySequences[write] = mySequences[read];
+          myData[write] = myData[read];
+        }
+        write++;
+      }
+      // Release the payloads of the removed rows.
+      Arrays.fill(myData, write, mySize, null);
+      mySize = write;
+      return freedBytes;
+    }
+
+    /**
+     * Removes the rows older than {@code timestamp}.
+     *
+     * @return the approximate number of bytes freed.
+     */
+    private long evictBefore(long timestamp) {
+      int end = lowerBound(timestamp);
+      if (end == 0) {
+        return 0;
+      }
+      long freedBytes = 0;
+      for (int i = 0; i < end; i++) {
+        freedBytes += myData[i].length + ROW_OVERHEAD_BYTES;
+      }
+      int tail = mySize - end;
+      // Shrink the columns, so that groups with few remaining events don't hold on to large arrays.
+      int capacity = Math.max(INITIAL_CAPACITY, tail);
+      myTimestamps = Arrays.copyOfRange(myTimestamps, end, end + capacity);
+      myIsEnded = Arrays.copyOfRange(myIsEnded, end, end + capacity);
+      myPids = Arrays.copyOfRange(myPids, end, end + capacity);
+      myCommandIds = Arrays.copyOfRange(myCommandIds, end, end + capacity);
+      mySequences = Arrays.copyOfRange(mySequences, end, end + capacity);
+      myData = Arrays.copyOfRange(myData, end, end + capacity);
+      mySize = tail;
+      return freedBytes;
+    }
+
+    /**
+     * Adds the rows of this group that match the request to the result maps. The row right before {@code from} and right after
+     * {@code to} are candidates for the -1/+1 results; when the same group id exists in several streams the closest one wins.
+     *
+     * @param hasEvicted whether older rows of this group may have been evicted.
+     * @return false if the row right before {@code from} may have been evicted, in which case the result maps are incomplete.
+     */
+    private boolean collect(long groupId,
+                            int pid,
+                            long commandId,
+                            long from,
+                            long to,
+                            boolean hasFrom,
+                            boolean hasTo,
+                            boolean hasEvicted,
+                            @NotNull Map<Long, Row> beforeRows,
+                            @NotNull Map<Long, List<Row>> inRangeRows,
+                            @NotNull Map<Long, Row> afterRows) {
+      int start = hasFrom ? lowerBound(from) : 0;
+      // hasTo implies that to is not Long.MAX_VALUE.
+      int end = hasTo ? lowerBound(to + 1) : mySize;
+
+      if (hasFrom) {
+        boolean foundBefore = false;
+        for (int i = start - 1; i >= 0; i--) {
+          if (matches(i, pid, commandId)) {
+            Row row = row(i);
+            beforeRows.merge(groupId, row, (current, candidate) -> Row.ORDER.compare(candidate, current) > 0 ? candidate : current);
+            foundBefore = true;
+            break;
+          }
+        }
+        if (!foundBefore && hasEvicted) {
+          return false;
+        }
+      }
+
+      if (start < end) {
+        List<Row> rows = null;
+        for (int i = start; i < end; i++) {
+          if (matches(i, pid, commandId)) {
+            if (rows == null) {
+              rows = inRangeRows.computeIfAbsent(groupId, id -> new ArrayList<>());
+            }
+            rows.add(row(i));
+          }
+        }
+      }
+
+      if (hasTo) {
+        for (int i = end; i < mySize; i++) {
+          if (matches(i, pid, commandId)) {
+            Row row = row(i);
+            afterRows.merge(groupId, row, (current, candidate) -> Row.ORDER.compare(candidate, current) < 0 ? candidate : current);
+            break;
+          }
+        }
+      }
+      return true;
+    }
+
+    private boolean matches(int index, int pid, long commandId) {
+      return (pid == 0 || myPids[index] == pid) && (commandId == 0 || myCommandIds[index] == commandId);
+    }
+
+    @NotNull
+    private Row row(int index) {
+      return new Row(myTimestamps[index], myIsEnded[index], mySequences[index], myData[index]);
+    }
+
+    /**
+     * @return the index of the first row whose timestamp is greater than or equal to {@code timestamp}.
+     */
+    private int lowerBound(long timestamp) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] < timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the index of the first row that sorts after (timestamp, isEnded).
+     */
+    private int upperBound(long timestamp, boolean isEnded) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        int compare = Long.compare(myTimestamps[mid], timestamp);
+        if (compare == 0) {
+          compare = Boolean.compare(myIsEnded[mid], isEnded);
+        }
+        if (compare <= 0) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity <= myTimestamps.length) {
+        return;
+      }
+      int newCapacity = Math.max(capacity, myTimestamps.length * 2);
+      myTimestamps = Arrays.copyOf(myTimestamps, newCapacity);
+      myIsEnded = Arrays.copyOf(myIsEnded, newCapacity);
+      myPids = Arrays.copyOf(myPids, newCapacity);
+      myCommandIds = Arrays.copyOf(myCommandIds, newCapacity);
+      mySequences = Arrays.copyOf(mySequences, newCapacity);
+      myData = Arrays.copyOf(myData, newCapacity);
+    }
+  }
+
+  /**
+   * Position of {@link #evict()} in the timestamp column of a group.
+   */
+  private static final class EvictionCursor {
+    private static final Comparator<EvictionCursor> ORDER = Comparator.comparingLong(EvictionCursor::timestamp);
+
+    @NotNull private final GroupColumns myGroup;
+    private int myIndex;
+
+    private EvictionCursor(@NotNull GroupColumns group) {
+      myGroup = group;
+    }
+
+    private long timestamp() {
+      return myGroup.myTimestamps[myIndex];
+    }
+
+    private long rowBytes() {
+      return myGroup.myData[myIndex].length + ROW_OVERHEAD_BYTES;
+    }
+
+    /**
+     * @return false if there are no more rows.
+     */
+    private boolean advance() {
+      return ++myIndex < myGroup.mySize;
+    }
+  }
+
+  /**
+   * A matched row, copied out of the columns so that it can be decoded after the read lock is released.
+   */
+  private static final class Row {
+    private static final Comparator<Row> ORDER = Comparator.<Row>comparingLong(row -> row.myTimestamp)
+      .thenComparing(row -> row.myIsEnded)
+      .thenComparingLong(row -> row.mySequence);
+
+    private final long myTimestamp;
+    private final boolean myIsEnded;
+    private final long mySequence;
+    @NotNull private final byte[] myData;
+
+    private Row(long timestamp, boolean isEnded, long sequence, @NotNull byte[] data) {
+      myTimestamp = timestamp;
+      myIsEnded = isEnded;
+      mySequence = sequence;
+      myData = data;
+    }
+  }
+}
@@ -60,6 +60,29 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     }
   }
 
+  /**
+   * If not null, the most recent events are also kept in this in-memory column store, which answers the group queries it has all the
+   * events for. Events are always stored in the UnifiedEventsTable SQL table.
+   */
+  @Nullable private final UnifiedEventsColumnStore myColumnStore;
+
+  public UnifiedEventsTable() {
+    this(false);
+  }
+
+  /**
+   * @param useColumnStore whether recent events should also be kept in a {@link UnifiedEventsColumnStore}, which answers time range and
+   *                       group queries without decoding every event of the kind being queried.
+   */
+  public UnifiedEventsTable(boolean useColumnStore) {
+    this(useColumnStore ? new UnifiedEventsColumnStore() : null);
+  }
+
+  @VisibleForTesting
+  UnifiedEventsTable(@Nullable UnifiedEventsColumnStore columnStore) {
+    myColumnStore = columnStore;
+  }
+
   @Override
   public void prepareStatements() {
     try {
@@ -95,7 +118,10 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   public void insertUnifiedEvent(long streamId, @NotNull Event event) {
-    execute(Statements.INSERT_EVENT,
+    if (myColumnStore != null && !isClosed()) {
+      myColumnStore.insert(streamId, event);
+    }
+    executeDeferred(Statements.INSERT_EVENT,
             streamId,
             event.getPid(),
             event.getGroupId(),
@@ -107,6 +133,9 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   public void deleteEvents(long streamId, int pid, long groupId, Event.Kind kind, long fromTimestamp, long toTimestamp) {
+    if (myColumnStore != null && !isClosed()) {
+      myColumnStore.delete(streamId, pid, groupId, kind, fromTimestamp, toTimestamp);
+    }
     execute(Statements.DELETE_EVENTS, streamId, pid, groupId, kind.getNumber(), fromTimestamp, toTimestamp);
   }
 
@@ -154,6 +183,20 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
    * @param request
    */
   public List<EventGroup> queryUnifiedEventGroups(@NotNull GetEventGroupsRequest request) {
+    if (myColumnStore != null && !isClosed()) {
+      try {
+        List<EventGroup> groups = myColumnStore.queryEventGroups(request);
+        // Otherwise some of the events needed were evicted from the column store, they are still in the SQL table.
+        if (groups != null) {
+          return groups;
+        }
+      }
+      catch (InvalidProtocolBufferException ex) {
+        onError(ex);
+        return new ArrayList<>();
+      }
+    }
+
     ArrayList<Object> baseParams = new ArrayList<>();
     List<Object> beforeRangeParams = null;
     List<Object> afterRangeParams = null;
@@ -242,7 +285,7 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   public void insertBytes(long streamId, @NotNull String id, @NotNull BytesResponse response) {
-    execute(Statements.INSERT_BYTES, streamId, id, response.toByteArray());
+    executeDeferred(Statements.INSERT_BYTES, streamId, id, response.toByteArray());
   }
 
   @Nullable
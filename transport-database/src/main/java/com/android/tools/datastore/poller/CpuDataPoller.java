@@ -58,7 +58,7 @@ public class CpuDataPoller extends PollRunner {
                        @NotNull CpuTable table,
                        @NotNull CpuServiceGrpc.CpuServiceBlockingStub pollingService,
                        @NotNull LogService logService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session.getStreamId());
     myCpuTable = table;
     myPollingService = pollingService;
     mySession = session;
@@ -113,5 +113,6 @@ public class CpuDataPoller extends PollRunner {
     }
 
     myDataRequestStartTimestampNs = Math.max(Math.max(myDataRequestStartTimestampNs + 1, getDataStartNs), getThreadsStartNs);
+    recordPolledItems(response.getDataCount() + threadsResponse.getThreadsCount() + traceInfoResponse.getTraceInfoCount());
   }
 }
@@ -41,7 +41,7 @@ public class EventDataPoller extends PollRunner {
   public EventDataPoller(@NotNull Common.Session session,
                          @NotNull EventsTable eventTable,
                          @NotNull EventServiceGrpc.EventServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session.getStreamId());
     myEventsTable = eventTable;
     myEventPollingService = pollingService;
     mySession = session;
@@ -88,5 +88,6 @@ public class EventDataPoller extends PollRunner {
       long id = data.getEventId();
       myEventsTable.insertOrReplace(id, mySession, data);
     }
+    recordPolledItems(activityResponse.getDataCount() + systemResponse.getDataCount());
   }
 }
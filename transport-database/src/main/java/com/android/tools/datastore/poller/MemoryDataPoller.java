@@ -38,7 +38,7 @@ public class MemoryDataPoller extends PollRunner {
                           @NotNull MemoryStatsTable statsTable,
                           @NotNull MemoryServiceGrpc.MemoryServiceBlockingStub pollingService,
                           @NotNull Consumer<Runnable> fetchExecutor) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session.getStreamId());
     mySession = session;
     myMemoryStatsTable = statsTable;
     myPollingService = pollingService;
@@ -125,5 +125,7 @@ public class MemoryDataPoller extends PollRunner {
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
     }
+    recordPolledItems(response.getMemSamplesCount() + response.getAllocStatsSamplesCount() + response.getGcStatsSamplesCount() +
+                      response.getAllocationsInfoCount() + response.getHeapDumpInfosCount());
   }
 }
\ No newline at end of file
@@ -35,7 +35,7 @@ public class MemoryJvmtiDataPoller extends PollRunner {
   public MemoryJvmtiDataPoller(@NotNull Common.Session session,
                                @NotNull MemoryLiveAllocationTable liveAllocationTable,
                                @NotNull MemoryServiceGrpc.MemoryServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session.getStreamId());
     mySession = session;
     myLiveAllocationTable = liveAllocationTable;
     myPollingService = pollingService;
@@ -62,5 +62,7 @@ public class MemoryJvmtiDataPoller extends PollRunner {
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
     }
+    recordPolledItems(response.getBatchAllocationContextsCount() + response.getBatchAllocationEventsCount() +
+                      response.getJniReferenceEventBatchesCount() + response.getAllocSamplingRateEventsCount());
   }
 }
\ No newline at end of file
@@ -42,7 +42,7 @@ public class NetworkDataPoller extends PollRunner {
   public NetworkDataPoller(@NotNull Common.Session session,
                            @NotNull NetworkTable table,
                            @NotNull NetworkServiceGrpc.NetworkServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session.getStreamId());
     mySession = session;
     myNetworkTable = table;
     myPollingService = pollingService;
@@ -59,6 +59,7 @@ public class NetworkDataPoller extends PollRunner {
       myDataRequestStartTimestampNs = Math.max(myDataRequestStartTimestampNs, data.getEndTimestamp());
       myNetworkTable.insert(mySession, data);
     }
+    recordPolledItems(response.getDataCount());
     pollHttpRange();
   }
 
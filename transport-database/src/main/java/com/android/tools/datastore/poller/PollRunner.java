@@ -15,31 +15,74 @@
  */
 package com.android.tools.datastore.poller;
 
+import com.android.tools.idea.io.grpc.Status;
 import com.android.tools.idea.io.grpc.StatusRuntimeException;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A {@link RunnableFuture} which, while running, triggers a callback at a specified period
  * (which can be used to poll a target service at some frequency).
+ * <p>
+ * A runner can either be run on its own thread through {@link #run()}, or be handed to a {@link PollScheduler}, which multiplexes many
+ * runners onto a small thread pool and adapts their period to the amount of data each poll returns (see {@link #recordPolledItems(int)}).
  */
 public abstract class PollRunner implements RunnableFuture<Void> {
 
   public static final long POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(250);
 
+  /**
+   * Number of items a single poll has to return for the scheduler to consider the poller under load and poll it more often.
+   */
+  static final int HIGH_LOAD_ITEM_COUNT = 64;
+
   private long myPollPeriodNs;
 
-  private boolean myIsRunning = false;
+  /**
+   * Stream the runner polls data from, 0 if unknown. Used by the {@link PollScheduler} to poll runners of the same stream together.
+   */
+  private final long myStreamId;
+
+  private volatile boolean myIsRunning = false;
 
   private CountDownLatch myRunning = new CountDownLatch(1);
 
   private CountDownLatch myIsDone = new CountDownLatch(1);
 
+  @Nullable private volatile PollScheduler myScheduler;
+
+  /**
+   * Period used when scheduled by a {@link PollScheduler}. Only updated from the scheduler, one poll at a time.
+   */
+  private volatile long myAdaptivePeriodNs;
+
+  /**
+   * Items reported through {@link #recordPolledItems(int)} during the current poll, or -1 if the poller did not report any.
+   */
+  private int myPolledItems = -1;
+
+  private final Object myStatsLock = new Object();
+  private long myPollCount;
+  private long myEmptyPollCount;
+  private long myTotalPollLatencyNs;
+  private long myMaxPollLatencyNs;
 
   public PollRunner(long pollPeriodNs) {
+    this(pollPeriodNs, 0);
+  }
+
+  public PollRunner(long pollPeriodNs, long streamId) {
     myPollPeriodNs = pollPeriodNs;
+    myStreamId = streamId;
+    myAdaptivePeriodNs = pollPeriodNs;
+  }
+
+  public long getStreamId() {
+    return myStreamId;
   }
 
   public void stop() {
@@ -58,7 +101,7 @@ public abstract class PollRunner implements RunnableFuture<Void> {
       myIsRunning = true;
       while (myRunning.getCount() > 0) {
         long startTimeNs = System.nanoTime();
-        poll();
+        pollAndRecord();
         long sleepTime = Math.max(myPollPeriodNs - (System.nanoTime() - startTimeNs), 0L);
         myRunning.await(sleepTime, TimeUnit.NANOSECONDS);
       }
@@ -74,9 +117,94 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
   public abstract void poll();
 
+  /**
+   * Pollers call this from {@link #poll()} with the number of items (samples, events, ...) they received from the device. An empty poll
+   * lets the {@link PollScheduler} back off, while a large one makes it poll more often. Pollers that never call this keep a fixed period.
+   */
+  protected void recordPolledItems(int count) {
+    myPolledItems = Math.max(myPolledItems, 0) + count;
+  }
+
+  @NotNull
+  public Stats getStats() {
+    synchronized (myStatsLock) {
+      return new Stats(myPollCount, myEmptyPollCount, myTotalPollLatencyNs, myMaxPollLatencyNs, myAdaptivePeriodNs);
+    }
+  }
+
+  /**
+   * Called by the {@link PollScheduler} when it takes ownership of this runner, in place of {@link #run()}.
+   */
+  void onScheduled(@NotNull PollScheduler scheduler) {
+    myScheduler = scheduler;
+    myIsRunning = true;
+  }
+
+  /**
+   * Runs a single poll on behalf of a {@link PollScheduler}.
+   *
+   * @return the delay in nanoseconds until the next poll, or -1 if the runner should not be polled anymore.
+   */
+  long pollOnce() {
+    if (isCancelled()) {
+      return -1;
+    }
+    try {
+      int items = pollAndRecord();
+      if (items == 0) {
+        // Idle, back off exponentially up to 8 times the nominal period.
+        myAdaptivePeriodNs = Math.min(myAdaptivePeriodNs * 2, myPollPeriodNs * 8);
+      }
+      else if (items >= HIGH_LOAD_ITEM_COUNT) {
+        // Under load, tighten down to half the nominal period so each poll stays small.
+        myAdaptivePeriodNs = Math.max(myAdaptivePeriodNs / 2, myPollPeriodNs / 2);
+      }
+      else if (items > 0) {
+        myAdaptivePeriodNs = myPollPeriodNs;
+      }
+      return myAdaptivePeriodNs;
+    }
+    catch (StatusRuntimeException e) {
+      // A poll that missed the deadline set by the scheduler is retried, the device may only be slow. Other errors stop the runner.
+      return e.getStatus().getCode() == Status.Code.DEADLINE_EXCEEDED ? myAdaptivePeriodNs : -1;
+    }
+  }
+
+  /**
+   * Called by the {@link PollScheduler} once it will no longer poll this runner.
+   */
+  void onUnscheduled() {
+    myIsRunning = false;
+    myIsDone.countDown();
+  }
+
+  private int pollAndRecord() {
+    myPolledItems = -1;
+    long startTimeNs = System.nanoTime();
+    try {
+      poll();
+    }
+    finally {
+      long latencyNs = System.nanoTime() - startTimeNs;
+      synchronized (myStatsLock) {
+        myPollCount++;
+        if (myPolledItems == 0) {
+          myEmptyPollCount++;
+        }
+        myTotalPollLatencyNs += latencyNs;
+        myMaxPollLatencyNs = Math.max(myMaxPollLatencyNs, latencyNs);
+      }
+    }
+    return myPolledItems;
+  }
+
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
     myRunning.countDown();
+    PollScheduler scheduler = myScheduler;
+    if (scheduler != null) {
+      scheduler.unschedule(this);
+    }
     return true;
   }
 
@@ -105,4 +233,27 @@ public abstract class PollRunner implements RunnableFuture<Void> {
     }
     return null;
   }
+
+  /**
+   * Snapshot of a runner's poll counters.
+   */
+  public static final class Stats {
+    public final long myPollCount;
+    public final long myEmptyPollCount;
+    public final long myTotalPollLatencyNs;
+    public final long myMaxPollLatencyNs;
+    public final long myCurrentPeriodNs;
+
+    Stats(long pollCount, long emptyPollCount, long totalPollLatencyNs, long maxPollLatencyNs, long currentPeriodNs) {
+      myPollCount = pollCount;
+      myEmptyPollCount = emptyPollCount;
+      myTotalPollLatencyNs = totalPollLatencyNs;
+      myMaxPollLatencyNs = maxPollLatencyNs;
+      myCurrentPeriodNs = currentPeriodNs;
+    }
+
+    public long getAveragePollLatencyNs() {
+      return myPollCount == 0 ? 0 : myTotalPollLatencyNs / myPollCount;
+    }
+  }
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.android.tools.datastore.LogService;
+import com.android.tools.idea.io.grpc.Context;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Runs {@link PollRunner}s on a small shared thread pool instead of dedicating a sleeping thread to each of them.
+ * <p>
+ * A single dispatcher thread keeps the runners ordered by their next poll time. When a runner is due, every other runner of the same
+ * stream that would become due within {@link #COALESCE_WINDOW_NS} is polled with it, back to back on the same worker thread, so that the
+ * RPCs to a device are issued together rather than spread over the whole period. After each poll the runner's next delay is taken from
+ * {@link PollRunner#pollOnce()}, which backs off while a poller's data is idle and tightens the period while it is busy.
+ * <p>
+ * Each poll runs in a gRPC {@link Context} with a deadline, which the blocking stubs used by the pollers inherit, so a device that
+ * stops answering holds a worker for at most {@link #POLL_DEADLINE_NS} instead of starving the other runners. A poll that misses its
+ * deadline is retried at the next period.
+ */
+public class PollScheduler {
+  @VisibleForTesting static final long COALESCE_WINDOW_NS = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final long POLL_DEADLINE_NS = TimeUnit.SECONDS.toNanos(10);
+
+  private final ReentrantLock myLock = new ReentrantLock();
+  private final Condition myQueueChanged = myLock.newCondition();
+  /**
+   * Runners waiting for their next poll. Runners being polled are not in the queue. Guarded by {@link #myLock}.
+   */
+  private final PriorityQueue<Entry> myQueue = new PriorityQueue<>(Comparator.comparingLong(entry -> entry.myNextPollNs));
+  /**
+   * All runners currently owned by the scheduler, queued or being polled. Guarded by {@link #myLock}.
+   */
+  private final Map<PollRunner, Entry> myEntries = new IdentityHashMap<>();
+  @NotNull private final LogService myLogService;
+  @NotNull private final ExecutorService myWorkers;
+  @NotNull private final ScheduledExecutorService myDeadlineTimer;
+  private final long myPollDeadlineNs;
+  @NotNull private final Thread myDispatcher;
+  private volatile boolean myRunning = true;
+
+  public PollScheduler(@NotNull LogService logService) {
+    this(logService, Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+  }
+
+  public PollScheduler(@NotNull LogService logService, int workerCount) {
+    this(logService, workerCount, POLL_DEADLINE_NS);
+  }
+
+  @VisibleForTesting
+  PollScheduler(@NotNull LogService logService, int workerCount, long pollDeadlineNs) {
+    myLogService = logService;
+    AtomicInteger threadIndex = new AtomicInteger();
+    myWorkers = Executors.newFixedThreadPool(workerCount, runnable -> {
+      Thread thread = new Thread(runnable, "PollScheduler-Worker-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    myDeadlineTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "PollScheduler-Deadlines");
+      thread.setDaemon(true);
+      return thread;
+    });
+    myPollDeadlineNs = pollDeadlineNs;
+    myDispatcher = new Thread(this::dispatchLoop, "PollScheduler-Dispatcher");
+    myDispatcher.setDaemon(true);
+    myDispatcher.start();
+  }
+
+  /**
+   * Takes ownership of the runner and polls it until it is cancelled or its service throws. The first poll happens immediately.
+   */
+  public void schedule(@NotNull PollRunner runner) {
+    schedule(runner, 0);
+  }
+
+  @VisibleForTesting
+  void schedule(@NotNull PollRunner runner, long initialDelayNs) {
+    runner.onScheduled(this);
+    myLock.lock();
+    try {
+      if (!myRunning) {
+        runner.onUnscheduled();
+        return;
+      }
+      Entry entry = new Entry(runner, System.nanoTime() + initialDelayNs);
+      myEntries.put(runner, entry);
+      myQueue.add(entry);
+      myQueueChanged.signal();
+    }
+    finally {
+      myLock.unlock();
+    }
+  }
+
+  /**
+   * Stops polling the runner. If it is currently being polled, it is released once that poll completes.
+   */
+  void unschedule(@NotNull PollRunner runner) {
+    myLock.lock();
+    try {
+      Entry entry = myEntries.get(runner);
+      if (entry == null || entry.myIsPolling) {
+        return;
+      }
+      myEntries.remove(runner);
+      myQueue.remove(entry);
+    }
+    finally {
+      myLock.unlock();
+    }
+    runner.onUnscheduled();
+  }
+
+  /**
+   * @return a snapshot of the counters of every runner currently owned by the scheduler.
+   */
+  @NotNull
+  public List<PollRunner.Stats> getStats() {
+    List<PollRunner> runners;
+    myLock.lock();
+    try {
+      runners = new ArrayList<>(myEntries.keySet());
+    }
+    finally {
+      myLock.unlock();
+    }
+    List<PollRunner.Stats> stats = new ArrayList<>(runners.size());
+    runners.forEach(runner -> stats.add(runner.getStats()));
+    return stats;
+  }
+
+  public void shutdown() {
+    List<PollRunner> runners;
+    myLock.lock();
+    try {
+      myRunning = false;
+      runners = new ArrayList<>(myEntries.keySet());
+      myQueueChanged.signal();
+    }
+    finally {
+      myLock.unlock();
+    }
+    runners.forEach(PollRunner::cancel);
+    myWorkers.shutdown();
+    myDeadlineTimer.shutdownNow();
+    try {
+      myDispatcher.join();
+      myWorkers.awaitTermination(1, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void dispatchLoop() {
+    myLock.lock();
+    try {
+      while (myRunning) {
+        Entry head = myQueue.peek();
+        if (head == null) {
+          myQueueChanged.awaitUninterruptibly();
+          continue;
+        }
+        long now = System.nanoTime();
+        long waitNs = head.myNextPollNs - now;
+        if (waitNs > 0) {
+          myQueueChanged.awaitNanos(waitNs);
+          continue;
+        }
+
+        myQueue.poll();
+        List<Entry> batch = new ArrayList<>();
+        batch.add(head);
+        if (head.myRunner.getStreamId() != 0) {
+          long coalesceUntilNs = now + COALESCE_WINDOW_NS;
+          for (Iterator<Entry> it = myQueue.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.myRunner.getStreamId() == head.myRunner.getStreamId() && entry.myNextPollNs <= coalesceUntilNs) {
+              it.remove();
+              batch.add(entry);
+            }
+          }
+        }
+        batch.forEach(entry -> entry.myIsPolling = true);
+        myWorkers.execute(() -> pollBatch(batch));
+      }
+    }
+    catch (InterruptedException ignored) {
+      // Only happens on shutdown.
+    }
+    finally {
+      myLock.unlock();
+    }
+  }
+
+  private void pollBatch(@NotNull List<Entry> batch) {
+    for (Entry entry : batch) {
+      long delayNs;
+      Context.CancellableContext context =
+        Context.current().withDeadlineAfter(myPollDeadlineNs, TimeUnit.NANOSECONDS, myDeadlineTimer);
+      Context previous = context.attach();
+      try {
+        delayNs = entry.myRunner.pollOnce();
+      }
+      catch (RuntimeException e) {
+        // Same as a runner on its own thread: a failing poller stops polling, the others are unaffected.
+        getLogger().warn(e);
+        delayNs = -1;
+      }
+      finally {
+        context.detach(previous);
+        context.cancel(null);
+      }
+      reschedule(entry, delayNs);
+    }
+  }
+
+  private void reschedule(@NotNull Entry entry, long delayNs) {
+    boolean release;
+    myLock.lock();
+    try {
+      entry.myIsPolling = false;
+      release = delayNs < 0 || !myRunning || entry.myRunner.isCancelled();
+      if (release) {
+        myEntries.remove(entry.myRunner);
+      }
+      else {
+        entry.myNextPollNs = System.nanoTime() + delayNs;
+        myQueue.add(entry);
+        myQueueChanged.signal();
+      }
+    }
+    finally {
+      myLock.unlock();
+    }
+    if (release) {
+      entry.myRunner.onUnscheduled();
+    }
+  }
+
+  @NotNull
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(PollScheduler.class);
+  }
+
+  private static final class Entry {
+    @NotNull private final PollRunner myRunner;
+    private long myNextPollNs;
+    private boolean myIsPolling;
+
+    private Entry(@NotNull PollRunner runner, long nextPollNs) {
+      myRunner = runner;
+      myNextPollNs = nextPollNs;
+    }
+  }
+}
@@ -19,6 +19,7 @@ import static com.android.tools.datastore.DataStoreDatabase.Characteristic.PERFO
 
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.DataStoreService.BackingNamespace;
+import com.android.tools.datastore.DataStoreWriteQueue;
 import com.android.tools.datastore.LogService;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.MemoryLiveAllocationTable;
@@ -289,4 +290,12 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
       myAllocationsTable.initialize(connection);
     }
   }
+
+  @Override
+  public void setWriteQueue(@NotNull BackingNamespace namespace, @NotNull DataStoreWriteQueue writeQueue) {
+    assert getBackingNamespaces().contains(namespace);
+    if (namespace.equals(LIVE_ALLOCATION_NAMESPACE)) {
+      myAllocationsTable.setWriteQueue(writeQueue);
+    }
+  }
 }
\ No newline at end of file
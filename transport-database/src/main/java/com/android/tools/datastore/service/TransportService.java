@@ -16,6 +16,7 @@
 package com.android.tools.datastore.service;
 
 import com.android.tools.datastore.DataStoreService;
+import com.android.tools.datastore.DataStoreWriteQueue;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.DataStoreTable;
 import com.android.tools.datastore.database.DeviceProcessTable;
@@ -109,6 +110,12 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     }
   }
 
+  @Override
+  public void setWriteQueue(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreWriteQueue writeQueue) {
+    assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
+    myTable.setWriteQueue(writeQueue);
+  }
+
   /**
    * Connects the datastore layer to a channel. By default ths starts the {@link UnifiedEventsDataPoller} for the transport pipeline which
    * streams Events into the database. If the profiler is using the legacy pipeline ({@link StudioFlags#PROFILER_UNIFIED_PIPELINE} flag),
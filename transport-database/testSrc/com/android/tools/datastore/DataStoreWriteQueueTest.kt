@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class DataStoreWriteQueueTest {
+  private val dbFile = File.createTempFile("DataStoreWriteQueueTest", "sql")
+  private lateinit var database: DataStoreDatabase
+
+  @Before
+  fun setUp() {
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    database.connection.createStatement().use { it.execute("CREATE TABLE Values_ (Value INTEGER)") }
+  }
+
+  @After
+  fun tearDown() {
+    database.disconnect()
+    dbFile.delete()
+  }
+
+  @Test
+  fun getWriteQueueIfCreatedDoesNotCreateQueue() {
+    assertThat(database.writeQueueIfCreated).isNull()
+
+    val queue = database.writeQueue
+    assertThat(database.writeQueueIfCreated).isSameAs(queue)
+  }
+
+  @Test
+  fun flushMakesQueuedWritesVisible() {
+    val queue = database.writeQueue
+    for (i in 0 until 100) {
+      queue.enqueue { insert(i) }
+    }
+    queue.flush()
+
+    assertThat(count()).isEqualTo(100)
+    val stats = queue.stats
+    assertThat(stats.myQueueDepth).isEqualTo(0)
+    assertThat(stats.myExecutedWrites).isEqualTo(100)
+    assertThat(stats.myBatchCount).isAtLeast(1)
+    assertThat(stats.myBatchCount).isAtMost(100)
+  }
+
+  @Test
+  fun writesAreBatched() {
+    val queue = DataStoreWriteQueue("test", FakeLogService(), 16, 16)
+    val writerStarted = CountDownLatch(1)
+    val blockWriter = CountDownLatch(1)
+    queue.enqueue {
+      writerStarted.countDown()
+      blockWriter.await()
+    }
+    assertThat(writerStarted.await(5, TimeUnit.SECONDS)).isTrue()
+    // These accumulate while the writer is blocked, then get executed together.
+    for (i in 0 until 10) {
+      queue.enqueue { insert(i) }
+    }
+    blockWriter.countDown()
+    queue.flush()
+
+    assertThat(count()).isEqualTo(10)
+    assertThat(queue.stats.myExecutedWrites).isEqualTo(11)
+    assertThat(queue.stats.myBatchCount).isEqualTo(2)
+    queue.shutdown()
+  }
+
+  @Test
+  fun fullQueueAppliesBackPressure() {
+    val queue = DataStoreWriteQueue("test", FakeLogService(), 1, 1)
+    val writerStarted = CountDownLatch(1)
+    val blockWriter = CountDownLatch(1)
+    queue.enqueue {
+      writerStarted.countDown()
+      blockWriter.await()
+    }
+    assertThat(writerStarted.await(5, TimeUnit.SECONDS)).isTrue()
+    // Fills the only slot of the queue.
+    queue.enqueue { insert(1) }
+
+    val producerDone = CountDownLatch(1)
+    val producer = Thread {
+      queue.enqueue { insert(2) }
+      producerDone.countDown()
+    }
+    producer.start()
+    assertThat(producerDone.await(200, TimeUnit.MILLISECONDS)).isFalse()
+
+    blockWriter.countDown()
+    assertThat(producerDone.await(5, TimeUnit.SECONDS)).isTrue()
+    queue.flush()
+    assertThat(count()).isEqualTo(2)
+    assertThat(queue.stats.myBackPressureCount).isEqualTo(1)
+    queue.shutdown()
+  }
+
+  @Test
+  fun shutdownDrainsPendingWrites() {
+    val queue = DataStoreWriteQueue("test", FakeLogService(), 16, 16)
+    for (i in 0 until 10) {
+      queue.enqueue { insert(i) }
+    }
+    queue.shutdown()
+    assertThat(count()).isEqualTo(10)
+
+    // Writes after shutdown execute inline.
+    queue.enqueue { insert(10) }
+    assertThat(count()).isEqualTo(11)
+  }
+
+  @Test
+  fun flushDuringShutdownReturns() {
+    val queue = DataStoreWriteQueue("test", FakeLogService(), 16, 16)
+    val writerStarted = CountDownLatch(1)
+    val blockWriter = CountDownLatch(1)
+    queue.enqueue {
+      writerStarted.countDown()
+      blockWriter.await()
+    }
+    assertThat(writerStarted.await(5, TimeUnit.SECONDS)).isTrue()
+    queue.enqueue { insert(1) }
+
+    val flushed = CountDownLatch(1)
+    Thread {
+      queue.flush()
+      flushed.countDown()
+    }.start()
+    val shutDown = CountDownLatch(1)
+    Thread {
+      queue.shutdown()
+      shutDown.countDown()
+    }.start()
+    blockWriter.countDown()
+
+    assertThat(shutDown.await(5, TimeUnit.SECONDS)).isTrue()
+    assertThat(flushed.await(5, TimeUnit.SECONDS)).isTrue()
+    assertThat(count()).isEqualTo(1)
+    // Flushing after shutdown has nothing to wait for.
+    queue.flush()
+  }
+
+  private fun insert(value: Int) {
+    database.connection.prepareStatement("INSERT INTO Values_ (Value) VALUES (?)").use {
+      it.setInt(1, value)
+      it.execute()
+    }
+  }
+
+  private fun count(): Int {
+    database.connection.createStatement().use { statement ->
+      statement.executeQuery("SELECT COUNT(*) FROM Values_").use { return it.getInt(1) }
+    }
+  }
+}
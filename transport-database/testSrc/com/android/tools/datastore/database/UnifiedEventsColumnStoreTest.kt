@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+/**
+ * Query semantics are checked against the SQL table in [UnifiedEventsTableTest], this only covers what is specific to the column store.
+ */
+class UnifiedEventsColumnStoreTest {
+  @Test
+  fun oldestEventsAreEvictedPastCapacity() {
+    val size = event(Common.Event.Kind.SESSION, false, 1, 1, 1, 1).serializedSize + 64L
+    val store = UnifiedEventsColumnStore(size * 10)
+    val events = (1L..20L).map { event(Common.Event.Kind.SESSION, false, 1, 1, 1, it) }
+    events.forEach { store.insert(1, it) }
+
+    // Queries that need the evicted events can't be answered.
+    assertThat(store.queryEventGroups(request())).isNull()
+    assertThat(store.queryEventGroups(request(from = 2, to = 3))).isNull()
+    // Recent ones can.
+    val groups = store.queryEventGroups(request(from = 18, to = 19))
+    assertThat(groups!!.flatMap { it.eventsList }).containsExactlyElementsIn(events.subList(16, 20)).inOrder()
+  }
+
+  @Test
+  fun eventsOlderThanEvictedOnesNeedTheTable() {
+    val size = event(Common.Event.Kind.SESSION, false, 1, 1, 1, 1).serializedSize + 64L
+    val store = UnifiedEventsColumnStore(size * 4)
+    (11L..20L).forEach { store.insert(1, event(Common.Event.Kind.SESSION, false, 1, 1, 1, it)) }
+    store.insert(1, event(Common.Event.Kind.SESSION, false, 1, 1, 1, 1))
+
+    assertThat(store.queryEventGroups(request(from = 1, to = 2))).isNull()
+  }
+
+  @Test
+  fun groupWithOnlyEvictedEventsNeedsTheTable() {
+    val size = event(Common.Event.Kind.SESSION, false, 1, 1, 1, 1).serializedSize + 64L
+    val store = UnifiedEventsColumnStore(size * 4)
+    // Group 1 only has an old event, which is the -1 event of any later range.
+    store.insert(1, event(Common.Event.Kind.SESSION, false, 1, 1, 1, 1))
+    (10L..20L).forEach { store.insert(1, event(Common.Event.Kind.SESSION, false, 1, 2, 1, it)) }
+
+    assertThat(store.queryEventGroups(request(from = 19, to = 20))).isNull()
+    // A group that has its -1 event in memory is still answered from memory.
+    assertThat(store.queryEventGroups(request(groupId = 2, from = 19, to = 20))).isNotNull()
+  }
+
+  @Test
+  fun evictedGroupsAreOnlyInTheTable() {
+    val size = event(Common.Event.Kind.SESSION, false, 1, 1, 1, 1).serializedSize + 64L
+    val store = UnifiedEventsColumnStore(size * 4)
+    // Each group only has one event, so the evicted groups are dropped from memory entirely.
+    (1L..20L).forEach { store.insert(1, event(Common.Event.Kind.SESSION, false, 1, it, 1, it)) }
+
+    // The store can't tell whether an evicted group has events before the range.
+    assertThat(store.queryEventGroups(request(groupId = 1, from = 19, to = 20))).isNull()
+    assertThat(store.queryEventGroups(request(groupId = 21, from = 19, to = 20))).isNull()
+    assertThat(store.queryEventGroups(request(from = 19, to = 20))).isNull()
+  }
+
+  @Test
+  fun storeWithoutEvictionsAnswersEverything() {
+    val store = UnifiedEventsColumnStore()
+    (1L..20L).forEach { store.insert(1, event(Common.Event.Kind.SESSION, false, 1, 1, 1, it)) }
+    assertThat(store.queryEventGroups(request())!!.single().eventsList).hasSize(20)
+  }
+
+  private fun request(groupId: Long = 0, from: Long = 0, to: Long = 0) =
+    GetEventGroupsRequest.newBuilder()
+      .setKind(Common.Event.Kind.SESSION)
+      .setGroupId(groupId)
+      .setFromTimestamp(from)
+      .setToTimestamp(to)
+      .build()
+
+  private fun event(kind: Common.Event.Kind, isEnded: Boolean, pid: Int, groupId: Long, commandId: Int, timestamp: Long) =
+    Common.Event.newBuilder()
+      .setKind(kind)
+      .setIsEnded(isEnded)
+      .setPid(pid)
+      .setGroupId(groupId)
+      .setCommandId(commandId)
+      .setTimestamp(timestamp)
+      .build()
+}
@@ -21,10 +21,21 @@ import com.android.tools.profiler.proto.Transport.BytesResponse
 import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
 import java.util.function.Consumer
 
-class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
+/**
+ * Runs every case against the SQL table alone, with a column store holding all the events, and with a column store small enough that
+ * most queries need events it evicted.
+ */
+@RunWith(Parameterized::class)
+class UnifiedEventsTableTest(private val columnStoreCapacityBytes: Long?) : DatabaseTest<UnifiedEventsTable>() {
   companion object {
+    @JvmStatic
+    @Parameterized.Parameters(name = "columnStoreCapacityBytes={0}")
+    fun columnStoreCapacities() = listOf(null, UnifiedEventsColumnStore.DEFAULT_CAPACITY_BYTES, 200L)
+
     const val SESSION_1_1_1 = 0
     const val SESSION_1_1_2 = 1
     const val SESSION_1_1_3 = 2
@@ -53,6 +64,12 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
                              eventBuilder(Common.Event.Kind.SESSION, false, 3, 3, -1, 1),
                              eventBuilder(Common.Event.Kind.SESSION, true, 3, 3, -1, 3))
 
+  override fun before() {
+    super.before()
+    // The base class checks the error handling of the SQL statements with createTable(), the cases below also use the column store.
+    columnStoreCapacityBytes?.let { table = UnifiedEventsTable(UnifiedEventsColumnStore(it)).apply { initialize(database.connection) } }
+  }
+
   override fun createTable(): UnifiedEventsTable {
     return UnifiedEventsTable()
   }
@@ -282,6 +299,60 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
                    SESSION_1_1_4)
   }
 
+  @Test
+  fun outOfOrderEventsAreSortedByTimestamp() {
+    val events = listOf(eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 1, 5),
+                        eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 1, 1),
+                        eventBuilder(Common.Event.Kind.SESSION, true, 1, 1, 1, 3),
+                        eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 1, 3))
+    events.forEach { table.insertUnifiedEvent(1, it) }
+
+    val groups = table.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).build())
+    assertThat(groups).hasSize(1)
+    assertThat(groups[0].eventsList).containsExactlyElementsIn(events)
+    val rangeGroups = table.queryUnifiedEventGroups(
+      GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(2).setToTimestamp(4).build())
+    assertThat(rangeGroups.flatMap { it.eventsList }).containsExactlyElementsIn(events)
+  }
+
+  @Test
+  fun sameGroupAcrossStreamsIsMerged() {
+    val first = eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 1, 1)
+    val second = eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 1, 2)
+    val third = eventBuilder(Common.Event.Kind.SESSION, false, 1, 1, 1, 3)
+    table.insertUnifiedEvent(1, first)
+    table.insertUnifiedEvent(2, second)
+    table.insertUnifiedEvent(1, third)
+
+    val allGroups = table.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).build())
+    assertThat(allGroups).hasSize(1)
+    assertThat(allGroups[0].eventsList).containsExactly(first, second, third)
+
+    // Only the latest event before the range, across all streams, is returned.
+    val rangeGroups = table.queryUnifiedEventGroups(
+      GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(3).build())
+    assertThat(rangeGroups).hasSize(1)
+    assertThat(rangeGroups[0].eventsList).containsExactly(second, third)
+  }
+
+  @Test
+  fun rangeQueriesOverLongSession() {
+    // More events than the smallest column store keeps, spread over a few groups, some of which end.
+    val events = (1L..200L).map { eventBuilder(Common.Event.Kind.SESSION, it % 50 == 0L && it % 3 == 0L, 1, it % 3, 1, it) }
+    events.forEach { table.insertUnifiedEvent(1, it) }
+
+    for ((from, to) in listOf(0L to 0L, 0L to 20L, 10L to 20L, 160L to 170L, 195L to 0L, 150L to 151L)) {
+      val request = GetEventGroupsRequest.newBuilder().setKind(Common.Event.Kind.SESSION).setFromTimestamp(from).setToTimestamp(to).build()
+      val expected = events.groupBy { it.groupId }.values.flatMap { group ->
+        val before = if (from > 0) group.lastOrNull { it.timestamp < from }?.takeUnless { it.isEnded } else null
+        val inRange = group.filter { (from <= 0 || it.timestamp >= from) && (to <= 0 || it.timestamp <= to) }
+        val after = if (to > 0 && (before != null || inRange.isNotEmpty())) group.firstOrNull { it.timestamp > to } else null
+        listOfNotNull(before) + inRange + listOfNotNull(after)
+      }
+      assertThat(table.queryUnifiedEventGroups(request).flatMap { it.eventsList }).containsExactlyElementsIn(expected)
+    }
+  }
+
   @Test
   fun queryReturnsSameStatement() {
     val results = table.executeOneTimeQuery("SELECT * FROM [UnifiedEventsTable]", arrayOf())
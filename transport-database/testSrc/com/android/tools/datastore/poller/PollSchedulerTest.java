@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.datastore.FakeLogService;
+import com.android.tools.datastore.LogService;
+import com.android.tools.idea.io.grpc.Context;
+import com.android.tools.idea.io.grpc.Status;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+public class PollSchedulerTest {
+  private static final long TEST_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(5);
+
+  private final PollScheduler myScheduler = new PollScheduler(new FakeLogService(), 2);
+
+  @After
+  public void tearDown() {
+    myScheduler.shutdown();
+  }
+
+  @Test
+  public void idlePollerBacksOff() throws Exception {
+    // Wait until the sixth poll starts, by then the period has reached its maximum.
+    FakePollRunner runner = new FakePollRunner(1, () -> 0, 6);
+    myScheduler.schedule(runner);
+    assertThat(runner.myPolled.await(5, TimeUnit.SECONDS)).isTrue();
+
+    PollRunner.Stats stats = runner.getStats();
+    assertThat(stats.myPollCount).isAtLeast(5);
+    assertThat(stats.myEmptyPollCount).isEqualTo(stats.myPollCount);
+    assertThat(stats.myCurrentPeriodNs).isEqualTo(TEST_PERIOD_NS * 8);
+    runner.stop();
+  }
+
+  @Test
+  public void busyPollerTightensPeriod() throws Exception {
+    FakePollRunner runner = new FakePollRunner(1, () -> PollRunner.HIGH_LOAD_ITEM_COUNT, 3);
+    myScheduler.schedule(runner);
+    assertThat(runner.myPolled.await(5, TimeUnit.SECONDS)).isTrue();
+
+    PollRunner.Stats stats = runner.getStats();
+    assertThat(stats.myEmptyPollCount).isEqualTo(0);
+    assertThat(stats.myCurrentPeriodNs).isEqualTo(TEST_PERIOD_NS / 2);
+    runner.stop();
+  }
+
+  @Test
+  public void pollerWithoutReportsKeepsPeriod() throws Exception {
+    FakePollRunner runner = new FakePollRunner(1, () -> -1, 3);
+    myScheduler.schedule(runner);
+    assertThat(runner.myPolled.await(5, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(runner.getStats().myEmptyPollCount).isEqualTo(0);
+    assertThat(runner.getStats().myCurrentPeriodNs).isEqualTo(TEST_PERIOD_NS);
+    runner.stop();
+  }
+
+  @Test
+  public void stopReleasesRunner() throws Exception {
+    FakePollRunner runner = new FakePollRunner(1, () -> 0, 1);
+    myScheduler.schedule(runner);
+    assertThat(runner.myPolled.await(5, TimeUnit.SECONDS)).isTrue();
+
+    runner.stop();
+    assertThat(runner.isDone()).isTrue();
+    assertThat(runner.isCancelled()).isTrue();
+    long pollCount = runner.getStats().myPollCount;
+    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(TEST_PERIOD_NS * 4));
+    assertThat(runner.getStats().myPollCount).isEqualTo(pollCount);
+    assertThat(myScheduler.getStats()).isEmpty();
+  }
+
+  @Test
+  public void failingPollerIsReleased() throws Exception {
+    FakePollRunner runner = new FakePollRunner(1, () -> {
+      throw Status.UNAVAILABLE.asRuntimeException();
+    }, 1);
+    myScheduler.schedule(runner);
+    assertThat(runner.myPolled.await(5, TimeUnit.SECONDS)).isTrue();
+    runner.get(5, TimeUnit.SECONDS);
+    assertThat(runner.isDone()).isTrue();
+  }
+
+  @Test
+  public void crashingPollerIsLoggedAndReleased() throws Exception {
+    List<Throwable> warnings = Collections.synchronizedList(new ArrayList<>());
+    LogService logService = new FakeLogService() {
+      @NotNull
+      @Override
+      public FakeLogger getLogger(@NotNull Class clazz) {
+        return new FakeLogger() {
+          @Override
+          public void warn(@NotNull Throwable t) {
+            warnings.add(t);
+          }
+        };
+      }
+    };
+    PollScheduler scheduler = new PollScheduler(logService, 1);
+    IllegalStateException failure = new IllegalStateException("poller bug");
+    FakePollRunner runner = new FakePollRunner(1, () -> {
+      throw failure;
+    }, 1);
+    scheduler.schedule(runner);
+    runner.get(5, TimeUnit.SECONDS);
+
+    assertThat(runner.isDone()).isTrue();
+    assertThat(warnings).containsExactly(failure);
+    assertThat(runner.getStats().myPollCount).isEqualTo(1);
+    assertThat(scheduler.getStats()).isEmpty();
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void pollersOfSameStreamArePolledTogether() throws Exception {
+    PollScheduler scheduler = new PollScheduler(new FakeLogService(), 1);
+    List<String> polled = Collections.synchronizedList(new ArrayList<>());
+    FakePollRunner first = new FakePollRunner(1, () -> {
+      polled.add("first");
+      return -1;
+    }, 1);
+    FakePollRunner other = new FakePollRunner(2, () -> {
+      polled.add("other");
+      return -1;
+    }, 1);
+    FakePollRunner second = new FakePollRunner(1, () -> {
+      polled.add("second");
+      return -1;
+    }, 1);
+    long delayNs = TimeUnit.MILLISECONDS.toNanos(100);
+    scheduler.schedule(first, delayNs);
+    scheduler.schedule(other, delayNs);
+    scheduler.schedule(second, delayNs);
+    assertThat(other.myPolled.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(second.myPolled.await(5, TimeUnit.SECONDS)).isTrue();
+
+    // "second" is due after "other", but is polled with "first" because they share a stream.
+    assertThat(polled.subList(0, 3)).containsExactly("first", "second", "other").inOrder();
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void hungPollerDoesNotStarveOthers() throws Exception {
+    PollScheduler scheduler = new PollScheduler(new FakeLogService(), 1, TimeUnit.MILLISECONDS.toNanos(50));
+    // Behaves like a blocking stub whose device stopped answering: returns only once the poll's deadline expires.
+    FakePollRunner hung = new FakePollRunner(1, () -> {
+      CountDownLatch cancelled = new CountDownLatch(1);
+      Context.current().addListener(context -> cancelled.countDown(), Runnable::run);
+      try {
+        cancelled.await(5, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      throw Status.DEADLINE_EXCEEDED.asRuntimeException();
+    }, 2);
+    FakePollRunner other = new FakePollRunner(2, () -> 0, 1);
+    scheduler.schedule(hung);
+    scheduler.schedule(other);
+    assertThat(other.myPolled.await(5, TimeUnit.SECONDS)).isTrue();
+
+    // A poll that missed its deadline is retried rather than stopping the runner.
+    assertThat(hung.myPolled.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(hung.isDone()).isFalse();
+    scheduler.shutdown();
+  }
+
+  private static class FakePollRunner extends PollRunner {
+    private final IntSupplier myItems;
+    private final CountDownLatch myPolled;
+
+    FakePollRunner(long streamId, IntSupplier items, int pollCount) {
+      super(TEST_PERIOD_NS, streamId);
+      myItems = items;
+      myPolled = new CountDownLatch(pollCount);
+    }
+
+    @Override
+    public void poll() {
+      try {
+        int items = myItems.getAsInt();
+        if (items >= 0) {
+          recordPolledItems(items);
+        }
+      }
+      finally {
+        myPolled.countDown();
+      }
+    }
+  }
+}